@@ -7,18 +7,19 @@ out vec2 trianglePos;
 flat out vec3 normal;
 flat out int textureData;
 
-struct Vertex {
-    int x, y, z;
-    int textureData;
-};
-
+// Compact vertices are {inChunkX | inChunkY << 6 | inChunkZ << 12, textureData}, wide vertices are {x, y, z, textureData}
 layout (std430, binding = 0) restrict readonly buffer vertexBuffer {
-    Vertex[] vertices;
+    int[] vertices;
+};
+// The origin of every chunk, indexed by the base instance of the draw
+layout (std430, binding = 1) restrict readonly buffer chunkOriginBuffer {
+    int[] chunkOrigins;
 };
 
 uniform mat4 projectionViewMatrix;
 uniform int lodSize;
 uniform ivec3 iCameraPosition;
+uniform bool compactVertices;
 
 const vec3[6] NORMALS = vec3[6](vec3(0, 0, 1), vec3(0, 1, 0), vec3(1, 0, 0), vec3(0, 0, -1), vec3(0, -1, 0), vec3(-1, 0, 0));
 const vec2[3] FACE_POSITIONS = vec2[3](vec2(0, 0), vec2(0, 2), vec2(2, 0));
@@ -47,23 +48,32 @@ vec3 getFacePositions(int side, int currentVertexId, int faceSize1, int faceSize
 }
 
 void main() {
-    Vertex currentVertex = vertices[gl_VertexID / 3];
+    int face = gl_VertexID / 3;
     int currentVertexId = gl_VertexID % 3;
 
-    int x = currentVertex.x;
-    int y = currentVertex.y;
-    int z = currentVertex.z;
-    int side = currentVertex.textureData >> 8 & 7;
+    ivec3 position;
+    int currentTextureData;
+    if (compactVertices) {
+        int packedPosition = vertices[face * 2];
+        int origin = gl_BaseInstance * 3;
+        position = ivec3(chunkOrigins[origin], chunkOrigins[origin + 1], chunkOrigins[origin + 2])
+                + ivec3(packedPosition & 63, packedPosition >> 6 & 63, packedPosition >> 12 & 63);
+        currentTextureData = vertices[face * 2 + 1];
+    } else {
+        position = ivec3(vertices[face * 4], vertices[face * 4 + 1], vertices[face * 4 + 2]);
+        currentTextureData = vertices[face * 4 + 3];
+    }
+    int side = currentTextureData >> 8 & 7;
 
-    int faceSize1 = (currentVertex.textureData >> 17 & 63) + 1;
-    int faceSize2 = (currentVertex.textureData >> 11 & 63) + 1;
+    int faceSize1 = (currentTextureData >> 17 & 63) + 1;
+    int faceSize2 = (currentTextureData >> 11 & 63) + 1;
     vec3 inChunkPosition = getFacePositions(side, currentVertexId, faceSize1, faceSize2) * lodSize;
-    texturePosition = ivec3(x, y, z) * lodSize - iCameraPosition + inChunkPosition;
+    texturePosition = position * lodSize - iCameraPosition + inChunkPosition;
     voxelPosition = texturePosition;
 
     gl_Position = projectionViewMatrix * vec4(texturePosition, 1.0);
 
-    textureData = currentVertex.textureData;
+    textureData = currentTextureData;
     normal = NORMALS[side];
     trianglePos = FACE_POSITIONS[currentVertexId];
 }
\ No newline at end of file
@@ -0,0 +1,137 @@
+import game.server.Chunk;
+import game.server.ChunkID;
+import game.server.Game;
+import game.server.World;
+import game.settings.IntSettings;
+import game.utils.Utils;
+
+import java.util.ArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+public final class ChunkMapStressTester {
+
+    private static final int LOADER_COUNT = 4;
+    private static final int STORER_COUNT = 2;
+    private static final int UNLOADER_COUNT = 2;
+    private static final int READER_COUNT = 4;
+    private static final int OPERATIONS_PER_THREAD = 2_000_000;
+    private static final int ALIASES = 4;
+
+    public static void main(String[] args) throws InterruptedException {
+        IntSettings.RENDER_DISTANCE.setValue(1);
+        IntSettings.LOD_COUNT.setValue(1);
+        World world = new World(0x9EF6E7FAF3299DDDL);
+        Game.setTemporaryWorld(world);
+
+        // Only allocate one chunk per possible ID, the materials of a chunk are irrelevant here
+        int coordinateRange = world.RENDERED_WORLD_WIDTH * ALIASES;
+        Chunk[] chunkPool = new Chunk[coordinateRange * coordinateRange * coordinateRange];
+        for (int index = 0; index < chunkPool.length; index++)
+            chunkPool[index] = new Chunk(index / (coordinateRange * coordinateRange), index / coordinateRange % coordinateRange, index % coordinateRange, 0);
+
+        ArrayList<Thread> threads = new ArrayList<>();
+        for (int count = 0; count < LOADER_COUNT; count++) threads.add(new Thread(() -> load(world, chunkPool)));
+        for (int count = 0; count < STORER_COUNT; count++) threads.add(new Thread(() -> store(world, chunkPool)));
+        for (int count = 0; count < UNLOADER_COUNT; count++) threads.add(new Thread(() -> unload(world, chunkPool)));
+        for (int count = 0; count < READER_COUNT; count++) threads.add(new Thread(() -> read(world, coordinateRange)));
+
+        long start = System.nanoTime();
+        for (Thread thread : threads) thread.start();
+        for (Thread thread : threads) thread.join();
+        long time = System.nanoTime() - start;
+
+        long residentChunks = 0, stampSum = 0;
+        for (int chunkIndex = 0; chunkIndex < world.CHUNKS_PER_LOD; chunkIndex++) {
+            if (world.getChunk(chunkIndex, 0) != null) residentChunks++;
+            long stamp = world.getStamp(chunkIndex, 0);
+            if ((stamp & 1) != 0) violations.add("Slot %d left with odd stamp %d".formatted(chunkIndex, stamp));
+            stampSum += stamp;
+        }
+        if (residentChunks != installs.get() - removals.get())
+            violations.add("Resident chunks %d, expected %d".formatted(residentChunks, installs.get() - removals.get()));
+        // Every change of a slot advances its stamp by two, it is odd in between
+        long changes = installs.get() + replacements.get() + removals.get();
+        if (stampSum != changes * 2) violations.add("Stamp sum %d, expected %d".formatted(stampSum, changes * 2));
+
+        System.out.printf("Installs: %d, replacements: %d, removals: %d, failed CAS: %d, consistent reads: %d, torn reads: %d%n",
+                installs.get(), replacements.get(), removals.get(), failedSwaps.get(), consistentReads.get(), tornReads.get());
+        System.out.printf("Took %dms, %d violations%n", time / 1_000_000, violations.get());
+        Game.removeTemporaryWorld();
+        if (violations.get() != 0) System.exit(1);
+    }
+
+    private static void load(World world, Chunk[] chunkPool) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int operation = 0; operation < OPERATIONS_PER_THREAD; operation++) {
+            Chunk chunk = chunkPool[random.nextInt(chunkPool.length)];
+            Chunk current = world.getChunk(chunk.INDEX, 0);
+            if (current != null && current.ID.equals(chunk.ID)) continue;
+
+            if (!world.compareAndSetChunk(current, chunk)) failedSwaps.incrementAndGet();
+            else if (current == null) installs.incrementAndGet();
+            else replacements.incrementAndGet();
+        }
+    }
+
+    private static void store(World world, Chunk[] chunkPool) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int operation = 0; operation < OPERATIONS_PER_THREAD; operation++) {
+            Chunk chunk = chunkPool[random.nextInt(chunkPool.length)];
+            Chunk previous = world.storeChunk(chunk);
+            if (previous == null) installs.incrementAndGet();
+            else if (previous != chunk) replacements.incrementAndGet();
+        }
+    }
+
+    // Alternates between removing a known chunk and clearing the slot blindly
+    private static void unload(World world, Chunk[] chunkPool) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int operation = 0; operation < OPERATIONS_PER_THREAD; operation++) {
+            int chunkIndex = chunkPool[random.nextInt(chunkPool.length)].INDEX;
+            if ((operation & 1) == 0) {
+                if (world.setNull(chunkIndex, 0) != null) removals.incrementAndGet();
+                continue;
+            }
+            Chunk chunk = world.getChunk(chunkIndex, 0);
+            if (chunk != null && world.removeChunk(chunk)) removals.incrementAndGet();
+        }
+    }
+
+    private static void read(World world, int coordinateRange) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int operation = 0; operation < OPERATIONS_PER_THREAD; operation++) {
+            long chunkX = random.nextInt(coordinateRange), chunkY = random.nextInt(coordinateRange), chunkZ = random.nextInt(coordinateRange);
+            int chunkIndex = Utils.getChunkIndex(chunkX, chunkY, chunkZ, 0);
+
+            long stamp = world.getStamp(chunkIndex, 0);
+            Chunk chunk = world.getChunk(chunkIndex, 0);
+            if (chunk != null && chunk.INDEX != chunkIndex) violations.add("Chunk %s found in slot %d".formatted(chunk.ID, chunkIndex));
+            if (chunk != null && !chunk.ID.equals(new ChunkID(chunk.X, chunk.Y, chunk.Z, 0))) violations.add("Chunk %s has a corrupt ID".formatted(chunk.ID));
+
+            if ((stamp & 1) == 0 && world.getStamp(chunkIndex, 0) == stamp) consistentReads.incrementAndGet();
+            else tornReads.incrementAndGet();
+        }
+    }
+
+    private static final AtomicLong installs = new AtomicLong(), replacements = new AtomicLong(), removals = new AtomicLong();
+    private static final AtomicLong failedSwaps = new AtomicLong(), consistentReads = new AtomicLong(), tornReads = new AtomicLong();
+    private static final Violations violations = new Violations();
+
+    private static final class Violations {
+
+        synchronized void add(String violation) {
+            if (count++ < 10) System.err.println(violation);
+        }
+
+        synchronized long get() {
+            return count;
+        }
+
+        private long count = 0;
+    }
+
+    private ChunkMapStressTester() {
+
+    }
+}
@@ -0,0 +1,92 @@
+import core.utils.FileManager;
+import game.server.Chunk;
+import game.server.Game;
+import game.server.World;
+import game.server.generation.GenerationData;
+import game.server.generation.WorldGeneration;
+import game.server.saving.ChunkSaver;
+import game.settings.IntSettings;
+
+import java.io.File;
+import java.util.ArrayList;
+
+public final class ChunkStorageTester {
+
+    private static final int CHUNK_COUNT_XZ = 32;
+    private static final int CHUNK_COUNT_Y = 8;
+    private static final int ITERATIONS = 3;
+
+    public static void main(String[] args) {
+        IntSettings.RENDER_DISTANCE.setValue(CHUNK_COUNT_XZ / 2 - 3);
+        IntSettings.LOD_COUNT.setValue(1);
+        World world = new World(0x9EF6E7FAF3299DDDL);
+        world.setName("chunk_storage_test");
+        Game.setTemporaryWorld(world);
+
+        ArrayList<Chunk> chunks = new ArrayList<>();
+        for (int chunkX = 0; chunkX < CHUNK_COUNT_XZ; chunkX++)
+            for (int chunkZ = 0; chunkZ < CHUNK_COUNT_XZ; chunkZ++) generateColumn(chunks, chunkX, chunkZ);
+        System.out.printf("Generated %d chunks%n", chunks.size());
+
+        for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+            testFilePerChunk(chunks);
+            testRegionFiles(chunks);
+        }
+
+        FileManager.delete(new File("saves/" + world.getName()));
+        Game.removeTemporaryWorld();
+    }
+
+    private static void testFilePerChunk(ArrayList<Chunk> chunks) {
+        ChunkSaver saver = new ChunkSaver();
+        String directory = ChunkSaver.getLegacySaveFileLocation() + "/0/";
+
+        long saveStart = System.nanoTime();
+        for (Chunk chunk : chunks) saver.save(chunk, directory + chunk.ID);
+        long saveTime = System.nanoTime() - saveStart;
+
+        long loadStart = System.nanoTime();
+        for (Chunk chunk : chunks) if (saver.load(directory + chunk.ID) == null) System.err.printf("Failed to load chunk %s%n", chunk.ID);
+        long loadTime = System.nanoTime() - loadStart;
+
+        printResult("File per chunk", chunks.size(), saveTime, loadTime);
+        FileManager.delete(new File(ChunkSaver.getLegacySaveFileLocation()));
+    }
+
+    private static void testRegionFiles(ArrayList<Chunk> chunks) {
+        ChunkSaver saver = new ChunkSaver();
+
+        long saveStart = System.nanoTime();
+        for (Chunk chunk : chunks) saver.saveChunk(chunk);
+        ChunkSaver.closeRegionFiles();
+        long saveTime = System.nanoTime() - saveStart;
+
+        long loadStart = System.nanoTime();
+        for (Chunk chunk : chunks) if (saver.loadChunk(chunk.ID, chunk.LOD) == null) System.err.printf("Failed to load chunk %s%n", chunk.ID);
+        ChunkSaver.closeRegionFiles();
+        long loadTime = System.nanoTime() - loadStart;
+
+        printResult("Region files", chunks.size(), saveTime, loadTime);
+        FileManager.delete(new File(ChunkSaver.getSaveFileLocation()));
+    }
+
+    private static void generateColumn(ArrayList<Chunk> chunks, int chunkX, int chunkZ) {
+        GenerationData generationData = new GenerationData(chunkX, chunkZ, 0);
+
+        for (int chunkY = -CHUNK_COUNT_Y / 2; chunkY < CHUNK_COUNT_Y / 2; chunkY++) {
+            Chunk chunk = new Chunk(chunkX, chunkY, chunkZ, 0);
+            WorldGeneration.generate(chunk, generationData);
+            chunks.add(chunk);
+        }
+    }
+
+    private static void printResult(String name, int chunkCount, long saveTime, long loadTime) {
+        System.out.printf("%s: saved %d chunks in %dms (%.0f chunks/s), loaded in %dms (%.0f chunks/s)%n", name, chunkCount,
+                saveTime / 1_000_000, chunkCount * 1e9 / saveTime,
+                loadTime / 1_000_000, chunkCount * 1e9 / loadTime);
+    }
+
+    private ChunkStorageTester() {
+
+    }
+}
@@ -0,0 +1,78 @@
+import game.server.Chunk;
+import game.server.Game;
+import game.server.World;
+import game.server.generation.GenerationData;
+import game.server.generation.WorldGeneration;
+import game.server.materials_data.MaterialsData;
+import game.settings.IntSettings;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static game.utils.Constants.*;
+
+public final class CompressionTester {
+
+    private static final int CHUNK_COUNT_XZ = 8;
+    private static final int CHUNK_COUNT_Y = 8;
+    private static final int WARMUP_ITERATIONS = 20;
+    private static final int ITERATIONS = 50;
+
+    public static void main(String[] args) {
+        IntSettings.RENDER_DISTANCE.setValue(CHUNK_COUNT_XZ / 2 - 3);
+        Game.setTemporaryWorld(new World(0x9EF6E7FAF3299DDDL));
+
+        ArrayList<byte[]> uncompressedChunks = new ArrayList<>();
+        ArrayList<byte[]> compressedChunks = new ArrayList<>();
+        for (int chunkX = 28; chunkX < CHUNK_COUNT_XZ + 28; chunkX++)
+            for (int chunkZ = 116; chunkZ < CHUNK_COUNT_XZ + 116; chunkZ++) {
+                GenerationData generationData = new GenerationData(chunkX, chunkZ, 0);
+                for (int chunkY = -CHUNK_COUNT_Y / 2; chunkY < CHUNK_COUNT_Y / 2; chunkY++) {
+                    Chunk chunk = new Chunk(chunkX, chunkY, chunkZ, 0);
+                    WorldGeneration.generate(chunk, generationData);
+
+                    byte[] uncompressedMaterials = new byte[CHUNK_SIZE * CHUNK_SIZE * CHUNK_SIZE];
+                    chunk.getMaterials().fillUncompressedMaterialsInto(uncompressedMaterials);
+                    uncompressedChunks.add(uncompressedMaterials);
+                    compressedChunks.add(chunk.getMaterials().getBytes());
+                }
+            }
+
+        verifyRoundTrip(uncompressedChunks, compressedChunks);
+        for (int iteration = 0; iteration < WARMUP_ITERATIONS; iteration++) compressAll(uncompressedChunks);
+
+        long totalTime = 0, totalBytes = 0;
+        for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+            long start = System.nanoTime();
+            totalBytes += compressAll(uncompressedChunks);
+            totalTime += System.nanoTime() - start;
+        }
+
+        int chunkCount = uncompressedChunks.size() * ITERATIONS;
+        System.out.printf("Compressed %d chunks in %dms, %.1fus each, %.0f bytes each%n", chunkCount,
+                totalTime / 1_000_000, totalTime / 1000.0 / chunkCount, (double) totalBytes / chunkCount);
+        Game.removeTemporaryWorld();
+    }
+
+    private static long compressAll(ArrayList<byte[]> uncompressedChunks) {
+        long totalBytes = 0;
+        for (byte[] uncompressedMaterials : uncompressedChunks)
+            totalBytes += MaterialsData.getCompressedMaterials(CHUNK_SIZE_BITS, uncompressedMaterials).getBytes().length;
+        return totalBytes;
+    }
+
+    private static void verifyRoundTrip(ArrayList<byte[]> uncompressedChunks, ArrayList<byte[]> compressedChunks) {
+        int mismatches = 0;
+        for (int index = 0; index < uncompressedChunks.size(); index++) {
+            byte[] compressed = MaterialsData.getCompressedMaterials(CHUNK_SIZE_BITS, uncompressedChunks.get(index)).getBytes();
+            if (!Arrays.equals(compressed, compressedChunks.get(index))) mismatches++;
+        }
+
+        if (mismatches != 0) System.err.printf("%d of %d chunks compress differently than generated%n", mismatches, uncompressedChunks.size());
+        else System.out.printf("All %d chunks compress to their generated bytes%n", uncompressedChunks.size());
+    }
+
+    private CompressionTester() {
+
+    }
+}
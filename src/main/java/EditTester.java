@@ -0,0 +1,98 @@
+import game.player.interaction.ShapePlaceable;
+import game.player.interaction.placeable_shapes.CubePlaceable;
+import game.server.Chunk;
+import game.server.Game;
+import game.server.World;
+import game.server.generation.GenerationData;
+import game.server.generation.WorldGeneration;
+import game.server.materials_data.MaterialsData;
+import game.settings.IntSettings;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import static game.utils.Constants.*;
+
+public final class EditTester {
+
+    private static final int CHUNK_COUNT_XZ = 4;
+    private static final int CHUNK_COUNT_Y = 4;
+    private static final int EDITS_PER_CHUNK = 200;
+    private static final int MAX_SIZE_BITS = 3;
+    // The smallest allowed render distance, the chunks are never stored in the world
+    private static final int RENDER_DISTANCE = 2;
+
+    public static void main(String[] args) {
+        IntSettings.RENDER_DISTANCE.setValue(RENDER_DISTANCE);
+        Game.setTemporaryWorld(new World(0x9EF6E7FAF3299DDDL));
+
+        ArrayList<Chunk> chunks = new ArrayList<>();
+        for (int chunkX = 28; chunkX < CHUNK_COUNT_XZ + 28; chunkX++)
+            for (int chunkZ = 116; chunkZ < CHUNK_COUNT_XZ + 116; chunkZ++) {
+                GenerationData generationData = new GenerationData(chunkX, chunkZ, 0);
+                for (int chunkY = -CHUNK_COUNT_Y / 2; chunkY < CHUNK_COUNT_Y / 2; chunkY++) {
+                    Chunk chunk = new Chunk(chunkX, chunkY, chunkZ, 0);
+                    WorldGeneration.generate(chunk, generationData);
+                    chunks.add(chunk);
+                }
+            }
+
+        // Warmup
+        for (int sizeBits = 0; sizeBits <= MAX_SIZE_BITS; sizeBits++) measureEdits(chunks, sizeBits);
+        measureFullRecompression(chunks);
+
+        for (int sizeBits = 0; sizeBits <= MAX_SIZE_BITS; sizeBits++) {
+            long[] times = measureEdits(chunks, sizeBits);
+            System.out.printf("%d voxel edits: %.1fus average, %.1fus max over %d places and breaks%n",
+                    1 << sizeBits * 3, times[0] / 1000.0 / (chunks.size() * EDITS_PER_CHUNK * 2), times[1] / 1000.0, chunks.size() * EDITS_PER_CHUNK * 2);
+        }
+        long[] times = measureFullRecompression(chunks);
+        System.out.printf("Full decompression and recompression: %.1fus average, %.1fus max%n",
+                times[0] / 1000.0 / (chunks.size() * EDITS_PER_CHUNK), times[1] / 1000.0);
+        Game.removeTemporaryWorld();
+    }
+
+    private static long[] measureEdits(ArrayList<Chunk> chunks, int sizeBits) {
+        IntSettings.BREAK_PLACE_SIZE.setValue(sizeBits);
+        ShapePlaceable place = new CubePlaceable(STONE).setBitMapToFull();
+        ShapePlaceable breaking = new CubePlaceable(AIR).setBitMapToFull();
+        Random random = new Random(sizeBits);
+        long totalTime = 0, maxTime = 0;
+
+        for (Chunk chunk : chunks)
+            for (int edit = 0; edit < EDITS_PER_CHUNK; edit++) {
+                int inChunkX = random.nextInt(CHUNK_SIZE) & -(1 << sizeBits);
+                int inChunkY = random.nextInt(CHUNK_SIZE) & -(1 << sizeBits);
+                int inChunkZ = random.nextInt(CHUNK_SIZE) & -(1 << sizeBits);
+
+                for (ShapePlaceable placeable : new ShapePlaceable[]{place, breaking}) {
+                    long start = System.nanoTime();
+                    chunk.getMaterials().storeMaterial(inChunkX, inChunkY, inChunkZ, 1, 1, 1, 0, placeable);
+                    long time = System.nanoTime() - start;
+                    totalTime += time;
+                    maxTime = Math.max(maxTime, time);
+                }
+            }
+        return new long[]{totalTime, maxTime};
+    }
+
+    private static long[] measureFullRecompression(ArrayList<Chunk> chunks) {
+        long totalTime = 0, maxTime = 0;
+        for (Chunk chunk : chunks)
+            for (int edit = 0; edit < EDITS_PER_CHUNK; edit++) {
+                MaterialsData materials = chunk.getMaterials();
+                long start = System.nanoTime();
+                byte[] uncompressedMaterials = new byte[CHUNK_SIZE * CHUNK_SIZE * CHUNK_SIZE];
+                materials.fillUncompressedMaterialsInto(uncompressedMaterials);
+                materials.compressIntoData(uncompressedMaterials);
+                long time = System.nanoTime() - start;
+                totalTime += time;
+                maxTime = Math.max(maxTime, time);
+            }
+        return new long[]{totalTime, maxTime};
+    }
+
+    private EditTester() {
+
+    }
+}
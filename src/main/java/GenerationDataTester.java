@@ -0,0 +1,64 @@
+import game.server.Game;
+import game.server.World;
+import game.server.generation.GenerationData;
+import game.server.generation.MapSample;
+import game.server.generation.MapSampleCache;
+import game.settings.IntSettings;
+
+public final class GenerationDataTester {
+
+    private static final int COLUMN_COUNT_XZ = 32;
+    private static final int WARMUP_ITERATIONS = 2;
+    private static final int ITERATIONS = 5;
+    private static final int MAX_TESTED_LOD = 4;
+
+    public static void main(String[] args) {
+        IntSettings.RENDER_DISTANCE.setValue(COLUMN_COUNT_XZ / 2 - 3);
+        Game.setTemporaryWorld(new World(0x9EF6E7FAF3299DDDL));
+
+        verifyBatchedSamples();
+        for (int iteration = 0; iteration < WARMUP_ITERATIONS; iteration++) generateAll(0);
+
+        for (int lod = 0; lod <= MAX_TESTED_LOD; lod++) {
+            long totalTime = 0;
+            for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+                // Only measure the sharing between neighboring columns, not repeated runs
+                MapSampleCache.clear();
+                totalTime += generateAll(lod);
+            }
+
+            int columnCount = COLUMN_COUNT_XZ * COLUMN_COUNT_XZ * ITERATIONS;
+            System.out.printf("Lod %d: %d GenerationData in %dms, %.1fus each, sample cache hit rate %.1f%%%n", lod, columnCount,
+                    totalTime / 1_000_000, totalTime / 1000.0 / columnCount, MapSampleCache.getHitRate() * 100);
+        }
+        Game.removeTemporaryWorld();
+    }
+
+    private static long generateAll(int lod) {
+        long start = System.nanoTime();
+        for (int chunkX = 0; chunkX < COLUMN_COUNT_XZ; chunkX++)
+            for (int chunkZ = 0; chunkZ < COLUMN_COUNT_XZ; chunkZ++) new GenerationData(chunkX + 1000, chunkZ - 400, lod);
+        return System.nanoTime() - start;
+    }
+
+    private static void verifyBatchedSamples() {
+        int count = 4096;
+        long[] totalX = new long[count], totalZ = new long[count];
+        for (int index = 0; index < count; index++) {
+            totalX[index] = (long) index * 7919 - 50_000;
+            totalZ[index] = (long) index * 104_729 + 12_345;
+        }
+
+        MapSample[] samples = MapSample.samples(totalX, totalZ, count, true, true);
+        int mismatches = 0;
+        for (int index = 0; index < count; index++)
+            if (!samples[index].equals(new MapSample(totalX[index], totalZ[index], true, true))) mismatches++;
+
+        if (mismatches != 0) System.err.printf("%d of %d batched samples differ from the scalar samples%n", mismatches, count);
+        else System.out.printf("All %d batched samples match the scalar samples%n", count);
+    }
+
+    private GenerationDataTester() {
+
+    }
+}
@@ -0,0 +1,58 @@
+import core.utils.FileManager;
+import game.server.Chunk;
+import game.server.Game;
+import game.server.World;
+import game.server.generation.GenerationData;
+import game.server.generation.WorldGeneration;
+import game.server.saving.ChunkSaver;
+import game.settings.IntSettings;
+
+import java.io.File;
+import java.util.concurrent.ForkJoinPool;
+
+public final class LodGenerationTester {
+
+    private static final int CHUNK_COUNT_XZ = 64;
+    private static final int CHUNK_COUNT_Y = 8;
+    private static final int LOD_COUNT = 5;
+
+    public static void main(String[] args) {
+        IntSettings.RENDER_DISTANCE.setValue(6);
+        IntSettings.LOD_COUNT.setValue(LOD_COUNT);
+        World world = new World(0x9EF6E7FAF3299DDDL);
+        world.setName("lod_generation_test");
+        Game.setTemporaryWorld(world);
+        FileManager.delete(new File("saves/" + world.getName()));
+
+        long saveStart = System.nanoTime();
+        ChunkSaver saver = new ChunkSaver();
+        for (int chunkX = 0; chunkX < CHUNK_COUNT_XZ; chunkX++)
+            for (int chunkZ = 0; chunkZ < CHUNK_COUNT_XZ; chunkZ++) saveColumn(saver, chunkX, chunkZ);
+        ChunkSaver.closeRegionFiles();
+        System.out.printf("Created synthetic save with %d lod 0 chunks in %dms%n",
+                CHUNK_COUNT_XZ * CHUNK_COUNT_XZ * CHUNK_COUNT_Y, (System.nanoTime() - saveStart) / 1_000_000);
+
+        System.out.printf("Generating %d higher LODs with a parallelism of %d%n", LOD_COUNT - 1, ForkJoinPool.getCommonPoolParallelism());
+        long generationStart = System.nanoTime();
+        ChunkSaver.generateHigherLODs();
+        ChunkSaver.closeRegionFiles();
+        System.out.printf("Generated higher LODs in %dms%n", (System.nanoTime() - generationStart) / 1_000_000);
+
+        FileManager.delete(new File("saves/" + world.getName()));
+        Game.removeTemporaryWorld();
+    }
+
+    private static void saveColumn(ChunkSaver saver, int chunkX, int chunkZ) {
+        GenerationData generationData = new GenerationData(chunkX, chunkZ, 0);
+
+        for (int chunkY = -CHUNK_COUNT_Y / 2; chunkY < CHUNK_COUNT_Y / 2; chunkY++) {
+            Chunk chunk = new Chunk(chunkX, chunkY, chunkZ, 0);
+            WorldGeneration.generate(chunk, generationData);
+            saver.saveChunk(chunk);
+        }
+    }
+
+    private LodGenerationTester() {
+
+    }
+}
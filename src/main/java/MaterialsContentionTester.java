@@ -0,0 +1,108 @@
+import game.player.interaction.ShapePlaceable;
+import game.player.interaction.placeable_shapes.CubePlaceable;
+import game.server.Chunk;
+import game.server.Game;
+import game.server.World;
+import game.server.generation.GenerationData;
+import game.server.generation.WorldGeneration;
+import game.server.materials_data.MaterialsData;
+import game.settings.IntSettings;
+
+import java.util.ArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import static game.utils.Constants.*;
+
+public final class MaterialsContentionTester {
+
+    private static final int MESHING_THREAD_COUNT = 8;
+    private static final int CHUNK_COUNT = 8;
+    private static final int SAMPLES_PER_READ = 4096;
+    private static final int DURATION_MILLIS = 5000;
+
+    public static void main(String[] args) throws InterruptedException {
+        IntSettings.RENDER_DISTANCE.setValue(1);
+        IntSettings.BREAK_PLACE_SIZE.setValue(2);
+        Game.setTemporaryWorld(new World(0x9EF6E7FAF3299DDDL));
+
+        ArrayList<Chunk> chunks = new ArrayList<>();
+        GenerationData generationData = new GenerationData(28, 116, 0);
+        for (int chunkY = -CHUNK_COUNT / 2; chunkY < CHUNK_COUNT / 2; chunkY++) {
+            Chunk chunk = new Chunk(28, chunkY, 116, 0);
+            WorldGeneration.generate(chunk, generationData);
+            chunks.add(chunk);
+        }
+
+        // Warmup
+        run(chunks, true, DURATION_MILLIS / 5);
+        run(chunks, false, DURATION_MILLIS / 5);
+
+        long[] locked = run(chunks, true, DURATION_MILLIS);
+        long[] waitFree = run(chunks, false, DURATION_MILLIS);
+        System.out.printf("Readers locking the data: %d reads/s, %d edits/s%n", locked[0] * 1000 / DURATION_MILLIS, locked[1] * 1000 / DURATION_MILLIS);
+        System.out.printf("Wait-free readers:        %d reads/s, %d edits/s%n", waitFree[0] * 1000 / DURATION_MILLIS, waitFree[1] * 1000 / DURATION_MILLIS);
+        System.out.printf("Read throughput gain: %.2fx%n", (double) waitFree[0] / Math.max(1, locked[0]));
+        Game.removeTemporaryWorld();
+    }
+
+    private static long[] run(ArrayList<Chunk> chunks, boolean lockReaders, int durationMillis) throws InterruptedException {
+        LongAdder reads = new LongAdder(), edits = new LongAdder();
+        running = true;
+
+        ArrayList<Thread> threads = new ArrayList<>();
+        for (int count = 0; count < MESHING_THREAD_COUNT; count++) threads.add(new Thread(() -> read(chunks, lockReaders, reads)));
+        threads.add(new Thread(() -> edit(chunks, edits)));
+
+        for (Thread thread : threads) thread.start();
+        Thread.sleep(durationMillis);
+        running = false;
+        for (Thread thread : threads) thread.join();
+        return new long[]{reads.sum(), edits.sum()};
+    }
+
+    private static void read(ArrayList<Chunk> chunks, boolean lockReaders, LongAdder reads) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        byte[] uncompressedMaterials = new byte[CHUNK_SIZE * CHUNK_SIZE * CHUNK_SIZE];
+        long checksum = 0;
+
+        while (running) {
+            MaterialsData materials = chunks.get(random.nextInt(chunks.size())).getMaterials();
+            // Emulates the previous behavior where every reader synchronized on the data
+            if (lockReaders) {
+                synchronized (materials) {
+                    checksum += readChunk(materials, uncompressedMaterials, random);
+                }
+            } else checksum += readChunk(materials, uncompressedMaterials, random);
+            reads.increment();
+        }
+        if (checksum == 42) System.out.println("Unlikely");
+    }
+
+    private static long readChunk(MaterialsData materials, byte[] uncompressedMaterials, ThreadLocalRandom random) {
+        long checksum = 0;
+        materials.fillUncompressedMaterialsInto(uncompressedMaterials);
+        for (int sample = 0; sample < SAMPLES_PER_READ; sample++)
+            checksum += materials.getMaterial(random.nextInt(CHUNK_SIZE), random.nextInt(CHUNK_SIZE), random.nextInt(CHUNK_SIZE));
+        return checksum + uncompressedMaterials[random.nextInt(uncompressedMaterials.length)];
+    }
+
+    private static void edit(ArrayList<Chunk> chunks, LongAdder edits) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        ShapePlaceable place = new CubePlaceable(STONE).setBitMapToFull();
+        ShapePlaceable breaking = new CubePlaceable(AIR).setBitMapToFull();
+
+        while (running) {
+            MaterialsData materials = chunks.get(random.nextInt(chunks.size())).getMaterials();
+            int inChunkX = random.nextInt(CHUNK_SIZE) & -4, inChunkY = random.nextInt(CHUNK_SIZE) & -4, inChunkZ = random.nextInt(CHUNK_SIZE) & -4;
+            materials.storeMaterial(inChunkX, inChunkY, inChunkZ, 1, 1, 1, 0, random.nextBoolean() ? place : breaking);
+            edits.increment();
+        }
+    }
+
+    private static volatile boolean running;
+
+    private MaterialsContentionTester() {
+
+    }
+}
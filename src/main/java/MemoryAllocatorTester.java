@@ -0,0 +1,286 @@
+import game.player.rendering.RegionAllocator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+
+public final class MemoryAllocatorTester {
+
+    private static final int CAPACITY = 1 << 28;
+    // Checked allocations are tracked per int, so that check uses a smaller buffer
+    private static final int CHECKED_CAPACITY = 1 << 24;
+    private static final int CHECKED_OPERATIONS = 200_000;
+    private static final int LIVE_MESHES = 16_000;
+    private static final int CHURN_OPERATIONS = 400_000;
+    private static final int COMPACTION_BYTES_PER_STEP = 1 << 20;
+    private static final int COMPACTION_INTERVAL = 100;
+
+    public static void main(String[] args) {
+        int errors = checkConsistency();
+        if (errors != 0) System.err.printf("Found %d inconsistencies in the allocator%n", errors);
+        else System.out.printf("Allocator stayed consistent over %d random operations%n", CHECKED_OPERATIONS);
+
+        // Warmup
+        replayChurn(new FirstFitAllocator(CAPACITY), null, 1);
+        replayChurn(null, new RegionAllocator(CAPACITY), 1);
+
+        long start = System.nanoTime();
+        ChurnResult firstFit = replayChurn(new FirstFitAllocator(CAPACITY), null, 2);
+        long firstFitTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        ChurnResult segregated = replayChurn(null, new RegionAllocator(CAPACITY), 2);
+        long segregatedTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        ChurnResult compacted = replayChurn(null, new RegionAllocator(CAPACITY), 2, true);
+        long compactedTime = System.nanoTime() - start;
+
+        print("First fit list", firstFit, firstFitTime);
+        print("Segregated lists", segregated, segregatedTime);
+        print("Segregated lists with compaction", compacted, compactedTime);
+    }
+
+    private static void print(String name, ChurnResult result, long time) {
+        System.out.printf("%-34s %6.2fus per operation, highest allocated %6.1fMB for %6.1fMB used (%.2fx), %d failed allocations%n",
+                name, time / 1000.0 / CHURN_OPERATIONS, result.highestAllocated / 1e6, result.used / 1e6,
+                (double) result.highestAllocated / Math.max(1, result.used), result.failedAllocations);
+    }
+
+    // Random allocations, frees and compactions, checked against an owner per int of the buffer
+    private static int checkConsistency() {
+        RegionAllocator allocator = new RegionAllocator(CHECKED_CAPACITY / 2);
+        int[] owners = new int[CHECKED_CAPACITY >> 2];
+        HashMap<Integer, int[]> allocations = new HashMap<>(); // owner -> {start, size}
+        ArrayList<Integer> liveOwners = new ArrayList<>();
+        Random random = new Random(0x5EED);
+        int errors = 0, nextOwner = 1;
+
+        for (int operation = 0; operation < CHECKED_OPERATIONS; operation++) {
+            int action = random.nextInt(100);
+            if (action < 55 || liveOwners.isEmpty()) {
+                int size = getMeshSize(random) >> 3;
+                int owner = nextOwner++;
+                int start = allocator.allocate(size, owner);
+                if (start == -1) {
+                    if (allocator.getCapacity() < CHECKED_CAPACITY) allocator.grow(Math.min(CHECKED_CAPACITY, allocator.getCapacity() << 1));
+                    continue;
+                }
+                errors += claim(owners, start, size, owner);
+                allocations.put(owner, new int[]{start, size});
+                liveOwners.add(owner);
+            } else if (action < 98) {
+                int owner = liveOwners.remove(random.nextInt(liveOwners.size()));
+                int[] allocation = allocations.remove(owner);
+                if (!allocator.free(allocation[0])) errors++;
+                errors += claim(owners, allocation[0], allocation[1], 0);
+            } else {
+                int[] errorsDuringMove = new int[1];
+                allocator.compact(1 << 16, (owner, from, to, size) -> {
+                    int[] allocation = allocations.get(owner);
+                    if (allocation == null || allocation[0] != from || allocation[1] != size) errorsDuringMove[0]++;
+                    errorsDuringMove[0] += claim(owners, to, size, owner);
+                    Arrays.fill(owners, from >> 2, from + size >> 2, 0);
+                    allocation[0] = to;
+                    return true;
+                });
+                errors += errorsDuringMove[0];
+            }
+            if (operation % 1000 == 0) errors += checkStatistics(allocator, owners, allocations);
+        }
+        return errors + checkStatistics(allocator, owners, allocations);
+    }
+
+    private static int claim(int[] owners, int start, int size, int owner) {
+        int errors = 0;
+        for (int index = start >> 2; index < start + size >> 2; index++) {
+            // Claimed memory must be unowned, released memory must be owned
+            if (owner != 0 && owners[index] != 0 || owner == 0 && owners[index] == 0) errors++;
+            owners[index] = owner;
+        }
+        return errors;
+    }
+
+    private static int checkStatistics(RegionAllocator allocator, int[] owners, HashMap<Integer, int[]> allocations) {
+        int used = 0, highest = 0;
+        for (int[] allocation : allocations.values()) {
+            used += allocation[1];
+            highest = Math.max(highest, allocation[0] + allocation[1]);
+        }
+        int errors = 0;
+        if (allocator.getUsed() != used) errors++;
+        if (allocator.getFree() != allocator.getCapacity() - used) errors++;
+        if (allocator.getUsedRegionCount() != allocations.size()) errors++;
+        if (allocator.getHighestAllocated() != highest) errors++;
+
+        // Free regions are always coalesced, so every gap between allocations is exactly one free region
+        int freeRegions = 0;
+        boolean inGap = false;
+        for (int index = 0; index < allocator.getCapacity() >> 2; index++) {
+            boolean free = owners[index] == 0;
+            if (free && !inGap) freeRegions++;
+            inGap = free;
+        }
+        if (allocator.getFreeRegionCount() != freeRegions) errors++;
+        return errors;
+    }
+
+    private static ChurnResult replayChurn(FirstFitAllocator firstFit, RegionAllocator segregated, long seed) {
+        return replayChurn(firstFit, segregated, seed, false);
+    }
+
+    // Replaces random meshes like chunks being remeshed, then unloads half of them like the player moving away
+    private static ChurnResult replayChurn(FirstFitAllocator firstFit, RegionAllocator segregated, long seed, boolean compact) {
+        Random random = new Random(seed);
+        int[] starts = new int[LIVE_MESHES];
+        int failedAllocations = 0;
+
+        for (int slot = 0; slot < LIVE_MESHES; slot++) {
+            starts[slot] = allocate(firstFit, segregated, getMeshSize(random), slot);
+            if (starts[slot] == -1) failedAllocations++;
+        }
+
+        for (int operation = 0; operation < CHURN_OPERATIONS; operation++) {
+            // Only the first half of the meshes survives the unloading half way through
+            if (operation == CHURN_OPERATIONS / 2)
+                for (int slot = LIVE_MESHES / 2; slot < LIVE_MESHES; slot++) free(firstFit, segregated, starts[slot]);
+            int slot = random.nextInt(operation < CHURN_OPERATIONS / 2 ? LIVE_MESHES : LIVE_MESHES / 2);
+
+            free(firstFit, segregated, starts[slot]);
+            starts[slot] = allocate(firstFit, segregated, getMeshSize(random), slot);
+            if (starts[slot] == -1) failedAllocations++;
+
+            if (compact && operation % COMPACTION_INTERVAL == 0)
+                segregated.compact(COMPACTION_BYTES_PER_STEP, (owner, from, to, size) -> {
+                    starts[owner] = to;
+                    return true;
+                });
+        }
+
+        if (firstFit != null) return new ChurnResult(firstFit.getHighestAllocated(), firstFit.getUsed(), failedAllocations);
+        return new ChurnResult(segregated.getHighestAllocated(), segregated.getUsed(), failedAllocations);
+    }
+
+    private static int allocate(FirstFitAllocator firstFit, RegionAllocator segregated, int size, int slot) {
+        return firstFit != null ? firstFit.memAlloc(size) : segregated.allocate(size, slot);
+    }
+
+    private static void free(FirstFitAllocator firstFit, RegionAllocator segregated, int start) {
+        if (firstFit != null) firstFit.memFree(start);
+        else if (start != -1) segregated.free(start);
+    }
+
+    // Mostly small meshes with a long tail of big ones, in multiples of a quad
+    private static int getMeshSize(Random random) {
+        double size = Math.exp(random.nextGaussian() * 1.2 + 8.5);
+        return Math.max(1, (int) Math.min(size, 1 << 18) >> 5) << 5;
+    }
+
+    private MemoryAllocatorTester() {
+
+    }
+
+    private record ChurnResult(int highestAllocated, int used, int failedAllocations) {
+    }
+
+    // The way MemoryAllocator managed its regions before, without the OpenGL buffer
+    private static final class FirstFitAllocator {
+
+        FirstFitAllocator(int capacity) {
+            free = new MemoryRegion(0, capacity);
+        }
+
+        int memAlloc(int size) {
+            if (size <= 0) return -1;
+            MemoryRegion region = free;
+            MemoryRegion previous = null;
+
+            while (region != null) {
+                if (region.size < size) {
+                    previous = region;
+                    region = region.next;
+                    continue;
+                }
+
+                int start = region.start;
+                region.size = region.size - size;
+                region.start = region.start + size;
+                if (region.size == 0) {
+                    if (previous == null) free = region.next;
+                    else previous.next = region.next;
+                }
+
+                MemoryRegion allocated = new MemoryRegion(start, size);
+                allocated.next = used;
+                used = allocated;
+                return start;
+            }
+            return -1;
+        }
+
+        void memFree(int start) {
+            if (start == -1) return;
+            MemoryRegion freed = null;
+            for (MemoryRegion region = used, previous = null; region != null; previous = region, region = region.next)
+                if (region.start == start) {
+                    if (previous == null) used = region.next;
+                    else previous.next = region.next;
+                    freed = region;
+                    break;
+                }
+            if (freed == null) return;
+
+            MemoryRegion before = null;
+            MemoryRegion after = free;
+            while (after != null && after.start < freed.start) {
+                before = after;
+                after = after.next;
+            }
+
+            boolean merged = false;
+            if (before != null && before.start + before.size == freed.start) {
+                before.size += freed.size;
+                freed = before;
+                merged = true;
+            }
+            if (after != null && freed.start + freed.size == after.start) {
+                freed.size += after.size;
+                if (before != null) before.next = freed;
+                freed.next = after.next;
+                merged = true;
+            }
+            if (!merged) {
+                if (before == null) free = freed;
+                else before.next = freed;
+                freed.next = after;
+            }
+        }
+
+        int getUsed() {
+            int usedBytes = 0;
+            for (MemoryRegion region = used; region != null; region = region.next) usedBytes += region.size;
+            return usedBytes;
+        }
+
+        int getHighestAllocated() {
+            int max = 0;
+            for (MemoryRegion region = used; region != null; region = region.next) max = Math.max(max, region.start + region.size);
+            return max;
+        }
+
+        private MemoryRegion free;
+        private MemoryRegion used;
+    }
+
+    private static final class MemoryRegion {
+        int start;
+        int size;
+        MemoryRegion next = null;
+
+        MemoryRegion(int start, int size) {
+            this.start = start;
+            this.size = size;
+        }
+    }
+}
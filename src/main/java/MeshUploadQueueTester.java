@@ -0,0 +1,187 @@
+import game.player.rendering.Mesh;
+import game.player.rendering.MeshUploadQueue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public final class MeshUploadQueueTester {
+
+    private static final int PRODUCER_COUNT = 4;
+    private static final int CHUNKS_PER_PRODUCER = 500;
+    private static final int MESHES_PER_CHUNK = 50;
+    private static final int CONCURRENT_BYTES_PER_FRAME = 1 << 16;
+
+    public static void main(String[] args) throws InterruptedException {
+        int failures = 0;
+        failures += check("Superseded meshes are dropped", checkSuperseding());
+        failures += check("Closest meshes are uploaded first", checkPriority());
+        failures += check("Byte budget is respected", checkByteBudget());
+        failures += check("Time budget is respected", checkTimeBudget());
+        failures += check("Obsolete meshes are dropped", checkObsolete());
+        failures += check("Concurrent producers lose no meshes", checkConcurrentProducers());
+
+        if (failures != 0) System.err.printf("%d checks failed%n", failures);
+        else System.out.printf("All checks passed%n");
+    }
+
+    private static int check(String name, boolean passed) {
+        if (passed) System.out.printf("[ OK ] %s%n", name);
+        else System.err.printf("[FAIL] %s%n", name);
+        return passed ? 0 : 1;
+    }
+
+    private static boolean checkSuperseding() {
+        MeshUploadQueue queue = new MeshUploadQueue();
+        RecordingUploader uploader = new RecordingUploader(0);
+        Mesh first = mesh(1, 2, 3, 16), second = mesh(1, 2, 3, 32), other = mesh(4, 5, 6, 16);
+        queue.add(first);
+        queue.add(other);
+        queue.add(second);
+        queue.uploadAll(uploader);
+
+        return uploader.uploaded.size() == 2 && uploader.uploaded.contains(second) && uploader.uploaded.contains(other)
+                && uploader.dropped.size() == 1 && uploader.dropped.getFirst() == first
+                && queue.getMetrics().queued() == 0 && queue.getMetrics().dropped() == 1;
+    }
+
+    private static boolean checkPriority() {
+        MeshUploadQueue queue = new MeshUploadQueue();
+        RecordingUploader uploader = new RecordingUploader(0);
+        int[] distances = {7, 2, 9, 0, 5, 3, 8, 1, 6, 4};
+        for (int distance : distances) queue.add(mesh(distance, -distance, 0, 16));
+
+        // A budget of a single byte still uploads one mesh per frame
+        for (int frame = 0; frame < distances.length; frame++) {
+            queue.upload(1, Long.MAX_VALUE, uploader);
+            if (queue.getMetrics().uploadedLastFrame() != 1) return false;
+        }
+        for (int index = 0; index < distances.length; index++)
+            if (uploader.uploaded.get(index).chunkX() != index) return false;
+        return queue.getMetrics().queued() == 0;
+    }
+
+    private static boolean checkByteBudget() {
+        MeshUploadQueue queue = new MeshUploadQueue();
+        RecordingUploader uploader = new RecordingUploader(0);
+        for (int index = 0; index < 10; index++) queue.add(mesh(index, 0, 0, 1 << 18)); // 1MB each
+        queue.add(mesh(100, 0, 0, 10 << 18));
+
+        int[] expectedUploads = {3, 3, 3, 1, 1};
+        for (int expected : expectedUploads) {
+            queue.upload(3 << 20, Long.MAX_VALUE, uploader);
+            if (queue.getMetrics().uploadedLastFrame() != expected) return false;
+        }
+        return queue.getMetrics().queued() == 0;
+    }
+
+    private static boolean checkTimeBudget() {
+        MeshUploadQueue queue = new MeshUploadQueue();
+        RecordingUploader uploader = new RecordingUploader(1_000_000L);
+        for (int index = 0; index < 20; index++) queue.add(mesh(index, 0, 0, 16));
+
+        queue.upload(Integer.MAX_VALUE, 3_000_000L, uploader);
+        int uploaded = queue.getMetrics().uploadedLastFrame();
+        // The budget is checked before each upload, so the last one may exceed it
+        return uploaded >= 3 && uploaded <= 5;
+    }
+
+    private static boolean checkObsolete() {
+        MeshUploadQueue queue = new MeshUploadQueue();
+        RecordingUploader uploader = new RecordingUploader(0);
+        for (int index = 0; index < 10; index++) queue.add(mesh(index, 0, 0, 16));
+        uploader.obsoleteFromX = 5;
+        queue.uploadAll(uploader);
+
+        if (uploader.uploaded.size() != 5 || uploader.dropped.size() != 5) return false;
+        for (Mesh mesh : uploader.dropped) if (mesh.chunkX() < 5) return false;
+        return true;
+    }
+
+    // Every mesh must be either uploaded or dropped exactly once and the last mesh of every chunk must be uploaded
+    private static boolean checkConcurrentProducers() throws InterruptedException {
+        MeshUploadQueue queue = new MeshUploadQueue();
+        RecordingUploader uploader = new RecordingUploader(0);
+        AtomicInteger finishedProducers = new AtomicInteger();
+        ArrayList<Thread> producers = new ArrayList<>();
+        Mesh[][] lastMeshes = new Mesh[PRODUCER_COUNT][CHUNKS_PER_PRODUCER];
+
+        for (int producer = 0; producer < PRODUCER_COUNT; producer++) {
+            int producerIndex = producer;
+            Thread thread = new Thread(() -> {
+                // Each chunk is only meshed by one producer, so the order of its meshes is known
+                for (int round = 0; round < MESHES_PER_CHUNK; round++)
+                    for (int chunk = 0; chunk < CHUNKS_PER_PRODUCER; chunk++) {
+                        Mesh mesh = mesh(chunk, producerIndex, 0, 16);
+                        lastMeshes[producerIndex][chunk] = mesh;
+                        queue.add(mesh);
+                    }
+                finishedProducers.incrementAndGet();
+            });
+            producers.add(thread);
+            thread.start();
+        }
+
+        while (finishedProducers.get() != PRODUCER_COUNT) queue.upload(CONCURRENT_BYTES_PER_FRAME, Long.MAX_VALUE, uploader);
+        for (Thread producer : producers) producer.join();
+        while (queue.getMetrics().queued() != 0) queue.upload(CONCURRENT_BYTES_PER_FRAME, Long.MAX_VALUE, uploader);
+
+        int totalMeshes = PRODUCER_COUNT * CHUNKS_PER_PRODUCER * MESHES_PER_CHUNK;
+        if (uploader.uploaded.size() + uploader.dropped.size() != totalMeshes) return false;
+        if (queue.getMetrics().dropped() != uploader.dropped.size()) return false;
+
+        IdentityHashMap<Mesh, Boolean> seen = new IdentityHashMap<>();
+        for (Mesh mesh : uploader.uploaded) if (seen.put(mesh, true) != null) return false;
+        for (Mesh mesh : uploader.dropped) if (seen.put(mesh, true) != null) return false;
+
+        HashMap<Long, Mesh> lastUploaded = new HashMap<>();
+        for (Mesh mesh : uploader.uploaded) lastUploaded.put(mesh.chunkX() << 8 | mesh.chunkY(), mesh);
+        for (int producer = 0; producer < PRODUCER_COUNT; producer++)
+            for (int chunk = 0; chunk < CHUNKS_PER_PRODUCER; chunk++)
+                if (lastUploaded.get((long) chunk << 8 | producer) != lastMeshes[producer][chunk]) return false;
+        return true;
+    }
+
+    private static Mesh mesh(long chunkX, long chunkY, long chunkZ, int ints) {
+        return new Mesh(new int[ints], null, null, 0, 0, chunkX, chunkY, chunkZ, 0, null, null, null, null);
+    }
+
+    private MeshUploadQueueTester() {
+
+    }
+
+    private static final class RecordingUploader implements MeshUploadQueue.Uploader {
+
+        private RecordingUploader(long uploadNanos) {
+            this.uploadNanos = uploadNanos;
+        }
+
+        @Override
+        public boolean isObsolete(Mesh mesh) {
+            return mesh.chunkX() >= obsoleteFromX;
+        }
+
+        @Override
+        public long getDistance(Mesh mesh) {
+            return Math.max(Math.abs(mesh.chunkX()), Math.abs(mesh.chunkY()));
+        }
+
+        @Override
+        public void upload(Mesh mesh) {
+            long start = System.nanoTime();
+            while (System.nanoTime() - start < uploadNanos) Thread.onSpinWait();
+            uploaded.add(mesh);
+        }
+
+        @Override
+        public void drop(Mesh mesh) {
+            dropped.add(mesh);
+        }
+
+        private final long uploadNanos;
+        private final ArrayList<Mesh> uploaded = new ArrayList<>();
+        private final ArrayList<Mesh> dropped = new ArrayList<>();
+        private long obsoleteFromX = Long.MAX_VALUE;
+    }
+}
@@ -0,0 +1,99 @@
+import game.player.rendering.Mesh;
+import game.player.rendering.MeshGenerator;
+import game.server.Chunk;
+import game.server.Game;
+import game.server.World;
+import game.server.generation.GenerationData;
+import game.server.generation.WorldGeneration;
+import game.settings.IntSettings;
+import game.settings.ToggleSettings;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+public final class MeshingTester {
+
+    // Far enough apart to land in different biomes
+    private static final long[][] SAMPLE_LOCATIONS = {{28, 116}, {-310, 45}, {1020, -870}, {-2400, -1900}, {4100, 3300}, {75, 6200}};
+    private static final int CHUNK_COUNT_XZ = 4;
+    private static final int CHUNK_COUNT_Y = 4;
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int ITERATIONS = 20;
+
+    public static void main(String[] args) {
+        IntSettings.RENDER_DISTANCE.setValue(2);
+        boolean previousValue = ToggleSettings.BITWISE_MESHING.value();
+        MeshGenerator meshGenerator = new MeshGenerator();
+        long byteTime = 0, bitwiseTime = 0;
+        int mismatches = 0, meshedChunks = 0;
+
+        for (long[] location : SAMPLE_LOCATIONS) {
+            World world = new World(0x9EF6E7FAF3299DDDL);
+            Game.setTemporaryWorld(world);
+            ArrayList<Chunk> chunks = generateChunks(world, location[0], location[1]);
+
+            for (int iteration = 0; iteration < WARMUP_ITERATIONS; iteration++) {
+                meshAll(meshGenerator, chunks, false);
+                meshAll(meshGenerator, chunks, true);
+            }
+            for (Chunk chunk : chunks) if (!meshesEqual(mesh(meshGenerator, chunk, false), mesh(meshGenerator, chunk, true))) mismatches++;
+
+            for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+                long start = System.nanoTime();
+                meshAll(meshGenerator, chunks, false);
+                byteTime += System.nanoTime() - start;
+
+                start = System.nanoTime();
+                meshAll(meshGenerator, chunks, true);
+                bitwiseTime += System.nanoTime() - start;
+            }
+            meshedChunks += chunks.size() * ITERATIONS;
+            Game.removeTemporaryWorld();
+        }
+        ToggleSettings.BITWISE_MESHING.setValue(previousValue);
+
+        if (mismatches != 0) System.err.printf("%d chunks are meshed differently by the two kernels%n", mismatches);
+        else System.out.printf("All chunks are meshed identically by both kernels%n");
+        System.out.printf("Byte by byte meshing: %.1fus per chunk%n", byteTime / 1000.0 / meshedChunks);
+        System.out.printf("Bitwise meshing:      %.1fus per chunk%n", bitwiseTime / 1000.0 / meshedChunks);
+    }
+
+    // Generates a ring of neighbors around the returned chunks, so all of them can be meshed
+    private static ArrayList<Chunk> generateChunks(World world, long centerChunkX, long centerChunkZ) {
+        ArrayList<Chunk> chunks = new ArrayList<>();
+        for (long chunkX = centerChunkX - 1; chunkX <= centerChunkX + CHUNK_COUNT_XZ; chunkX++)
+            for (long chunkZ = centerChunkZ - 1; chunkZ <= centerChunkZ + CHUNK_COUNT_XZ; chunkZ++) {
+                GenerationData generationData = new GenerationData(chunkX, chunkZ, 0);
+                for (long chunkY = -CHUNK_COUNT_Y / 2 - 1; chunkY <= CHUNK_COUNT_Y / 2; chunkY++) {
+                    Chunk chunk = new Chunk(chunkX, chunkY, chunkZ, 0);
+                    WorldGeneration.generate(chunk, generationData);
+                    world.storeChunk(chunk);
+
+                    boolean inner = chunkX >= centerChunkX && chunkX < centerChunkX + CHUNK_COUNT_XZ
+                            && chunkZ >= centerChunkZ && chunkZ < centerChunkZ + CHUNK_COUNT_XZ
+                            && chunkY >= -CHUNK_COUNT_Y / 2 && chunkY < CHUNK_COUNT_Y / 2;
+                    if (inner) chunks.add(chunk);
+                }
+            }
+        return chunks;
+    }
+
+    private static void meshAll(MeshGenerator meshGenerator, ArrayList<Chunk> chunks, boolean bitwise) {
+        for (Chunk chunk : chunks) mesh(meshGenerator, chunk, bitwise);
+    }
+
+    private static Mesh mesh(MeshGenerator meshGenerator, Chunk chunk, boolean bitwise) {
+        ToggleSettings.BITWISE_MESHING.setValue(bitwise);
+        return meshGenerator.generateMesh(chunk);
+    }
+
+    private static boolean meshesEqual(Mesh byteMesh, Mesh bitwiseMesh) {
+        return Arrays.equals(byteMesh.opaqueVertices(), bitwiseMesh.opaqueVertices())
+                && Arrays.equals(byteMesh.vertexCounts(), bitwiseMesh.vertexCounts())
+                && Arrays.equals(byteMesh.transparentVertices(), bitwiseMesh.transparentVertices());
+    }
+
+    private MeshingTester() {
+
+    }
+}
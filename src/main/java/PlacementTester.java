@@ -0,0 +1,154 @@
+import core.utils.Vector3l;
+
+import game.player.interaction.RepeatPlaceable;
+import game.player.interaction.placeable_shapes.CubePlaceable;
+import game.server.Chunk;
+import game.server.EditExecutor;
+import game.server.Game;
+import game.server.World;
+import game.settings.IntSettings;
+import game.settings.ToggleSettings;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+
+import static game.utils.Constants.*;
+
+public final class PlacementTester {
+
+    private static final long SEED = 0x9EF6E7FAF3299DDDL;
+    private static final int RENDER_DISTANCE = 16;
+    // Around the surface near the chunks of EditTester
+    private static final long START_X = 28L << CHUNK_SIZE_BITS, START_Y = -128, START_Z = 116L << CHUNK_SIZE_BITS;
+    private static final int FILL_SIZE = 512, FILL_HEIGHT = 256;
+    private static final int CUBE_SIZE_BITS = 3;
+    private static final int WARMUP_PLACEMENTS = 10;
+    private static final int PLACEMENTS = 60;
+
+    public static void main(String[] args) {
+        int previousRenderDistance = IntSettings.RENDER_DISTANCE.value(), previousSize = IntSettings.BREAK_PLACE_SIZE.value();
+        boolean previousParallel = ToggleSettings.PARALLEL_EDITS.value();
+        IntSettings.RENDER_DISTANCE.setValue(RENDER_DISTANCE);
+        IntSettings.BREAK_PLACE_SIZE.setValue(CUBE_SIZE_BITS);
+
+        int failures = 0;
+        failures += check("Every chunk of a fill is affected", checkAllChunksAffected());
+        failures += check("Parallel placements equal sequential placements", checkParallelMatchesSequential());
+
+        measure("Sequential", false);
+        measure("Parallel", true);
+
+        IntSettings.RENDER_DISTANCE.setValue(previousRenderDistance);
+        IntSettings.BREAK_PLACE_SIZE.setValue(previousSize);
+        ToggleSettings.PARALLEL_EDITS.setValue(previousParallel);
+
+        if (failures != 0) System.err.printf("%d checks failed%n", failures);
+        else System.out.printf("All checks passed%n");
+    }
+
+    private static int check(String name, boolean passed) {
+        if (passed) System.out.printf("[ OK ] %s%n", name);
+        else System.err.printf("[FAIL] %s%n", name);
+        return passed ? 0 : 1;
+    }
+
+    private static boolean checkAllChunksAffected() {
+        ToggleSettings.PARALLEL_EDITS.setValue(true);
+        Game.setTemporaryWorld(new World(SEED));
+        Vector3l start = new Vector3l(START_X, START_Y, START_Z);
+        RepeatPlaceable placeable = fill(start, FILL_SIZE, FILL_HEIGHT, STONE);
+        long[] range = placeable.getChunkRange(start, 0);
+
+        ArrayList<Chunk> placedChunks = new ArrayList<>();
+        new EditExecutor().place(placeable, start, placedChunks);
+        HashSet<Chunk> affectedChunks = new HashSet<>(placedChunks);
+        World world = Game.getWorld();
+        boolean passed = true;
+        for (long chunkX = range[0]; chunkX <= range[3]; chunkX++)
+            for (long chunkY = range[1]; chunkY <= range[4]; chunkY++)
+                for (long chunkZ = range[2]; chunkZ <= range[5]; chunkZ++) {
+                    Chunk chunk = world.getChunk(chunkX, chunkY, chunkZ, 0);
+                    passed &= chunk != null && affectedChunks.contains(chunk) && chunk.isModified();
+                }
+        passed &= world.getMaterial(START_X + FILL_SIZE / 2, START_Y + FILL_HEIGHT / 2, START_Z + FILL_SIZE / 2, 0) == STONE;
+        Game.removeTemporaryWorld();
+        return passed;
+    }
+
+    // Overlapping placements only stay consistent if the writes into every chunk keep their order
+    private static boolean checkParallelMatchesSequential() {
+        ArrayList<byte[]> sequential = placeOverlapping(false);
+        ArrayList<byte[]> parallel = placeOverlapping(true);
+        if (sequential.size() != parallel.size()) return false;
+        for (int index = 0; index < sequential.size(); index++)
+            if (!Arrays.equals(sequential.get(index), parallel.get(index))) return false;
+        return true;
+    }
+
+    private static ArrayList<byte[]> placeOverlapping(boolean parallel) {
+        ToggleSettings.PARALLEL_EDITS.setValue(parallel);
+        Game.setTemporaryWorld(new World(SEED));
+        EditExecutor executor = new EditExecutor();
+        Random random = new Random(0x0DE4);
+        Vector3l start = new Vector3l(START_X, START_Y, START_Z);
+        RepeatPlaceable whole = fill(start, FILL_SIZE, FILL_HEIGHT, STONE);
+        executor.place(whole, start, new ArrayList<>());
+
+        for (int placement = 0; placement < 8; placement++) {
+            Vector3l position = randomPosition(random);
+            executor.place(fill(position, FILL_SIZE / 4, FILL_HEIGHT / 4, placement % 2 == 0 ? AIR : DIRT), position, new ArrayList<>());
+        }
+
+        ArrayList<byte[]> materials = new ArrayList<>();
+        long[] range = whole.getChunkRange(start, 0);
+        World world = Game.getWorld();
+        for (long chunkX = range[0]; chunkX <= range[3]; chunkX++)
+            for (long chunkY = range[1]; chunkY <= range[4]; chunkY++)
+                for (long chunkZ = range[2]; chunkZ <= range[5]; chunkZ++)
+                    materials.add(world.getChunk(chunkX, chunkY, chunkZ, 0).getMaterials().getBytes());
+        Game.removeTemporaryWorld();
+        return materials;
+    }
+
+    private static void measure(String name, boolean parallel) {
+        ToggleSettings.PARALLEL_EDITS.setValue(parallel);
+        Game.setTemporaryWorld(new World(SEED));
+        Random random = new Random(0x3A5E);
+        Vector3l start = new Vector3l(START_X, START_Y, START_Z);
+        // Generates every chunk, so only the placements get measured
+        new EditExecutor().place(fill(start, FILL_SIZE, FILL_HEIGHT, AIR), start, new ArrayList<>());
+
+        EditExecutor executor = new EditExecutor();
+        for (int placement = -WARMUP_PLACEMENTS; placement < PLACEMENTS; placement++) {
+            if (placement == 0) executor = new EditExecutor();
+            Vector3l position = randomPosition(random);
+            executor.place(fill(position, FILL_SIZE / 2, FILL_HEIGHT / 2, placement % 2 == 0 ? STONE : AIR), position, new ArrayList<>());
+        }
+        Game.removeTemporaryWorld();
+
+        EditExecutor.Metrics metrics = executor.getMetrics();
+        System.out.printf("%-10s %d placements of %dx%dx%d, median %.2fms, p95 %.2fms, p99 %.2fms, %d chunk jobs in the last one%n",
+                name, metrics.edits(), FILL_SIZE / 2, FILL_HEIGHT / 2, FILL_SIZE / 2,
+                metrics.medianMillis(), metrics.p95Millis(), metrics.p99Millis(), metrics.lastJobCount());
+    }
+
+    private static RepeatPlaceable fill(Vector3l start, int size, int height, byte material) {
+        Vector3l end = new Vector3l(start).add(size - 1, height - 1, size - 1);
+        return new RepeatPlaceable(new CubePlaceable(material).setBitMapToFull(), new Vector3l(start), end);
+    }
+
+    // Cube aligned and inside the first fill
+    private static Vector3l randomPosition(Random random) {
+        int cubeSize = 1 << CUBE_SIZE_BITS;
+        return new Vector3l(
+                START_X + (random.nextInt(FILL_SIZE / 2) & -cubeSize),
+                START_Y + (random.nextInt(FILL_HEIGHT / 2) & -cubeSize),
+                START_Z + (random.nextInt(FILL_SIZE / 2) & -cubeSize));
+    }
+
+    private PlacementTester() {
+
+    }
+}
@@ -0,0 +1,310 @@
+import core.rendering_api.Window;
+import core.settings.Settings;
+import core.utils.Saver;
+
+import game.player.interaction.Placeable;
+import game.player.interaction.ShapePlaceable;
+import game.player.interaction.ShapeRasterizer;
+import game.server.materials_data.MaterialsData;
+import game.settings.*;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import static game.utils.Constants.*;
+
+/**
+ * Run with {@code record} on a machine with a gpu to write the bitmaps of the compute shaders to {@link #GPU_BITMAPS_FILE},
+ * every later run compares the cpu bitmaps against them. The other checks and the benchmark don't need a gpu.
+ */
+public final class ShapeRasterizerTester {
+
+    private static final long SEED = 0x5A9E0B17L;
+    private static final int CONFIGURATIONS_PER_SHAPE = 40;
+    private static final int BREAK_PLACE_SIZE = 5;
+    private static final String GPU_BITMAPS_FILE = "gpu_shape_bitmaps.bin";
+    // The pow of the gpu is only accurate to a few ulp, which flips voxels lying right on a threshold
+    private static final double MAX_MISMATCHED_FRACTION = 0.001;
+    private static final int BENCHMARK_RUNS = 10;
+
+    public static void main(String[] args) throws IOException {
+        int previousSize = IntSettings.BREAK_PLACE_SIZE.value();
+        boolean previousCpuRasterization = ToggleSettings.CPU_SHAPE_RASTERIZATION.value();
+        IntSettings.BREAK_PLACE_SIZE.setValue(BREAK_PLACE_SIZE);
+        ToggleSettings.CPU_SHAPE_RASTERIZATION.setValue(true);
+        ArrayList<Configuration> configurations = configurations();
+
+        if (args.length > 0 && args[0].equals("record")) {
+            record(configurations);
+            IntSettings.BREAK_PLACE_SIZE.setValue(previousSize);
+            ToggleSettings.CPU_SHAPE_RASTERIZATION.setValue(previousCpuRasterization);
+            return;
+        }
+
+        int failures = 0;
+        failures += check("Inverted shapes are the complement inside their lengths", checkInvert(configurations));
+        failures += check("Rasterizing is deterministic", checkDeterministic(configurations));
+        // Without a recording the cpu rasterization is unverified, which must not pass
+        if (new File(GPU_BITMAPS_FILE).exists()) failures += check("Cpu bitmaps equal the recorded gpu bitmaps", checkRecorded(configurations));
+        else failures += check("Cpu bitmaps equal the recorded gpu bitmaps, no %s, run with record on a machine with a gpu first".formatted(GPU_BITMAPS_FILE), false);
+
+        if (failures != 0) System.err.printf("%d checks failed%n", failures);
+        else System.out.printf("All checks passed%n");
+
+        benchmarkShapes();
+        benchmarkSizes();
+        IntSettings.BREAK_PLACE_SIZE.setValue(previousSize);
+        ToggleSettings.CPU_SHAPE_RASTERIZATION.setValue(previousCpuRasterization);
+    }
+
+    private static int check(String name, boolean passed) {
+        if (passed) System.out.printf("[ OK ] %s%n", name);
+        else System.err.printf("[FAIL] %s%n", name);
+        return passed ? 0 : 1;
+    }
+
+    private static void record(ArrayList<Configuration> configurations) throws IOException {
+        Settings.registerSettingsEnums(FloatSettings.class, IntSettings.class, KeySettings.class, ToggleSettings.class, OptionSettings.class);
+        Window.init("ShapeRasterizerTester");
+
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(GPU_BITMAPS_FILE)))) {
+            output.writeInt(configurations.size());
+            for (Configuration configuration : configurations) {
+                ShapePlaceable shape = configuration.create(false);
+                shape.setCpuRasterization(false).updateBitMap(true);
+                long[] bitMap = shape.getBitMap().toLongArray();
+                output.writeInt(bitMap.length);
+                for (long bits : bitMap) output.writeLong(bits);
+                shape.delete();
+            }
+        }
+        System.out.printf("Recorded %d gpu bitmaps into %s%n", configurations.size(), GPU_BITMAPS_FILE);
+        Window.cleanUp();
+    }
+
+    private static boolean checkInvert(ArrayList<Configuration> configurations) {
+        for (Configuration configuration : configurations) {
+            ShapePlaceable shape = configuration.create(false), inverted = configuration.create(true);
+            long[] bitMap = shape.updateBitMap(true).getBitMap().toLongArray(), invertedBitMap = inverted.updateBitMap(true).getBitMap().toLongArray();
+            long[] mask = lengthsMask(shape);
+            if (bitMap.length != invertedBitMap.length) return false;
+
+            for (int index = 0; index < bitMap.length; index++)
+                if ((bitMap[index] & ~mask[index]) != 0 || (bitMap[index] ^ invertedBitMap[index]) != mask[index]) {
+                    System.err.printf("%s differs from its inverse%n", configuration);
+                    return false;
+                }
+        }
+        return true;
+    }
+
+    private static boolean checkDeterministic(ArrayList<Configuration> configurations) {
+        for (Configuration configuration : configurations) {
+            ShapePlaceable shape = configuration.create(false);
+            long[] first = shape.updateBitMap(true).getBitMap().toLongArray();
+            long[] second = shape.updateBitMap(true).getBitMap().toLongArray();
+            if (!Arrays.equals(first, second)) {
+                System.err.printf("%s changed between two fills%n", configuration);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean checkRecorded(ArrayList<Configuration> configurations) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(GPU_BITMAPS_FILE)))) {
+            if (input.readInt() != configurations.size()) {
+                System.err.printf("%s was recorded with different configurations, record it again%n", GPU_BITMAPS_FILE);
+                return false;
+            }
+
+            int equalBitMaps = 0;
+            boolean passed = true;
+            for (Configuration configuration : configurations) {
+                long[] gpuBitMap = new long[input.readInt()];
+                for (int index = 0; index < gpuBitMap.length; index++) gpuBitMap[index] = input.readLong();
+                long[] cpuBitMap = configuration.create(false).updateBitMap(true).getBitMap().toLongArray();
+                if (cpuBitMap.length != gpuBitMap.length) {
+                    System.err.printf("%s has %d longs on the cpu and %d on the gpu%n", configuration, cpuBitMap.length, gpuBitMap.length);
+                    passed = false;
+                    continue;
+                }
+
+                long mismatched = 0;
+                for (int index = 0; index < cpuBitMap.length; index++) mismatched += Long.bitCount(cpuBitMap[index] ^ gpuBitMap[index]);
+                if (mismatched == 0) equalBitMaps++;
+                if (mismatched > (long) cpuBitMap.length * 64 * MAX_MISMATCHED_FRACTION) {
+                    System.err.printf("%s has %d voxels differing from the gpu%n", configuration, mismatched);
+                    passed = false;
+                }
+            }
+            System.out.printf("       %d of %d bitmaps are bit for bit equal%n", equalBitMaps, configurations.size());
+            return passed;
+        }
+    }
+
+    // Every shape at its largest lengths the settings allow
+    private static void benchmarkShapes() {
+        IntSettings.BREAK_PLACE_SIZE.setValue(CHUNK_SIZE_BITS + 2);
+        for (ShapeType type : ShapeType.values()) {
+            Configuration configuration = new Configuration(type, type.largest(), 0);
+            ShapePlaceable shape = configuration.create(false);
+            shape.updateBitMap(true);
+
+            long start = System.nanoTime();
+            for (int run = 0; run < BENCHMARK_RUNS; run++) shape.updateBitMap(true);
+            long time = System.nanoTime() - start;
+            System.out.printf("%-12s %3dx%3dx%3d in %.2fms%n", type, shape.getLengthX(), shape.getLengthY(), shape.getLengthZ(),
+                    time / 1_000_000.0 / BENCHMARK_RUNS);
+        }
+        IntSettings.BREAK_PLACE_SIZE.setValue(BREAK_PLACE_SIZE);
+    }
+
+    // No shape setting allows lengths of MAX_STRUCTURE_SIZE, so these fill a sphere directly
+    private static void benchmarkSizes() {
+        for (int size = 64; size <= MAX_STRUCTURE_SIZE; size <<= 1) {
+            float[] distances = ShapeRasterizer.distances(size, size / 2.0F, 2.0F);
+            float threshold = ShapeRasterizer.pow(size / 2.0F, 2.0F);
+            ShapeRasterizer.Shape sphere = (x, y, z) -> distances[x] + distances[y] + distances[z] <= threshold;
+            long[] bitMap = new long[size * size * size >> 6];
+            ShapeRasterizer.fillBitMap(bitMap, size, size, size, size, false, sphere);
+
+            long start = System.nanoTime();
+            for (int run = 0; run < BENCHMARK_RUNS; run++) ShapeRasterizer.fillBitMap(bitMap, size, size, size, size, false, sphere);
+            long time = (System.nanoTime() - start) / BENCHMARK_RUNS;
+            System.out.printf("Sphere of size %3d in %.2fms, %.0f million voxels per second%n",
+                    size, time / 1_000_000.0, (double) size * size * size * 1_000.0 / time);
+        }
+    }
+
+    private static ArrayList<Configuration> configurations() {
+        Random random = new Random(SEED);
+        ArrayList<Configuration> configurations = new ArrayList<>();
+        for (ShapeType type : ShapeType.values())
+            for (int index = 0; index < CONFIGURATIONS_PER_SHAPE; index++)
+                configurations.add(new Configuration(type, type.random(random), random.nextInt(24)));
+        return configurations;
+    }
+
+    private static long[] lengthsMask(ShapePlaceable shape) {
+        int size = shape.getPreferredSizePowOf2();
+        long[] mask = new long[Math.max(1, size * size * size >> 6)];
+        int lengthX = Math.min(shape.getLengthX(), size), lengthY = Math.min(shape.getLengthY(), size), lengthZ = Math.min(shape.getLengthZ(), size);
+        for (int x = 0; x < lengthX; x++)
+            for (int y = 0; y < lengthY; y++)
+                for (int z = 0; z < lengthZ; z++) {
+                    int index = MaterialsData.getUncompressedIndex(x, y, z);
+                    mask[index >> 6] |= 1L << index;
+                }
+        return mask;
+    }
+
+    private static int thickness(Random random) {
+        return random.nextInt(4) == 0 ? 128 : random.nextInt(1, 12);
+    }
+
+    private static float exponent(Random random) {
+        return random.nextInt(3) == 0 ? 2.0F : random.nextInt(1, 60) * 0.1F;
+    }
+
+    private ShapeRasterizerTester() {
+
+    }
+
+    /**
+     * The settings as the shape saves them, values are Integers and Floats in the order the shape loads them.
+     */
+    private record Configuration(ShapeType type, Number[] settings, int rotations) {
+
+        ShapePlaceable create(boolean invert) {
+            ShapeSaver saver = new ShapeSaver(this, invert);
+            ShapePlaceable shape = (ShapePlaceable) saver.fromBytes(saver.toBytes(null));
+            for (int rotation = 0; rotation < rotations; rotation++) shape.rotateForwards();
+            return shape;
+        }
+
+        @Override
+        public String toString() {
+            return "%s %s after %d rotations".formatted(type, Arrays.toString(settings), rotations);
+        }
+    }
+
+    private enum ShapeType {
+        CUBE(1), SPHERE(4), CYLINDER(5), STAIR(6), CONE(8), INSIDE_STAIR(9), OUTSIDE_STAIR(10),
+        SLAB(13), ELLIPSOID(14), ARC(15), INSIDE_ARC(16), OUTSIDE_ARC(17);
+
+        ShapeType(int id) {
+            this.id = (byte) id;
+        }
+
+        Number[] random(Random random) {
+            return switch (this) {
+                case CUBE -> new Number[]{random.nextInt(3), thickness(random)};
+                case SPHERE -> new Number[]{random.nextInt(1, 48), thickness(random), exponent(random)};
+                case CYLINDER -> new Number[]{random.nextInt(1, 40), thickness(random), random.nextInt(1, 80), exponent(random)};
+                case STAIR, INSIDE_STAIR, OUTSIDE_STAIR -> new Number[]{random.nextInt(1, 8), random.nextInt(-8, 9), thickness(random), random.nextInt(10, 50) * 0.1F};
+                case CONE -> new Number[]{random.nextInt(1, 40), random.nextInt(20), random.nextInt(1, 80), exponent(random), thickness(random)};
+                case SLAB -> new Number[]{random.nextInt(1, 16)};
+                case ELLIPSOID -> new Number[]{thickness(random), random.nextInt(1, 40), random.nextInt(1, 40), random.nextInt(1, 40),
+                        exponent(random), exponent(random), exponent(random)};
+                case ARC -> new Number[]{random.nextInt(1, 48), random.nextInt(1, 80), thickness(random), exponent(random)};
+                case INSIDE_ARC, OUTSIDE_ARC -> new Number[]{random.nextInt(1, 48), thickness(random), exponent(random)};
+            };
+        }
+
+        Number[] largest() {
+            return switch (this) {
+                case CUBE -> new Number[]{0, 128};
+                case SPHERE -> new Number[]{128, 128, 2.0F};
+                case CYLINDER -> new Number[]{128, 128, 256, 2.0F};
+                case STAIR, INSIDE_STAIR, OUTSIDE_STAIR -> new Number[]{4, 0, 128, 1.0F};
+                case CONE -> new Number[]{128, 0, 256, 2.0F, 128};
+                case SLAB -> new Number[]{128};
+                case ELLIPSOID -> new Number[]{128, 128, 128, 128, 2.0F, 2.0F, 2.0F};
+                case ARC -> new Number[]{128, 256, 128, 2.0F};
+                case INSIDE_ARC, OUTSIDE_ARC -> new Number[]{128, 128, 2.0F};
+            };
+        }
+
+        private final byte id;
+    }
+
+    // Builds the shapes the same way they are loaded from the hotbar, since their settings can't be set from outside
+    private static final class ShapeSaver extends Saver<Placeable> {
+
+        private ShapeSaver(Configuration configuration, boolean invert) {
+            this.configuration = configuration;
+            this.invert = invert;
+        }
+
+        @Override
+        protected void save(Placeable placeable) {
+            saveByte(configuration.type().id);
+            saveByte(STONE);
+            for (Number setting : configuration.settings())
+                if (setting instanceof Float floatSetting) saveFloat(floatSetting);
+                else saveInt(setting.intValue());
+            saveBoolean(invert);
+        }
+
+        @Override
+        protected Placeable load() {
+            return Placeable.loadPlaceable(this);
+        }
+
+        @Override
+        protected Placeable getDefault() {
+            return null;
+        }
+
+        @Override
+        protected int getVersionNumber() {
+            return 0;
+        }
+
+        private final Configuration configuration;
+        private final boolean invert;
+    }
+}
@@ -0,0 +1,232 @@
+import game.player.rendering.SoftwareOcclusionCuller;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+public final class SoftwareOcclusionTester {
+
+    private static final float FIELD_OF_VIEW = (float) Math.toRadians(90);
+    private static final float ASPECT_RATIO = 16.0F / 9.0F;
+    private static final float NEAR_PLANE = 0.1F;
+    private static final int RANDOM_SCENES = 200;
+    private static final int OCCLUDERS_PER_SCENE = 150;
+    private static final int OCCLUDEES_PER_SCENE = 500;
+    // Samples per side of every face of an occludee when looking for a visible point
+    private static final int SAMPLES_PER_SIDE = 9;
+    // Chunk columns around the camera in every direction, about a render distance of 32
+    private static final int BENCHMARK_RADIUS = 32;
+    private static final int CHUNK_SIZE = 64;
+    private static final float CAMERA_HEIGHT = 20.0F;
+    private static final int BENCHMARK_FRAMES = 200;
+
+    public static void main(String[] args) {
+        int failures = 0;
+        failures += check("A box behind a wall is occluded", checkBehindWall());
+        failures += check("A box in front of a wall is visible", checkInFrontOfWall());
+        failures += check("A box peeking past a wall is visible", checkPeekingPastWall());
+        failures += check("Boxes crossing the near plane are ignored", checkNearPlane());
+        failures += check("No box with a visible point is occluded", checkConservative());
+
+        if (failures != 0) System.err.printf("%d checks failed%n", failures);
+        else System.out.printf("All checks passed%n");
+
+        benchmark();
+    }
+
+    private static int check(String name, boolean passed) {
+        if (passed) System.out.printf("[ OK ] %s%n", name);
+        else System.err.printf("[FAIL] %s%n", name);
+        return passed ? 0 : 1;
+    }
+
+    private static boolean checkBehindWall() {
+        SoftwareOcclusionCuller culler = culler(0.0F);
+        culler.addOccluder(-50, -50, -22, 50, 50, -20);
+        culler.buildHierarchy();
+        return culler.isOccluded(-5, -5, -60, 5, 5, -50) && culler.isOccluded(-20, -20, -200, 20, 20, -100);
+    }
+
+    private static boolean checkInFrontOfWall() {
+        SoftwareOcclusionCuller culler = culler(0.0F);
+        culler.addOccluder(-50, -50, -22, 50, 50, -20);
+        culler.buildHierarchy();
+        return !culler.isOccluded(-5, -5, -15, 5, 5, -10) && !culler.isOccluded(-5, -5, -25, 5, 5, -19);
+    }
+
+    private static boolean checkPeekingPastWall() {
+        SoftwareOcclusionCuller culler = culler(0.0F);
+        culler.addOccluder(-10, -10, -22, 10, 10, -20);
+        culler.buildHierarchy();
+        return culler.isOccluded(-5, -5, -60, 5, 5, -50) && !culler.isOccluded(20, -5, -60, 30, 5, -50) && !culler.isOccluded(-5, 20, -40, 5, 30, -30);
+    }
+
+    private static boolean checkNearPlane() {
+        SoftwareOcclusionCuller culler = culler(0.0F);
+        culler.addOccluder(-50, -50, -22, 50, 50, 5);
+        culler.buildHierarchy();
+        if (culler.getOccluderCount() != 0 || culler.isOccluded(-5, -5, -60, 5, 5, -50)) return false;
+
+        culler.clear(projectionViewMatrix(0.0F));
+        culler.addOccluder(-50, -50, -22, 50, 50, -20);
+        culler.buildHierarchy();
+        return !culler.isOccluded(-5, -5, -60, 5, 5, 1);
+    }
+
+    // Looks for a point on the surface of every occluded box that can be seen from the camera
+    private static boolean checkConservative() {
+        Random random = new Random(0x0CC1DE);
+        long occluded = 0, hidden = 0;
+
+        for (int scene = 0; scene < RANDOM_SCENES; scene++) {
+            float yaw = random.nextFloat() * 6.2831855F;
+            SoftwareOcclusionCuller culler = culler(yaw);
+            float[] matrix = projectionViewMatrix(yaw);
+            float[][] occluders = new float[OCCLUDERS_PER_SCENE][];
+            for (int index = 0; index < OCCLUDERS_PER_SCENE; index++) {
+                occluders[index] = randomBox(random, 8, 64);
+                float[] box = occluders[index];
+                culler.addOccluder(box[0], box[1], box[2], box[3], box[4], box[5]);
+            }
+            culler.buildHierarchy();
+
+            for (int index = 0; index < OCCLUDEES_PER_SCENE; index++) {
+                float[] box = randomBox(random, 2, 64);
+                boolean isOccluded = culler.isOccluded(box[0], box[1], box[2], box[3], box[4], box[5]);
+                boolean isHidden = !hasVisiblePoint(box, occluders, matrix);
+                if (isOccluded && !isHidden) {
+                    System.err.printf("Scene %d: box %s is occluded but can be seen%n", scene, Arrays.toString(box));
+                    return false;
+                }
+                if (isOccluded) occluded++;
+                if (isHidden) hidden++;
+            }
+        }
+        System.out.printf("       %.1f%% of the hidden boxes are occluded%n", 100.0 * occluded / Math.max(1, hidden));
+        return true;
+    }
+
+    // Hilly terrain of chunks, the two chunks below the surface are solid and everything below them is hidden
+    private static void benchmark() {
+        Random random = new Random(0xBE4C);
+        ArrayList<float[]> occluders = new ArrayList<>();
+        ArrayList<float[]> occludees = new ArrayList<>();
+        for (int chunkX = -BENCHMARK_RADIUS; chunkX <= BENCHMARK_RADIUS; chunkX++)
+            for (int chunkZ = -BENCHMARK_RADIUS; chunkZ <= BENCHMARK_RADIUS; chunkZ++) {
+                int surfaceY = random.nextInt(-1, 1);
+                for (int chunkY = surfaceY - 4; chunkY <= surfaceY + 1; chunkY++) {
+                    float[] chunk = {chunkX * CHUNK_SIZE, chunkY * CHUNK_SIZE - CAMERA_HEIGHT, chunkZ * CHUNK_SIZE,
+                            (chunkX + 1) * CHUNK_SIZE, (chunkY + 1) * CHUNK_SIZE - CAMERA_HEIGHT, (chunkZ + 1) * CHUNK_SIZE};
+                    occludees.add(chunk);
+                    if (chunkY < surfaceY && chunkY >= surfaceY - 2) occluders.add(chunk);
+                }
+            }
+
+        SoftwareOcclusionCuller culler = new SoftwareOcclusionCuller();
+        long rasterizeTime = 0, testTime = 0;
+        int occluded = 0;
+        for (int frame = -BENCHMARK_FRAMES / 4; frame < BENCHMARK_FRAMES; frame++) {
+            long start = System.nanoTime();
+            culler.clear(projectionViewMatrix(frame * 0.02F));
+            for (float[] box : occluders) culler.addOccluder(box[0], box[1], box[2], box[3], box[4], box[5]);
+            culler.buildHierarchy();
+            long rasterized = System.nanoTime();
+
+            int frameOccluded = 0;
+            for (float[] box : occludees) if (culler.isOccluded(box[0], box[1], box[2], box[3], box[4], box[5])) frameOccluded++;
+            long tested = System.nanoTime();
+
+            // The first frames only warm up
+            if (frame < 0) continue;
+            rasterizeTime += rasterized - start;
+            testTime += tested - rasterized;
+            occluded += frameOccluded;
+        }
+        System.out.printf("%d occluders rasterized in %.2fms, %d occludees tested in %.2fms, %.1f%% occluded%n",
+                occluders.size(), rasterizeTime / 1_000_000.0 / BENCHMARK_FRAMES,
+                occludees.size(), testTime / 1_000_000.0 / BENCHMARK_FRAMES,
+                100.0 * occluded / occludees.size() / BENCHMARK_FRAMES);
+    }
+
+    private static SoftwareOcclusionCuller culler(float yaw) {
+        SoftwareOcclusionCuller culler = new SoftwareOcclusionCuller();
+        culler.clear(projectionViewMatrix(yaw));
+        return culler;
+    }
+
+    // Column major perspective projection with an infinite far plane, turned around the y axis
+    private static float[] projectionViewMatrix(float yaw) {
+        float focalLength = (float) (1.0 / Math.tan(FIELD_OF_VIEW * 0.5));
+        float cos = (float) Math.cos(yaw), sin = (float) Math.sin(yaw);
+        float[] projection = {
+                focalLength / ASPECT_RATIO, 0, 0, 0,
+                0, focalLength, 0, 0,
+                0, 0, -1, -1,
+                0, 0, -2 * NEAR_PLANE, 0};
+        float[] rotation = {
+                cos, 0, sin, 0,
+                0, 1, 0, 0,
+                -sin, 0, cos, 0,
+                0, 0, 0, 1};
+
+        float[] matrix = new float[16];
+        for (int column = 0; column < 4; column++)
+            for (int row = 0; row < 4; row++) {
+                float sum = 0.0F;
+                for (int index = 0; index < 4; index++) sum += projection[index * 4 + row] * rotation[column * 4 + index];
+                matrix[column * 4 + row] = sum;
+            }
+        return matrix;
+    }
+
+    private static float[] randomBox(Random random, int minSize, int maxSize) {
+        float x = random.nextFloat() * 600 - 300, y = random.nextFloat() * 80 - 40, z = random.nextFloat() * 600 - 300;
+        return new float[]{x, y, z,
+                x + random.nextInt(minSize, maxSize + 1), y + random.nextInt(minSize, maxSize + 1), z + random.nextInt(minSize, maxSize + 1)};
+    }
+
+    private static boolean hasVisiblePoint(float[] box, float[][] occluders, float[] matrix) {
+        for (int axis = 0; axis < 3; axis++)
+            for (int side = 0; side < 2; side++)
+                for (int first = 0; first < SAMPLES_PER_SIDE; first++)
+                    for (int second = 0; second < SAMPLES_PER_SIDE; second++) {
+                        float[] point = new float[3];
+                        int firstAxis = (axis + 1) % 3, secondAxis = (axis + 2) % 3;
+                        point[axis] = box[axis + side * 3];
+                        point[firstAxis] = box[firstAxis] + (box[firstAxis + 3] - box[firstAxis]) * first / (SAMPLES_PER_SIDE - 1);
+                        point[secondAxis] = box[secondAxis] + (box[secondAxis + 3] - box[secondAxis]) * second / (SAMPLES_PER_SIDE - 1);
+                        if (isOnScreen(point, matrix) && !isBlocked(point, occluders)) return true;
+                    }
+        return false;
+    }
+
+    private static boolean isOnScreen(float[] point, float[] matrix) {
+        float clipX = matrix[0] * point[0] + matrix[4] * point[1] + matrix[8] * point[2] + matrix[12];
+        float clipY = matrix[1] * point[0] + matrix[5] * point[1] + matrix[9] * point[2] + matrix[13];
+        float clipW = matrix[3] * point[0] + matrix[7] * point[1] + matrix[11] * point[2] + matrix[15];
+        return clipW > NEAR_PLANE && Math.abs(clipX) <= clipW && Math.abs(clipY) <= clipW;
+    }
+
+    // Slab test of the segment from the camera to slightly before the point
+    private static boolean isBlocked(float[] point, float[][] occluders) {
+        for (float[] occluder : occluders) {
+            double entry = 0.0, exit = 0.999;
+            for (int axis = 0; axis < 3 && entry <= exit; axis++) {
+                double direction = point[axis];
+                if (direction == 0.0) {
+                    if (occluder[axis] > 0.0 || occluder[axis + 3] < 0.0) exit = -1.0;
+                    continue;
+                }
+                double first = occluder[axis] / direction, second = occluder[axis + 3] / direction;
+                entry = Math.max(entry, Math.min(first, second));
+                exit = Math.min(exit, Math.max(first, second));
+            }
+            if (entry <= exit) return true;
+        }
+        return false;
+    }
+
+    private SoftwareOcclusionTester() {
+
+    }
+}
@@ -0,0 +1,253 @@
+import core.utils.Saver;
+import core.utils.Vector3l;
+
+import game.player.interaction.Placeable;
+import game.player.interaction.RepeatPlaceable;
+import game.player.interaction.ShapePlaceable;
+import game.player.interaction.placeable_shapes.CapsulePlaceable;
+import game.server.EditExecutor;
+import game.server.Game;
+import game.server.World;
+import game.server.materials_data.MaterialsData;
+import game.server.materials_data.SparseBitMap;
+import game.settings.IntSettings;
+import game.settings.ToggleSettings;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import static game.utils.Constants.*;
+
+/**
+ * Compares the sparse bitmaps of large spheres, slabs and capsules against dense voxel scans and measures their
+ * memory, AABB intersections and placements. Placements go into a temporary world, like in the {@code PlacementTester}.
+ */
+public final class SparseBitMapTester {
+
+    private static final long SEED = 0x9EF6E7FAF3299DDDL;
+    private static final int RENDER_DISTANCE = 16;
+    // Around the surface near the chunks of EditTester
+    private static final long START_X = 28L << CHUNK_SIZE_BITS, START_Y = -128, START_Z = 116L << CHUNK_SIZE_BITS;
+    private static final int BREAK_PLACE_SIZE = CHUNK_SIZE_BITS + 2;
+    private static final int AABB_QUERIES = 20_000;
+    // Roughly the size of the player and of the boxes entities and particles test against
+    private static final int MAX_AABB_SIZE = 4;
+    private static final int WARMUP_PLACEMENTS = 2;
+    private static final int PLACEMENTS = 10;
+
+    public static void main(String[] args) {
+        int previousRenderDistance = IntSettings.RENDER_DISTANCE.value(), previousSize = IntSettings.BREAK_PLACE_SIZE.value();
+        boolean previousCpuRasterization = ToggleSettings.CPU_SHAPE_RASTERIZATION.value();
+        IntSettings.RENDER_DISTANCE.setValue(RENDER_DISTANCE);
+        IntSettings.BREAK_PLACE_SIZE.setValue(BREAK_PLACE_SIZE);
+        ToggleSettings.CPU_SHAPE_RASTERIZATION.setValue(true);
+
+        int failures = 0;
+        for (TestShape testShape : TestShape.values()) {
+            ShapePlaceable shape = testShape.create(STONE);
+            shape.updateBitMap(true);
+            SparseBitMap bitMap = shape.getBitMap();
+            long[] dense = bitMap.toLongArray();
+
+            failures += check(testShape + ": sparse bitmap equals its dense copy", checkDenseCopy(bitMap, dense));
+            failures += check(testShape + ": intersections equal a voxel scan", checkIntersections(bitMap, dense, shape));
+            failures += check(testShape + ": visited voxels equal a voxel scan", checkForEach(bitMap, dense, shape));
+        }
+
+        for (TestShape testShape : TestShape.values()) measure(testShape);
+
+        IntSettings.RENDER_DISTANCE.setValue(previousRenderDistance);
+        IntSettings.BREAK_PLACE_SIZE.setValue(previousSize);
+        ToggleSettings.CPU_SHAPE_RASTERIZATION.setValue(previousCpuRasterization);
+
+        if (failures != 0) System.err.printf("%d checks failed%n", failures);
+        else System.out.printf("All checks passed%n");
+    }
+
+    private static int check(String name, boolean passed) {
+        if (passed) System.out.printf("[ OK ] %s%n", name);
+        else System.err.printf("[FAIL] %s%n", name);
+        return passed ? 0 : 1;
+    }
+
+    private static boolean checkDenseCopy(SparseBitMap bitMap, long[] dense) {
+        if (!Arrays.equals(SparseBitMap.of(dense, bitMap.getSizeBits()).toLongArray(), dense)) return false;
+        for (int index = 0; index < dense.length; index++) if (bitMap.getLong(index) != dense[index]) return false;
+        return true;
+    }
+
+    private static boolean checkIntersections(SparseBitMap bitMap, long[] dense, ShapePlaceable shape) {
+        Random random = new Random(SEED);
+        int[] box = new int[6];
+        for (int query = 0; query < AABB_QUERIES; query++) {
+            randomBox(random, box, shape, query % 100 == 0 ? 1 << BREAK_PLACE_SIZE : MAX_AABB_SIZE);
+            if (bitMap.intersects(box[0], box[1], box[2], box[3], box[4], box[5]) != denseIntersects(dense, box)) return false;
+        }
+        return true;
+    }
+
+    private static boolean checkForEach(SparseBitMap bitMap, long[] dense, ShapePlaceable shape) {
+        int lengthX = shape.getLengthX(), lengthY = shape.getLengthY(), lengthZ = shape.getLengthZ();
+        long[] visited = new long[dense.length];
+        boolean[] passed = {true};
+        bitMap.forEach(lengthX, lengthY, lengthZ, 1, (x, y, z) -> {
+            int index = MaterialsData.getUncompressedIndex(x, y, z);
+            passed[0] &= (visited[index >> 6] & 1L << index) == 0;
+            visited[index >> 6] |= 1L << index;
+        });
+
+        for (int x = 0; x < lengthX; x++)
+            for (int y = 0; y < lengthY; y++)
+                for (int z = 0; z < lengthZ; z++) {
+                    int index = MaterialsData.getUncompressedIndex(x, y, z);
+                    passed[0] &= (dense[index >> 6] & 1L << index) == (visited[index >> 6] & 1L << index);
+                }
+        return passed[0];
+    }
+
+    private static void measure(TestShape testShape) {
+        ShapePlaceable shape = testShape.create(STONE);
+        shape.updateBitMap(true);
+
+        long start = System.nanoTime();
+        shape.updateBitMap(true);
+        long bitMapTime = System.nanoTime() - start;
+        SparseBitMap bitMap = shape.getBitMap();
+        long[] dense = bitMap.toLongArray();
+
+        Random random = new Random(SEED);
+        int[][] boxes = new int[AABB_QUERIES][6];
+        for (int[] box : boxes) randomBox(random, box, shape, MAX_AABB_SIZE);
+        int hits = 0;
+        start = System.nanoTime();
+        for (int[] box : boxes) if (bitMap.intersects(box[0], box[1], box[2], box[3], box[4], box[5])) hits++;
+        long sparseTime = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int[] box : boxes) if (denseIntersects(dense, box)) hits--;
+        long denseTime = System.nanoTime() - start;
+
+        System.out.printf("%-14s %3dx%3dx%3d, %7.1fKiB sparse, %7.1fKiB dense, bitmap in %.2fms%n",
+                testShape, shape.getLengthX(), shape.getLengthY(), shape.getLengthZ(),
+                bitMap.getByteSize() / 1024.0, dense.length * (double) Long.BYTES / 1024.0, bitMapTime / 1_000_000.0);
+        System.out.printf("%-14s %d AABB intersections, sparse %.0fns, voxel scan %.0fns each%s%n", "",
+                AABB_QUERIES, sparseTime / (double) AABB_QUERIES, denseTime / (double) AABB_QUERIES, hits == 0 ? "" : ", results differ");
+
+        EditExecutor.Metrics metrics = measurePlacements(testShape);
+        System.out.printf("%-14s %d placements, median %.2fms, p95 %.2fms, %d chunk jobs in the last one%n", "",
+                metrics.edits(), metrics.medianMillis(), metrics.p95Millis(), metrics.lastJobCount());
+    }
+
+    private static EditExecutor.Metrics measurePlacements(TestShape testShape) {
+        Game.setTemporaryWorld(new World(SEED));
+        Vector3l start = new Vector3l(START_X, START_Y, START_Z);
+        ShapePlaceable stone = testShape.create(STONE), air = testShape.create(AIR);
+        stone.updateBitMap(true);
+        air.updateBitMap(true);
+
+        EditExecutor executor = new EditExecutor();
+        for (int placement = -WARMUP_PLACEMENTS; placement < PLACEMENTS; placement++) {
+            if (placement == 0) executor = new EditExecutor();
+            ShapePlaceable shape = placement % 2 == 0 ? stone : air;
+            executor.place(testShape.placeable(shape, start), start, new ArrayList<>());
+        }
+        Game.removeTemporaryWorld();
+        return executor.getMetrics();
+    }
+
+    private static void randomBox(Random random, int[] box, ShapePlaceable shape, int maxSize) {
+        int lengthX = shape.getLengthX(), lengthY = shape.getLengthY(), lengthZ = shape.getLengthZ();
+        box[0] = random.nextInt(lengthX);
+        box[1] = random.nextInt(lengthY);
+        box[2] = random.nextInt(lengthZ);
+        box[3] = Math.min(lengthX, box[0] + random.nextInt(1, maxSize + 1));
+        box[4] = Math.min(lengthY, box[1] + random.nextInt(1, maxSize + 1));
+        box[5] = Math.min(lengthZ, box[2] + random.nextInt(1, maxSize + 1));
+    }
+
+    // What ShapePlaceable.intersectsAABB did before the bitmaps were sparse
+    private static boolean denseIntersects(long[] dense, int[] box) {
+        for (int x = box[0]; x < box[3]; x++)
+            for (int y = box[1]; y < box[4]; y++)
+                for (int z = box[2]; z < box[5]; z++) {
+                    int index = MaterialsData.getUncompressedIndex(x, y, z);
+                    if ((dense[index >> 6] & 1L << index) != 0) return true;
+                }
+        return false;
+    }
+
+    private SparseBitMapTester() {
+
+    }
+
+    private enum TestShape {
+        SOLID_SPHERE(4, 128, 128, 2.0F),
+        HOLLOW_SPHERE(4, 128, 2, 2.0F),
+        SLAB(13, 4),
+        CAPSULE(20, 64);
+
+        TestShape(int id, Number... settings) {
+            this.id = (byte) id;
+            this.settings = settings;
+        }
+
+        ShapePlaceable create(byte material) {
+            ShapeSaver saver = new ShapeSaver(this, material);
+            ShapePlaceable shape = (ShapePlaceable) saver.fromBytes(saver.toBytes(null));
+            if (shape instanceof CapsulePlaceable capsule) {
+                Vector3l start = new Vector3l(START_X, START_Y, START_Z).add(CAPSULE_RADIUS, CAPSULE_RADIUS, CAPSULE_RADIUS);
+                capsule.setStartEndPositions(start, new Vector3l(start).add(CAPSULE_RADIUS * 2, CAPSULE_RADIUS * 2, 0));
+            }
+            return shape;
+        }
+
+        // Capsules place themselves, all other shapes get placed by a RepeatPlaceable of a single repetition
+        Placeable placeable(ShapePlaceable shape, Vector3l start) {
+            if (shape instanceof CapsulePlaceable) return shape;
+            Vector3l end = new Vector3l(start).add(shape.getLengthX() - 1, shape.getLengthY() - 1, shape.getLengthZ() - 1);
+            return new RepeatPlaceable(shape, new Vector3l(start), end);
+        }
+
+        private final byte id;
+        private final Number[] settings;
+
+        private static final int CAPSULE_RADIUS = 64;
+    }
+
+    // Builds the shapes the same way they are loaded from the hotbar, since their settings can't be set from outside
+    private static final class ShapeSaver extends Saver<Placeable> {
+
+        private ShapeSaver(TestShape shape, byte material) {
+            this.shape = shape;
+            this.material = material;
+        }
+
+        @Override
+        protected void save(Placeable placeable) {
+            saveByte(shape.id);
+            saveByte(material);
+            for (Number setting : shape.settings)
+                if (setting instanceof Float floatSetting) saveFloat(floatSetting);
+                else saveInt(setting.intValue());
+            saveBoolean(false);
+        }
+
+        @Override
+        protected Placeable load() {
+            return Placeable.loadPlaceable(this);
+        }
+
+        @Override
+        protected Placeable getDefault() {
+            return null;
+        }
+
+        @Override
+        protected int getVersionNumber() {
+            return 0;
+        }
+
+        private final TestShape shape;
+        private final byte material;
+    }
+}
@@ -0,0 +1,164 @@
+import core.utils.IntArrayList;
+import game.player.rendering.StagingRing;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public final class StagingRingTester {
+
+    private static final int RING_CAPACITY = 1 << 26;
+    private static final int PRODUCER_COUNT = 4;
+    private static final int MESHES_PER_PRODUCER = 20_000;
+    // Roughly the vertex data of a chunk mesh, in ints
+    private static final int MIN_MESH_INTS = 256;
+    private static final int MAX_MESH_INTS = 32_768;
+    // How many "frames" the consumer waits before freeing a slice, like waiting for a fence
+    private static final int FENCE_DELAY_FRAMES = 3;
+    private static final int WARMUP_ITERATIONS = 2;
+    private static final int TOTAL_MESHES = PRODUCER_COUNT * MESHES_PER_PRODUCER;
+
+    public static void main(String[] args) throws InterruptedException {
+        ByteBuffer memory = ByteBuffer.allocateDirect(RING_CAPACITY).order(ByteOrder.nativeOrder());
+
+        StagingRing ring = new StagingRing(memory);
+        Result verified = runStaged(ring, true);
+        for (int iteration = 0; iteration < WARMUP_ITERATIONS; iteration++) {
+            runStaged(new StagingRing(memory), false);
+            runCopied(memory);
+        }
+
+        long start = System.nanoTime();
+        Result staged = runStaged(new StagingRing(memory), false);
+        long stagedTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        Result copied = runCopied(memory);
+        long copiedTime = System.nanoTime() - start;
+
+        if (verified.corruptSlices != 0) System.err.printf("%d slices were overwritten before being freed%n", verified.corruptSlices);
+        else System.out.printf("All slices kept their contents until freed%n");
+        if (ring.getUsedBytes() != 0 || ring.getLiveSliceCount() != 0)
+            System.err.printf("Ring still holds %d bytes in %d slices%n", ring.getUsedBytes(), ring.getLiveSliceCount());
+        System.out.printf("Spins waiting for free ring space: %d%n", staged.retries);
+        System.out.printf("Staged upload: %.1fMB/s, %.2fus of render thread time per mesh%n",
+                staged.bytes / 1e6 / (stagedTime / 1e9), staged.consumerTime / 1000.0 / TOTAL_MESHES);
+        System.out.printf("Copied upload: %.1fMB/s, %.2fus of render thread time per mesh%n",
+                copied.bytes / 1e6 / (copiedTime / 1e9), copied.consumerTime / 1000.0 / TOTAL_MESHES);
+    }
+
+    // Producers write straight into slices, the consumer frees them a few frames after receiving them
+    private static Result runStaged(StagingRing ring, boolean verify) throws InterruptedException {
+        ConcurrentLinkedQueue<StagingRing.Slice> queue = new ConcurrentLinkedQueue<>();
+        AtomicInteger retries = new AtomicInteger();
+        AtomicInteger finishedProducers = new AtomicInteger();
+        ArrayList<Thread> producers = new ArrayList<>();
+
+        for (int producer = 0; producer < PRODUCER_COUNT; producer++) {
+            int seed = producer;
+            Thread thread = new Thread(() -> {
+                Random random = new Random(seed);
+                IntArrayList vertices = new IntArrayList(MAX_MESH_INTS);
+                for (int mesh = 0; mesh < MESHES_PER_PRODUCER; mesh++) {
+                    fillVertices(vertices, random);
+                    StagingRing.Slice slice;
+                    while ((slice = ring.allocate(vertices.size() * Integer.BYTES)) == null) {
+                        retries.incrementAndGet();
+                        Thread.onSpinWait();
+                    }
+                    vertices.copyInto(slice.buffer().asIntBuffer());
+                    queue.add(slice);
+                }
+                finishedProducers.incrementAndGet();
+            });
+            producers.add(thread);
+            thread.start();
+        }
+
+        ArrayDeque<ArrayList<StagingRing.Slice>> frames = new ArrayDeque<>();
+        int corruptSlices = 0;
+        long bytes = 0, consumerTime = 0;
+        while (finishedProducers.get() != PRODUCER_COUNT || !queue.isEmpty() || !frames.isEmpty()) {
+            boolean producing = finishedProducers.get() != PRODUCER_COUNT;
+            ArrayList<StagingRing.Slice> frame = new ArrayList<>();
+            StagingRing.Slice slice;
+            while ((slice = queue.poll()) != null) frame.add(slice);
+            if (producing || !frame.isEmpty()) frames.addLast(frame);
+
+            if (frames.size() > FENCE_DELAY_FRAMES || !producing && !frames.isEmpty())
+                for (StagingRing.Slice finished : frames.pollFirst()) {
+                    if (verify && !isIntact(finished.buffer().asIntBuffer())) corruptSlices++;
+                    long consumerStart = System.nanoTime();
+                    bytes += finished.size();
+                    ring.free(finished);
+                    consumerTime += System.nanoTime() - consumerStart;
+                }
+        }
+        for (Thread producer : producers) producer.join();
+        return new Result(bytes, consumerTime, corruptSlices, retries.get());
+    }
+
+    // The way meshes were uploaded before, copying into an int[] and later into the buffer
+    private static Result runCopied(ByteBuffer memory) throws InterruptedException {
+        ConcurrentLinkedQueue<int[]> queue = new ConcurrentLinkedQueue<>();
+        AtomicInteger finishedProducers = new AtomicInteger();
+        ArrayList<Thread> producers = new ArrayList<>();
+
+        for (int producer = 0; producer < PRODUCER_COUNT; producer++) {
+            int seed = producer;
+            Thread thread = new Thread(() -> {
+                Random random = new Random(seed);
+                IntArrayList vertices = new IntArrayList(MAX_MESH_INTS);
+                for (int mesh = 0; mesh < MESHES_PER_PRODUCER; mesh++) {
+                    fillVertices(vertices, random);
+                    queue.add(vertices.toArray());
+                }
+                finishedProducers.incrementAndGet();
+            });
+            producers.add(thread);
+            thread.start();
+        }
+
+        IntBuffer target = memory.asIntBuffer();
+        long bytes = 0, consumerTime = 0;
+        while (finishedProducers.get() != PRODUCER_COUNT || !queue.isEmpty()) {
+            int[] vertices;
+            while ((vertices = queue.poll()) != null) {
+                long consumerStart = System.nanoTime();
+                if (target.remaining() < vertices.length) target.clear();
+                target.put(vertices);
+                bytes += (long) vertices.length * Integer.BYTES;
+                consumerTime += System.nanoTime() - consumerStart;
+            }
+        }
+        for (Thread producer : producers) producer.join();
+        return new Result(bytes, consumerTime, 0, 0);
+    }
+
+    // The first int is the length, every following one is derived from it, so overwritten slices are detected
+    private static void fillVertices(IntArrayList vertices, Random random) {
+        vertices.clear();
+        int length = MIN_MESH_INTS + random.nextInt(MAX_MESH_INTS - MIN_MESH_INTS);
+        vertices.add(length);
+        for (int index = 1; index < length; index++) vertices.add(length * 31 + index);
+    }
+
+    private static boolean isIntact(IntBuffer vertices) {
+        int length = vertices.get(0);
+        if (length != vertices.capacity()) return false;
+        for (int index = 1; index < length; index++) if (vertices.get(index) != length * 31 + index) return false;
+        return true;
+    }
+
+    private StagingRingTester() {
+
+    }
+
+    private record Result(long bytes, long consumerTime, int corruptSlices, int retries) {
+    }
+}
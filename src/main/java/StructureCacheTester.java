@@ -0,0 +1,162 @@
+import core.assets.AssetManager;
+
+import game.assets.StructureCache;
+import game.assets.StructureCollectionIdentifier;
+import game.assets.StructureIdentifier;
+import game.server.generation.Structure;
+import game.server.saving.StructureSaver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Compares structures from the {@code StructureCache} against the ones loaded by the {@code StructureSaver}, checks
+ * that the memory budget holds and measures concurrent lookups of the tree collections of the structure heavy biomes
+ * against looking them up in the {@code AssetManager}, which is what generation threads used to do.
+ */
+public final class StructureCacheTester {
+
+    private static final long SEED = 0x9EF6E7FAF3299DDDL;
+    private static final long SMALL_BYTE_BUDGET = 4L << 20;
+    // The cache adds an estimate of the object overhead to the size of every structure
+    private static final int OVERHEAD_SLACK_BYTES = 1024;
+    private static final int THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+    private static final int LOOKUPS_PER_THREAD = 2_000_000;
+    // Samples some voxels of every structure that was looked up, like generation reads a part of every tree
+    private static final int SAMPLES_PER_LOOKUP = 8;
+    private static final StructureCollectionIdentifier[] COLLECTIONS = {
+            StructureCollectionIdentifier.REDWOOD_TREES, StructureCollectionIdentifier.BLACK_WOOD_TREES};
+
+    public static void main(String[] args) throws Exception {
+        long previousByteBudget = StructureCache.getByteBudget();
+        HashMap<String, Structure> expected = loadExpected();
+
+        int failures = 0;
+        failures += check("Collections of the structure heavy biomes aren't empty", expected.size() > COLLECTIONS.length);
+        failures += check("Cached structures equal loaded structures", checkEqual(expected));
+
+        StructureCache.setByteBudget(SMALL_BYTE_BUDGET);
+        failures += check("Cached bytes stay within the budget", checkBudget(expected));
+        failures += check("Evicted structures decode to the same structures", checkEqual(expected));
+        failures += check("Concurrent lookups return equal structures", checkConcurrent(expected));
+
+        StructureCache.setByteBudget(previousByteBudget);
+        measure(expected);
+
+        if (failures != 0) System.err.printf("%d checks failed%n", failures);
+        else System.out.printf("All checks passed%n");
+    }
+
+    private static int check(String name, boolean passed) {
+        if (passed) System.out.printf("[ OK ] %s%n", name);
+        else System.err.printf("[FAIL] %s%n", name);
+        return passed ? 0 : 1;
+    }
+
+    private static HashMap<String, Structure> loadExpected() {
+        HashMap<String, Structure> expected = new HashMap<>();
+        for (StructureCollectionIdentifier collection : COLLECTIONS)
+            for (String structureName : StructureCache.getCollection(collection).getStructureNames())
+                expected.put(structureName, new StructureSaver().load(StructureSaver.getSaveFileLocation(structureName)));
+        return expected;
+    }
+
+    private static boolean checkEqual(HashMap<String, Structure> expected) {
+        for (String structureName : expected.keySet())
+            if (!equal(StructureCache.get(structureName), expected.get(structureName))) return false;
+        return true;
+    }
+
+    private static boolean checkBudget(HashMap<String, Structure> expected) {
+        for (String structureName : expected.keySet()) {
+            StructureCache.get(structureName);
+            // The structure that was just decoded is never evicted, so it may exceed the budget on its own
+            long allowedBytes = SMALL_BYTE_BUDGET + expected.get(structureName).materials().getBytes().length + OVERHEAD_SLACK_BYTES;
+            if (StructureCache.getMetrics().cachedBytes() > allowedBytes) return false;
+        }
+        return StructureCache.getMetrics().evictions() > 0;
+    }
+
+    private static boolean checkConcurrent(HashMap<String, Structure> expected) throws Exception {
+        String[] structureNames = expected.keySet().toArray(new String[0]);
+        ArrayList<Callable<Boolean>> tasks = new ArrayList<>();
+        for (int thread = 0; thread < THREADS; thread++) {
+            Random random = new Random(SEED + thread);
+            tasks.add(() -> {
+                for (int lookup = 0; lookup < LOOKUPS_PER_THREAD / 100; lookup++) {
+                    String structureName = structureNames[random.nextInt(structureNames.length)];
+                    if (!equal(StructureCache.get(structureName), expected.get(structureName))) return false;
+                }
+                return true;
+            });
+        }
+
+        boolean passed = true;
+        try (ExecutorService executor = Executors.newFixedThreadPool(THREADS)) {
+            for (Future<Boolean> result : executor.invokeAll(tasks)) passed &= result.get();
+        }
+        return passed;
+    }
+
+    private static void measure(HashMap<String, Structure> expected) throws Exception {
+        long totalBytes = 0;
+        for (Structure structure : expected.values()) totalBytes += structure.materials().getBytes().length;
+        System.out.printf("%d structures of %.1fMiB, budget %.1fMiB%n", expected.size(), totalBytes / 1048576.0, StructureCache.getByteBudget() / 1048576.0);
+
+        for (int run = 0; run < 2; run++) {
+            long assetManagerTime = lookup(false);
+            long cacheTime = lookup(true);
+            if (run == 0) continue;
+            System.out.printf("%d threads, %d lookups each, AssetManager %.1fns, StructureCache %.1fns per lookup%n", THREADS, LOOKUPS_PER_THREAD,
+                    assetManagerTime / (double) LOOKUPS_PER_THREAD, cacheTime / (double) LOOKUPS_PER_THREAD);
+        }
+
+        StructureCache.Metrics metrics = StructureCache.getMetrics();
+        System.out.printf("%d hits, %d misses, %d evictions, %.1fMiB in %d decoded structures%n", metrics.hits(), metrics.misses(),
+                metrics.evictions(), metrics.cachedBytes() / 1048576.0, metrics.decodedStructures());
+    }
+
+    // Returns the wall time of all threads looking up random trees of the collections, the sums of the samples only keep them from being optimized away
+    private static long lookup(boolean cache) throws Exception {
+        String[][] structureNames = new String[COLLECTIONS.length][];
+        for (int index = 0; index < COLLECTIONS.length; index++) structureNames[index] = StructureCache.getCollection(COLLECTIONS[index]).getStructureNames();
+
+        ArrayList<Callable<Integer>> tasks = new ArrayList<>();
+        for (int thread = 0; thread < THREADS; thread++) {
+            Random random = new Random(SEED + thread);
+            tasks.add(() -> {
+                int materials = 0;
+                for (int lookup = 0; lookup < LOOKUPS_PER_THREAD; lookup++) {
+                    String[] names = structureNames[lookup % structureNames.length];
+                    String structureName = names[random.nextInt(names.length)];
+                    Structure structure = cache ? StructureCache.get(structureName) : AssetManager.get(new StructureIdentifier(structureName));
+                    for (int sample = 0; sample < SAMPLES_PER_LOOKUP; sample++)
+                        materials += structure.getMaterial(random.nextInt(structure.sizeX()), random.nextInt(structure.sizeY()), random.nextInt(structure.sizeZ()));
+                }
+                return materials;
+            });
+        }
+
+        long start = System.nanoTime();
+        try (ExecutorService executor = Executors.newFixedThreadPool(THREADS)) {
+            for (Future<Integer> result : executor.invokeAll(tasks)) result.get();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static boolean equal(Structure structure, Structure expected) {
+        return structure.sizeX() == expected.sizeX() && structure.sizeY() == expected.sizeY() && structure.sizeZ() == expected.sizeZ()
+                && structure.materials().getTotalSizeBits() == expected.materials().getTotalSizeBits()
+                && Arrays.equals(structure.materials().getBytes(), expected.materials().getBytes());
+    }
+
+    private StructureCacheTester() {
+
+    }
+}
@@ -0,0 +1,167 @@
+import game.assets.StructureCache;
+import game.assets.StructureCollectionIdentifier;
+import game.server.Chunk;
+import game.server.Game;
+import game.server.World;
+import game.server.generation.GenerationData;
+import game.server.generation.Structure;
+import game.server.generation.WorldGeneration;
+import game.server.materials_data.MaterialsData;
+import game.settings.ToggleSettings;
+
+import org.joml.Vector3i;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import static game.utils.Constants.*;
+
+/**
+ * Checks that copying structures from their pre-transformed materials gives the same voxels as transforming them
+ * while copying, and measures the generation of forest columns with and without the pre-transformed materials.
+ */
+public final class StructureGenerationTester {
+
+    private static final long SEED = 0x9EF6E7FAF3299DDDL;
+    private static final StructureCollectionIdentifier[] COLLECTIONS = {
+            StructureCollectionIdentifier.REDWOOD_TREES, StructureCollectionIdentifier.BLACK_WOOD_TREES, StructureCollectionIdentifier.OAK_TREES};
+    private static final int COPIES_PER_STRUCTURE = 64;
+    private static final int MAX_COPY_LOD = 3;
+    // Columns get searched in a square of this many chunks, starting at the origin
+    private static final int SEARCHED_CHUNKS_XZ = 256;
+    private static final int COLUMNS = 48;
+    // Tall enough for the highest redwoods on top of hills
+    private static final int MIN_CHUNK_Y = -4, MAX_CHUNK_Y = 12;
+    private static final int WARMUP_ITERATIONS = 1;
+    private static final int ITERATIONS = 3;
+
+    public static void main(String[] args) {
+        boolean previousPreTransformed = ToggleSettings.PRE_TRANSFORMED_STRUCTURES.value();
+        Game.setTemporaryWorld(new World(SEED));
+
+        int failures = 0;
+        failures += check("Pre-transformed copies equal transformed copies", checkCopies());
+        ArrayList<long[]> columns = findForestColumns();
+        failures += check("Enough forest columns with structures", columns.size() == COLUMNS);
+        failures += check("Generated columns don't change", checkGeneration(columns));
+
+        for (int iteration = 0; iteration < WARMUP_ITERATIONS; iteration++) {
+            generate(columns, false);
+            generate(columns, true);
+        }
+        long transformingTime = 0, preTransformedTime = 0;
+        for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+            transformingTime += generate(columns, false);
+            preTransformedTime += generate(columns, true);
+        }
+
+        int chunkCount = columns.size() * (MAX_CHUNK_Y - MIN_CHUNK_Y) * ITERATIONS;
+        System.out.printf("%d forest columns of %d chunks, transforming while copying %.1fms, pre-transformed %.1fms per column, %.2fx%n",
+                columns.size(), MAX_CHUNK_Y - MIN_CHUNK_Y, transformingTime / 1_000_000.0 / (columns.size() * ITERATIONS),
+                preTransformedTime / 1_000_000.0 / (columns.size() * ITERATIONS), transformingTime / (double) preTransformedTime);
+        System.out.printf("%.1fus per chunk before, %.1fus after%n", transformingTime / 1000.0 / chunkCount, preTransformedTime / 1000.0 / chunkCount);
+
+        StructureCache.Metrics metrics = StructureCache.getMetrics();
+        System.out.printf("%d hits, %d misses, %d evictions, %.1fMiB in %d structures and %d transformed materials%n", metrics.hits(), metrics.misses(),
+                metrics.evictions(), metrics.cachedBytes() / 1048576.0, metrics.decodedStructures(), metrics.transformedMaterials());
+
+        Game.removeTemporaryWorld();
+        ToggleSettings.PRE_TRANSFORMED_STRUCTURES.setValue(previousPreTransformed);
+
+        if (failures != 0) System.err.printf("%d checks failed%n", failures);
+        else System.out.printf("All checks passed%n");
+    }
+
+    private static int check(String name, boolean passed) {
+        if (passed) System.out.printf("[ OK ] %s%n", name);
+        else System.err.printf("[FAIL] %s%n", name);
+        return passed ? 0 : 1;
+    }
+
+    // Copies random boxes of every tree in every transform and lod into a chunk sized buffer the same way generation does
+    private static boolean checkCopies() {
+        Random random = new Random(SEED);
+        byte[] transforming = new byte[CHUNK_SIZE * CHUNK_SIZE * CHUNK_SIZE], preTransformed = new byte[CHUNK_SIZE * CHUNK_SIZE * CHUNK_SIZE];
+
+        for (StructureCollectionIdentifier collection : COLLECTIONS)
+            for (String structureName : StructureCache.getCollection(collection).getStructureNames()) {
+                Structure structure = StructureCache.get(structureName);
+                for (int copy = 0; copy < COPIES_PER_STRUCTURE; copy++) {
+                    byte transform = (byte) (copy & Structure.ALL_TRANSFORMS);
+                    int lod = random.nextInt(MAX_COPY_LOD + 1);
+                    int[] box = randomBox(random, structure, transform, lod);
+                    // Something to not be overridden by air
+                    byte background = (byte) random.nextInt(1, 64);
+
+                    Arrays.fill(transforming, background);
+                    Arrays.fill(preTransformed, background);
+                    copy(transforming, structure, transform, lod, box, false);
+                    copy(preTransformed, structure, transform, lod, box, true);
+                    if (!Arrays.equals(transforming, preTransformed)) return false;
+                }
+            }
+        return true;
+    }
+
+    private static boolean checkGeneration(ArrayList<long[]> columns) {
+        for (long[] column : columns) {
+            ArrayList<byte[]> transforming = generateColumn(column, false);
+            ArrayList<byte[]> preTransformed = generateColumn(column, true);
+            for (int index = 0; index < transforming.size(); index++)
+                if (!Arrays.equals(transforming.get(index), preTransformed.get(index))) return false;
+        }
+        return true;
+    }
+
+    private static ArrayList<long[]> findForestColumns() {
+        ArrayList<long[]> columns = new ArrayList<>();
+        for (int chunkX = 0; chunkX < SEARCHED_CHUNKS_XZ && columns.size() < COLUMNS; chunkX += 3)
+            for (int chunkZ = 0; chunkZ < SEARCHED_CHUNKS_XZ && columns.size() < COLUMNS; chunkZ += 3)
+                if (new GenerationData(chunkX, chunkZ, 0).hasStructures()) columns.add(new long[]{chunkX, chunkZ});
+        return columns;
+    }
+
+    private static long generate(ArrayList<long[]> columns, boolean preTransformed) {
+        long start = System.nanoTime();
+        for (long[] column : columns) generateColumn(column, preTransformed);
+        return System.nanoTime() - start;
+    }
+
+    private static ArrayList<byte[]> generateColumn(long[] column, boolean preTransformed) {
+        ToggleSettings.PRE_TRANSFORMED_STRUCTURES.setValue(preTransformed);
+        GenerationData data = new GenerationData(column[0], column[1], 0);
+        ArrayList<byte[]> materials = new ArrayList<>();
+
+        for (int chunkY = MIN_CHUNK_Y; chunkY < MAX_CHUNK_Y; chunkY++) {
+            Chunk chunk = new Chunk(column[0], chunkY, column[1], 0);
+            WorldGeneration.generate(chunk, data);
+            materials.add(chunk.getMaterials().getBytes());
+        }
+        return materials;
+    }
+
+    private static void copy(byte[] target, Structure structure, byte transform, int lod, int[] box, boolean preTransformed) {
+        ToggleSettings.PRE_TRANSFORMED_STRUCTURES.setValue(preTransformed);
+        MaterialsData.fillStructureMaterialsInto(target, structure, transform, lod, new Vector3i(box[0], box[1], box[2]),
+                new Vector3i(box[3], box[4], box[5]), new Vector3i(box[6], box[7], box[8]), false);
+    }
+
+    // Target start, source start and size of a copy that fits into a chunk, like the ones of GenerationData.storeStructure
+    private static int[] randomBox(Random random, Structure structure, byte transform, int lod) {
+        int[] box = new int[9];
+        int[] sizes = {structure.sizeX(transform), structure.sizeY(), structure.sizeZ(transform)};
+        for (int axis = 0; axis < 3; axis++) {
+            int inChunk = random.nextInt(CHUNK_SIZE);
+            int sourceStart = random.nextInt(sizes[axis]);
+            box[axis] = inChunk;
+            box[axis + 3] = sourceStart;
+            box[axis + 6] = Math.min(sizes[axis] - sourceStart, CHUNK_SIZE - inChunk << lod);
+        }
+        return box;
+    }
+
+    private StructureGenerationTester() {
+
+    }
+}
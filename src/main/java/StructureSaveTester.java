@@ -0,0 +1,79 @@
+import game.server.Chunk;
+import game.server.Game;
+import game.server.World;
+import game.server.generation.GenerationData;
+import game.server.generation.WorldGeneration;
+import game.server.materials_data.MaterialsData;
+import game.settings.IntSettings;
+
+import java.util.Arrays;
+
+import static game.utils.Constants.*;
+
+public final class StructureSaveTester {
+
+    private static final int STRUCTURE_SIZE = 512;
+    private static final int STRUCTURE_SIZE_BITS = 9;
+    // Not chunk aligned, so the box touches partial chunks on every side
+    private static final long MIN_X = (28L << CHUNK_SIZE_BITS) + 17;
+    private static final long MIN_Y = (-4L << CHUNK_SIZE_BITS) + 5;
+    private static final long MIN_Z = (116L << CHUNK_SIZE_BITS) + 41;
+    private static final int ITERATIONS = 5;
+
+    public static void main(String[] args) {
+        IntSettings.RENDER_DISTANCE.setValue(3);
+        World world = new World(0x9EF6E7FAF3299DDDL);
+        Game.setTemporaryWorld(world);
+        generateChunks(world);
+
+        byte[] perVoxel = new byte[1 << STRUCTURE_SIZE_BITS * 3];
+        byte[] batched = new byte[1 << STRUCTURE_SIZE_BITS * 3];
+
+        // Warmup
+        capturePerVoxel(world, perVoxel);
+        world.fillMaterialsInto(batched, MIN_X, MIN_Y, MIN_Z, STRUCTURE_SIZE, STRUCTURE_SIZE, STRUCTURE_SIZE, 0);
+        if (!Arrays.equals(perVoxel, batched)) System.err.println("Batched capture differs from per voxel capture");
+
+        long perVoxelTime = 0, batchedTime = 0;
+        for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+            long start = System.nanoTime();
+            capturePerVoxel(world, perVoxel);
+            perVoxelTime += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            world.fillMaterialsInto(batched, MIN_X, MIN_Y, MIN_Z, STRUCTURE_SIZE, STRUCTURE_SIZE, STRUCTURE_SIZE, 0);
+            batchedTime += System.nanoTime() - start;
+        }
+
+        System.out.printf("Capturing %d³ voxels per voxel: %dms average%n", STRUCTURE_SIZE, perVoxelTime / 1_000_000 / ITERATIONS);
+        System.out.printf("Capturing %d³ voxels batched:   %dms average%n", STRUCTURE_SIZE, batchedTime / 1_000_000 / ITERATIONS);
+        System.out.printf("Speedup: %.2fx%n", (double) perVoxelTime / Math.max(1, batchedTime));
+        Game.removeTemporaryWorld();
+    }
+
+    private static void generateChunks(World world) {
+        for (long chunkX = MIN_X >> CHUNK_SIZE_BITS; chunkX <= MIN_X + STRUCTURE_SIZE - 1 >> CHUNK_SIZE_BITS; chunkX++)
+            for (long chunkZ = MIN_Z >> CHUNK_SIZE_BITS; chunkZ <= MIN_Z + STRUCTURE_SIZE - 1 >> CHUNK_SIZE_BITS; chunkZ++) {
+                GenerationData generationData = new GenerationData(chunkX, chunkZ, 0);
+                for (long chunkY = MIN_Y >> CHUNK_SIZE_BITS; chunkY <= MIN_Y + STRUCTURE_SIZE - 1 >> CHUNK_SIZE_BITS; chunkY++) {
+                    Chunk chunk = new Chunk(chunkX, chunkY, chunkZ, 0);
+                    WorldGeneration.generate(chunk, generationData);
+                    world.storeChunk(chunk);
+                }
+            }
+    }
+
+    // The way /structure save captured the selection before
+    private static void capturePerVoxel(World world, byte[] uncompressedMaterials) {
+        for (int structureX = 0; structureX < STRUCTURE_SIZE; structureX++)
+            for (int structureY = 0; structureY < STRUCTURE_SIZE; structureY++)
+                for (int structureZ = 0; structureZ < STRUCTURE_SIZE; structureZ++) {
+                    byte material = world.getMaterial(MIN_X + structureX, MIN_Y + structureY, MIN_Z + structureZ, 0);
+                    uncompressedMaterials[MaterialsData.getUncompressedIndex(structureX, structureY, structureZ)] = material;
+                }
+    }
+
+    private StructureSaveTester() {
+
+    }
+}
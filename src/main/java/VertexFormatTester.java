@@ -0,0 +1,91 @@
+import game.player.rendering.VertexFormat;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public final class VertexFormatTester {
+
+    private static final int CHUNK_SIZE = 64;
+    private static final int RANDOM_FACES = 1_000_000;
+    // Roughly the faces of a busy chunk
+    private static final int FACES_PER_MESH = 6_000;
+    private static final int MESH_COUNT = 200;
+
+    public static void main(String[] args) {
+        int failures = 0;
+        failures += check("Every in chunk position survives packing", checkPositions());
+        failures += check("Every face data field survives packing", checkFaceData());
+        failures += check("Compact meshes expand to the wide layout", checkMeshes());
+
+        if (failures != 0) System.err.printf("%d checks failed%n", failures);
+        else System.out.printf("All checks passed%n");
+
+        long faces = (long) FACES_PER_MESH * MESH_COUNT;
+        long wideBytes = faces * VertexFormat.INTS_PER_WIDE_VERTEX * Integer.BYTES;
+        long compactBytes = faces * VertexFormat.INTS_PER_COMPACT_VERTEX * Integer.BYTES;
+        System.out.printf("%d meshes of %d faces: wide %.1fMB, compact %.1fMB (%.0f%% saved)%n", MESH_COUNT, FACES_PER_MESH,
+                wideBytes / 1e6, compactBytes / 1e6, 100.0 - 100.0 * compactBytes / wideBytes);
+    }
+
+    private static int check(String name, boolean passed) {
+        if (passed) System.out.printf("[ OK ] %s%n", name);
+        else System.err.printf("[FAIL] %s%n", name);
+        return passed ? 0 : 1;
+    }
+
+    private static boolean checkPositions() {
+        for (int x = 0; x < CHUNK_SIZE; x++)
+            for (int y = 0; y < CHUNK_SIZE; y++)
+                for (int z = 0; z < CHUNK_SIZE; z++) {
+                    int position = VertexFormat.packPosition(x, y, z);
+                    if (VertexFormat.getX(position) != x || VertexFormat.getY(position) != y || VertexFormat.getZ(position) != z) return false;
+                }
+        return true;
+    }
+
+    private static boolean checkFaceData() {
+        Random random = new Random(0x5EED);
+        for (int face = 0; face < RANDOM_FACES; face++) {
+            int properties = random.nextInt(256), side = random.nextInt(6);
+            int faceSize1 = random.nextInt(CHUNK_SIZE), faceSize2 = random.nextInt(CHUNK_SIZE);
+            byte material = (byte) random.nextInt(256);
+
+            int faceData = VertexFormat.packFaceData(properties, faceSize1, faceSize2, side, material);
+            if (VertexFormat.getProperties(faceData) != properties || VertexFormat.getSide(faceData) != side
+                    || VertexFormat.getFaceSize1(faceData) != faceSize1 || VertexFormat.getFaceSize2(faceData) != faceSize2
+                    || VertexFormat.getMaterial(faceData) != material) return false;
+        }
+        return true;
+    }
+
+    // Builds every mesh in both layouts the way MeshGenerator does, including negative chunk coordinates
+    private static boolean checkMeshes() {
+        Random random = new Random(0xC0FFEE);
+        for (int mesh = 0; mesh < MESH_COUNT; mesh++) {
+            int originX = (random.nextInt(1 << 20) - (1 << 19)) * CHUNK_SIZE;
+            int originY = (random.nextInt(1 << 10) - (1 << 9)) * CHUNK_SIZE;
+            int originZ = (random.nextInt(1 << 20) - (1 << 19)) * CHUNK_SIZE;
+            int[] wide = new int[FACES_PER_MESH * VertexFormat.INTS_PER_WIDE_VERTEX];
+            int[] compact = new int[FACES_PER_MESH * VertexFormat.INTS_PER_COMPACT_VERTEX];
+
+            for (int face = 0; face < FACES_PER_MESH; face++) {
+                int x = random.nextInt(CHUNK_SIZE), y = random.nextInt(CHUNK_SIZE), z = random.nextInt(CHUNK_SIZE);
+                int faceData = VertexFormat.packFaceData(random.nextInt(256), random.nextInt(CHUNK_SIZE), random.nextInt(CHUNK_SIZE),
+                        random.nextInt(6), (byte) random.nextInt(256));
+
+                wide[face * 4] = originX | x;
+                wide[face * 4 + 1] = originY | y;
+                wide[face * 4 + 2] = originZ | z;
+                wide[face * 4 + 3] = faceData;
+                compact[face * 2] = VertexFormat.packPosition(x, y, z);
+                compact[face * 2 + 1] = faceData;
+            }
+            if (!Arrays.equals(wide, VertexFormat.toWide(compact, originX, originY, originZ))) return false;
+        }
+        return true;
+    }
+
+    private VertexFormatTester() {
+
+    }
+}
@@ -0,0 +1,253 @@
+import core.utils.IntArrayList;
+import core.utils.Vector3l;
+
+import game.player.rendering.AABB;
+import game.player.rendering.OpaqueModel;
+import game.player.rendering.TransparentModel;
+import game.player.rendering.VisibilityComputer;
+import game.server.Game;
+import game.server.World;
+import game.settings.IntSettings;
+import game.utils.Utils;
+
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static game.utils.Constants.*;
+
+public final class VisibilityBenchmark {
+
+    private static final int RENDER_DISTANCE = 32;
+    private static final int LOD_COUNT = 6;
+    // Chunks above and below the camera that have models, the terrain band in the middle of them isn't empty
+    private static final int MODEL_HEIGHT = 6;
+    private static final int TERRAIN_HEIGHT = 2;
+    private static final int WARMUP_FRAMES = 100;
+    private static final int FRAMES = 600;
+    // Blocks per frame, fast enough to cross a few chunk borders
+    private static final int CAMERA_SPEED = 1;
+    private static final float YAW_PER_FRAME = 0.01f;
+    private static final float FIELD_OF_VIEW = (float) Math.toRadians(90);
+    private static final float ASPECT_RATIO = 16.0f / 9.0f;
+
+    public static void main(String[] args) {
+        int previousRenderDistance = IntSettings.RENDER_DISTANCE.value(), previousLodCount = IntSettings.LOD_COUNT.value();
+        IntSettings.RENDER_DISTANCE.setValue(RENDER_DISTANCE);
+        IntSettings.LOD_COUNT.setValue(LOD_COUNT);
+        Game.setTemporaryWorld(new World(0x9EF6E7FAF3299DDDL));
+
+        SyntheticModels models = new SyntheticModels();
+        System.out.printf("Render distance %d, %d lods, %d models%n", RENDER_DISTANCE, LOD_COUNT, models.modelCount);
+
+        int failures = 0;
+        for (boolean occlusionCulling : new boolean[]{false, true}) {
+            System.out.printf("%nOcclusion culling %s%n", occlusionCulling ? "enabled" : "disabled");
+            failures += check("Parallel and sequential commands are equal", checkParallelMatchesSequential(models, occlusionCulling));
+            failures += check("Reused commands are equal to generated ones", checkCacheMatchesFresh(models, occlusionCulling));
+
+            measure("Sequential", models, occlusionCulling, false);
+            measure("Parallel", models, occlusionCulling, true);
+        }
+
+        Game.removeTemporaryWorld();
+        IntSettings.RENDER_DISTANCE.setValue(previousRenderDistance);
+        IntSettings.LOD_COUNT.setValue(previousLodCount);
+
+        if (failures != 0) System.err.printf("%d checks failed%n", failures);
+        else System.out.printf("%nAll checks passed%n");
+    }
+
+    private static int check(String name, boolean passed) {
+        if (passed) System.out.printf("[ OK ] %s%n", name);
+        else System.err.printf("[FAIL] %s%n", name);
+        return passed ? 0 : 1;
+    }
+
+    private static boolean checkParallelMatchesSequential(SyntheticModels models, boolean occlusionCulling) {
+        VisibilityComputer sequential = new VisibilityComputer(models);
+        VisibilityComputer parallel = new VisibilityComputer(models);
+        for (int frame = 0; frame < WARMUP_FRAMES; frame++) {
+            Camera camera = new Camera(frame);
+            sequential.computeVisibility(camera.intersection, null, camera.x, camera.y, camera.z, occlusionCulling, false);
+            parallel.computeVisibility(camera.intersection, null, camera.x, camera.y, camera.z, occlusionCulling, true);
+            if (!outputsEqual(sequential, parallel)) return false;
+        }
+        return true;
+    }
+
+    // Swaps models between frames like meshing would, a fresh computer can't reuse anything
+    private static boolean checkCacheMatchesFresh(SyntheticModels models, boolean occlusionCulling) {
+        VisibilityComputer cached = new VisibilityComputer(models);
+        Random random = new Random(0xCAC4E);
+        for (int frame = 0; frame < WARMUP_FRAMES; frame++) {
+            Camera camera = new Camera(frame);
+            models.remeshRandomModels(random);
+            cached.computeVisibility(camera.intersection, null, camera.x, camera.y, camera.z, occlusionCulling, true);
+
+            VisibilityComputer fresh = new VisibilityComputer(models);
+            fresh.computeVisibility(camera.intersection, null, camera.x, camera.y, camera.z, occlusionCulling, false);
+            if (!outputsEqual(cached, fresh)) return false;
+        }
+        return true;
+    }
+
+    private static void measure(String name, SyntheticModels models, boolean occlusionCulling, boolean parallel) {
+        VisibilityComputer computer = new VisibilityComputer(models);
+        for (int frame = 0; frame < WARMUP_FRAMES; frame++) {
+            Camera camera = new Camera(frame);
+            computer.computeVisibility(camera.intersection, null, camera.x, camera.y, camera.z, occlusionCulling, parallel);
+        }
+
+        long[] frameTimes = new long[FRAMES];
+        long reused = 0, generated = 0;
+        for (int frame = 0; frame < FRAMES; frame++) {
+            Camera camera = new Camera(WARMUP_FRAMES + frame);
+            long start = System.nanoTime();
+            computer.computeVisibility(camera.intersection, null, camera.x, camera.y, camera.z, occlusionCulling, parallel);
+            frameTimes[frame] = System.nanoTime() - start;
+            reused += computer.getReusedModelCount();
+            generated += computer.getGeneratedModelCount();
+        }
+
+        Arrays.sort(frameTimes);
+        System.out.printf("%-10s average %.2fms, median %.2fms, p99 %.2fms, %.1f%% of visible models reused%n", name,
+                Arrays.stream(frameTimes).average().orElse(0) / 1_000_000, frameTimes[FRAMES / 2] / 1_000_000.0,
+                frameTimes[FRAMES * 99 / 100] / 1_000_000.0, 100.0 * reused / Math.max(1, reused + generated));
+    }
+
+    private static boolean outputsEqual(VisibilityComputer first, VisibilityComputer second) {
+        if (!listsEqual(first.getOpaqueCommands(), second.getOpaqueCommands())) return false;
+        if (!listsEqual(first.getTransparentCommands(), second.getTransparentCommands())) return false;
+        if (!listsEqual(first.getGlassCommands(), second.getGlassCommands())) return false;
+        if (!listsEqual(first.getOccludees(), second.getOccludees())) return false;
+        if (!listsEqual(first.getOccluders(), second.getOccluders())) return false;
+
+        for (int lod = 0; lod < LOD_COUNT; lod++) {
+            if (!Arrays.equals(first.getVisibilityBits(lod), second.getVisibilityBits(lod))) return false;
+            for (int commandType = VisibilityComputer.OPAQUE; commandType <= VisibilityComputer.GLASS; commandType++)
+                if (first.getLodStart(lod, commandType) != second.getLodStart(lod, commandType)
+                        || first.getLodDrawCount(lod, commandType) != second.getLodDrawCount(lod, commandType)) return false;
+        }
+        return true;
+    }
+
+    private static boolean listsEqual(IntArrayList first, IntArrayList second) {
+        return Arrays.equals(first.getData(), 0, first.size(), second.getData(), 0, second.size());
+    }
+
+    private VisibilityBenchmark() {
+
+    }
+
+    /**
+     * Walks in a straight line while slowly turning around, the frustum is relative to the camera position.
+     */
+    private static final class Camera {
+
+        private Camera(int frame) {
+            x = (long) frame * CAMERA_SPEED;
+            y = CHUNK_SIZE / 2;
+            z = (long) frame * CAMERA_SPEED / 3;
+
+            Matrix4f projectionView = new Matrix4f()
+                    .perspective(FIELD_OF_VIEW, ASPECT_RATIO, 0.1f, Float.POSITIVE_INFINITY)
+                    .rotateX(0.2f)
+                    .rotateY(frame * YAW_PER_FRAME);
+            intersection = new FrustumIntersection(projectionView);
+        }
+
+        private final long x, y, z;
+        private final FrustumIntersection intersection;
+    }
+
+    /**
+     * Every chunk within render distance around the start of the camera has a model, like a fully loaded world.
+     */
+    private static final class SyntheticModels implements VisibilityComputer.ModelSource {
+
+        private SyntheticModels() {
+            int chunksPerLod = Game.getWorld().CHUNKS_PER_LOD;
+            opaqueModels = new OpaqueModel[LOD_COUNT][chunksPerLod];
+            transparentModels = new TransparentModel[LOD_COUNT][chunksPerLod];
+            occludees = new AABB[LOD_COUNT][chunksPerLod];
+            occluders = new AABB[LOD_COUNT][chunksPerLod];
+
+            Random random = new Random(0x5EED);
+            int keepDistance = RENDER_DISTANCE + 1;
+            for (int lod = 0; lod < LOD_COUNT; lod++)
+                for (long chunkX = -keepDistance; chunkX <= keepDistance; chunkX++)
+                    for (long chunkY = -MODEL_HEIGHT; chunkY <= MODEL_HEIGHT; chunkY++)
+                        for (long chunkZ = -keepDistance; chunkZ <= keepDistance; chunkZ++) {
+                            int chunkIndex = Utils.getChunkIndex(chunkX, chunkY, chunkZ, lod);
+                            boolean isTerrain = Math.abs(chunkY) <= TERRAIN_HEIGHT;
+                            store(chunkIndex, chunkX, chunkY, chunkZ, lod, isTerrain, random);
+                            occludees[lod][chunkIndex] = AABB.newMaxChunkAABB();
+                            occluders[lod][chunkIndex] = isTerrain ? AABB.newMaxChunkAABB() : null;
+                            modelCount++;
+                        }
+        }
+
+        @Override
+        public OpaqueModel getOpaqueModel(int chunkIndex, int lod) {
+            return opaqueModels[lod][chunkIndex];
+        }
+
+        @Override
+        public TransparentModel getTransparentModel(int chunkIndex, int lod) {
+            return transparentModels[lod][chunkIndex];
+        }
+
+        @Override
+        public AABB getOccluder(int chunkIndex, int lod) {
+            return occluders[lod][chunkIndex];
+        }
+
+        @Override
+        public AABB getOccludee(int chunkIndex, int lod) {
+            return occludees[lod][chunkIndex];
+        }
+
+        @Override
+        public boolean isModelPresent(long lodModelX, long lodModelY, long lodModelZ, int lod) {
+            return getOpaqueModel(Utils.getChunkIndex(lodModelX, lodModelY, lodModelZ, lod), lod) != null;
+        }
+
+        @Override
+        public boolean isIsolated(long chunkX, long chunkY, long chunkZ, int lod) {
+            return false;
+        }
+
+        // About as many models are replaced per frame as the mesh upload budget allows
+        private void remeshRandomModels(Random random) {
+            for (int model = 0; model < 64; model++) {
+                int lod = random.nextInt(LOD_COUNT);
+                int chunkIndex = random.nextInt(opaqueModels[lod].length);
+                OpaqueModel opaqueModel = opaqueModels[lod][chunkIndex];
+                if (opaqueModel == null) continue;
+                store(chunkIndex, opaqueModel.chunkX(), opaqueModel.chunkY(), opaqueModel.chunkZ(), lod, !opaqueModel.isEmpty(), random);
+            }
+        }
+
+        private void store(int chunkIndex, long chunkX, long chunkY, long chunkZ, int lod, boolean isTerrain, Random random) {
+            Vector3l position = new Vector3l(chunkX << CHUNK_SIZE_BITS, chunkY << CHUNK_SIZE_BITS, chunkZ << CHUNK_SIZE_BITS);
+            int[] vertexCounts = null;
+            if (isTerrain) {
+                vertexCounts = new int[OpaqueModel.FACE_COUNT];
+                for (int side = 0; side < OpaqueModel.FACE_COUNT; side++) vertexCounts[side] = random.nextInt(1, 4096) * 6;
+            }
+            int start = nextStart;
+            nextStart += 1 << 10;
+            opaqueModels[lod][chunkIndex] = new OpaqueModel(position, vertexCounts, start, lod, false);
+            transparentModels[lod][chunkIndex] = new TransparentModel(position, isTerrain ? random.nextInt(64) * 6 : 0, 0, start, lod);
+        }
+
+        private final OpaqueModel[][] opaqueModels;
+        private final TransparentModel[][] transparentModels;
+        private final AABB[][] occludees, occluders;
+        private int modelCount = 0;
+        private int nextStart = 0;
+    }
+}
@@ -21,6 +21,12 @@ public final class ByteArrayList {
         size += values.length;
     }
 
+    public void add(byte[] values, int startIndex, int length) {
+        if (size + length > data.length) growToMatch(Math.max(data.length << 1, size + length));
+        System.arraycopy(values, startIndex, data, size, length);
+        size += length;
+    }
+
     public void copyInto(byte[] target, int startIndex) {
         System.arraycopy(data, 0, target, startIndex, size);
     }
@@ -61,6 +67,10 @@ public final class ByteArrayList {
         size = 0;
     }
 
+    public void truncate(int size) {
+        this.size = size;
+    }
+
 
     private void grow() {
         byte[] newData = new byte[Math.max(data.length << 1, size)];
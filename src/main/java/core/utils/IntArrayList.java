@@ -1,5 +1,7 @@
 package core.utils;
 
+import java.nio.IntBuffer;
+
 /**
  * {@code ArrayList<Integer>} is nice and all but the performance sucks compared to this.
  */
@@ -19,6 +21,13 @@ public final class IntArrayList {
         size++;
     }
 
+    public void addAll(IntArrayList other, int start, int end) {
+        int length = end - start;
+        while (size + length > data.length) grow();
+        System.arraycopy(other.data, start, data, size, length);
+        size += length;
+    }
+
     public void clear() {
         size = 0;
     }
@@ -27,6 +36,10 @@ public final class IntArrayList {
         System.arraycopy(data, 0, target, startIndex, size);
     }
 
+    public void copyInto(IntBuffer target) {
+        target.put(data, 0, size);
+    }
+
     public int size() {
         return size;
     }
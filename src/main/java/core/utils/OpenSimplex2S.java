@@ -1,5 +1,14 @@
 package core.utils;
 
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
 /**
  * K.jpg's OpenSimplex 2, smooth variant ("SuperSimplex")
  *
@@ -42,6 +51,10 @@ public class OpenSimplex2S {
     private static final float RSQUARED_3D = 3.0f / 4.0f;
     private static final float RSQUARED_4D = 4.0f / 5.0f;
 
+    // Short circuits before touching the Vectorized class, which can't be loaded without the module
+    private static final boolean VECTOR_API_SUPPORTED = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent() && Vectorized.isSupported();
+    private static volatile boolean vectorized = VECTOR_API_SUPPORTED;
+
     /*
      * Noise Evaluators
      */
@@ -206,6 +219,38 @@ public class OpenSimplex2S {
         return noise3_UnrotatedBase(seed, xr, yr, zr);
     }
 
+    /**
+     * Batched noise3_ImproveXY for the first {@code count} points of {@code x} and {@code y} at a shared Z coordinate.
+     * Writes exactly the values the scalar version would return into {@code result}.
+     * Uses the Vector API if the jdk.incubator.vector module is present and the cpu has wide enough vectors,
+     * the points that don't fill a whole vector are evaluated one by one.
+     */
+    public static void noise3_ImproveXY(long seed, double[] x, double[] y, double z, float[] result, int count) {
+        double zz = z * ROOT3OVER3;
+        int start = vectorized ? Vectorized.noise3_ImproveXY(seed, x, y, zz, result, count) : 0;
+
+        for (int index = start; index < count; index++) {
+            double xy = x[index] + y[index];
+            double s2 = xy * ROTATE3_ORTHOGONALIZER;
+            double xr = x[index] + s2 + zz;
+            double yr = y[index] + s2 + zz;
+            double zr = xy * -ROOT3OVER3 + zz;
+
+            result[index] = noise3_UnrotatedBase(seed, xr, yr, zr);
+        }
+    }
+
+    public static boolean isVectorized() {
+        return vectorized;
+    }
+
+    /**
+     * Switches the batched noise between the Vector API and the scalar version, only has an effect if the Vector API is supported.
+     */
+    public static void setVectorized(boolean vectorized) {
+        OpenSimplex2S.vectorized = vectorized && VECTOR_API_SUPPORTED;
+    }
+
     /**
      * 3D OpenSimplex2S/SuperSimplex noise, with better visual isotropy in (X, Z).
      * Recommended for 3D terrain and time-varied animations.
@@ -1126,4 +1171,223 @@ public class OpenSimplex2S {
             this.dw = -wsv - ssv;
         }
     }
+
+    /**
+     * noise3_UnrotatedBase for as many points at once as the cpu has 64 bit lanes.
+     * Every lane goes through the same float operations in the same order as the scalar version, vertices a lane
+     * wouldn't visit are masked out instead of branched around, so the results are bit identical.
+     * <p>
+     * The work is split into small passes over all points, which hand their results to each other through per thread
+     * buffers. The jit stops inlining once a method grows too large, and every vector that crosses a call that didn't
+     * get inlined is boxed, so no pass calls anything but the Vector API itself. Passes are also kept too large to get
+     * inlined into noise3_ImproveXY, where the Vector API calls stop getting compiled to vector instructions.
+     */
+    private static final class Vectorized {
+
+        static boolean isSupported() {
+            return LONG.length() >= MIN_LANES;
+        }
+
+        /**
+         * @return The number of points that got evaluated, always a multiple of the lane count
+         */
+        static int noise3_ImproveXY(long seed, double[] x, double[] y, double zz, float[] result, int count) {
+            int upperBound = DOUBLE.loopBound(count);
+            if (upperBound == 0) return 0;
+            Buffers buffers = BUFFERS.get().ensureCapacity(upperBound);
+            Axis[] axes = buffers.axes;
+            long seed2 = seed ^ SEED_FLIP_3D;
+
+            rotate(axes, x, y, zz, upperBound);
+            java.util.Arrays.fill(buffers.a0, 0, upperBound, RSQUARED_3D);
+            java.util.Arrays.fill(buffers.a1, 0, upperBound, RSQUARED_3D);
+            for (int axis = 0; axis < 3; axis++) lattice(axes[axis], PRIMES[axis], buffers.a0, buffers.a1, upperBound);
+            axisFalloffs(buffers, upperBound);
+
+            // Starting at -0 keeps the sign of the first contribution, the same as assigning it
+            java.util.Arrays.fill(result, 0, upperBound, -0.0f);
+            addVertex(buffers, buffers.a0, Float.NEGATIVE_INFINITY, seed, LOW, LOW, LOW, result, upperBound);
+            addVertex(buffers, buffers.a1, Float.NEGATIVE_INFINITY, seed2, ONE, ONE, ONE, result, upperBound);
+
+            // Vertices 2, 3 and 4 of the scalar version for x, 6, 7 and 8 for y and A, B and C for z
+            for (int axis = 0; axis < 3; axis++) {
+                float[][] falloffs = buffers.falloffs[axis];
+                addVertex(buffers, falloffs[0], 0.0f, seed, option(axis, 0, HIGH, LOW), option(axis, 1, HIGH, LOW), option(axis, 2, HIGH, LOW), result, upperBound);
+                addVertex(buffers, falloffs[1], 0.0f, seed, option(axis, 0, LOW, HIGH), option(axis, 1, LOW, HIGH), option(axis, 2, LOW, HIGH), result, upperBound);
+                addVertex(buffers, falloffs[2], 0.0f, seed2, option(axis, 0, TWO, ONE), option(axis, 1, TWO, ONE), option(axis, 2, TWO, ONE), result, upperBound);
+            }
+            // Vertices 5, 9 and D, which come after all others
+            for (int axis = 0; axis < 3; axis++)
+                addVertex(buffers, buffers.falloffs[axis][3], 0.0f, seed2, option(axis, 0, ONE, TWO), option(axis, 1, ONE, TWO), option(axis, 2, ONE, TWO), result, upperBound);
+            return upperBound;
+        }
+
+
+        private static int option(int primaryAxis, int axis, int primaryOption, int otherOption) {
+            return axis == primaryAxis ? primaryOption : otherOption;
+        }
+
+        // Plain loop, the jit vectorizes it on its own
+        private static void rotate(Axis[] axes, double[] x, double[] y, double zz, int upperBound) {
+            double[] xr = axes[0].r, yr = axes[1].r, zr = axes[2].r;
+            for (int index = 0; index < upperBound; index++) {
+                double xy = x[index] + y[index];
+                double s2 = xy * ROTATE3_ORTHOGONALIZER;
+                xr[index] = x[index] + s2 + zz;
+                yr[index] = y[index] + s2 + zz;
+                zr[index] = xy * -ROOT3OVER3 + zz;
+            }
+        }
+
+        // Everything noise3_UnrotatedBase derives from a single coordinate, also subtracts its part of the falloffs of vertices 0 and 1
+        private static void lattice(Axis axis, long prime, float[] a0, float[] a1, int upperBound) {
+            for (int index = 0; index < upperBound; index += LANES) {
+                DoubleVector r = DoubleVector.fromArray(DOUBLE, axis.r, index);
+                IntVector rb = (IntVector) r.convertShape(VectorOperators.D2I, INT, 0);
+                rb = rb.sub(1, r.compare(VectorOperators.LT, (DoubleVector) rb.convertShape(VectorOperators.I2D, DOUBLE, 0)).cast(INT));
+                FloatVector i = (FloatVector) r.sub((DoubleVector) rb.convertShape(VectorOperators.I2D, DOUBLE, 0)).convertShape(VectorOperators.D2F, FLOAT, 0);
+
+                LongVector rbp = ((LongVector) rb.convertShape(VectorOperators.I2L, LONG, 0)).mul(prime);
+                IntVector nMask = (IntVector) FloatVector.broadcast(FLOAT, -0.5f).sub(i).convertShape(VectorOperators.F2I, INT, 0);
+                LongVector nMaskLong = (LongVector) nMask.convertShape(VectorOperators.I2L, LONG, 0);
+                rbp.add(nMaskLong.and(prime)).intoArray(axis.hashes[LOW], index);
+                rbp.add(nMaskLong.not().and(prime)).intoArray(axis.hashes[HIGH], index);
+                rbp.add(prime).intoArray(axis.hashes[ONE], index);
+                rbp.add(nMaskLong.and(prime << 1)).intoArray(axis.hashes[TWO], index);
+
+                // nMask | 1
+                FloatVector sign = (FloatVector) nMask.or(1).convertShape(VectorOperators.I2F, FLOAT, 0);
+                FloatVector d0 = i.add((FloatVector) nMask.convertShape(VectorOperators.I2F, FLOAT, 0));
+                FloatVector d1 = i.sub(0.5f);
+                d0.intoArray(axis.deltas[LOW], index);
+                d0.sub(sign).intoArray(axis.deltas[HIGH], index);
+                d1.intoArray(axis.deltas[ONE], index);
+                sign.add(d1).intoArray(axis.deltas[TWO], index);
+                FloatVector.fromArray(FLOAT, a0, index).sub(d0.mul(d0)).intoArray(a0, index);
+                FloatVector.fromArray(FLOAT, a1, index).sub(d1.mul(d1)).intoArray(a1, index);
+
+                // ((nMask | 1) << 1) * d1 and (-2 - (nMask << 2)) * d1 - 1
+                ((FloatVector) nMask.or(1).lanewise(VectorOperators.LSHL, 1).convertShape(VectorOperators.I2F, FLOAT, 0)).mul(d1).intoArray(axis.flip0, index);
+                ((FloatVector) IntVector.broadcast(INT, -2).sub(nMask.lanewise(VectorOperators.LSHL, 2)).convertShape(VectorOperators.I2F, FLOAT, 0))
+                        .mul(d1).sub(1.0f).intoArray(axis.flip1, index);
+            }
+        }
+
+        // Falloffs of the four vertices of every axis, zero where the scalar version wouldn't visit the vertex
+        private static void axisFalloffs(Buffers buffers, int upperBound) {
+            Axis[] axes = buffers.axes;
+            for (int index = 0; index < upperBound; index += LANES) {
+                FloatVector base0 = FloatVector.fromArray(FLOAT, buffers.a0, index);
+                FloatVector base1 = FloatVector.fromArray(FLOAT, buffers.a1, index);
+
+                for (int axis = 0; axis < 3; axis++) {
+                    Axis primary = axes[axis], second = axes[axis == 0 ? 1 : 0], third = axes[axis == 2 ? 1 : 2];
+                    float[][] falloffs = buffers.falloffs[axis];
+
+                    FloatVector aFirst = FloatVector.fromArray(FLOAT, primary.flip0, index).add(base0);
+                    VectorMask<Float> hasFirst = aFirst.compare(VectorOperators.GT, 0.0f);
+                    FloatVector aSecond = FloatVector.fromArray(FLOAT, second.flip0, index).add(FloatVector.fromArray(FLOAT, third.flip0, index)).add(base0);
+                    FloatVector aThird = FloatVector.fromArray(FLOAT, primary.flip1, index).add(base1);
+                    VectorMask<Float> skipFourth = hasFirst.not().and(aThird.compare(VectorOperators.GT, 0.0f));
+                    FloatVector aFourth = FloatVector.fromArray(FLOAT, second.flip1, index).add(FloatVector.fromArray(FLOAT, third.flip1, index)).add(base1);
+
+                    aFirst.intoArray(falloffs[0], index);
+                    aSecond.blend(0.0f, hasFirst).intoArray(falloffs[1], index);
+                    aThird.blend(0.0f, hasFirst).intoArray(falloffs[2], index);
+                    aFourth.blend(0.0f, skipFourth).intoArray(falloffs[3], index);
+                }
+            }
+        }
+
+        // Adds the contribution of one vertex to every lane with a falloff above the threshold
+        private static void addVertex(Buffers buffers, float[] falloffs, float threshold, long seed, int xOption, int yOption, int zOption, float[] result, int upperBound) {
+            Axis[] axes = buffers.axes;
+            int[] gradientIndices = buffers.gradientIndices;
+            float[] gradientsX = buffers.gradientsX, gradientsY = buffers.gradientsY, gradientsZ = buffers.gradientsZ;
+            long[] xHashes = axes[0].hashes[xOption], yHashes = axes[1].hashes[yOption], zHashes = axes[2].hashes[zOption];
+            float[] xDeltas = axes[0].deltas[xOption], yDeltas = axes[1].deltas[yOption], zDeltas = axes[2].deltas[zOption];
+
+            for (int index = 0; index < upperBound; index += LANES) {
+                FloatVector a = FloatVector.fromArray(FLOAT, falloffs, index);
+                VectorMask<Float> visited = a.compare(VectorOperators.GT, threshold);
+                if (!visited.anyTrue()) continue;
+
+                LongVector hash = LongVector.fromArray(LONG, xHashes, index).lanewise(VectorOperators.XOR, seed)
+                        .lanewise(VectorOperators.XOR, LongVector.fromArray(LONG, yHashes, index).lanewise(VectorOperators.XOR, LongVector.fromArray(LONG, zHashes, index)));
+                hash = hash.mul(HASH_MULTIPLIER);
+                hash = hash.lanewise(VectorOperators.XOR, hash.lanewise(VectorOperators.ASHR, 64 - N_GRADS_3D_EXPONENT + 2));
+                ((IntVector) hash.convertShape(VectorOperators.L2I, INT, 0)).and((N_GRADS_3D - 1) << 2).intoArray(gradientIndices, 0);
+
+                // Looked up one lane at a time, the jit crashes on avx-512 cpus when a method gathers from more than one index array
+                for (int lane = 0; lane < LANES; lane++) {
+                    int gi = gradientIndices[lane];
+                    gradientsX[lane] = GRADIENTS_3D[gi];
+                    gradientsY[lane] = GRADIENTS_3D[gi | 1];
+                    gradientsZ[lane] = GRADIENTS_3D[gi | 2];
+                }
+                FloatVector gradient = FloatVector.fromArray(FLOAT, gradientsX, 0).mul(FloatVector.fromArray(FLOAT, xDeltas, index))
+                        .add(FloatVector.fromArray(FLOAT, gradientsY, 0).mul(FloatVector.fromArray(FLOAT, yDeltas, index)))
+                        .add(FloatVector.fromArray(FLOAT, gradientsZ, 0).mul(FloatVector.fromArray(FLOAT, zDeltas, index)));
+                FloatVector aSquared = a.mul(a);
+                FloatVector.fromArray(FLOAT, result, index).add(aSquared.mul(aSquared).mul(gradient), visited).intoArray(result, index);
+            }
+        }
+
+        // The hashes need 64 bit lanes, everything else uses as many lanes of its own type
+        private static final VectorSpecies<Long> LONG = LongVector.SPECIES_PREFERRED;
+        private static final int LANES = LONG.length();
+        private static final VectorSpecies<Double> DOUBLE = VectorSpecies.of(double.class, LONG.vectorShape());
+        private static final VectorSpecies<Float> FLOAT = VectorSpecies.of(float.class, VectorShape.forBitSize(LANES * Float.SIZE));
+        private static final VectorSpecies<Integer> INT = VectorSpecies.of(int.class, VectorShape.forBitSize(LANES * Integer.SIZE));
+        // Below that the passes cost more than they save over the scalar version
+        private static final int MIN_LANES = 8;
+        private static final long[] PRIMES = {PRIME_X, PRIME_Y, PRIME_Z};
+        private static final ThreadLocal<Buffers> BUFFERS = ThreadLocal.withInitial(Buffers::new);
+
+        // Which lattice point a vertex uses along an axis, the matching delta is at the same index
+        private static final int LOW = 0, HIGH = 1, ONE = 2, TWO = 3;
+
+        // What the passes hand to each other, only ever grows
+        private static final class Buffers {
+
+            Buffers ensureCapacity(int count) {
+                if (a0.length >= count) return this;
+                for (Axis axis : axes) axis.ensureCapacity(count);
+                a0 = new float[count];
+                a1 = new float[count];
+                for (float[][] axisFalloffs : falloffs)
+                    for (int vertex = 0; vertex < axisFalloffs.length; vertex++) axisFalloffs[vertex] = new float[count];
+                return this;
+            }
+
+            private final Axis[] axes = {new Axis(), new Axis(), new Axis()};
+            private float[] a0 = new float[0], a1 = new float[0];
+            // Four vertices for every axis
+            private final float[][][] falloffs = new float[3][4][];
+            // The gradients of the lanes of one vector
+            private final int[] gradientIndices = new int[LANES];
+            private final float[] gradientsX = new float[LANES], gradientsY = new float[LANES], gradientsZ = new float[LANES];
+        }
+
+        private static final class Axis {
+
+            void ensureCapacity(int count) {
+                r = new double[count];
+                for (int option = 0; option < 4; option++) {
+                    hashes[option] = new long[count];
+                    deltas[option] = new float[count];
+                }
+                flip0 = new float[count];
+                flip1 = new float[count];
+            }
+
+            // The rotated coordinate
+            private double[] r;
+            // Prime multiplied lattice coordinates and the offsets to them
+            private final long[][] hashes = new long[4][];
+            private final float[][] deltas = new float[4][];
+            // xAFlipMask0 and xAFlipMask1 of the scalar version, for this axis
+            private float[] flip0, flip1;
+        }
+    }
 }
@@ -0,0 +1,28 @@
+package core.utils;
+
+import java.util.Collection;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+public final class ParallelUtils {
+
+    private ParallelUtils() {
+
+    }
+
+    /**
+     * Runs all tasks on the common pool and returns once every one of them finished.
+     * Exceptions thrown by a task get rethrown in the calling thread.
+     */
+    public static void invokeAll(Collection<? extends ForkJoinTask<?>> tasks) {
+        invokeAll(ForkJoinPool.commonPool(), tasks);
+    }
+
+    /**
+     * Runs all tasks on the given pool and returns once every one of them finished.
+     * Exceptions thrown by a task get rethrown in the calling thread.
+     */
+    public static void invokeAll(ForkJoinPool pool, Collection<? extends ForkJoinTask<?>> tasks) {
+        pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+    }
+}
@@ -18,9 +18,7 @@ public abstract class Saver<T> {
     }
 
     public final void save(T object, String filepath) {
-        data.clear();
-        saveInt(getVersionNumber());
-        save(object);
+        serialize(object);
         File saveFile = FileManager.loadAndCreateFile(filepath);
         try {
             FileOutputStream writer = new FileOutputStream(saveFile);
@@ -42,10 +40,18 @@ public abstract class Saver<T> {
             exception.printStackTrace();
             throw new RuntimeException(exception);
         }
-        currentIndex = 0;
-        int savedVersionNumber = loadInt();
-        if (savedVersionNumber != getVersionNumber()) return loadOldVersion(savedVersionNumber);
-        return load();
+        return deserialize();
+    }
+
+    public final byte[] toBytes(T object) {
+        serialize(object);
+        return data.toArray();
+    }
+
+    public final T fromBytes(byte[] bytes) {
+        if (bytes == null) return getDefault();
+        data.setData(bytes);
+        return deserialize();
     }
 
 
@@ -245,6 +251,19 @@ public abstract class Saver<T> {
         return loadable.load(this);
     }
 
+    private void serialize(T object) {
+        data.clear();
+        saveInt(getVersionNumber());
+        save(object);
+    }
+
+    private T deserialize() {
+        currentIndex = 0;
+        int savedVersionNumber = loadInt();
+        if (savedVersionNumber != getVersionNumber()) return loadOldVersion(savedVersionNumber);
+        return load();
+    }
+
     private int currentIndex;
     private final ByteArrayList data;
 
@@ -0,0 +1,287 @@
+package game.assets;
+
+import core.assets.AssetManager;
+
+import game.server.generation.Structure;
+import game.server.materials_data.MaterialsData;
+import game.server.saving.StructureSaver;
+
+import java.io.File;
+import java.nio.MappedByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps decoded structures and their transformed materials within a memory budget and evicts the least recently used
+ * ones once it is exceeded. Structure files are mapped instead of read, so an evicted structure gets decoded again
+ * straight from its mapping.
+ * <p>
+ * Every structure has up to seven transformed copies of its materials, one per transform except the identity, which
+ * only get built once a structure gets placed with that transform. Copying from them doesn't need to transform
+ * every node and voxel again. The copies belong to the entry of the structure name, so a structure decoded again
+ * after being evicted keeps using them. Structures that aren't cached, or aren't anymore, get transformed every time.
+ * <p>
+ * Looking up a decoded structure or a transformed copy only reads a {@code ConcurrentHashMap} and a volatile field,
+ * so generation threads placing the same trees never wait on each other. Decoding or transforming a structure only
+ * locks its own entry, and eviction has its own lock, which lookups never take. Evicted structures and materials stay
+ * valid for everyone still holding them.
+ */
+public final class StructureCache {
+
+    public static Structure get(String structureName) {
+        Entry entry = ENTRIES.get(structureName);
+        if (entry == null) {
+            // Created outside the map, mapping the file would block every other lookup in the same bin
+            Entry createdEntry = new Entry(structureName);
+            // Nothing would ever remove the entry of a missing file, so those are loaded without being cached
+            if (createdEntry.missing) {
+                MISSES.increment();
+                return createdEntry.decode();
+            }
+            entry = ENTRIES.putIfAbsent(structureName, createdEntry);
+            if (entry == null) entry = createdEntry;
+        }
+        entry.lastUse = System.nanoTime();
+
+        Structure structure = entry.structure;
+        if (structure != null) {
+            HITS.increment();
+            return structure;
+        }
+        return decode(entry);
+    }
+
+    /**
+     * @return The materials of the structure with the transform applied to its whole octree, see {@link MaterialsData#getTransformed(byte)}
+     */
+    public static MaterialsData getTransformedMaterials(Structure structure, byte transform) {
+        if (transform == 0) return structure.materials();
+        Entry entry = OWNERS.get(structure);
+        if (entry == null) {
+            MISSES.increment();
+            return structure.materials().getTransformed(transform);
+        }
+        Variants variants = entry.variants;
+        variants.lastUse = System.nanoTime();
+
+        MaterialsData materials = variants.transformed.get(transform);
+        if (materials != null) {
+            HITS.increment();
+            return materials;
+        }
+        return transform(variants, structure, transform);
+    }
+
+    public static StructureCollection getCollection(StructureCollectionIdentifier identifier) {
+        StructureCollection collection = COLLECTIONS.get(identifier);
+        if (collection != null) return collection;
+        return COLLECTIONS.computeIfAbsent(identifier, StructureCollectionIdentifier::generateAsset);
+    }
+
+    /**
+     * Forgets the structure, its transformed materials and its mapping, so the next lookup reads the file again.
+     * Call this before and after overwriting a structure file.
+     */
+    public static void invalidate(String structureName) {
+        Entry entry = ENTRIES.remove(structureName);
+        if (entry == null) return;
+        entry.remove();
+        entry.variants.remove();
+    }
+
+    public static void clear() {
+        for (String structureName : ENTRIES.keySet()) invalidate(structureName);
+        COLLECTIONS.clear();
+    }
+
+    public static void setByteBudget(long byteBudget) {
+        StructureCache.byteBudget = Math.max(0, byteBudget);
+        evict(null);
+    }
+
+    public static long getByteBudget() {
+        return byteBudget;
+    }
+
+    public static Metrics getMetrics() {
+        int decodedStructures = 0, transformedMaterials = 0;
+        for (Entry entry : ENTRIES.values()) {
+            if (entry.structure != null) decodedStructures++;
+            for (int transform = 1; transform < VARIANT_COUNT; transform++) if (entry.variants.transformed.get(transform) != null) transformedMaterials++;
+        }
+        return new Metrics(HITS.sum(), MISSES.sum(), EVICTIONS.sum(), CACHED_BYTES.get(), decodedStructures, transformedMaterials);
+    }
+
+
+    private static Structure decode(Entry entry) {
+        Structure structure;
+        synchronized (entry) {
+            structure = entry.structure;
+            if (structure != null) {
+                HITS.increment();
+                return structure;
+            }
+            structure = entry.decode();
+            // Invalidated while decoding, so nothing would ever release it again
+            if (entry.removed) return structure;
+            entry.structure = structure;
+            OWNERS.put(structure, entry);
+            entry.addBytes(getByteSize(structure.materials()));
+        }
+        MISSES.increment();
+        // Outside the lock of the entry, as eviction locks other entries
+        if (CACHED_BYTES.get() > byteBudget) evict(entry);
+        return structure;
+    }
+
+    private static MaterialsData transform(Variants variants, Structure structure, byte transform) {
+        MaterialsData materials;
+        synchronized (variants) {
+            materials = variants.transformed.get(transform);
+            if (materials != null) {
+                HITS.increment();
+                return materials;
+            }
+            materials = structure.materials().getTransformed(transform);
+            if (variants.removed) return materials;
+            variants.transformed.set(transform, materials);
+            variants.addBytes(getByteSize(materials));
+        }
+        MISSES.increment();
+        if (CACHED_BYTES.get() > byteBudget) evict(variants);
+        return materials;
+    }
+
+    private static void evict(CachedEntry keep) {
+        synchronized (EVICTION_LOCK) {
+            // Lookups keep updating the last uses, so they are copied before sorting
+            ArrayList<Candidate> candidates = new ArrayList<>();
+            for (Entry entry : ENTRIES.values()) {
+                if (entry != keep && entry.isCached()) candidates.add(new Candidate(entry, entry.lastUse));
+                if (entry.variants != keep && entry.variants.isCached()) candidates.add(new Candidate(entry.variants, entry.variants.lastUse));
+            }
+            candidates.sort(Comparator.comparingLong(Candidate::lastUse));
+
+            for (Candidate candidate : candidates) {
+                if (CACHED_BYTES.get() <= byteBudget) return;
+                if (candidate.entry.release()) EVICTIONS.increment();
+            }
+        }
+    }
+
+    private static long getByteSize(MaterialsData materials) {
+        return MATERIALS_OVERHEAD_BYTES + materials.getBytes().length;
+    }
+
+    private StructureCache() {
+
+    }
+
+    static {
+        AssetManager.addDeleteAllCallback(StructureCache::clear);
+    }
+
+    // Enough for every tree of a forest biome in every transform
+    private static final long DEFAULT_BYTE_BUDGET = 128L << 20;
+    // Structure, MaterialsData and the header of the data array
+    private static final int MATERIALS_OVERHEAD_BYTES = 80;
+    private static final int VARIANT_COUNT = Structure.ALL_TRANSFORMS + 1;
+
+    private static final ConcurrentHashMap<String, Entry> ENTRIES = new ConcurrentHashMap<>();
+    // The entry of every decoded structure that is still cached, so its transformed materials can be found from the structure
+    private static final ConcurrentHashMap<Structure, Entry> OWNERS = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<StructureCollectionIdentifier, StructureCollection> COLLECTIONS = new ConcurrentHashMap<>();
+    private static final AtomicLong CACHED_BYTES = new AtomicLong();
+    private static final LongAdder HITS = new LongAdder(), MISSES = new LongAdder(), EVICTIONS = new LongAdder();
+    private static final Object EVICTION_LOCK = new Object();
+    private static volatile long byteBudget = DEFAULT_BYTE_BUDGET;
+
+    public record Metrics(long hits, long misses, long evictions, long cachedBytes, int decodedStructures, int transformedMaterials) {
+    }
+
+    private record Candidate(CachedEntry entry, long lastUse) {
+    }
+
+    private abstract static class CachedEntry {
+
+        abstract boolean isCached();
+
+        // Only called while holding the lock of the entry
+        abstract void drop();
+
+        // Only called while holding the lock of the entry
+        void addBytes(long bytes) {
+            byteSize += bytes;
+            CACHED_BYTES.addAndGet(bytes);
+        }
+
+        synchronized boolean release() {
+            if (!isCached()) return false;
+            drop();
+            CACHED_BYTES.addAndGet(-byteSize);
+            byteSize = 0;
+            return true;
+        }
+
+        synchronized void remove() {
+            removed = true;
+            release();
+        }
+
+        volatile long lastUse;
+        long byteSize;
+        boolean removed;
+    }
+
+    private static final class Entry extends CachedEntry {
+
+        private Entry(String structureName) {
+            filepath = StructureSaver.getSaveFileLocation(structureName);
+            missing = !new File(filepath).exists();
+            file = missing ? null : StructureSaver.map(filepath);
+        }
+
+        // Missing files, files that couldn't be mapped and old versions go through the regular saver
+        private Structure decode() {
+            Structure structure = file == null ? null : StructureSaver.decode(file);
+            return structure != null ? structure : new StructureSaver().load(filepath);
+        }
+
+        @Override
+        boolean isCached() {
+            return structure != null;
+        }
+
+        @Override
+        void drop() {
+            OWNERS.remove(structure, this);
+            structure = null;
+        }
+
+        private final String filepath;
+        private final boolean missing;
+        private final MappedByteBuffer file;
+        private volatile Structure structure;
+        private final Variants variants = new Variants();
+    }
+
+    private static final class Variants extends CachedEntry {
+
+        @Override
+        boolean isCached() {
+            for (int transform = 1; transform < VARIANT_COUNT; transform++) if (transformed.get(transform) != null) return true;
+            return false;
+        }
+
+        @Override
+        void drop() {
+            for (int transform = 1; transform < VARIANT_COUNT; transform++) transformed.set(transform, null);
+        }
+
+        private final AtomicReferenceArray<MaterialsData> transformed = new AtomicReferenceArray<>(VARIANT_COUNT);
+    }
+}
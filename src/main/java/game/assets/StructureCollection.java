@@ -6,14 +6,22 @@ import game.server.generation.Structure;
 
 import static game.utils.Constants.*;
 
+/**
+ * Only knows the names of its structures, which get looked up in the {@link StructureCache} every time,
+ * so the structures can be evicted while the collection stays around.
+ */
 public final class StructureCollection implements Asset {
 
-    public StructureCollection(Structure[] structures) {
-        this.structures = structures;
+    public StructureCollection(String[] structureNames) {
+        this.structureNames = structureNames;
     }
 
     public Structure getRandom(int x, int y, int z) {
-        return structures[(x + y + z >>> CHUNK_SIZE_BITS) % structures.length];
+        return StructureCache.get(structureNames[(x + y + z >>> CHUNK_SIZE_BITS) % structureNames.length]);
+    }
+
+    public String[] getStructureNames() {
+        return structureNames.clone();
     }
 
     @Override
@@ -21,5 +29,5 @@ public final class StructureCollection implements Asset {
 
     }
 
-    private final Structure[] structures;
+    private final String[] structureNames;
 }
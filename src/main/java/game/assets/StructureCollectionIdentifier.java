@@ -2,7 +2,6 @@ package game.assets;
 
 import core.assets.AssetManager;
 import core.assets.identifiers.AssetIdentifier;
-import game.server.generation.Structure;
 
 import java.io.File;
 import java.util.ArrayList;
@@ -22,20 +21,16 @@ public enum StructureCollectionIdentifier implements AssetIdentifier<StructureCo
     @Override
     public StructureCollection generateAsset() {
         ArrayList<String> structureFilePaths = AssetManager.getAssetFilePathsInFolder("structures");
-        ArrayList<Structure> structuresList = new ArrayList<>();
+        ArrayList<String> structureNames = new ArrayList<>();
 
         for (String structureFilepath : structureFilePaths) {
-            String structureName = new File(structureFilepath).getName().toLowerCase();
-            if (!structureName.startsWith(structureBaseName)) continue;
-            Structure structure = AssetManager.get(new StructureIdentifier(structureName));
-            structuresList.add(structure);
+            // Matched ignoring case, but loaded by the actual name for case sensitive file systems
+            String structureName = new File(structureFilepath).getName();
+            if (!structureName.toLowerCase().startsWith(structureBaseName)) continue;
+            structureNames.add(structureName);
         }
 
-        Structure[] structures = new Structure[structuresList.size()];
-        for (int index = 0; index < structures.length; index++)
-            structures[index] = structuresList.get(index);
-
-        return new StructureCollection(structures);
+        return new StructureCollection(structureNames.toArray(new String[0]));
     }
 
     private final String structureBaseName;
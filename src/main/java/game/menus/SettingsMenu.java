@@ -95,6 +95,7 @@ public final class SettingsMenu extends UiBackgroundElement {
         section.addSlider(FloatSettings.FOV);
         section.addSlider(IntSettings.RENDER_DISTANCE);
         section.addSlider(IntSettings.LOD_COUNT);
+        section.addSlider(IntSettings.GENERATION_THREADS);
         section.addSlider(FloatSettings.NIGHT_BRIGHTNESS);
         section.addOption(OptionSettings.PERSPECTIVE);
         section.addSlider(FloatSettings.CROSSHAIR_SIZE);
@@ -163,6 +164,10 @@ public final class SettingsMenu extends UiBackgroundElement {
         section.addToggle(ToggleSettings.OPEN_DEBUG_MENU);
         section.addToggle(ToggleSettings.NO_CLIP);
         section.addToggle(ToggleSettings.CULLING_COMPUTATION);
+        section.addToggle(ToggleSettings.BITWISE_MESHING);
+        section.addToggle(ToggleSettings.PARALLEL_VISIBILITY);
+        section.addToggle(ToggleSettings.PARALLEL_EDITS);
+        section.addToggle(ToggleSettings.PRE_TRANSFORMED_STRUCTURES);
         section.addToggle(ToggleSettings.TOGGLE_X_RAY);
         section.addToggle(CoreToggleSettings.V_SYNC);
         section.addToggle(ToggleSettings.RENDER_OCCLUDERS);
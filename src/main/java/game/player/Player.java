@@ -50,8 +50,9 @@ public final class Player {
         particleCollector.unloadParticleEffects();
         particleCollector.uploadParticleEffects();
         particleCollector.clearToBufferParticleEffects();
-        meshCollector.uploadAllMeshes();
+        meshCollector.uploadMeshes();
         meshCollector.deleteOldMeshes();
+        meshCollector.compactBuffer();
 
         float fraction = Game.getServer().getCurrentGameTickFraction();
         fraction = Math.clamp(fraction, 0.0F, 1.0F);
@@ -0,0 +1,26 @@
+package game.player.interaction;
+
+import core.utils.Vector3l;
+
+import game.server.Chunk;
+
+import java.util.ArrayList;
+
+/**
+ * A placeable that can be split into one part per chunk, so the parts can be placed concurrently.
+ */
+public interface ChunkPlaceable extends Placeable {
+
+    /**
+     * The chunks place touches at the given lod as {startX, startY, startZ, endX, endY, endZ}, the ends are inclusive.
+     * Returns null if there is nothing to place at the moment.
+     */
+    long[] getChunkRange(Vector3l position, int lod);
+
+    /**
+     * Places the part lying in the chunk and adds every chunk that needs to be remeshed to affectedChunks.
+     * Only writes into the given chunk, so different chunks can be placed into concurrently.
+     * Only called for chunks inside the range getChunkRange returned for the lod of the chunk.
+     */
+    void placeInChunk(Chunk chunk, Vector3l position, ArrayList<Chunk> affectedChunks);
+}
@@ -1,10 +1,9 @@
 package game.player.interaction;
 
-import core.assets.AssetManager;
 import core.utils.Saver;
 import core.utils.Vector3l;
 
-import game.assets.StructureIdentifier;
+import game.assets.StructureCache;
 import game.server.Chunk;
 import game.server.Game;
 import game.server.World;
@@ -16,7 +15,7 @@ import java.util.ArrayList;
 
 import static game.utils.Constants.*;
 
-public final class ChunkRebuildPlaceable implements Placeable {
+public final class ChunkRebuildPlaceable implements ChunkPlaceable {
 
     public void save(Saver<?> saver) {
         saver.saveByte((byte) 3);
@@ -28,16 +27,23 @@ public final class ChunkRebuildPlaceable implements Placeable {
 
     @Override
     public void place(Vector3l position, int lod) {
-        if (lod == 0) {
-            Chunk toPlaceChunk = new Chunk(position.x >>> CHUNK_SIZE_BITS, position.y >>> CHUNK_SIZE_BITS, position.z >>> CHUNK_SIZE_BITS, 0);
-            WorldGeneration.generate(toPlaceChunk);
-            this.toPlaceChunk = new Structure(CHUNK_SIZE, CHUNK_SIZE, CHUNK_SIZE, toPlaceChunk.getMaterials());
-        }
+        long[] range = getChunkRange(position, lod);
+        placeInChunk(new ChunkSaver().loadAndGenerate(range[0], range[1], range[2], lod), position, affectedChunks);
+    }
+
+    @Override
+    public long[] getChunkRange(Vector3l position, int lod) {
         long chunkX = position.x >>> CHUNK_SIZE_BITS + lod;
         long chunkY = position.y >>> CHUNK_SIZE_BITS + lod;
         long chunkZ = position.z >>> CHUNK_SIZE_BITS + lod;
+        return new long[]{chunkX, chunkY, chunkZ, chunkX, chunkY, chunkZ};
+    }
 
-        Chunk chunk = new ChunkSaver().loadAndGenerate(chunkX, chunkY, chunkZ, lod);
+    @Override
+    public void placeInChunk(Chunk chunk, Vector3l position, ArrayList<Chunk> affectedChunks) {
+        Chunk generatedChunk = new Chunk(position.x >>> CHUNK_SIZE_BITS, position.y >>> CHUNK_SIZE_BITS, position.z >>> CHUNK_SIZE_BITS, 0);
+        WorldGeneration.generate(generatedChunk);
+        Structure toPlaceChunk = new Structure(CHUNK_SIZE, CHUNK_SIZE, CHUNK_SIZE, generatedChunk.getMaterials());
 
         int inChunkX = (int) position.x >> chunk.LOD & CHUNK_SIZE_MASK;
         int inChunkY = (int) position.y >> chunk.LOD & CHUNK_SIZE_MASK;
@@ -47,7 +53,7 @@ public final class ChunkRebuildPlaceable implements Placeable {
                 inChunkX, inChunkY, inChunkZ,
                 0, 0, 0,
                 CHUNK_SIZE, CHUNK_SIZE, CHUNK_SIZE,
-                lod, toPlaceChunk, (byte) 0, true);
+                chunk.LOD, toPlaceChunk, (byte) 0, true);
 
         affectedChunks.add(chunk);
         World world = Game.getWorld();
@@ -66,7 +72,7 @@ public final class ChunkRebuildPlaceable implements Placeable {
 
     @Override
     public Structure getStructure() {
-        return AssetManager.get(new StructureIdentifier("SampleChunk"));
+        return StructureCache.get("SampleChunk");
     }
 
     @Override
@@ -101,5 +107,4 @@ public final class ChunkRebuildPlaceable implements Placeable {
     }
 
     private final ArrayList<Chunk> affectedChunks = new ArrayList<>();
-    private Structure toPlaceChunk;
 }
@@ -20,7 +20,7 @@ import java.util.ArrayList;
 
 import static game.utils.Constants.*;
 
-public final class RepeatPlaceable implements Placeable {
+public final class RepeatPlaceable implements ChunkPlaceable {
 
     public RepeatPlaceable(ShapePlaceable placeable, Vector3l startPosition, Vector3l endPosition) {
         this.placeable = placeable;
@@ -68,22 +68,51 @@ public final class RepeatPlaceable implements Placeable {
 
     @Override
     public void place(Vector3l position, int lod) {
-        int countX = (int) (maxPosition.x - minPosition.x + placeable.getLengthX()) / placeable.getLengthX();
-        int countY = (int) (maxPosition.y - minPosition.y + placeable.getLengthY()) / placeable.getLengthY();
-        int countZ = (int) (maxPosition.z - minPosition.z + placeable.getLengthZ()) / placeable.getLengthZ();
+        long[] range = getChunkRange(position, lod);
+        ChunkSaver saver = new ChunkSaver();
 
+        for (long chunkX = range[0]; chunkX <= range[3]; chunkX++)
+            for (long chunkY = range[1]; chunkY <= range[4]; chunkY++)
+                for (long chunkZ = range[2]; chunkZ <= range[5]; chunkZ++)
+                    placeInChunk(saver.loadAndGenerate(chunkX, chunkY, chunkZ, lod), position, affectedChunks);
+    }
+
+    @Override
+    public long[] getChunkRange(Vector3l position, int lod) {
         long chunkStartX = minPosition.x >>> CHUNK_SIZE_BITS + lod;
         long chunkStartY = minPosition.y >>> CHUNK_SIZE_BITS + lod;
         long chunkStartZ = minPosition.z >>> CHUNK_SIZE_BITS + lod;
         long chunkEndX = Utils.getWrappedChunkCoordinate(maxPosition.x >>> CHUNK_SIZE_BITS + lod, chunkStartX, lod);
         long chunkEndY = Utils.getWrappedChunkCoordinate(maxPosition.y >>> CHUNK_SIZE_BITS + lod, chunkStartY, lod);
         long chunkEndZ = Utils.getWrappedChunkCoordinate(maxPosition.z >>> CHUNK_SIZE_BITS + lod, chunkStartZ, lod);
-        ChunkSaver saver = new ChunkSaver();
 
-        for (long chunkX = chunkStartX; chunkX <= chunkEndX; chunkX++)
-            for (long chunkY = chunkStartY; chunkY <= chunkEndY; chunkY++)
-                for (long chunkZ = chunkStartZ; chunkZ <= chunkEndZ; chunkZ++)
-                    placeInChunk(saver.loadAndGenerate(chunkX, chunkY, chunkZ, lod), countX, countY, countZ);
+        return new long[]{chunkStartX, chunkStartY, chunkStartZ, chunkEndX, chunkEndY, chunkEndZ};
+    }
+
+    @Override
+    public void placeInChunk(Chunk chunk, Vector3l position, ArrayList<Chunk> affectedChunks) {
+        int countX = (int) (maxPosition.x - minPosition.x + placeable.getLengthX()) / placeable.getLengthX();
+        int countY = (int) (maxPosition.y - minPosition.y + placeable.getLengthY()) / placeable.getLengthY();
+        int countZ = (int) (maxPosition.z - minPosition.z + placeable.getLengthZ()) / placeable.getLengthZ();
+
+        long chunkStartX = chunk.X << CHUNK_SIZE_BITS + chunk.LOD;
+        long chunkStartY = chunk.Y << CHUNK_SIZE_BITS + chunk.LOD;
+        long chunkStartZ = chunk.Z << CHUNK_SIZE_BITS + chunk.LOD;
+
+        int inChunkX = (int) (minPosition.x - chunkStartX) >> chunk.LOD;
+        int inChunkY = (int) (minPosition.y - chunkStartY) >> chunk.LOD;
+        int inChunkZ = (int) (minPosition.z - chunkStartZ) >> chunk.LOD;
+
+        chunk.storeMaterial(inChunkX, inChunkY, inChunkZ, countX, countY, countZ, chunk.LOD, placeable);
+
+        affectedChunks.add(chunk);
+        World world = Game.getWorld();
+        if (inChunkX == 0) affectedChunks.add(world.getChunk(chunk.X - 1, chunk.Y, chunk.Z, chunk.LOD));
+        if (inChunkY == 0) affectedChunks.add(world.getChunk(chunk.X, chunk.Y - 1, chunk.Z, chunk.LOD));
+        if (inChunkZ == 0) affectedChunks.add(world.getChunk(chunk.X, chunk.Y, chunk.Z - 1, chunk.LOD));
+        if (inChunkX + countX * placeable.getLengthX() == CHUNK_SIZE) affectedChunks.add(world.getChunk(chunk.X + 1, chunk.Y, chunk.Z, chunk.LOD));
+        if (inChunkY + countY * placeable.getLengthY() == CHUNK_SIZE) affectedChunks.add(world.getChunk(chunk.X, chunk.Y + 1, chunk.Z, chunk.LOD));
+        if (inChunkZ + countZ * placeable.getLengthZ() == CHUNK_SIZE) affectedChunks.add(world.getChunk(chunk.X, chunk.Y, chunk.Z + 1, chunk.LOD));
     }
 
     @Override
@@ -146,28 +175,6 @@ public final class RepeatPlaceable implements Placeable {
         throw new UnsupportedOperationException("This placeable should not be saved");
     }
 
-
-    private void placeInChunk(Chunk chunk, int countX, int countY, int countZ) {
-        long chunkStartX = chunk.X << CHUNK_SIZE_BITS + chunk.LOD;
-        long chunkStartY = chunk.Y << CHUNK_SIZE_BITS + chunk.LOD;
-        long chunkStartZ = chunk.Z << CHUNK_SIZE_BITS + chunk.LOD;
-
-        int inChunkX = (int) (minPosition.x - chunkStartX) >> chunk.LOD;
-        int inChunkY = (int) (minPosition.y - chunkStartY) >> chunk.LOD;
-        int inChunkZ = (int) (minPosition.z - chunkStartZ) >> chunk.LOD;
-
-        chunk.storeMaterial(inChunkX, inChunkY, inChunkZ, countX, countY, countZ, chunk.LOD, placeable);
-
-        affectedChunks.add(chunk);
-        World world = Game.getWorld();
-        if (inChunkX == 0) affectedChunks.add(world.getChunk(chunk.X - 1, chunk.Y, chunk.Z, chunk.LOD));
-        if (inChunkY == 0) affectedChunks.add(world.getChunk(chunk.X, chunk.Y - 1, chunk.Z, chunk.LOD));
-        if (inChunkZ == 0) affectedChunks.add(world.getChunk(chunk.X, chunk.Y, chunk.Z - 1, chunk.LOD));
-        if (inChunkX + countX * placeable.getLengthX() == CHUNK_SIZE) affectedChunks.add(world.getChunk(chunk.X + 1, chunk.Y, chunk.Z, chunk.LOD));
-        if (inChunkY + countY * placeable.getLengthY() == CHUNK_SIZE) affectedChunks.add(world.getChunk(chunk.X, chunk.Y + 1, chunk.Z, chunk.LOD));
-        if (inChunkZ + countZ * placeable.getLengthZ() == CHUNK_SIZE) affectedChunks.add(world.getChunk(chunk.X, chunk.Y, chunk.Z + 1, chunk.LOD));
-    }
-
     private final ArrayList<Chunk> affectedChunks = new ArrayList<>();
     private final Vector3l minPosition, maxPosition;
     private final Vector3l startPosition, endPosition;
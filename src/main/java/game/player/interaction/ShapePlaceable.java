@@ -13,12 +13,12 @@ import core.utils.Vector3l;
 
 import game.language.UiMessages;
 import game.server.Chunk;
-import game.server.materials_data.MaterialsData;
+import game.server.materials_data.SparseBitMap;
 import game.server.generation.Structure;
 import game.server.material.Properties;
+import game.settings.ToggleSettings;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
 
@@ -43,6 +43,7 @@ public abstract class ShapePlaceable implements Placeable {
         ShapePlaceable placeable = copyWithMaterialUnique(material);
         placeable.invert.setValue(invert.value());
         placeable.rotation.setValue(rotation.value());
+        placeable.cpuRasterization = cpuRasterization;
         placeable.setBitMap(bitMap);
         return placeable;
     }
@@ -60,7 +61,7 @@ public abstract class ShapePlaceable implements Placeable {
         return material;
     }
 
-    public long[] getBitMap() {
+    public SparseBitMap getBitMap() {
         return bitMap;
     }
 
@@ -91,9 +92,7 @@ public abstract class ShapePlaceable implements Placeable {
         int preferredSize = getPreferredSize(), preferredSizePowOf2 = MathUtils.nextLargestPowOf2(preferredSize);
         int settingsHash = settingsHash();
         if (force || isBitMapInValid(settingsHash, preferredSize)) {
-            long[] bitMap = new long[Math.max(preferredSizePowOf2 * preferredSizePowOf2 * preferredSizePowOf2 >> 6, 1)];
-            fillBitMap(bitMap, preferredSizePowOf2, false);
-            this.bitMap = bitMap;
+            this.bitMap = createBitMap(preferredSizePowOf2);
             this.settingsHash = settingsHash;
             this.preferredSize = preferredSize;
         }
@@ -101,10 +100,7 @@ public abstract class ShapePlaceable implements Placeable {
     }
 
     public ShapePlaceable setBitMapToFull() {
-        int size = getPreferredSizePowOf2();
-        long[] bitMap = new long[Math.max(1, size * size * size >> 6)];
-        Arrays.fill(bitMap, -1L);
-        setBitMap(bitMap);
+        setBitMap(SparseBitMap.full(Integer.numberOfTrailingZeros(getPreferredSizePowOf2())));
         return this;
     }
 
@@ -118,6 +114,15 @@ public abstract class ShapePlaceable implements Placeable {
         return isBitMapInValid(settingsHash(), getPreferredSize());
     }
 
+    /**
+     * @param cpuRasterization Whether to fill the bitmap on the cpu instead of with the compute shader,
+     *                         {@code null} follows {@link ToggleSettings#CPU_SHAPE_RASTERIZATION}
+     */
+    public ShapePlaceable setCpuRasterization(Boolean cpuRasterization) {
+        this.cpuRasterization = cpuRasterization;
+        return this;
+    }
+
 
     @Override
     public Structure getStructure() {
@@ -136,14 +141,7 @@ public abstract class ShapePlaceable implements Placeable {
         int minY = Math.max(0, (int) (min.y - position.y)), maxY = Math.min((int) (max.y - position.y), preferredSize);
         int minZ = Math.max(0, (int) (min.z - position.z)), maxZ = Math.min((int) (max.z - position.z), preferredSize);
 
-        for (int x = minX; x < maxX; x++)
-            for (int y = minY; y < maxY; y++)
-                for (int z = minZ; z < maxZ; z++) {
-                    int bitMapIndex = MaterialsData.getUncompressedIndex(x, y, z);
-                    if ((bitMap[bitMapIndex >> 6] & 1L << bitMapIndex) != 0) return true;
-                }
-
-        return false;
+        return bitMap.intersects(minX, minY, minZ, maxX, maxY, maxZ);
     }
 
     @Override
@@ -179,6 +177,14 @@ public abstract class ShapePlaceable implements Placeable {
 
     protected abstract ShapeSetting[] getSettings();
 
+    /**
+     * Returns the same {@code isInside} as the compute shader of this shape for the given lengths,
+     * or {@code null} if this shape can only be filled by its compute shader.
+     */
+    protected ShapeRasterizer.Shape getCpuShape(int lengthX, int lengthY, int lengthZ) {
+        return null;
+    }
+
     protected void loadSettings() {
         ShapeSetting[] baseSettings = getSettings();
 
@@ -207,16 +213,37 @@ public abstract class ShapePlaceable implements Placeable {
         return Objects.hash((Object[]) settings);
     }
 
-    protected void setBitMap(long[] bitMap) {
+    protected void setBitMap(SparseBitMap bitMap) {
         this.bitMap = bitMap;
         settingsHash = settingsHash();
         preferredSize = getPreferredSize();
     }
 
+    /**
+     * Rasterizes large shapes straight into the sparse bitmap if possible, so the dense bitmap of the preferred size
+     * only gets allocated for shapes that need their compute shader.
+     */
+    protected SparseBitMap createBitMap(int size) {
+        int lengthX = Math.min(getLengthX(), size), lengthY = Math.min(getLengthY(), size), lengthZ = Math.min(getLengthZ(), size);
+        ShapeRasterizer.Shape cpuShape = getSelectedCpuShape(lengthX, lengthY, lengthZ);
+        if (cpuShape != null) return ShapeRasterizer.rasterize(size, lengthX, lengthY, lengthZ, invert.value(), cpuShape);
+
+        long[] bitMap = new long[Math.max(size * size * size >> 6, 1)];
+        fillBitMap(bitMap, size, false);
+        return SparseBitMap.of(bitMap, Integer.numberOfTrailingZeros(size));
+    }
+
     protected void fillBitMap(long[] bitMap, int size, boolean forceSize) {
         int lengthX = forceSize ? size : Math.min(getLengthX(), size);
         int lengthY = forceSize ? size : Math.min(getLengthY(), size);
         int lengthZ = forceSize ? size : Math.min(getLengthZ(), size);
+
+        ShapeRasterizer.Shape cpuShape = getSelectedCpuShape(lengthX, lengthY, lengthZ);
+        if (cpuShape != null) {
+            ShapeRasterizer.fillBitMap(bitMap, size, lengthX, lengthY, lengthZ, invert.value(), cpuShape);
+            return;
+        }
+
         int numGroups = Math.max(1, size >> 4);
         int buffer = genBuffer(bitMap.length << 3);
 
@@ -232,6 +259,11 @@ public abstract class ShapePlaceable implements Placeable {
     }
 
 
+    private ShapeRasterizer.Shape getSelectedCpuShape(int lengthX, int lengthY, int lengthZ) {
+        boolean useCpu = cpuRasterization != null ? cpuRasterization : ToggleSettings.CPU_SHAPE_RASTERIZATION.value();
+        return useCpu ? getCpuShape(lengthX, lengthY, lengthZ) : null;
+    }
+
     private int genBuffer(int size) {
         if (size == bufferSize) return buffer;
         glDeleteBuffers(buffer);
@@ -244,9 +276,10 @@ public abstract class ShapePlaceable implements Placeable {
 
     private int buffer, bufferSize = -1;
     protected int settingsHash, preferredSize;
-    protected long[] bitMap;
+    protected SparseBitMap bitMap;
     private final byte material;
     protected ShapeSetting[] settings;
+    private Boolean cpuRasterization = null;
 
     final ToggleSetting invert = new StandAloneToggleSetting(false);
     private final StandAloneOptionSetting rotation;
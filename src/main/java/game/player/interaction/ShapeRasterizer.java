@@ -0,0 +1,192 @@
+package game.player.interaction;
+
+import core.utils.ParallelUtils;
+
+import game.server.materials_data.MaterialsData;
+import game.server.materials_data.SparseBitMap;
+
+import java.util.ArrayList;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Fills shape bitmaps on the cpu in the same layout the shape compute shaders write, without needing a gl context.
+ * <p>
+ * Every long holds one 4x4x4 block, so whole longs get computed at once and no two threads ever write the same long.
+ * Large dense bitmaps are split into one job per slab of blocks along the z axis, large sparse bitmaps into one job
+ * per 64x64x64 region, which run on the common pool. Sparse bitmaps are filled one page at a time, so only pages that
+ * are neither empty nor full ever get allocated, and pages outside the lengths of the shape are skipped.
+ * An exception thrown by the shape fails the whole rasterization, it is rethrown once every job finished.
+ * Everything a shape raises to a power only depends on one coordinate, so it is computed once per coordinate into
+ * a table instead of once per voxel.
+ */
+public final class ShapeRasterizer {
+
+    /**
+     * Only gets called for coordinates inside the lengths of the shape, the same as {@code isInside} of the shaders.
+     * Must be safe to call from multiple threads.
+     */
+    public interface Shape {
+        boolean isInside(int x, int y, int z);
+    }
+
+    public static void fillBitMap(long[] bitMap, int size, int lengthX, int lengthY, int lengthZ, boolean invert, Shape shape) {
+        int blocks = Math.max(1, size >> 2);
+        if (blocks < PARALLEL_BLOCKS) {
+            for (int blockZ = 0; blockZ < blocks; blockZ++) fillSlab(bitMap, blockZ, blocks, lengthX, lengthY, lengthZ, invert, shape);
+            return;
+        }
+
+        ArrayList<SlabJob> jobs = new ArrayList<>(blocks);
+        for (int blockZ = 0; blockZ < blocks; blockZ++) jobs.add(new SlabJob(bitMap, blockZ, blocks, lengthX, lengthY, lengthZ, invert, shape));
+        ParallelUtils.invokeAll(jobs);
+    }
+
+    public static SparseBitMap rasterize(int size, int lengthX, int lengthY, int lengthZ, boolean invert, Shape shape) {
+        int sizeBits = Integer.numberOfTrailingZeros(size);
+        if (sizeBits < SparseBitMap.PAGE_SIZE_BITS) {
+            long[] bitMap = new long[Math.max(1, size * size * size >> 6)];
+            fillBitMap(bitMap, size, lengthX, lengthY, lengthZ, invert, shape);
+            return SparseBitMap.of(bitMap, sizeBits);
+        }
+
+        SparseBitMap bitMap = new SparseBitMap(sizeBits);
+        int regions = Math.max(1, size >> REGION_SIZE_BITS);
+        if (regions == 1) {
+            fillRegion(bitMap, 0, 0, 0, size, lengthX, lengthY, lengthZ, invert, shape);
+            return bitMap;
+        }
+
+        ArrayList<RegionJob> jobs = new ArrayList<>(regions * regions * regions);
+        for (int regionX = 0; regionX < regions; regionX++)
+            for (int regionY = 0; regionY < regions; regionY++)
+                for (int regionZ = 0; regionZ < regions; regionZ++)
+                    jobs.add(new RegionJob(bitMap, regionX << REGION_SIZE_BITS, regionY << REGION_SIZE_BITS, regionZ << REGION_SIZE_BITS,
+                            size, lengthX, lengthY, lengthZ, invert, shape));
+        ParallelUtils.invokeAll(jobs);
+        return bitMap;
+    }
+
+    /**
+     * @return {@code pow(abs(coordinate - offset + 0.5), exponent)} for every coordinate in {@code [0, length)}
+     */
+    public static float[] distances(int length, float offset, float exponent) {
+        float[] distances = new float[Math.max(0, length)];
+        for (int coordinate = 0; coordinate < distances.length; coordinate++)
+            distances[coordinate] = (float) Math.pow(Math.abs(coordinate - offset + 0.5F), exponent);
+        return distances;
+    }
+
+    public static float pow(float base, float exponent) {
+        return (float) Math.pow(base, exponent);
+    }
+
+
+    private static void fillSlab(long[] bitMap, int blockZ, int blocks, int lengthX, int lengthY, int lengthZ, boolean invert, Shape shape) {
+        int startZ = blockZ << 2;
+        for (int blockX = 0; blockX < blocks; blockX++)
+            for (int blockY = 0; blockY < blocks; blockY++) {
+                int startX = blockX << 2, startY = blockY << 2;
+                bitMap[MaterialsData.getUncompressedIndex(startX, startY, startZ) >> 6] = getBlock(startX, startY, startZ, lengthX, lengthY, lengthZ, invert, shape);
+            }
+    }
+
+    private static void fillRegion(SparseBitMap bitMap, int regionX, int regionY, int regionZ, int size,
+                                   int lengthX, int lengthY, int lengthZ, boolean invert, Shape shape) {
+        int pageSize = 1 << SparseBitMap.PAGE_SIZE_BITS, regionSize = Math.min(size, 1 << REGION_SIZE_BITS);
+        int endX = Math.min(regionX + regionSize, lengthX), endY = Math.min(regionY + regionSize, lengthY), endZ = Math.min(regionZ + regionSize, lengthZ);
+        long[] longs = new long[64];
+
+        for (int pageX = regionX; pageX < endX; pageX += pageSize)
+            for (int pageY = regionY; pageY < endY; pageY += pageSize)
+                for (int pageZ = regionZ; pageZ < endZ; pageZ += pageSize) {
+                    for (int blockX = 0; blockX < pageSize; blockX += 4)
+                        for (int blockY = 0; blockY < pageSize; blockY += 4)
+                            for (int blockZ = 0; blockZ < pageSize; blockZ += 4)
+                                longs[MaterialsData.getUncompressedIndex(blockX, blockY, blockZ) >> 6] = getBlock(pageX + blockX, pageY + blockY, pageZ + blockZ,
+                                        lengthX, lengthY, lengthZ, invert, shape);
+                    bitMap.setPage(MaterialsData.getUncompressedIndex(pageX, pageY, pageZ) >> SparseBitMap.PAGE_SIZE_BITS * 3, longs);
+                }
+    }
+
+    private static long getBlock(int startX, int startY, int startZ, int lengthX, int lengthY, int lengthZ, boolean invert, Shape shape) {
+        int endX = Math.min(4, lengthX - startX), endY = Math.min(4, lengthY - startY), endZ = Math.min(4, lengthZ - startZ);
+        long bits = 0L;
+
+        for (int x = 0; x < endX; x++)
+            for (int y = 0; y < endY; y++)
+                for (int z = 0; z < endZ; z++)
+                    if (shape.isInside(startX + x, startY + y, startZ + z) != invert) bits |= 1L << BLOCK_INDICES[x << 4 | y << 2 | z];
+        return bits;
+    }
+
+    private static int[] blockIndices() {
+        int[] indices = new int[64];
+        for (int x = 0; x < 4; x++)
+            for (int y = 0; y < 4; y++)
+                for (int z = 0; z < 4; z++) indices[x << 4 | y << 2 | z] = MaterialsData.getUncompressedIndex(x, y, z);
+        return indices;
+    }
+
+    private ShapeRasterizer() {
+
+    }
+
+    // Smaller bitmaps are done faster than the jobs are handed out
+    private static final int PARALLEL_BLOCKS = 16;
+    // Every 64x64x64 region has its own summary longs in a sparse bitmap, so regions can be filled in parallel
+    private static final int REGION_SIZE_BITS = 6;
+    // Bit inside the long of a block for every position inside the block
+    private static final int[] BLOCK_INDICES = blockIndices();
+
+    private static final class SlabJob extends RecursiveAction {
+
+        private SlabJob(long[] bitMap, int blockZ, int blocks, int lengthX, int lengthY, int lengthZ, boolean invert, Shape shape) {
+            this.bitMap = bitMap;
+            this.blockZ = blockZ;
+            this.blocks = blocks;
+            this.lengthX = lengthX;
+            this.lengthY = lengthY;
+            this.lengthZ = lengthZ;
+            this.invert = invert;
+            this.shape = shape;
+        }
+
+        @Override
+        protected void compute() {
+            fillSlab(bitMap, blockZ, blocks, lengthX, lengthY, lengthZ, invert, shape);
+        }
+
+        private final long[] bitMap;
+        private final int blockZ, blocks;
+        private final int lengthX, lengthY, lengthZ;
+        private final boolean invert;
+        private final Shape shape;
+    }
+
+    private static final class RegionJob extends RecursiveAction {
+
+        private RegionJob(SparseBitMap bitMap, int regionX, int regionY, int regionZ, int size, int lengthX, int lengthY, int lengthZ, boolean invert, Shape shape) {
+            this.bitMap = bitMap;
+            this.regionX = regionX;
+            this.regionY = regionY;
+            this.regionZ = regionZ;
+            this.size = size;
+            this.lengthX = lengthX;
+            this.lengthY = lengthY;
+            this.lengthZ = lengthZ;
+            this.invert = invert;
+            this.shape = shape;
+        }
+
+        @Override
+        protected void compute() {
+            fillRegion(bitMap, regionX, regionY, regionZ, size, lengthX, lengthY, lengthZ, invert, shape);
+        }
+
+        private final SparseBitMap bitMap;
+        private final int regionX, regionY, regionZ, size;
+        private final int lengthX, lengthY, lengthZ;
+        private final boolean invert;
+        private final Shape shape;
+    }
+}
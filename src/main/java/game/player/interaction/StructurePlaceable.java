@@ -1,10 +1,10 @@
 package game.player.interaction;
 
-import core.assets.AssetManager;
 import core.utils.MathUtils;
 import core.utils.Saver;
 import core.utils.Vector3l;
 
+import game.assets.StructureCache;
 import game.assets.StructureIdentifier;
 import game.player.sound.PlaceBreakSound;
 import game.server.Chunk;
@@ -24,11 +24,11 @@ import java.util.ArrayList;
 
 import static game.utils.Constants.*;
 
-public final class StructurePlaceable implements Placeable {
+public final class StructurePlaceable implements ChunkPlaceable {
 
     public StructurePlaceable(StructureIdentifier identifier) {
         this.identifier = identifier;
-        this.structure = AssetManager.get(identifier);
+        this.structure = StructureCache.get(identifier.structureName());
     }
 
     public void save(Saver<?> saver) {
@@ -52,6 +52,17 @@ public final class StructurePlaceable implements Placeable {
 
     @Override
     public void place(Vector3l position, int lod) {
+        long[] range = getChunkRange(position, lod);
+        ChunkSaver saver = new ChunkSaver();
+
+        for (long chunkX = range[0]; chunkX <= range[3]; chunkX++)
+            for (long chunkY = range[1]; chunkY <= range[4]; chunkY++)
+                for (long chunkZ = range[2]; chunkZ <= range[5]; chunkZ++)
+                    placeInChunk(saver.loadAndGenerate(chunkX, chunkY, chunkZ, lod), position, affectedChunks);
+    }
+
+    @Override
+    public long[] getChunkRange(Vector3l position, int lod) {
         byte transform = getTransform();
         long chunkStartX = position.x >>> CHUNK_SIZE_BITS + lod;
         long chunkStartY = position.y >>> CHUNK_SIZE_BITS + lod;
@@ -59,12 +70,8 @@ public final class StructurePlaceable implements Placeable {
         long chunkEndX = Utils.getWrappedChunkCoordinate(position.x + structure.sizeX(transform) >>> CHUNK_SIZE_BITS + lod, chunkStartX, lod);
         long chunkEndY = Utils.getWrappedChunkCoordinate(position.y + structure.sizeY(transform) >>> CHUNK_SIZE_BITS + lod, chunkStartY, lod);
         long chunkEndZ = Utils.getWrappedChunkCoordinate(position.z + structure.sizeZ(transform) >>> CHUNK_SIZE_BITS + lod, chunkStartZ, lod);
-        ChunkSaver saver = new ChunkSaver();
 
-        for (long chunkX = chunkStartX; chunkX <= chunkEndX; chunkX++)
-            for (long chunkY = chunkStartY; chunkY <= chunkEndY; chunkY++)
-                for (long chunkZ = chunkStartZ; chunkZ <= chunkEndZ; chunkZ++)
-                    placeInChunk(saver.loadAndGenerate(chunkX, chunkY, chunkZ, lod), position);
+        return new long[]{chunkStartX, chunkStartY, chunkStartZ, chunkEndX, chunkEndY, chunkEndZ};
     }
 
     @Override
@@ -148,8 +155,8 @@ public final class StructurePlaceable implements Placeable {
         };
     }
 
-
-    private void placeInChunk(Chunk chunk, Vector3l position) {
+    @Override
+    public void placeInChunk(Chunk chunk, Vector3l position, ArrayList<Chunk> affectedChunks) {
         byte transform = getTransform();
         long chunkStartX = chunk.X << CHUNK_SIZE_BITS + chunk.LOD;
         long chunkStartY = chunk.Y << CHUNK_SIZE_BITS + chunk.LOD;
@@ -184,6 +191,7 @@ public final class StructurePlaceable implements Placeable {
         if (inChunkZ + lengthZ == CHUNK_SIZE) affectedChunks.add(world.getChunk(chunk.X, chunk.Y, chunk.Z + 1, chunk.LOD));
     }
 
+
     private byte getTransform() {
         return (byte) rotation.ordinal();
     }
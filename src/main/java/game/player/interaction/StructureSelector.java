@@ -1,22 +1,32 @@
 package game.player.interaction;
 
-import core.assets.AssetManager;
 import core.utils.Saver;
 import core.utils.Vector3l;
-import game.assets.StructureIdentifier;
+import game.assets.StructureCache;
 import game.server.Chunk;
 import game.server.generation.Structure;
 import game.settings.IntSettings;
 
 import java.util.ArrayList;
 
-public final class StructureSelector implements Placeable {
+public final class StructureSelector implements ChunkPlaceable {
 
     @Override
     public void place(Vector3l position, int lod) {
 
     }
 
+    // Only selects, so there is never anything to place
+    @Override
+    public long[] getChunkRange(Vector3l position, int lod) {
+        return null;
+    }
+
+    @Override
+    public void placeInChunk(Chunk chunk, Vector3l position, ArrayList<Chunk> affectedChunks) {
+
+    }
+
     @Override
     public ArrayList<Chunk> getAffectedChunks() {
         return new ArrayList<>();
@@ -24,7 +34,7 @@ public final class StructureSelector implements Placeable {
 
     @Override
     public Structure getStructure() {
-        return AssetManager.get(new StructureIdentifier("BluePrint"));
+        return StructureCache.get("BluePrint");
     }
 
     @Override
@@ -27,59 +27,8 @@ public record Target(Vector3l position, int side, byte material) {
     }
 
     public static Target getTarget(Position origin, Vector3f dir) {
-
-        long x = origin.longX;
-        long y = origin.longY;
-        long z = origin.longZ;
-
-        int xDir = dir.x < 0 ? -1 : 1;
-        int yDir = dir.y < 0 ? -1 : 1;
-        int zDir = dir.z < 0 ? -1 : 1;
-
-        int xSide = dir.x < 0 ? WEST : EAST;
-        int ySide = dir.y < 0 ? TOP : BOTTOM;
-        int zSide = dir.z < 0 ? NORTH : SOUTH;
-
-        double dirXSquared = dir.x * dir.x;
-        double dirYSquared = dir.y * dir.y;
-        double dirZSquared = dir.z * dir.z;
-        double xUnit = (float) Math.sqrt(1 + (dirYSquared + dirZSquared) / dirXSquared);
-        double yUnit = (float) Math.sqrt(1 + (dirXSquared + dirZSquared) / dirYSquared);
-        double zUnit = (float) Math.sqrt(1 + (dirXSquared + dirYSquared) / dirZSquared);
-
-        double lengthX = xUnit * (dir.x < 0 ? origin.fractionX : 1 - origin.fractionX);
-        double lengthY = yUnit * (dir.y < 0 ? origin.fractionY : 1 - origin.fractionY);
-        double lengthZ = zUnit * (dir.z < 0 ? origin.fractionZ : 1 - origin.fractionZ);
-        double length = 0;
-
-        int intersectedSide = 0;
-        float reach = IntSettings.REACH.value();
-        while (length < reach) {
-
-            byte material = Game.getWorld().getMaterial(x, y, z, 0);
-            if (material == OUT_OF_WORLD) return null;
-
-            if (Properties.doesntHaveProperties(material, NO_COLLISION))
-                return new Target(new Vector3l(x, y, z), intersectedSide, material);
-
-            if (lengthX < lengthZ && lengthX < lengthY) {
-                x = x + xDir;
-                length = lengthX;
-                lengthX += xUnit;
-                intersectedSide = xSide;
-            } else if (lengthZ < lengthX && lengthZ < lengthY) {
-                z = z + zDir;
-                length = lengthZ;
-                lengthZ += zUnit;
-                intersectedSide = zSide;
-            } else {
-                y = y + yDir;
-                length = lengthY;
-                lengthY += yUnit;
-                intersectedSide = ySide;
-            }
-        }
-        return null;
+        return Game.getWorld().traceRay(origin, dir, IntSettings.REACH.value(), (x, y, z, side, material) ->
+                Properties.doesntHaveProperties(material, NO_COLLISION) ? new Target(new Vector3l(x, y, z), side, material) : null);
     }
 
     public void shiftPosition(Vector3i movement) {
@@ -8,6 +8,7 @@ import game.assets.ComputeShaders;
 import game.language.UiMessages;
 import game.player.interaction.Rotation12Way;
 import game.player.interaction.ShapePlaceable;
+import game.player.interaction.ShapeRasterizer;
 import game.player.interaction.ShapeSetting;
 import game.server.generation.Structure;
 
@@ -85,6 +86,36 @@ public final class ArcPlaceable extends ShapePlaceable {
         return getStructure();
     }
 
+    @Override
+    protected ShapeRasterizer.Shape getCpuShape(int lengthX, int lengthY, int lengthZ) {
+        Rotation12Way rotation = (Rotation12Way) rotation();
+        float exponent = this.exponent.value();
+        float outerThreshold = ShapeRasterizer.pow(radius.value(), exponent) + 0.01F;
+        float innerThreshold = ShapeRasterizer.pow(Math.max(0, radius.value() - thickness.value()), exponent) - 0.01F;
+        float[] distances = ShapeRasterizer.distances(Math.max(lengthX, Math.max(lengthY, lengthZ)), 0.0F, exponent);
+        int invertX = lengthX - 1, invertY = lengthY - 1, invertZ = lengthZ - 1;
+
+        return (x, y, z) -> {
+            float distance = switch (rotation) {
+                case ROTATION_01 -> distances[z] + distances[y];
+                case ROTATION_02 -> distances[x] + distances[y];
+                case ROTATION_03 -> distances[invertZ - z] + distances[y];
+                case ROTATION_04 -> distances[invertX - x] + distances[y];
+
+                case ROTATION_05 -> distances[x] + distances[z];
+                case ROTATION_06 -> distances[invertZ - z] + distances[x];
+                case ROTATION_07 -> distances[invertX - x] + distances[invertZ - z];
+                case ROTATION_08 -> distances[invertX - x] + distances[z];
+
+                case ROTATION_09 -> distances[z] + distances[invertY - y];
+                case ROTATION_10 -> distances[x] + distances[invertY - y];
+                case ROTATION_11 -> distances[invertZ - z] + distances[invertY - y];
+                case ROTATION_12 -> distances[invertX - x] + distances[invertY - y];
+            };
+            return distance < outerThreshold && distance >= innerThreshold;
+        };
+    }
+
     private final StandAloneIntSetting radius = new StandAloneIntSetting(0, 128, 16);
     private final StandAloneIntSetting height = new StandAloneIntSetting(0, 256, 8);
     private final StandAloneFloatSetting exponent = new StandAloneFloatSetting(0.1F, 16.0F, 2.0F, 0.1F);
@@ -6,6 +6,7 @@ import core.utils.Saver;
 import core.utils.Vector3l;
 
 import game.language.UiMessages;
+import game.player.interaction.ChunkPlaceable;
 import game.player.interaction.PlaceMode;
 import game.player.interaction.ShapePlaceable;
 import game.player.interaction.ShapeSetting;
@@ -14,6 +15,7 @@ import game.server.Chunk;
 import game.server.Game;
 import game.server.generation.Structure;
 import game.server.materials_data.MaterialsData;
+import game.server.materials_data.SparseBitMap;
 import game.server.saving.ChunkSaver;
 import game.settings.IntSettings;
 import game.settings.OptionSettings;
@@ -28,7 +30,7 @@ import java.util.Objects;
 
 import static game.utils.Constants.*;
 
-public final class CapsulePlaceable extends ShapePlaceable {
+public final class CapsulePlaceable extends ShapePlaceable implements ChunkPlaceable {
 
     public CapsulePlaceable(byte material) {
         super(null, material);
@@ -69,12 +71,15 @@ public final class CapsulePlaceable extends ShapePlaceable {
     }
 
     @Override
-    protected void fillBitMap(long[] bitMap, int size, boolean forceSize) {
-        if (positionsInvalid()) return;
+    protected SparseBitMap createBitMap(int size) {
+        SparseBitMap bitMap = new SparseBitMap(Integer.numberOfTrailingZeros(size));
+        if (positionsInvalid()) return bitMap;
 
         int radius = this.radius.value();
         Vector3l minPosition = Utils.min(startPosition, endPosition).sub(radius, radius, radius);
-        fillBitMap(bitMap, minPosition, getPreferredSizePowOf2(), minPosition.x, minPosition.y, minPosition.z);
+        fillBitMap(bitMap, minPosition, size, minPosition.x, minPosition.y, minPosition.z);
+        bitMap.normalize();
+        return bitMap;
     }
 
     @Override
@@ -84,7 +89,19 @@ public final class CapsulePlaceable extends ShapePlaceable {
 
     @Override
     public void place(Vector3l position, int lod) {
-        if (positionsInvalid()) return;
+        long[] range = getChunkRange(position, lod);
+        if (range == null) return;
+        ChunkSaver saver = new ChunkSaver();
+
+        for (long chunkX = range[0]; chunkX <= range[3]; chunkX++)
+            for (long chunkY = range[1]; chunkY <= range[4]; chunkY++)
+                for (long chunkZ = range[2]; chunkZ <= range[5]; chunkZ++)
+                    placeInChunk(saver.loadAndGenerate(chunkX, chunkY, chunkZ, lod), position, affectedChunks);
+    }
+
+    @Override
+    public long[] getChunkRange(Vector3l position, int lod) {
+        if (positionsInvalid()) return null;
 
         int radius = this.radius.value();
         Vector3l minPosition = Utils.min(startPosition, endPosition).sub(radius, radius, radius);
@@ -96,12 +113,32 @@ public final class CapsulePlaceable extends ShapePlaceable {
         long chunkEndX = Utils.getWrappedChunkCoordinate(maxPosition.x >>> CHUNK_SIZE_BITS + lod, chunkStartX, lod);
         long chunkEndY = Utils.getWrappedChunkCoordinate(maxPosition.y >>> CHUNK_SIZE_BITS + lod, chunkStartY, lod);
         long chunkEndZ = Utils.getWrappedChunkCoordinate(maxPosition.z >>> CHUNK_SIZE_BITS + lod, chunkStartZ, lod);
-        ChunkSaver saver = new ChunkSaver();
 
-        for (long chunkX = chunkStartX; chunkX <= chunkEndX; chunkX++)
-            for (long chunkY = chunkStartY; chunkY <= chunkEndY; chunkY++)
-                for (long chunkZ = chunkStartZ; chunkZ <= chunkEndZ; chunkZ++)
-                    placeInChunk(saver.loadAndGenerate(chunkX, chunkY, chunkZ, lod));
+        return new long[]{chunkStartX, chunkStartY, chunkStartZ, chunkEndX, chunkEndY, chunkEndZ};
+    }
+
+    @Override
+    public void placeInChunk(Chunk chunk, Vector3l position, ArrayList<Chunk> affectedChunks) {
+        int bits = CHUNK_SIZE_BITS + chunk.LOD;
+        Vector3l min = new Vector3l(chunk.X << bits, chunk.Y << bits, chunk.Z << bits);
+        Vector3l max = new Vector3l(chunk.X + 1 << bits, chunk.Y + 1 << bits, chunk.Z + 1 << bits);
+        if (fastMissesAABB(min.x, min.y, min.z, max.x, max.y, max.z)) return;
+
+        byte[] uncompressedMaterials = new byte[CHUNK_SIZE * CHUNK_SIZE * CHUNK_SIZE];
+        chunk.getMaterials().fillUncompressedMaterialsInto(uncompressedMaterials);
+        boolean hasUpdated = false;
+
+        int stepSize = 8 << chunk.LOD;
+        for (long totalX = min.x; totalX != max.x; totalX += stepSize)
+            for (long totalY = min.y; totalY != max.y; totalY += stepSize)
+                for (long totalZ = min.z; totalZ != max.z; totalZ += stepSize)
+                    hasUpdated = hasUpdated | placeInSection(uncompressedMaterials, chunk.LOD, totalX, totalY, totalZ);
+
+        if (hasUpdated) {
+            chunk.getMaterials().compressIntoData(uncompressedMaterials);
+            chunk.setModified();
+            affectedChunks.add(chunk);
+        }
     }
 
     @Override
@@ -115,9 +152,7 @@ public final class CapsulePlaceable extends ShapePlaceable {
         if (positionsInvalid()) return new Structure(0, AIR);
 
         int size = getPreferredSizePowOf2();
-        long[] bitMap = new long[Math.max(size * size * size >> 6, 1)];
-        fillBitMap(bitMap, 0, false);
-        return new Structure(Integer.numberOfTrailingZeros(size), material, bitMap);
+        return new Structure(Integer.numberOfTrailingZeros(size), material, createBitMap(size));
     }
 
     @Override
@@ -229,29 +264,6 @@ public final class CapsulePlaceable extends ShapePlaceable {
                 endPosition.x - minX, endPosition.y - minY, endPosition.z - minZ, new Vector2f()) == Intersectionf.OUTSIDE;
     }
 
-    private void placeInChunk(Chunk chunk) {
-        int bits = CHUNK_SIZE_BITS + chunk.LOD;
-        Vector3l min = new Vector3l(chunk.X << bits, chunk.Y << bits, chunk.Z << bits);
-        Vector3l max = new Vector3l(chunk.X + 1 << bits, chunk.Y + 1 << bits, chunk.Z + 1 << bits);
-        if (fastMissesAABB(min.x, min.y, min.z, max.x, max.y, max.z)) return;
-
-        byte[] uncompressedMaterials = new byte[CHUNK_SIZE * CHUNK_SIZE * CHUNK_SIZE];
-        chunk.getMaterials().fillUncompressedMaterialsInto(uncompressedMaterials);
-        boolean hasUpdated = false;
-
-        int stepSize = 8 << chunk.LOD;
-        for (long totalX = min.x; totalX != max.x; totalX += stepSize)
-            for (long totalY = min.y; totalY != max.y; totalY += stepSize)
-                for (long totalZ = min.z; totalZ != max.z; totalZ += stepSize)
-                    hasUpdated = hasUpdated | placeInSection(uncompressedMaterials, chunk.LOD, totalX, totalY, totalZ);
-
-        if (hasUpdated) {
-            chunk.getMaterials().compressIntoData(uncompressedMaterials);
-            chunk.setModified();
-            affectedChunks.add(chunk);
-        }
-    }
-
     private boolean placeInSection(byte[] uncompressedMaterials, int lod, long totalX, long totalY, long totalZ) {
         int sectionSize = 8 << lod;
         if (fastMissesAABB(totalX, totalY, totalZ, totalX + sectionSize, totalY + sectionSize, totalZ + sectionSize)) return false;
@@ -292,7 +304,7 @@ public final class CapsulePlaceable extends ShapePlaceable {
                 || Math.abs(startPosition.z - endPosition.z) > maxDistance;
     }
 
-    private void fillBitMap(long[] bitMap, Vector3l minPosition, int length, long totalX, long totalY, long totalZ) {
+    private void fillBitMap(SparseBitMap bitMap, Vector3l minPosition, int length, long totalX, long totalY, long totalZ) {
         if (fastMissesAABB(totalX, totalY, totalZ, totalX + length, totalY + length, totalZ + length)) return;
 
         if (length <= 8) {
@@ -301,8 +313,7 @@ public final class CapsulePlaceable extends ShapePlaceable {
                 for (long y = totalY; y != totalY + size; y++)
                     for (long z = totalZ; z != totalZ + size; z++) {
                         if (isOutside(x, y, z)) continue;
-                        int index = MaterialsData.getUncompressedIndex((int) (x - minPosition.x), (int) (y - minPosition.y), (int) (z - minPosition.z));
-                        bitMap[index >> 6] |= 1L << index;
+                        bitMap.set(MaterialsData.getUncompressedIndex((int) (x - minPosition.x), (int) (y - minPosition.y), (int) (z - minPosition.z)));
                     }
             return;
         }
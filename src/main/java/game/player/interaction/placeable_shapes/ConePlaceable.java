@@ -8,6 +8,7 @@ import game.assets.ComputeShaders;
 import game.language.UiMessages;
 import game.player.interaction.Rotation6Way;
 import game.player.interaction.ShapePlaceable;
+import game.player.interaction.ShapeRasterizer;
 import game.player.interaction.ShapeSetting;
 import game.server.generation.Structure;
 
@@ -89,6 +90,48 @@ public final class ConePlaceable extends ShapePlaceable {
         return getStructure();
     }
 
+    @Override
+    protected ShapeRasterizer.Shape getCpuShape(int lengthX, int lengthY, int lengthZ) {
+        Rotation6Way rotation = (Rotation6Way) rotation();
+        float exponent = this.exponent.value();
+        int height = this.height.value(), baseRadius = this.baseRadius.value(), topRadius = this.topRadius.value(), thickness = this.thickness.value();
+
+        // The radii only depend on the distance along the axis of the cone
+        int axisLength = Math.max(lengthX, Math.max(lengthY, lengthZ));
+        float[] outerThresholds = new float[axisLength], innerThresholds = new float[axisLength];
+        for (int a = 0; a < axisLength; a++) {
+            float heightFraction = (float) a / height;
+            if (heightFraction > 1) {
+                outerThresholds[a] = Float.NEGATIVE_INFINITY;
+                continue;
+            }
+            float outerRadius = (1 - heightFraction) * baseRadius + heightFraction * topRadius;
+            float innerRadius = Math.max(0, outerRadius - thickness);
+            outerThresholds[a] = ShapeRasterizer.pow(outerRadius, exponent) + 0.01F;
+            innerThresholds[a] = ShapeRasterizer.pow(innerRadius, exponent) - 0.01F;
+        }
+        float[] distancesX = ShapeRasterizer.distances(lengthX, lengthX >> 1, exponent);
+        float[] distancesY = ShapeRasterizer.distances(lengthY, lengthY >> 1, exponent);
+        float[] distancesZ = ShapeRasterizer.distances(lengthZ, lengthZ >> 1, exponent);
+
+        return (x, y, z) -> {
+            int a = switch (rotation) {
+                case Rotation6Way.ROTATION_1 -> lengthZ - 1 - z;
+                case Rotation6Way.ROTATION_2 -> lengthY - 1 - y;
+                case Rotation6Way.ROTATION_3 -> lengthX - 1 - x;
+                case Rotation6Way.ROTATION_4 -> z;
+                case Rotation6Way.ROTATION_5 -> y;
+                case Rotation6Way.ROTATION_6 -> x;
+            };
+            float distance = switch (rotation) {
+                case Rotation6Way.ROTATION_1, Rotation6Way.ROTATION_4 -> distancesX[x] + distancesY[y];
+                case Rotation6Way.ROTATION_2, Rotation6Way.ROTATION_5 -> distancesX[x] + distancesZ[z];
+                case Rotation6Way.ROTATION_3, Rotation6Way.ROTATION_6 -> distancesY[y] + distancesZ[z];
+            };
+            return distance <= outerThresholds[a] && distance >= innerThresholds[a];
+        };
+    }
+
     private final StandAloneIntSetting baseRadius = new StandAloneIntSetting(0, 128, 8);
     private final StandAloneIntSetting topRadius = new StandAloneIntSetting(0, 64, 0);
     private final StandAloneFloatSetting exponent = new StandAloneFloatSetting(0.0F, 20.0F, 2.0F, 0.1F);
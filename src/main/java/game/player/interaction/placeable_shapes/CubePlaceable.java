@@ -6,6 +6,7 @@ import core.utils.Saver;
 import game.assets.ComputeShaders;
 import game.language.UiMessages;
 import game.player.interaction.ShapePlaceable;
+import game.player.interaction.ShapeRasterizer;
 import game.player.interaction.ShapeSetting;
 import game.server.generation.Structure;
 
@@ -66,6 +67,19 @@ public final class CubePlaceable extends ShapePlaceable {
         return new Structure(4, getMaterial());
     }
 
+    @Override
+    protected ShapeRasterizer.Shape getCpuShape(int lengthX, int lengthY, int lengthZ) {
+        float offset = lengthX * 0.5F;
+        float innerThreshold = offset - thickness.value();
+
+        return (x, y, z) -> {
+            float distanceX = Math.abs(x - offset + 0.5F);
+            float distanceY = Math.abs(y - offset + 0.5F);
+            float distanceZ = Math.abs(z - offset + 0.5F);
+            return Math.max(distanceX, Math.max(distanceY, distanceZ)) >= innerThreshold;
+        };
+    }
+
     private final StandAloneIntSetting sizeReduction = new StandAloneIntSetting(0, 64, 0);
     private final StandAloneIntSetting thickness = new StandAloneIntSetting(0, 128, 128);
 }
@@ -8,6 +8,7 @@ import game.assets.ComputeShaders;
 import game.language.UiMessages;
 import game.player.interaction.Rotation3Way;
 import game.player.interaction.ShapePlaceable;
+import game.player.interaction.ShapeRasterizer;
 import game.player.interaction.ShapeSetting;
 import game.server.generation.Structure;
 
@@ -85,6 +86,33 @@ public final class CylinderPlaceable extends ShapePlaceable {
         return getStructure();
     }
 
+    @Override
+    protected ShapeRasterizer.Shape getCpuShape(int lengthX, int lengthY, int lengthZ) {
+        Rotation3Way rotation = (Rotation3Way) rotation();
+        float exponent = this.exponent.value();
+        int height = this.height.value();
+        float outerThreshold = ShapeRasterizer.pow(radius.value(), exponent) + 0.01F;
+        float innerThreshold = ShapeRasterizer.pow(Math.max(0, radius.value() - thickness.value()), exponent) - 0.01F;
+        float offset = (rotation == Rotation3Way.ROTATION_1 ? lengthY : lengthX) / 2.0F;
+        float[] distances = ShapeRasterizer.distances(Math.max(lengthX, Math.max(lengthY, lengthZ)), offset, exponent);
+
+        return (x, y, z) -> {
+            int a = switch (rotation) {
+                case Rotation3Way.ROTATION_1 -> x;
+                case Rotation3Way.ROTATION_2 -> y;
+                case Rotation3Way.ROTATION_3 -> z;
+            };
+            if (a >= height) return false;
+
+            float distance = switch (rotation) {
+                case Rotation3Way.ROTATION_1 -> distances[z] + distances[y];
+                case Rotation3Way.ROTATION_2 -> distances[z] + distances[x];
+                case Rotation3Way.ROTATION_3 -> distances[y] + distances[x];
+            };
+            return distance <= outerThreshold && distance >= innerThreshold;
+        };
+    }
+
     private final StandAloneIntSetting radius = new StandAloneIntSetting(0, 128, 8);
     private final StandAloneIntSetting thickness = new StandAloneIntSetting(0, 128, 128);
     private final StandAloneIntSetting height = new StandAloneIntSetting(0, 256, 16);
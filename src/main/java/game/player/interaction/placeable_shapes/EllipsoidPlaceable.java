@@ -8,6 +8,7 @@ import game.assets.ComputeShaders;
 import game.language.UiMessages;
 import game.player.interaction.Rotation6Way;
 import game.player.interaction.ShapePlaceable;
+import game.player.interaction.ShapeRasterizer;
 import game.player.interaction.ShapeSetting;
 import game.server.generation.Structure;
 
@@ -100,6 +101,64 @@ public final class EllipsoidPlaceable extends ShapePlaceable {
         };
     }
 
+    @Override
+    protected ShapeRasterizer.Shape getCpuShape(int lengthX, int lengthY, int lengthZ) {
+        Rotation6Way rotation = (Rotation6Way) rotation();
+        int thickness = this.thickness.value();
+        int lengthA = switch (rotation) {
+            case Rotation6Way.ROTATION_1, Rotation6Way.ROTATION_2 -> lengthX;
+            case Rotation6Way.ROTATION_3, Rotation6Way.ROTATION_4 -> lengthY;
+            case Rotation6Way.ROTATION_5, Rotation6Way.ROTATION_6 -> lengthZ;
+        };
+        int lengthB = switch (rotation) {
+            case Rotation6Way.ROTATION_3, Rotation6Way.ROTATION_5 -> lengthX;
+            case Rotation6Way.ROTATION_1, Rotation6Way.ROTATION_6 -> lengthY;
+            case Rotation6Way.ROTATION_2, Rotation6Way.ROTATION_4 -> lengthZ;
+        };
+        int lengthC = switch (rotation) {
+            case Rotation6Way.ROTATION_4, Rotation6Way.ROTATION_6 -> lengthX;
+            case Rotation6Way.ROTATION_2, Rotation6Way.ROTATION_5 -> lengthY;
+            case Rotation6Way.ROTATION_1, Rotation6Way.ROTATION_3 -> lengthZ;
+        };
+
+        float[] outerA = normalizedDistances(lengthA, radiusA.value(), exponentA.value());
+        float[] outerB = normalizedDistances(lengthB, radiusB.value(), exponentB.value());
+        float[] outerC = normalizedDistances(lengthC, radiusC.value(), exponentC.value());
+        float[] innerA = normalizedDistances(lengthA, Math.max(0, (float) (radiusA.value() - thickness)), exponentA.value());
+        float[] innerB = normalizedDistances(lengthB, Math.max(0, (float) (radiusB.value() - thickness)), exponentB.value());
+        float[] innerC = normalizedDistances(lengthC, Math.max(0, (float) (radiusC.value() - thickness)), exponentC.value());
+
+        return (x, y, z) -> {
+            int a = switch (rotation) {
+                case Rotation6Way.ROTATION_1, Rotation6Way.ROTATION_2 -> x;
+                case Rotation6Way.ROTATION_3, Rotation6Way.ROTATION_4 -> y;
+                case Rotation6Way.ROTATION_5, Rotation6Way.ROTATION_6 -> z;
+            };
+            int b = switch (rotation) {
+                case Rotation6Way.ROTATION_3, Rotation6Way.ROTATION_5 -> x;
+                case Rotation6Way.ROTATION_1, Rotation6Way.ROTATION_6 -> y;
+                case Rotation6Way.ROTATION_2, Rotation6Way.ROTATION_4 -> z;
+            };
+            int c = switch (rotation) {
+                case Rotation6Way.ROTATION_4, Rotation6Way.ROTATION_6 -> x;
+                case Rotation6Way.ROTATION_2, Rotation6Way.ROTATION_5 -> y;
+                case Rotation6Way.ROTATION_1, Rotation6Way.ROTATION_3 -> z;
+            };
+            return outerA[a] + outerB[b] + outerC[c] <= 1.01F && innerA[a] + innerB[b] + innerC[c] >= 0.99F;
+        };
+    }
+
+
+    // pow(abs(offset / radius), exponent) of every coordinate along an axis, with the offset from the center of the axis
+    private static float[] normalizedDistances(int length, float radius, float exponent) {
+        float[] distances = new float[length];
+        for (int coordinate = 0; coordinate < length; coordinate++) {
+            float offset = coordinate + 0.5F - length * 0.5F;
+            distances[coordinate] = ShapeRasterizer.pow(Math.abs(offset / radius), exponent);
+        }
+        return distances;
+    }
+
     private final StandAloneIntSetting thickness = new StandAloneIntSetting(0, 128, 128);
     private final StandAloneIntSetting radiusA = new StandAloneIntSetting(0, 128, 8);
     private final StandAloneIntSetting radiusB = new StandAloneIntSetting(0, 128, 8);
@@ -8,6 +8,7 @@ import game.assets.ComputeShaders;
 import game.language.UiMessages;
 import game.player.interaction.Rotation8Way;
 import game.player.interaction.ShapePlaceable;
+import game.player.interaction.ShapeRasterizer;
 import game.player.interaction.ShapeSetting;
 import game.server.generation.Structure;
 
@@ -72,6 +73,24 @@ public final class InsideArcPlaceable extends ShapePlaceable {
         return getStructure();
     }
 
+    @Override
+    protected ShapeRasterizer.Shape getCpuShape(int lengthX, int lengthY, int lengthZ) {
+        Rotation8Way rotation = (Rotation8Way) rotation();
+        float exponent = this.exponent.value();
+        float outerThreshold = ShapeRasterizer.pow(radius.value(), exponent) + 0.01F;
+        float innerThreshold = ShapeRasterizer.pow(Math.max(0, radius.value() - thickness.value()), exponent) - 0.01F;
+        float[] distances = ShapeRasterizer.distances(Math.max(lengthX, Math.max(lengthY, lengthZ)), 0.0F, exponent);
+        boolean invertX = (rotation.ordinal() & 4) != 0, invertY = (rotation.ordinal() & 2) != 0, invertZ = (rotation.ordinal() & 1) != 0;
+
+        return (x, y, z) -> {
+            float distanceX = distances[invertX ? lengthX - 1 - x : x];
+            float distanceY = distances[invertY ? lengthY - 1 - y : y];
+            float distanceZ = distances[invertZ ? lengthZ - 1 - z : z];
+            float distance = Math.min(distanceX + distanceY, Math.min(distanceX + distanceZ, distanceY + distanceZ));
+            return distance < outerThreshold && distance >= innerThreshold;
+        };
+    }
+
     private final StandAloneIntSetting radius = new StandAloneIntSetting(0, 128, 16);
     private final StandAloneFloatSetting exponent = new StandAloneFloatSetting(0.1F, 16.0F, 2.0F, 0.1F);
     private final StandAloneIntSetting thickness = new StandAloneIntSetting(0, 128, 128);
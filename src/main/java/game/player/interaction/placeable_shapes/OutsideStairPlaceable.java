@@ -8,6 +8,7 @@ import game.assets.ComputeShaders;
 import game.language.UiMessages;
 import game.player.interaction.Rotation24Way;
 import game.player.interaction.ShapePlaceable;
+import game.player.interaction.ShapeRasterizer;
 import game.player.interaction.ShapeSetting;
 
 import static game.utils.Constants.CHUNK_SIZE;
@@ -57,6 +58,38 @@ public final class OutsideStairPlaceable extends ShapePlaceable{
         };
     }
 
+    @Override
+    protected ShapeRasterizer.Shape getCpuShape(int lengthX, int lengthY, int lengthZ) {
+        int rotation = rotation().ordinal();
+        int stepHeight = this.stepHeight.value(), invert = lengthX - 1;
+        float slope = this.slope.value();
+        int outerThreshold = (lengthX + heightOffset.value()) / stepHeight;
+        int innerThreshold = Math.min(outerThreshold - 1, outerThreshold - thickness.value() / stepHeight);
+
+        // Every group of four rotations shares the axis of the steps, which direction the other two axes point is in the lowest two bits
+        return (x, y, z) -> {
+            int a = switch (rotation >> 2) {
+                case 0 -> invert - z;
+                case 1 -> invert - y;
+                case 2 -> invert - x;
+                case 3 -> z;
+                case 4 -> y;
+                default -> x;
+            };
+            boolean invertB = (rotation & 3) == 2 || (rotation & 3) == 3, invertC = (rotation & 3) == 1 || (rotation & 3) == 2;
+            int b = switch (rotation >> 2) {
+                case 2, 5 -> invertB ? invert - y : y;
+                default -> invertB ? invert - x : x;
+            };
+            int c = switch (rotation >> 2) {
+                case 0, 3 -> invertC ? invert - y : y;
+                default -> invertC ? invert - z : z;
+            };
+            float distance = a / stepHeight * slope + Math.max(b, c) / stepHeight;
+            return distance < outerThreshold && distance >= innerThreshold;
+        };
+    }
+
     private final StandAloneIntSetting stepHeight = new StandAloneIntSetting(1, CHUNK_SIZE / 2, 4);
     private final StandAloneIntSetting heightOffset = new StandAloneIntSetting(-32, 32, 0);
     private final StandAloneFloatSetting slope = new StandAloneFloatSetting(1.0F, 16.0F, 1.0F, 0.1F);
@@ -7,6 +7,7 @@ import game.assets.ComputeShaders;
 import game.language.UiMessages;
 import game.player.interaction.Rotation3Way;
 import game.player.interaction.ShapePlaceable;
+import game.player.interaction.ShapeRasterizer;
 import game.player.interaction.ShapeSetting;
 import game.server.materials_data.MaterialsData;
 import game.server.generation.Structure;
@@ -74,5 +75,10 @@ public final class SlabPlaceable extends ShapePlaceable {
         return new Structure(4, getMaterial(), bitMap);
     }
 
+    @Override
+    protected ShapeRasterizer.Shape getCpuShape(int lengthX, int lengthY, int lengthZ) {
+        return (x, y, z) -> true;
+    }
+
     private final StandAloneIntSetting thickness = new StandAloneIntSetting(0, 128, 8);
 }
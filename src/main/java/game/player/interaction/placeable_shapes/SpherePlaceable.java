@@ -7,6 +7,7 @@ import core.utils.Saver;
 import game.assets.ComputeShaders;
 import game.language.UiMessages;
 import game.player.interaction.ShapePlaceable;
+import game.player.interaction.ShapeRasterizer;
 import game.player.interaction.ShapeSetting;
 import game.server.generation.Structure;
 
@@ -71,6 +72,19 @@ public final class SpherePlaceable extends ShapePlaceable {
         return getStructure();
     }
 
+    @Override
+    protected ShapeRasterizer.Shape getCpuShape(int lengthX, int lengthY, int lengthZ) {
+        float exponent = this.exponent.value();
+        float outerThreshold = ShapeRasterizer.pow(radius.value(), exponent) + 0.01F;
+        float innerThreshold = ShapeRasterizer.pow(Math.max(0, radius.value() - thickness.value()), exponent) - 0.01F;
+        float[] distances = ShapeRasterizer.distances(Math.max(lengthX, Math.max(lengthY, lengthZ)), lengthX / 2.0F, exponent);
+
+        return (x, y, z) -> {
+            float distance = distances[x] + distances[y] + distances[z];
+            return distance <= outerThreshold && distance >= innerThreshold;
+        };
+    }
+
     private final StandAloneIntSetting radius = new StandAloneIntSetting(0, 128, 8);
     private final StandAloneIntSetting thickness = new StandAloneIntSetting(0, 128, 128);
     private final StandAloneFloatSetting exponent = new StandAloneFloatSetting(0.0F, 20.0F, 2.0F, 0.1F);
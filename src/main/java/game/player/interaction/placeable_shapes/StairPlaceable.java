@@ -8,6 +8,7 @@ import game.assets.ComputeShaders;
 import game.language.UiMessages;
 import game.player.interaction.Rotation24Way;
 import game.player.interaction.ShapePlaceable;
+import game.player.interaction.ShapeRasterizer;
 import game.player.interaction.ShapeSetting;
 
 import static game.utils.Constants.CHUNK_SIZE;
@@ -57,6 +58,36 @@ public final class StairPlaceable extends ShapePlaceable {
         };
     }
 
+    @Override
+    protected ShapeRasterizer.Shape getCpuShape(int lengthX, int lengthY, int lengthZ) {
+        Rotation24Way rotation = (Rotation24Way) rotation();
+        int stepHeight = this.stepHeight.value(), invert = lengthX - 1;
+        float slope = this.slope.value();
+        int outerThreshold = (lengthX + heightOffset.value()) / stepHeight;
+        int innerThreshold = Math.min(outerThreshold - 1, outerThreshold - thickness.value() / stepHeight);
+
+        return (x, y, z) -> {
+            int a = switch (rotation) {
+                case ROTATION_01, ROTATION_09, ROTATION_17, ROTATION_20 -> z;
+                case ROTATION_02, ROTATION_05, ROTATION_10, ROTATION_18 -> x;
+                case ROTATION_03, ROTATION_06, ROTATION_11, ROTATION_19 -> invert - z;
+                case ROTATION_04, ROTATION_07, ROTATION_08, ROTATION_12 -> invert - x;
+                case ROTATION_13, ROTATION_14, ROTATION_15, ROTATION_16 -> y;
+                case ROTATION_21, ROTATION_22, ROTATION_23, ROTATION_24 -> invert - y;
+            };
+            int b = switch (rotation) {
+                case ROTATION_01, ROTATION_02, ROTATION_03, ROTATION_04 -> y;
+                case ROTATION_09, ROTATION_10, ROTATION_11, ROTATION_12 -> invert - y;
+                case ROTATION_05, ROTATION_08, ROTATION_13, ROTATION_21 -> z;
+                case ROTATION_07, ROTATION_15, ROTATION_18, ROTATION_23 -> invert - z;
+                case ROTATION_06, ROTATION_14, ROTATION_17, ROTATION_22 -> x;
+                case ROTATION_16, ROTATION_19, ROTATION_20, ROTATION_24 -> invert - x;
+            };
+            float distance = (a / stepHeight) * slope + b / stepHeight;
+            return distance < outerThreshold && distance >= innerThreshold;
+        };
+    }
+
     private final StandAloneIntSetting stepHeight = new StandAloneIntSetting(1, CHUNK_SIZE / 2, 4);
     private final StandAloneIntSetting heightOffset = new StandAloneIntSetting(-32, 32, 0);
     private final StandAloneFloatSetting slope = new StandAloneFloatSetting(1.0F, 16.0F, 1.0F, 0.1F);
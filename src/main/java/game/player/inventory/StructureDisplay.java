@@ -104,6 +104,7 @@ public final class StructureDisplay extends Renderable {
         if (model.isEmpty()) return;
 
         shader.setUniform("lodSize", 1);
+        shader.setUniform("compactVertices", false);
         glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 0, model.bufferOrStart());
         glMultiDrawArrays(GL_TRIANGLES, model.indices(), model.vertexCounts());
     }
@@ -113,6 +114,7 @@ public final class StructureDisplay extends Renderable {
 
         shader.setUniform("cameraPosition", 3000.0F, 4000.0F, 2000.0F);
         shader.setUniform("lodSize", 1);
+        shader.setUniform("compactVertices", false);
         glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 0, model.bufferOrStart());
         glDrawArrays(GL_TRIANGLES, 0, model.transparentVertexCount());
     }
@@ -121,6 +123,7 @@ public final class StructureDisplay extends Renderable {
         if (model.isGlassEmpty()) return;
 
         shader.setUniform("lodSize", 1);
+        shader.setUniform("compactVertices", false);
         glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 0, model.bufferOrStart());
         glDrawArrays(GL_TRIANGLES, model.transparentVertexCount(), model.glassVertexCount());
     }
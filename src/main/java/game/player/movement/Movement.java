@@ -4,9 +4,9 @@ import core.sound.Sound;
 import core.utils.MathUtils;
 
 import game.server.Game;
-import game.server.World;
 import game.server.material.Material;
 import game.server.material.Properties;
+import game.server.materials_data.MaterialsData;
 import game.settings.FloatSettings;
 import game.settings.ToggleSettings;
 import game.utils.Position;
@@ -166,7 +166,6 @@ public final class Movement {
     private float getRequiredStepHeight(Position position, int component) {
         if (component == Y_COMPONENT) return Float.POSITIVE_INFINITY;
         Vector3i hitboxSize = state.getHitboxSize();
-        World world = Game.getWorld();
 
         long startX = getStartX(position, hitboxSize, component);
         long startY = getStartY(position, hitboxSize, component);
@@ -176,11 +175,12 @@ public final class Movement {
         int height = hitboxSize.y;
         int depth = component == Z_COMPONENT ? 1 : hitboxSize.z + 1;
 
-        for (long y = startY + height - 1; y != startY - 1; y--)
-            for (long x = startX; x != startX + width; x++)
-                for (long z = startZ; z != startZ + depth; z++) {
-                    byte material = world.getMaterial(x, y, z, 0);
-                    if (Properties.doesntHaveProperties(material, NO_COLLISION)) return (y - position.longY + 1) - position.fractionY;
+        byte[] materials = fillMaterials(startX, startY, startZ, width, height, depth);
+        for (int y = height - 1; y >= 0; y--)
+            for (int x = 0; x < width; x++)
+                for (int z = 0; z < depth; z++) {
+                    byte material = materials[MaterialsData.getUncompressedIndex(x, y, z)];
+                    if (Properties.doesntHaveProperties(material, NO_COLLISION)) return (startY + y - position.longY + 1) - position.fractionY;
                 }
         return 0.0F;
     }
@@ -302,29 +302,30 @@ public final class Movement {
     }
 
 
-    private static boolean containsCollidableVoxel(long y, long minX, long minZ, long maxX, long maxZ) {
-        World world = Game.getWorld();
-
-        for (long x = minX; x != maxX; x++)
-            for (long z = minZ; z != maxZ; z++) {
-                byte material = world.getMaterial(x, y, z, 0);
-                if (Properties.doesntHaveProperties(material, NO_COLLISION)) return true;
-            }
-        return false;
+    private boolean containsCollidableVoxel(long y, long minX, long minZ, long maxX, long maxZ) {
+        return collides(minX, y, minZ, (int) (maxX - minX), 1, (int) (maxZ - minZ));
     }
 
-    private static boolean collides(long startX, long startY, long startZ, int width, int height, int depth) {
-        World world = Game.getWorld();
+    private boolean collides(long startX, long startY, long startZ, int width, int height, int depth) {
+        byte[] materials = fillMaterials(startX, startY, startZ, width, height, depth);
 
-        for (long x = startX; x != startX + width; x++)
-            for (long y = startY; y != startY + height; y++)
-                for (long z = startZ; z != startZ + depth; z++) {
-                    byte material = world.getMaterial(x, y, z, 0);
+        for (int x = 0; x < width; x++)
+            for (int y = 0; y < height; y++)
+                for (int z = 0; z < depth; z++) {
+                    byte material = materials[MaterialsData.getUncompressedIndex(x, y, z)];
                     if (Properties.doesntHaveProperties(material, NO_COLLISION)) return true;
                 }
         return false;
     }
 
+    private byte[] fillMaterials(long startX, long startY, long startZ, int width, int height, int depth) {
+        int size = MathUtils.nextLargestPowOf2(MathUtils.max(width, height, depth));
+        if (boxMaterials.length < size * size * size) boxMaterials = new byte[size * size * size];
+        Game.getWorld().fillMaterialsInto(boxMaterials, startX, startY, startZ, width, height, depth, 0);
+        return boxMaterials;
+    }
+
+
     private static void advanceLength(Vector3d units, Vector3d lengths, int component) {
         double lengthComponent = lengths.get(component);
         lengths.setComponent(component, lengthComponent + units.get(component));
@@ -336,4 +337,5 @@ public final class Movement {
     private boolean wideGrounded, thinGrounded;
     private final Vector3f velocity = new Vector3f();
     private Vector3f renderVelocity = new Vector3f();
+    private byte[] boxMaterials = new byte[0];
 }
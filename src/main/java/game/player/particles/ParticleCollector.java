@@ -4,9 +4,9 @@ import core.utils.IntArrayList;
 
 import game.player.interaction.PlaceMode;
 import game.player.interaction.ShapePlaceable;
-import game.player.rendering.MeshGenerator;
+import game.player.rendering.VertexFormat;
 import game.server.Game;
-import game.server.materials_data.MaterialsData;
+import game.server.materials_data.SparseBitMap;
 import game.server.generation.Structure;
 import game.server.material.Material;
 import game.settings.IntSettings;
@@ -147,24 +147,19 @@ public final class ParticleCollector {
         int lengthX = placeable.getLengthX();
         int lengthY = placeable.getLengthY();
         int lengthZ = placeable.getLengthZ();
-        long[] bitMap = placeable.getBitMap();
+        SparseBitMap bitMap = placeable.getBitMap();
         byte material = placeable.getMaterial();
 
         int stepLength = IntSettings.PLACE_PARTICLE_STEP_LENGTH.value();
-        for (int xOffset = 0; xOffset < lengthX; xOffset += stepLength)
-            for (int yOffset = 0; yOffset < lengthY; yOffset += stepLength)
-                for (int zOffset = 0; zOffset < lengthZ; zOffset += stepLength) {
-
-                    int bitMapIndex = MaterialsData.getUncompressedIndex(xOffset, yOffset, zOffset);
-                    if ((bitMap[bitMapIndex >> 6] & 1L << bitMapIndex) == 0) continue;
-                    byte previousMaterial = Game.getWorld().getMaterial(x + xOffset, y + yOffset, z + zOffset, 0);
-                    if (previousMaterial == material || paint && previousMaterial == AIR || replaceAir && previousMaterial != AIR) continue;
-
-                    addPlaceParticle(placeParticles, bitMap,
-                            lengthX, lengthY, lengthZ,
-                            xOffset + startX, yOffset + startY, zOffset + startZ,
-                            material);
-                }
+        bitMap.forEach(lengthX, lengthY, lengthZ, stepLength, (xOffset, yOffset, zOffset) -> {
+            byte previousMaterial = Game.getWorld().getMaterial(x + xOffset, y + yOffset, z + zOffset, 0);
+            if (previousMaterial == material || paint && previousMaterial == AIR || replaceAir && previousMaterial != AIR) return;
+
+            addPlaceParticle(placeParticles, bitMap,
+                    lengthX, lengthY, lengthZ,
+                    xOffset + startX, yOffset + startY, zOffset + startZ,
+                    material);
+        });
     }
 
     private void addBreakEffectLoop(int startX, int startY, int startZ,
@@ -176,25 +171,20 @@ public final class ParticleCollector {
         int lengthX = placeable.getLengthX();
         int lengthY = placeable.getLengthY();
         int lengthZ = placeable.getLengthZ();
-        long[] bitMap = placeable.getBitMap();
+        SparseBitMap bitMap = placeable.getBitMap();
         byte material = placeable.getMaterial();
 
         int stepLength = IntSettings.BREAK_PARTICLE_STEP_LENGTH.value();
-        for (int xOffset = 0; xOffset < lengthX; xOffset += stepLength)
-            for (int yOffset = 0; yOffset < lengthY; yOffset += stepLength)
-                for (int zOffset = 0; zOffset < lengthZ; zOffset += stepLength) {
-
-                    int bitMapIndex = MaterialsData.getUncompressedIndex(xOffset, yOffset, zOffset);
-                    if ((bitMap[bitMapIndex >> 6] & 1L << bitMapIndex) == 0) continue;
-                    byte previousMaterial = Game.getWorld().getMaterial(x + xOffset, y + yOffset, z + zOffset, 0);
-                    if (previousMaterial == AIR || previousMaterial == OUT_OF_WORLD
-                            || previousMaterial == material
-                            || breakHeldOnly && previousMaterial != heldMaterial) continue;
-
-                    addBreakParticle(Material.isGlass(previousMaterial) ? transparentParticles : opaqueParticles,
-                            xOffset + startX, yOffset + startY, zOffset + startZ,
-                            previousMaterial);
-                }
+        bitMap.forEach(lengthX, lengthY, lengthZ, stepLength, (xOffset, yOffset, zOffset) -> {
+            byte previousMaterial = Game.getWorld().getMaterial(x + xOffset, y + yOffset, z + zOffset, 0);
+            if (previousMaterial == AIR || previousMaterial == OUT_OF_WORLD
+                    || previousMaterial == material
+                    || breakHeldOnly && previousMaterial != heldMaterial) return;
+
+            addBreakParticle(Material.isGlass(previousMaterial) ? transparentParticles : opaqueParticles,
+                    xOffset + startX, yOffset + startY, zOffset + startZ,
+                    previousMaterial);
+        });
     }
 
     private float getRandom(float min, float max) {
@@ -217,7 +207,7 @@ public final class ParticleCollector {
                 particleEffect.type().isOpaque(), particleEffect.x(), particleEffect.y(), particleEffect.z());
     }
 
-    public void addPlaceParticle(IntArrayList particles, long[] bitMap,
+    public void addPlaceParticle(IntArrayList particles, SparseBitMap bitMap,
                                  int lengthX, int lengthY, int lengthZ,
                                  int xOffset, int yOffset, int zOffset,
                                  byte material, byte transform) {
@@ -251,7 +241,7 @@ public final class ParticleCollector {
         particles.add(packRotationMaterial(rotationSpeedX, rotationSpeedY, material));
     }
 
-    public void addPlaceParticle(IntArrayList particles, long[] bitMap,
+    public void addPlaceParticle(IntArrayList particles, SparseBitMap bitMap,
                                  int lengthX, int lengthY, int lengthZ,
                                  int xOffset, int yOffset, int zOffset,
                                  byte material) {
@@ -285,7 +275,7 @@ public final class ParticleCollector {
         particles.add(packRotationMaterial(rotationSpeedX, rotationSpeedY, material));
     }
 
-    private static boolean checkParticleVisibility(long[] bitMap, int lengthX, int lengthY, int lengthZ,
+    private static boolean checkParticleVisibility(SparseBitMap bitMap, int lengthX, int lengthY, int lengthZ,
                                                    int xOffset, int yOffset, int zOffset,
                                                    float velocityX, float velocityY, float velocityZ) {
         int sampleX = xOffset + (int) (velocityX * ParticleType.OPAQUE_PLACE.getLifeTimeTicks() * 0.05F);
@@ -295,8 +285,7 @@ public final class ParticleCollector {
         if (sampleX >= 0 && sampleX < lengthX
                 && sampleY >= 0 && sampleY < lengthY
                 && sampleZ >= 0 && sampleZ < lengthZ) {
-            int bitIndex = MaterialsData.getUncompressedIndex(sampleX, sampleY, sampleZ);
-            return (bitMap[bitIndex >> 6] & 1L << bitIndex) != 0;
+            return bitMap.get(sampleX, sampleY, sampleZ);
         }
         return false;
     }
@@ -328,7 +317,7 @@ public final class ParticleCollector {
         int packedRotationSpeedX = (int) (rotationSpeedX * ROTATION_PACKING_FACTOR) & 0xFF;
         int packedRotationSpeedY = (int) (rotationSpeedY * ROTATION_PACKING_FACTOR) & 0xFF;
 
-        return Material.getProperties(material) << MeshGenerator.PROPERTIES_OFFSET | packedRotationSpeedX << 16 | packedRotationSpeedY << 8 | material & 0xFF;
+        return Material.getProperties(material) << VertexFormat.PROPERTIES_OFFSET | packedRotationSpeedX << 16 | packedRotationSpeedY << 8 | material & 0xFF;
     }
 
 
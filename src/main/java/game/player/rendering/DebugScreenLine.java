@@ -17,8 +17,12 @@ import core.utils.Vector3l;
 
 import game.player.interaction.Target;
 import game.server.Chunk;
+import game.server.EditExecutor;
 import game.server.Game;
+import game.server.World;
+import game.server.generation.ChunkGenerator;
 import game.server.generation.MapSample;
+import game.server.generation.MapSampleCache;
 import game.server.generation.WorldGeneration;
 import game.settings.DebugScreenOptions;
 import game.utils.Position;
@@ -80,8 +84,10 @@ public record DebugScreenLine(OptionSetting visibility, OptionSetting color, Str
         add(lines, DebugScreenOptions.CHUNK_MEMORY, () -> {
             long memory = 0L;
             int chunks = 0;
-            for (int lod = 0; lod < Game.getWorld().LOD_COUNT; lod++)
-                for (Chunk chunk : Game.getWorld().getLod(lod)) {
+            World world = Game.getWorld();
+            for (int lod = 0; lod < world.LOD_COUNT; lod++)
+                for (int chunkIndex = 0; chunkIndex < world.CHUNKS_PER_LOD; chunkIndex++) {
+                    Chunk chunk = world.getChunk(chunkIndex, lod);
                     if (chunk == null || chunk.getGenerationStatus() != Status.DONE) continue;
                     memory += chunk.getMaterials().getBytes().length;
                     chunks++;
@@ -96,8 +102,32 @@ public record DebugScreenLine(OptionSetting visibility, OptionSetting color, Str
             int free = allocator.getFree() / 1000;
             int capacity = allocator.getCapacity() / 1000;
             int highestAllocated = allocator.getHighestAllocated() / 1000;
+            int freeRegions = allocator.getFreeRegionCount();
 
-            return "Capacity:%sKB, Highest Allocated:%sKB, Used: %sKB, Free: %sKB".formatted(capacity, highestAllocated, used, free);
+            return "Capacity:%sKB, Highest Allocated:%sKB, Used: %sKB, Free: %sKB, Free Regions: %s".formatted(capacity, highestAllocated, used, free, freeRegions);
+        });
+
+        add(lines, DebugScreenOptions.GENERATION_QUEUES, () -> {
+            ChunkGenerator generator = Game.getServer().getGenerator();
+            ChunkGenerator.QueueMetrics generation = generator.getGenerationMetrics();
+            ChunkGenerator.QueueMetrics meshing = generator.getMeshingMetrics();
+
+            return "Generation queued:%s running:%s wait:%sms run:%sms, Meshing queued:%s running:%s wait:%sms run:%sms, Ready meshes:%s waiting:%s".formatted(
+                    generation.queued(), generation.running(), MathUtils.round(generation.averageWaitMillis(), 1), MathUtils.round(generation.averageRunMillis(), 1),
+                    meshing.queued(), meshing.running(), MathUtils.round(meshing.averageWaitMillis(), 1), MathUtils.round(meshing.averageRunMillis(), 1),
+                    generator.getReadyMeshCount(), generator.getWaitingMeshCount());
+        });
+
+        add(lines, DebugScreenOptions.MESH_UPLOADS, () -> {
+            MeshUploadQueue.Metrics metrics = Game.getPlayer().getMeshCollector().getUploadMetrics();
+            return "Mesh uploads queued:%s, last frame:%s %sKB, dropped:%s, latency:%sms".formatted(
+                    metrics.queued(), metrics.uploadedLastFrame(), metrics.uploadedBytesLastFrame() / 1000, metrics.dropped(), MathUtils.round(metrics.averageLatencyMillis(), 1));
+        });
+
+        add(lines, DebugScreenOptions.EDITS, () -> {
+            EditExecutor.Metrics metrics = Game.getServer().getEditExecutor().getMetrics();
+            return "Edits:%s, last chunk jobs:%s, latency median:%sms p95:%sms p99:%sms".formatted(metrics.edits(), metrics.lastJobCount(),
+                    MathUtils.round(metrics.medianMillis(), 2), MathUtils.round(metrics.p95Millis(), 2), MathUtils.round(metrics.p99Millis(), 2));
         });
 
         add(lines, DebugScreenOptions.RENDERED_MODELS, () -> {
@@ -175,6 +205,9 @@ public record DebugScreenLine(OptionSetting visibility, OptionSetting color, Str
             return "Resulting Height: %s".formatted(resultingHeight);
         });
 
+        add(lines, DebugScreenOptions.MAP_SAMPLE_CACHE, () -> "Map sample cache: %s / %s samples, hit rate %s%%".formatted(
+                MapSampleCache.getSize(), MapSampleCache.CAPACITY, MathUtils.round(MapSampleCache.getHitRate() * 100, 1)));
+
         add(lines, DebugScreenOptions.GENERATION_DATA, () -> {
             Position position = Game.getPlayer().getPosition();
             return "Temperature:%s".formatted(MapSample.temperatureMapValue(position.longX, position.longZ));
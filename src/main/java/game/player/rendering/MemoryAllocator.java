@@ -10,65 +10,46 @@ public final class MemoryAllocator {
         buffer = glGenBuffers();
         glBindBuffer(GL_SHADER_STORAGE_BUFFER, buffer);
         glBufferData(GL_SHADER_STORAGE_BUFFER, capacity, GL_DYNAMIC_DRAW);
-        free = new MemoryRegion(0, capacity);
+        regions = new RegionAllocator(capacity);
     }
 
     public int memAlloc(int size) {
+        return memAlloc(size, RegionAllocator.NO_OWNER);
+    }
+
+    /**
+     * @param owner Passed to the {@link RegionAllocator.Relocator} when the allocation is moved during compaction.
+     */
+    public int memAlloc(int size, int owner) {
         if (size <= 0) return -1;
-        MemoryRegion region = free;
-        MemoryRegion previous = null;
-
-        while (region != null) {
-            if (region.size < size) {
-                previous = region;
-                region = region.next;
-                continue;
-            }
-
-            int start = region.start;
-            region.size = region.size - size;
-            region.start = region.start + size;
-            if (region.size == 0) removeFreeAfter(previous, region);
-
-            MemoryRegion allocated = new MemoryRegion(start, size);
-            allocated.next = used;
-            used = allocated;
-            return start;
-        }
+        int start = regions.allocate(size, owner);
+        if (start != -1) return start;
 
         if (!growAtLeast(size)) return -1;
-        return memAlloc(size);
+        return regions.allocate(size, owner);
     }
 
     public void memFree(int start) {
         if (start == -1) return;
-        MemoryRegion freed = removeFromUsed(start);
-        if (freed == null) return;
-
-        MemoryRegion before = null;
-        MemoryRegion after = free;
-        while (after != null && after.start < freed.start) {
-            before = after;
-            after = after.next;
-        }
-
-        boolean merged = false;
-        if (before != null && before.start + before.size == freed.start) {
-            before.size += freed.size;
-            freed = before;
-            merged = true;
-        }
-        if (after != null && freed.start + freed.size == after.start) {
-            freed.size += after.size;
-            if (before != null) before.next = freed;
-            freed.next = after.next;
-            merged = true;
-        }
-        if (!merged) {
-            if (before == null) free = freed;
-            else before.next = freed;
-            freed.next = after;
-        }
+        regions.free(start);
+    }
+
+    public void setOwner(int start, int owner) {
+        regions.setOwner(start, owner);
+    }
+
+    /**
+     * Moves live allocations from the top of the buffer into holes further down to shrink {@link #getHighestAllocated()}.
+     * The data is copied on the GPU once the relocator accepts the move.
+     *
+     * @return The number of moved bytes.
+     */
+    public int compact(int maxBytes, RegionAllocator.Relocator relocator) {
+        return regions.compact(maxBytes, (owner, from, to, size) -> {
+            if (!relocator.relocate(owner, from, to, size)) return false;
+            glCopyNamedBufferSubData(buffer, buffer, from, to, size);
+            return true;
+        });
     }
 
     public int getBuffer() {
@@ -76,23 +57,11 @@ public final class MemoryAllocator {
     }
 
     public int getUsed() {
-        int used = 0;
-        MemoryRegion region = this.used;
-        while (region != null) {
-            used += region.size;
-            region = region.next;
-        }
-        return used;
+        return regions.getUsed();
     }
 
     public int getFree() {
-        int free = 0;
-        MemoryRegion region = this.free;
-        while (region != null) {
-            free += region.size;
-            region = region.next;
-        }
-        return free;
+        return regions.getFree();
     }
 
     public int getCapacity() {
@@ -100,13 +69,11 @@ public final class MemoryAllocator {
     }
 
     public int getHighestAllocated() {
-        int max = -1;
-        MemoryRegion region = used;
-        while (region != null) {
-            max = Math.max(max, region.start + region.size);
-            region = region.next;
-        }
-        return max;
+        return regions.getHighestAllocated();
+    }
+
+    public int getFreeRegionCount() {
+        return regions.getFreeRegionCount();
     }
 
     public void cleanUp() {
@@ -129,58 +96,11 @@ public final class MemoryAllocator {
         glDeleteBuffers(buffer);
         buffer = newBuffer;
 
-        if (free == null) free = new MemoryRegion(oldCapacity, 0);
-        MemoryRegion last = free;
-        while (last.next != null) last = last.next;
-        if (last.start + last.size == oldCapacity) last.size = last.size + capacity - oldCapacity;
-        else last.next = new MemoryRegion(oldCapacity, capacity - oldCapacity);
+        regions.grow(capacity);
         return true;
     }
 
-    private void removeFreeAfter(MemoryRegion previous, MemoryRegion region) {
-        if (previous == null) {
-            free = region.next;
-            return;
-        }
-        previous.next = region.next;
-    }
-
-    private void removeUsedAfter(MemoryRegion previous, MemoryRegion region) {
-        if (previous == null) {
-            used = region.next;
-            return;
-        }
-        previous.next = region.next;
-    }
-
-    private MemoryRegion removeFromUsed(int start) {
-        MemoryRegion used = this.used;
-        MemoryRegion previous = null;
-
-        while (used != null) {
-            if (used.start == start) {
-                removeUsedAfter(previous, used);
-                return used;
-            }
-            previous = used;
-            used = used.next;
-        }
-        return null;
-    }
-
-    private MemoryRegion free;
-    private MemoryRegion used;
+    private final RegionAllocator regions;
     private int buffer;
     private int capacity;
-
-    private static final class MemoryRegion {
-        int start;
-        int size;
-        MemoryRegion next = null;
-
-        MemoryRegion(int start, int size) {
-            this.start = start;
-            this.size = size;
-        }
-    }
 }
@@ -7,10 +7,11 @@ import static game.utils.Constants.*;
 public record Mesh(int[] opaqueVertices, int[] vertexCounts,
                    int[] transparentVertices, int transparentVertexCount, int glassVertexCount,
                    long chunkX, long chunkY, long chunkZ, int lod,
-                   AABB occluder, AABB occludee) {
+                   AABB occluder, AABB occludee,
+                   StagingRing.Slice opaqueStaging, StagingRing.Slice transparentStaging) {
 
     public Mesh(long chunkX, long chunkY, long chunkZ, int lod) {
-        this(null, null, null, 0, 0, chunkX, chunkY,chunkZ, lod, AABB.newMinChunkAABB(), AABB.newMinChunkAABB());
+        this(null, null, null, 0, 0, chunkX, chunkY,chunkZ, lod, AABB.newMinChunkAABB(), AABB.newMinChunkAABB(), null, null);
     }
 
     public Vector3l getWorldCoordinate() {
@@ -18,12 +19,19 @@ public record Mesh(int[] opaqueVertices, int[] vertexCounts,
     }
 
     public int getOpaqueByteSize() {
+        if (opaqueStaging != null) return opaqueStaging.size();
         if (opaqueVertices == null) return 0;
         return opaqueVertices.length << 2;
     }
 
     public int getTransparentByteSize() {
+        if (transparentStaging != null) return transparentStaging.size();
         if (transparentVertices == null) return 0;
         return transparentVertices.length << 2;
     }
+
+    public void freeStaging(StagingRing ring) {
+        ring.free(opaqueStaging);
+        ring.free(transparentStaging);
+    }
 }
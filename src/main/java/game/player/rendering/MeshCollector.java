@@ -13,15 +13,24 @@ import java.util.Arrays;
 import static game.utils.Constants.*;
 import static org.lwjgl.opengl.GL46.*;
 
-public final class MeshCollector {
+public final class MeshCollector implements VisibilityComputer.ModelSource {
 
     public MeshCollector() {
         allocator = new MemoryAllocator(1 << 29);
+        stagingBuffer = new StagingBuffer(STAGING_BUFFER_CAPACITY);
+        uploadQueue = new MeshUploadQueue();
+        originBuffer = createOriginBuffer();
     }
 
     public MeshCollector(MeshCollector oldMeshCollector, int oldRenderDistance) {
         oldMeshCollector.deleteOldMeshes();
+        oldMeshCollector.dropQueuedMeshes();
         allocator = oldMeshCollector.allocator;
+        stagingBuffer = oldMeshCollector.stagingBuffer;
+        uploadQueue = oldMeshCollector.uploadQueue;
+        // The origin indices depend on the render distance, so every origin is written again
+        glDeleteBuffers(oldMeshCollector.originBuffer);
+        originBuffer = createOriginBuffer();
 
         Position playerPosition = Game.getPlayer().getPosition();
         int renderDistance = Math.min(oldRenderDistance, IntSettings.RENDER_DISTANCE.value());
@@ -41,6 +50,8 @@ public final class MeshCollector {
                 }
                 int index = Utils.getChunkIndex(model.chunkX(), model.chunkY(), model.chunkZ(), lod);
                 opaqueModels[lod][index] = model;
+                allocator.setOwner(model.bufferOrStart(), getOwner(index, lod, false));
+                writeOrigin(index, lod, model.chunkX(), model.chunkY(), model.chunkZ());
             }
             for (TransparentModel model : oldMeshCollector.transparentModels[lod]) {
                 if (model == null) continue;
@@ -52,6 +63,8 @@ public final class MeshCollector {
                 }
                 int index = Utils.getChunkIndex(model.chunkX(), model.chunkY(), model.chunkZ(), lod);
                 transparentModels[lod][index] = model;
+                allocator.setOwner(model.bufferOrStart(), getOwner(index, lod, true));
+                writeOrigin(index, lod, model.chunkX(), model.chunkY(), model.chunkZ());
             }
 
             for (long chunkX = cameraX - renderDistance - 1; chunkX != cameraX + renderDistance + 2; chunkX++)
@@ -75,9 +88,16 @@ public final class MeshCollector {
     public MeshCollector(MeshCollector oldMeshCollector) {
         oldMeshCollector.deleteOldMeshes();
         oldMeshCollector.uploadAllMeshes();
+        oldMeshCollector.dropQueuedMeshes();
         allocator = oldMeshCollector.allocator;
+        stagingBuffer = oldMeshCollector.stagingBuffer;
+        uploadQueue = oldMeshCollector.uploadQueue;
         int lodCount = Math.min(oldMeshCollector.isMeshed.length, isMeshed.length);
 
+        originBuffer = createOriginBuffer();
+        glCopyNamedBufferSubData(oldMeshCollector.originBuffer, originBuffer, 0, 0, (long) lodCount * getOriginLodSize());
+        glDeleteBuffers(oldMeshCollector.originBuffer);
+
         System.arraycopy(oldMeshCollector.isMeshed, 0, isMeshed, 0, lodCount);
         System.arraycopy(oldMeshCollector.opaqueModels, 0, opaqueModels, 0, lodCount);
         System.arraycopy(oldMeshCollector.transparentModels, 0, transparentModels, 0, lodCount);
@@ -90,20 +110,19 @@ public final class MeshCollector {
         }
     }
 
-    public void uploadAllMeshes() {
-        Vector3l playerChunkCoordinate = Game.getPlayer().getPosition().getChunkCoordinate();
-        synchronized (meshQueue) {
-            for (Mesh mesh : meshQueue) {
-                long playerChunkX = playerChunkCoordinate.x >> mesh.lod();
-                long playerChunkY = playerChunkCoordinate.y >> mesh.lod();
-                long playerChunkZ = playerChunkCoordinate.z >> mesh.lod();
-                if (Utils.outsideRenderKeepDistance(playerChunkX, playerChunkY, playerChunkZ, mesh.chunkX(), mesh.chunkY(), mesh.chunkZ(), mesh.lod()))
-                    continue;
+    /**
+     * Uploads the queued meshes closest to the player until the upload budget of this frame is used up.
+     */
+    public void uploadMeshes() {
+        stagingBuffer.freeFinishedCopies();
+        uploadQueue.upload(UPLOAD_BYTES_PER_FRAME, UPLOAD_NANOS_PER_FRAME, new Uploader(Game.getPlayer().getPosition().getChunkCoordinate()));
+        stagingBuffer.submitCopies();
+    }
 
-                upload(mesh);
-            }
-            meshQueue.clear();
-        }
+    public void uploadAllMeshes() {
+        stagingBuffer.freeFinishedCopies();
+        uploadQueue.uploadAll(new Uploader(Game.getPlayer().getPosition().getChunkCoordinate()));
+        stagingBuffer.submitCopies();
     }
 
     public void deleteOldMeshes() {
@@ -117,10 +136,25 @@ public final class MeshCollector {
         }
     }
 
+    /**
+     * Moves some models from the top of the buffer into holes left by deleted ones, once enough of the buffer is wasted.
+     */
+    public void compactBuffer() {
+        int highestAllocated = allocator.getHighestAllocated();
+        if (highestAllocated - allocator.getUsed() < highestAllocated * COMPACTION_THRESHOLD) return;
+        allocator.compact(COMPACTION_BYTES_PER_FRAME, this::relocate);
+    }
+
     public void queueMesh(Mesh mesh) {
-        synchronized (meshQueue) {
-            meshQueue.add(mesh);
-        }
+        uploadQueue.add(mesh);
+    }
+
+    public MeshUploadQueue.Metrics getUploadMetrics() {
+        return uploadQueue.getMetrics();
+    }
+
+    public StagingRing getStagingRing() {
+        return stagingBuffer.getRing();
     }
 
     public boolean isMeshed(int chunkIndex, int lod) {
@@ -133,40 +167,46 @@ public final class MeshCollector {
     }
 
     public void removeMesh(int chunkIndex, int lod) {
-        OpaqueModel opaqueModel = getOpaqueModel(chunkIndex, lod);
-        if (opaqueModel != null) {
-            synchronized (toDeleteOpaqueModels) {
+        // Reading the model under the lock, so it can't be moved by compactBuffer() in between
+        synchronized (toDeleteOpaqueModels) {
+            OpaqueModel opaqueModel = getOpaqueModel(chunkIndex, lod);
+            if (opaqueModel != null) {
                 toDeleteOpaqueModels.add(opaqueModel);
+                setOpaqueModel(null, chunkIndex, lod);
             }
-            setOpaqueModel(null, chunkIndex, lod);
         }
 
-        TransparentModel transparentModel = getTransparentModel(chunkIndex, lod);
-        if (transparentModel != null) {
-            synchronized (toDeleteTransparentModels) {
+        synchronized (toDeleteTransparentModels) {
+            TransparentModel transparentModel = getTransparentModel(chunkIndex, lod);
+            if (transparentModel != null) {
                 toDeleteTransparentModels.add(transparentModel);
+                setTransparentModel(null, chunkIndex, lod);
             }
-            setTransparentModel(null, chunkIndex, lod);
         }
         setMeshed(false, chunkIndex, lod);
     }
 
+    @Override
     public OpaqueModel getOpaqueModel(int chunkIndex, int lod) {
         return opaqueModels[lod][chunkIndex];
     }
 
+    @Override
     public TransparentModel getTransparentModel(int chunkIndex, int lod) {
         return transparentModels[lod][chunkIndex];
     }
 
+    @Override
     public AABB getOccluder(int chunkIndex, int lod) {
         return occluders[lod][chunkIndex];
     }
 
+    @Override
     public AABB getOccludee(int chunkIndex, int lod) {
         return occludees[lod][chunkIndex];
     }
 
+    @Override
     public boolean isModelPresent(long lodModelX, long lodModelY, long lodModelZ, int lod) {
         return getOpaqueModel(Utils.getChunkIndex(lodModelX, lodModelY, lodModelZ, lod), lod) != null;
     }
@@ -175,12 +215,21 @@ public final class MeshCollector {
         return allocator.getBuffer();
     }
 
+    /**
+     * The origin of every chunk in the compact vertex format, indexed by {@link #getOriginIndex(int, int)}.
+     */
+    public int getOriginBuffer() {
+        return originBuffer;
+    }
+
     public MemoryAllocator getAllocator() {
         return allocator;
     }
 
     public void cleanUp() {
         allocator.cleanUp();
+        stagingBuffer.cleanUp();
+        glDeleteBuffers(originBuffer);
     }
 
     public void removeAll() {
@@ -195,6 +244,7 @@ public final class MeshCollector {
         }
     }
 
+    @Override
     public boolean isIsolated(long chunkX, long chunkY, long chunkZ, int lod) {
         OpaqueModel model;
         return ((model = getOpaqueModel(Utils.getChunkIndex(chunkX - 1, chunkY, chunkZ, lod), lod)) == null || model.isEmpty())
@@ -205,6 +255,17 @@ public final class MeshCollector {
                 && ((model = getOpaqueModel(Utils.getChunkIndex(chunkX, chunkY, chunkZ + 1, lod), lod)) == null || model.isEmpty());
     }
 
+    /**
+     * Passed to the shaders as the base instance of every draw of the model at {@code chunkIndex} and {@code lod}.
+     */
+    public static int getOriginIndex(int chunkIndex, int lod) {
+        return lod * Game.getWorld().CHUNKS_PER_LOD + chunkIndex;
+    }
+
+
+    private void dropQueuedMeshes() {
+        uploadQueue.dropAll(new Uploader(Game.getPlayer().getPosition().getChunkCoordinate()));
+    }
 
     private void deleteMesh(int chunkIndex, int lod) {
         OpaqueModel opaqueModel = getOpaqueModel(chunkIndex, lod);
@@ -230,35 +291,90 @@ public final class MeshCollector {
         int chunkIndex = Utils.getChunkIndex(mesh.chunkX(), mesh.chunkY(), mesh.chunkZ(), mesh.lod());
         deleteMesh(chunkIndex, mesh.lod());
 
-        OpaqueModel opaqueModel = loadOpaqueModel(mesh);
+        OpaqueModel opaqueModel = loadOpaqueModel(mesh, chunkIndex);
         setOpaqueModel(opaqueModel, chunkIndex, mesh.lod());
 
-        TransparentModel transparentModel = loadTransparentModel(mesh);
+        TransparentModel transparentModel = loadTransparentModel(mesh, chunkIndex);
         setTransparentModel(transparentModel, chunkIndex, mesh.lod());
         setMeshed(true, chunkIndex, mesh.lod());
 
         occluders[mesh.lod()][chunkIndex] = mesh.occluder();
         occludees[mesh.lod()][chunkIndex] = mesh.occludee();
+        writeOrigin(chunkIndex, mesh.lod(), mesh.chunkX(), mesh.chunkY(), mesh.chunkZ());
     }
 
-    private OpaqueModel loadOpaqueModel(Mesh mesh) {
-        int start = allocator.memAlloc(mesh.getOpaqueByteSize());
-        if (start == -1) return new OpaqueModel(mesh.getWorldCoordinate(), null, -1, mesh.lod(), false);
+    private void writeOrigin(int chunkIndex, int lod, long chunkX, long chunkY, long chunkZ) {
+        origin[0] = (int) chunkX << CHUNK_SIZE_BITS;
+        origin[1] = (int) chunkY << CHUNK_SIZE_BITS;
+        origin[2] = (int) chunkZ << CHUNK_SIZE_BITS;
+        glNamedBufferSubData(originBuffer, (long) getOriginIndex(chunkIndex, lod) * VertexFormat.INTS_PER_ORIGIN * Integer.BYTES, origin);
+    }
 
-        glNamedBufferSubData(allocator.getBuffer(), start, mesh.opaqueVertices());
+    private OpaqueModel loadOpaqueModel(Mesh mesh, int chunkIndex) {
+        int start = allocator.memAlloc(mesh.getOpaqueByteSize(), getOwner(chunkIndex, mesh.lod(), false));
+        if (start == -1) {
+            stagingBuffer.getRing().free(mesh.opaqueStaging());
+            return new OpaqueModel(mesh.getWorldCoordinate(), null, -1, mesh.lod(), false);
+        }
+
+        if (mesh.opaqueStaging() != null) stagingBuffer.copyInto(mesh.opaqueStaging(), allocator.getBuffer(), start);
+        else glNamedBufferSubData(allocator.getBuffer(), start, mesh.opaqueVertices());
         return new OpaqueModel(mesh.getWorldCoordinate(), mesh.vertexCounts(), start, mesh.lod(), false);
     }
 
-    private TransparentModel loadTransparentModel(Mesh mesh) {
-        int start = allocator.memAlloc(mesh.getTransparentByteSize());
-        if (start == -1) return new TransparentModel(mesh.getWorldCoordinate(), 0, 0, -1, mesh.lod());
+    private TransparentModel loadTransparentModel(Mesh mesh, int chunkIndex) {
+        int start = allocator.memAlloc(mesh.getTransparentByteSize(), getOwner(chunkIndex, mesh.lod(), true));
+        if (start == -1) {
+            stagingBuffer.getRing().free(mesh.transparentStaging());
+            return new TransparentModel(mesh.getWorldCoordinate(), 0, 0, -1, mesh.lod());
+        }
 
-        glNamedBufferSubData(allocator.getBuffer(), start, mesh.transparentVertices());
+        if (mesh.transparentStaging() != null) stagingBuffer.copyInto(mesh.transparentStaging(), allocator.getBuffer(), start);
+        else glNamedBufferSubData(allocator.getBuffer(), start, mesh.transparentVertices());
         return new TransparentModel(mesh.getWorldCoordinate(), mesh.transparentVertexCount(), mesh.glassVertexCount(), start, mesh.lod());
     }
 
+    private boolean relocate(int owner, int from, int to, int size) {
+        if (owner == RegionAllocator.NO_OWNER) return false;
+        int chunkIndex = owner >>> 6;
+        int lod = owner >> 1 & 0x1F;
+
+        // Models queued for deletion still reference the old start, so they can't be moved
+        if ((owner & 1) == 0) {
+            synchronized (toDeleteOpaqueModels) {
+                OpaqueModel model = getOpaqueModel(chunkIndex, lod);
+                if (model == null || model.bufferOrStart() != from) return false;
+                setOpaqueModel(model.moveTo(to), chunkIndex, lod);
+            }
+            return true;
+        }
+        synchronized (toDeleteTransparentModels) {
+            TransparentModel model = getTransparentModel(chunkIndex, lod);
+            if (model == null || model.bufferOrStart() != from) return false;
+            setTransparentModel(model.moveTo(to), chunkIndex, lod);
+        }
+        return true;
+    }
+
+    private static int getOwner(int chunkIndex, int lod, boolean transparent) {
+        return chunkIndex << 6 | lod << 1 | (transparent ? 1 : 0);
+    }
+
+    private static int createOriginBuffer() {
+        int buffer = glCreateBuffers();
+        glNamedBufferData(buffer, (long) Game.getWorld().LOD_COUNT * getOriginLodSize(), GL_DYNAMIC_DRAW);
+        return buffer;
+    }
+
+    private static long getOriginLodSize() {
+        return (long) Game.getWorld().CHUNKS_PER_LOD * VertexFormat.INTS_PER_ORIGIN * Integer.BYTES;
+    }
+
     private final MemoryAllocator allocator;
-    private final ArrayList<Mesh> meshQueue = new ArrayList<>();
+    private final StagingBuffer stagingBuffer;
+    private final MeshUploadQueue uploadQueue;
+    private final int originBuffer;
+    private final int[] origin = new int[VertexFormat.INTS_PER_ORIGIN];
     private final ArrayList<OpaqueModel> toDeleteOpaqueModels = new ArrayList<>();
     private final ArrayList<TransparentModel> toDeleteTransparentModels = new ArrayList<>();
 
@@ -267,4 +383,42 @@ public final class MeshCollector {
     private final AABB[][] occluders = new AABB[Game.getWorld().LOD_COUNT][Game.getWorld().CHUNKS_PER_LOD];
     private final AABB[][] occludees = new AABB[Game.getWorld().LOD_COUNT][Game.getWorld().CHUNKS_PER_LOD];
     private final long[][] isMeshed = new long[Game.getWorld().LOD_COUNT][Game.getWorld().CHUNKS_PER_LOD / 64];
+
+    private static final int STAGING_BUFFER_CAPACITY = 1 << 26;
+    private static final int COMPACTION_BYTES_PER_FRAME = 1 << 20;
+    private static final float COMPACTION_THRESHOLD = 0.25F;
+    private static final int UPLOAD_BYTES_PER_FRAME = 16 << 20;
+    private static final long UPLOAD_NANOS_PER_FRAME = 2_000_000L;
+
+    private final class Uploader implements MeshUploadQueue.Uploader {
+
+        private Uploader(Vector3l playerChunkCoordinate) {
+            this.playerChunkCoordinate = playerChunkCoordinate;
+        }
+
+        @Override
+        public boolean isObsolete(Mesh mesh) {
+            if (mesh.lod() >= opaqueModels.length) return true;
+            return Utils.outsideRenderKeepDistance(playerChunkCoordinate.x >> mesh.lod(), playerChunkCoordinate.y >> mesh.lod(), playerChunkCoordinate.z >> mesh.lod(),
+                    mesh.chunkX(), mesh.chunkY(), mesh.chunkZ(), mesh.lod());
+        }
+
+        @Override
+        public long getDistance(Mesh mesh) {
+            return Utils.chunkDistance(playerChunkCoordinate.x >> mesh.lod(), playerChunkCoordinate.y >> mesh.lod(), playerChunkCoordinate.z >> mesh.lod(),
+                    mesh.chunkX(), mesh.chunkY(), mesh.chunkZ(), mesh.lod()) << mesh.lod();
+        }
+
+        @Override
+        public void upload(Mesh mesh) {
+            MeshCollector.this.upload(mesh);
+        }
+
+        @Override
+        public void drop(Mesh mesh) {
+            mesh.freeStaging(stagingBuffer.getRing());
+        }
+
+        private final Vector3l playerChunkCoordinate;
+    }
 }
@@ -5,20 +5,22 @@ import core.utils.IntArrayList;
 
 import game.server.Chunk;
 import game.server.ChunkNeighbors;
-import game.server.Game;
 import game.server.materials_data.MaterialsData;
 import game.server.generation.Structure;
 import game.server.material.Material;
+import game.settings.ToggleSettings;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
 import java.util.Arrays;
 
 import static game.utils.Constants.*;
 
 public final class MeshGenerator {
 
-    public static final int INTS_PER_VERTEX = 4;
     public static final int VERTICES_PER_QUAD = 3; // for 1 Triangle each 3 Vertices
-    public static final int PROPERTIES_OFFSET = 24;
     public static final byte OPAQUE = GRASS;
 
     public static boolean isVisible(byte toTestMaterial, byte occludingMaterial) {
@@ -33,20 +35,28 @@ public final class MeshGenerator {
     }
 
     public Mesh generateMesh(Chunk chunk) {
+        return generateMesh(chunk, null);
+    }
+
+    /**
+     * Writes the vertices straight into {@code stagingRing} if it has space, instead of copying them into arrays.
+     * The returned mesh then owns its slices, which must be freed once they are uploaded or the mesh is dropped.
+     */
+    public Mesh generateMesh(Chunk chunk, StagingRing stagingRing) {
         if (chunk.isAir()) return new Mesh(chunk.X, chunk.Y, chunk.Z, chunk.LOD);
 
         ChunkNeighbors neighbors = chunk.getNeighbors();
-        if (neighbors.areUnGenerated()) {
-            Game.getServer().scheduleGeneratorRestart();
-            return null;
-        }
+        // Gets meshed again once the missing neighbors are generated
+        if (neighbors.areUnGenerated()) return null;
 
+        bitwiseMeshing = ToggleSettings.BITWISE_MESHING.value();
         AABB occluder = chunk.getMaterials().getOccluder();
         chunk.generateToMeshFacesMaps(toMeshFacesMaps, materials, adjacentChunkLayers, neighbors);
 
         startX = (int) chunk.X << CHUNK_SIZE_BITS;
         startY = (int) chunk.Y << CHUNK_SIZE_BITS;
         startZ = (int) chunk.Z << CHUNK_SIZE_BITS;
+        intsPerVertex = VertexFormat.INTS_PER_COMPACT_VERTEX;
 
         clear();
         addNorthSouthFaces();
@@ -55,6 +65,10 @@ public final class MeshGenerator {
         AABB occludee = getOccludee();
         if (chunk.LOD != 0 && hasOpaqueMesh()) addSideLayers();
 
+        if (stagingRing != null) {
+            Mesh mesh = loadStagedMesh(stagingRing, chunk.X, chunk.Y, chunk.Z, chunk.LOD, occluder, occludee);
+            if (mesh != null) return mesh;
+        }
         return loadMesh(chunk.X, chunk.Y, chunk.Z, chunk.LOD, occluder, occludee);
     }
 
@@ -63,6 +77,9 @@ public final class MeshGenerator {
         int endX = structure.sizeX();
         int endY = structure.sizeY();
         int endZ = structure.sizeZ();
+        bitwiseMeshing = ToggleSettings.BITWISE_MESHING.value();
+        // Structures can be bigger than a chunk, so the positions don't fit into the compact layout
+        intsPerVertex = VertexFormat.INTS_PER_WIDE_VERTEX;
         clear();
         MaterialsData surfaceEquivalent = structure.materials().getSurfaceEquivalent();
 
@@ -121,9 +138,44 @@ public final class MeshGenerator {
         int[] transparentVertices = loadTransparentVertices();
 
         return new Mesh(opaqueVertices, vertexCounts, transparentVertices,
-                transparentVerticesList.size() * VERTICES_PER_QUAD / INTS_PER_VERTEX,
-                glassVerticesList.size() * VERTICES_PER_QUAD / INTS_PER_VERTEX,
-                chunkX, chunkY, chunkZ, lod, occluder, occludee);
+                transparentVerticesList.size() * VERTICES_PER_QUAD / intsPerVertex,
+                glassVerticesList.size() * VERTICES_PER_QUAD / intsPerVertex,
+                chunkX, chunkY, chunkZ, lod, occluder, occludee, null, null);
+    }
+
+    private Mesh loadStagedMesh(StagingRing stagingRing, long chunkX, long chunkY, long chunkZ, int lod, AABB occluder, AABB occludee) {
+        int opaqueIntCount = 0;
+        for (IntArrayList vertexList : opaqueVerticesLists) opaqueIntCount += vertexList.size();
+        int transparentIntCount = transparentVerticesList.size() + glassVerticesList.size();
+
+        StagingRing.Slice opaqueStaging = stagingRing.allocate(opaqueIntCount << 2);
+        StagingRing.Slice transparentStaging = stagingRing.allocate(transparentIntCount << 2);
+        // Rather copy into arrays than wait for the render thread to free up the ring
+        if (opaqueIntCount != 0 && opaqueStaging == null || transparentIntCount != 0 && transparentStaging == null) {
+            stagingRing.free(opaqueStaging);
+            stagingRing.free(transparentStaging);
+            return null;
+        }
+
+        int[] vertexCounts = new int[opaqueVerticesLists.length];
+        if (opaqueStaging != null) {
+            IntBuffer opaqueVertices = opaqueStaging.buffer().asIntBuffer();
+            for (int index = 0; index < opaqueVerticesLists.length; index++) {
+                IntArrayList vertexList = opaqueVerticesLists[index];
+                vertexCounts[index] = vertexList.size() * VERTICES_PER_QUAD / intsPerVertex;
+                vertexList.copyInto(opaqueVertices);
+            }
+        }
+        if (transparentStaging != null) {
+            IntBuffer transparentVertices = transparentStaging.buffer().asIntBuffer();
+            transparentVerticesList.copyInto(transparentVertices);
+            glassVerticesList.copyInto(transparentVertices);
+        }
+
+        return new Mesh(null, vertexCounts, null,
+                transparentVerticesList.size() * VERTICES_PER_QUAD / intsPerVertex,
+                glassVerticesList.size() * VERTICES_PER_QUAD / intsPerVertex,
+                chunkX, chunkY, chunkZ, lod, occluder, occludee, opaqueStaging, transparentStaging);
     }
 
     private int[] loadTransparentVertices() {
@@ -140,7 +192,7 @@ public final class MeshGenerator {
 
         for (int index = 0; index < opaqueVerticesLists.length; index++) {
             IntArrayList vertexList = opaqueVerticesLists[index];
-            vertexCounts[index] = vertexList.size() * VERTICES_PER_QUAD / INTS_PER_VERTEX;
+            vertexCounts[index] = vertexList.size() * VERTICES_PER_QUAD / intsPerVertex;
             vertexList.copyInto(opaqueVertices, verticesIndex);
             verticesIndex += vertexList.size();
         }
@@ -156,6 +208,7 @@ public final class MeshGenerator {
     private AABB getOccludee() {
         AABB occludee = AABB.newMinChunkAABB();
 
+        // Only called for chunks, so the vertices are always compact
         for (IntArrayList vertices : opaqueVerticesLists) addToAABB(vertices, occludee);
         addToAABB(transparentVerticesList, occludee);
         addToAABB(glassVerticesList, occludee);
@@ -171,18 +224,15 @@ public final class MeshGenerator {
 
     private static void addToAABB(IntArrayList vertices, AABB aabb) {
         int[] data = vertices.getData();
-        for (int index = 0; index < vertices.size(); index += INTS_PER_VERTEX) {
-            int x = data[index + 0] & CHUNK_SIZE_MASK;
-            int y = data[index + 1] & CHUNK_SIZE_MASK;
-            int z = data[index + 2] & CHUNK_SIZE_MASK;
-            int faceData = data[index + 3];
-            addToAABB(aabb, x, y, z, faceData);
+        for (int index = 0; index < vertices.size(); index += VertexFormat.INTS_PER_COMPACT_VERTEX) {
+            int position = data[index];
+            addToAABB(aabb, VertexFormat.getX(position), VertexFormat.getY(position), VertexFormat.getZ(position), data[index + 1]);
         }
     }
 
     private static void addToAABB(AABB aabb, int x, int y, int z, int faceData) {
-        int side = faceData >> 8 & 7;
-        int faceSize1 = (faceData >> 17 & 63) + 1, faceSize2 = (faceData >> 11 & 63) + 1;
+        int side = VertexFormat.getSide(faceData);
+        int faceSize1 = VertexFormat.getFaceSize1(faceData) + 1, faceSize2 = VertexFormat.getFaceSize2(faceData) + 1;
 
         int maxX = x + switch (side) {
             case NORTH, SOUTH -> faceSize2;
@@ -436,6 +486,7 @@ public final class MeshGenerator {
     }
 
     private int growFace1stDirection(long[] toMeshFacesMap, int growStart, int fixedStart, byte material) {
+        if (bitwiseMeshing) return growFace1stDirectionBitwise(toMeshFacesMap, growStart, fixedStart, material);
         for (; growStart < CHUNK_SIZE; growStart++) {
             int index = fixedStart << CHUNK_SIZE_BITS | growStart;
             if ((toMeshFacesMap[fixedStart] & 1L << growStart) == 0 || materialsLayer[index] != material) return growStart - 1;
@@ -444,6 +495,8 @@ public final class MeshGenerator {
     }
 
     private int growFace2ndDirection(long[] toMeshFacesMap, int growStart, long mask, int fixedStart, int fixedEnd, byte material) {
+        // Comparing whole words only pays off once the face is wider than a word
+        if (bitwiseMeshing && fixedEnd - fixedStart >= 8) return growFace2ndDirectionBitwise(toMeshFacesMap, growStart, mask, fixedStart, material);
         for (; growStart < CHUNK_SIZE && (toMeshFacesMap[growStart] & mask) == mask; growStart++)
             for (int index = fixedStart; index <= fixedEnd; index++)
                 if (materialsLayer[growStart << CHUNK_SIZE_BITS | index] != material) return growStart - 1;
@@ -451,6 +504,49 @@ public final class MeshGenerator {
     }
 
 
+    // Same faces as the byte by byte growing above, but compares eight materials at once
+    private int growFace1stDirectionBitwise(long[] toMeshFacesMap, int growStart, int fixedStart, byte material) {
+        long toMeshFaces = toMeshFacesMap[fixedStart];
+        long broadcastMaterial = (material & 0xFFL) * BROADCAST;
+        int rowIndex = fixedStart << CHUNK_SIZE_BITS;
+        // Most faces are short, so don't bother loading whole words for them
+        if (growStart == CHUNK_SIZE || (toMeshFaces & 1L << growStart) == 0 || materialsLayer[rowIndex | growStart] != material) return growStart - 1;
+
+        while (growStart < CHUNK_SIZE && (toMeshFaces & 1L << growStart) != 0) {
+            int word = growStart >> 3, offset = growStart & 7;
+            long growable = (toMeshFaces >>> (word << 3) & getEqualBytes(rowIndex | word << 3, broadcastMaterial)) >>> offset;
+            int grown = Long.numberOfTrailingZeros(~growable);
+            growStart += grown;
+            if (grown < 8 - offset) break;
+        }
+        return growStart - 1;
+    }
+
+    private int growFace2ndDirectionBitwise(long[] toMeshFacesMap, int growStart, long mask, int fixedStart, byte material) {
+        long broadcastMaterial = (material & 0xFFL) * BROADCAST;
+        int startWord = Long.numberOfTrailingZeros(mask) >> 3, endWord = 63 - Long.numberOfLeadingZeros(mask) >> 3;
+
+        for (; growStart < CHUNK_SIZE && (toMeshFacesMap[growStart] & mask) == mask; growStart++) {
+            int rowIndex = growStart << CHUNK_SIZE_BITS;
+            if (materialsLayer[rowIndex | fixedStart] != material) return growStart - 1;
+            for (int word = startWord; word <= endWord; word++) {
+                long requiredBytes = mask >>> (word << 3) & 0xFF;
+                if ((getEqualBytes(rowIndex | word << 3, broadcastMaterial) & requiredBytes) != requiredBytes) return growStart - 1;
+            }
+        }
+        return growStart - 1;
+    }
+
+    /**
+     * @return A bit for each of the eight materials starting at {@code index} in the materials layer, set if the material is the broadcast one.
+     */
+    private long getEqualBytes(int index, long broadcastMaterial) {
+        long difference = (long) LONG_VIEW.get(materialsLayer, index) ^ broadcastMaterial;
+        long equalBytes = ~((difference & LOW_SEVEN_BITS) + LOW_SEVEN_BITS | difference) & HIGH_BITS;
+        return (equalBytes >>> 7) * GATHER_BYTES >>> 56;
+    }
+
+
     private static long getMask(int length, int offset) {
         return length == CHUNK_SIZE ? -1L : (1L << length) - 1 << offset;
     }
@@ -461,13 +557,18 @@ public final class MeshGenerator {
     }
 
     private void addFace(IntArrayList vertices, int side, int materialX, int materialY, int materialZ, byte material, int faceSize1, int faceSize2) {
-        vertices.add(startX | materialX);
-        vertices.add(startY | materialY);
-        vertices.add(startZ | materialZ);
-        vertices.add(Material.getProperties(material) << PROPERTIES_OFFSET | faceSize1 << 17 | faceSize2 << 11 | side << 8 | material & 0xFF);
+        if (intsPerVertex == VertexFormat.INTS_PER_COMPACT_VERTEX) vertices.add(VertexFormat.packPosition(materialX, materialY, materialZ));
+        else {
+            vertices.add(startX | materialX);
+            vertices.add(startY | materialY);
+            vertices.add(startZ | materialZ);
+        }
+        vertices.add(VertexFormat.packFaceData(Material.getProperties(material), faceSize1, faceSize2, side, material));
     }
 
     private int startX, startY, startZ;
+    private int intsPerVertex;
+    private boolean bitwiseMeshing;
 
     private final long[][][] toMeshFacesMaps = new long[6][CHUNK_SIZE][CHUNK_SIZE];
     private final byte[] materialsLayer = new byte[CHUNK_SIZE * CHUNK_SIZE];
@@ -478,6 +579,12 @@ public final class MeshGenerator {
     };
 
     private static final int EXPECTED_LIST_SIZE = CHUNK_SIZE * CHUNK_SIZE;
+    private static final long BROADCAST = 0x0101010101010101L;
+    private static final long LOW_SEVEN_BITS = 0x7F7F7F7F7F7F7F7FL;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+    // Moves the lowest bit of every byte into the highest byte, the first byte ending up in the lowest bit
+    private static final long GATHER_BYTES = 0x0102040810204080L;
+    private static final VarHandle LONG_VIEW = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
     private final IntArrayList transparentVerticesList = new IntArrayList(EXPECTED_LIST_SIZE), glassVerticesList = new IntArrayList(EXPECTED_LIST_SIZE);
     private final IntArrayList[] opaqueVerticesLists = new IntArrayList[]{
             new IntArrayList(EXPECTED_LIST_SIZE), new IntArrayList(EXPECTED_LIST_SIZE), new IntArrayList(EXPECTED_LIST_SIZE),
@@ -0,0 +1,143 @@
+package game.player.rendering;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Meshes waiting to be uploaded. Meshing threads add meshes without ever taking a lock, everything else is only
+ * called by the render thread.
+ * <p>
+ * Each frame uploads the closest meshes until either the byte or the time budget is used up. Only the newest mesh
+ * of a chunk is kept, older ones are dropped as soon as the newer one is seen.
+ */
+public final class MeshUploadQueue {
+
+    public void add(Mesh mesh) {
+        incoming.add(new QueuedMesh(new MeshKey(mesh.chunkX(), mesh.chunkY(), mesh.chunkZ(), mesh.lod()), mesh, System.nanoTime()));
+        incomingCount.incrementAndGet();
+    }
+
+    public void upload(int maxBytes, long maxNanos, Uploader uploader) {
+        long start = System.nanoTime();
+        collectIncoming(uploader);
+        uploadedLastFrame = 0;
+        uploadedBytesLastFrame = 0;
+        if (pending.isEmpty()) return;
+
+        ArrayList<QueuedMesh> sorted = new ArrayList<>(pending.values());
+        for (QueuedMesh queued : sorted) queued.distance = uploader.getDistance(queued.mesh);
+        sorted.sort(Comparator.comparingLong(queued -> queued.distance));
+
+        for (QueuedMesh queued : sorted) {
+            if (uploader.isObsolete(queued.mesh)) {
+                drop(queued, uploader);
+                continue;
+            }
+            int size = queued.mesh.getOpaqueByteSize() + queued.mesh.getTransparentByteSize();
+            // At least one mesh is uploaded every frame, so a mesh bigger than the budget can't stall the queue
+            if (uploadedLastFrame != 0 && (uploadedBytesLastFrame + size > maxBytes || System.nanoTime() - start > maxNanos)) break;
+            upload(queued, size, uploader);
+        }
+    }
+
+    public void uploadAll(Uploader uploader) {
+        collectIncoming(uploader);
+        uploadedLastFrame = 0;
+        uploadedBytesLastFrame = 0;
+
+        for (QueuedMesh queued : new ArrayList<>(pending.values())) {
+            if (uploader.isObsolete(queued.mesh)) drop(queued, uploader);
+            else upload(queued, queued.mesh.getOpaqueByteSize() + queued.mesh.getTransparentByteSize(), uploader);
+        }
+    }
+
+    public void dropAll(Uploader uploader) {
+        collectIncoming(uploader);
+        for (QueuedMesh queued : new ArrayList<>(pending.values())) drop(queued, uploader);
+    }
+
+    public Metrics getMetrics() {
+        return new Metrics(pending.size() + incomingCount.get(), uploadedLastFrame, uploadedBytesLastFrame, dropped,
+                (float) (averageLatencyNanos / 1_000_000));
+    }
+
+
+    private void collectIncoming(Uploader uploader) {
+        QueuedMesh queued;
+        while ((queued = incoming.poll()) != null) {
+            incomingCount.decrementAndGet();
+            QueuedMesh superseded = pending.put(queued.key, queued);
+            if (superseded == null) continue;
+
+            // The chunk has been waiting since its first mesh was queued
+            queued.enqueueTime = superseded.enqueueTime;
+            uploader.drop(superseded.mesh);
+            dropped++;
+        }
+    }
+
+    private void upload(QueuedMesh queued, int size, Uploader uploader) {
+        pending.remove(queued.key);
+        uploader.upload(queued.mesh);
+
+        uploadedLastFrame++;
+        uploadedBytesLastFrame += size;
+        long latency = System.nanoTime() - queued.enqueueTime;
+        averageLatencyNanos += (latency - averageLatencyNanos) * AVERAGING_FACTOR;
+    }
+
+    private void drop(QueuedMesh queued, Uploader uploader) {
+        pending.remove(queued.key);
+        uploader.drop(queued.mesh);
+        dropped++;
+    }
+
+    private final ConcurrentLinkedQueue<QueuedMesh> incoming = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger incomingCount = new AtomicInteger();
+    private final HashMap<MeshKey, QueuedMesh> pending = new HashMap<>();
+
+    private int uploadedLastFrame = 0, uploadedBytesLastFrame = 0;
+    private long dropped = 0;
+    private double averageLatencyNanos = 0.0;
+
+    private static final double AVERAGING_FACTOR = 0.05;
+
+    public interface Uploader {
+        boolean isObsolete(Mesh mesh);
+
+        /**
+         * @return The distance of the mesh to the camera, closer meshes are uploaded first.
+         */
+        long getDistance(Mesh mesh);
+
+        void upload(Mesh mesh);
+
+        /**
+         * Called for meshes that are superseded or obsolete and will never be uploaded.
+         */
+        void drop(Mesh mesh);
+    }
+
+    public record Metrics(int queued, int uploadedLastFrame, int uploadedBytesLastFrame, long dropped, float averageLatencyMillis) {
+    }
+
+    private record MeshKey(long chunkX, long chunkY, long chunkZ, int lod) {
+    }
+
+    private static final class QueuedMesh {
+
+        private QueuedMesh(MeshKey key, Mesh mesh, long enqueueTime) {
+            this.key = key;
+            this.mesh = mesh;
+            this.enqueueTime = enqueueTime;
+        }
+
+        private final MeshKey key;
+        private final Mesh mesh;
+        private long enqueueTime;
+        private long distance;
+    }
+}
@@ -20,40 +20,47 @@ public record OpaqueModel(long totalX, long totalY, long totalZ, int LOD, int bu
                 getIndices(vertexCounts, bufferOrStart, isBuffer));
     }
 
-    public void addDataWithOcclusionCulling(IntArrayList commands, long cameraChunkX, long cameraChunkY, long cameraChunkZ, boolean isLodBorderChunk) {
+    /**
+     * @param originIndex The index of the chunk origin of this model, see {@link MeshCollector#getOriginIndex(int, int)}.
+     */
+    public void addDataWithOcclusionCulling(IntArrayList commands, long cameraChunkX, long cameraChunkY, long cameraChunkZ, boolean isLodBorderChunk, int originIndex) {
         long modelChunkX = chunkX();
         long modelChunkY = chunkY();
         long modelChunkZ = chunkZ();
         boolean notNull = !isEmpty();
 
-        addData(commands, notNull && isVisibleGE(cameraChunkZ, modelChunkZ), NORTH);
-        addData(commands, notNull && isVisibleGE(cameraChunkY, modelChunkY), TOP);
-        addData(commands, notNull && isVisibleGE(cameraChunkX, modelChunkX), WEST);
-        addData(commands, notNull && isVisibleLE(cameraChunkZ, modelChunkZ), SOUTH);
-        addData(commands, notNull && isVisibleLE(cameraChunkY, modelChunkY), BOTTOM);
-        addData(commands, notNull && isVisibleLE(cameraChunkX, modelChunkX), EAST);
-        addData(commands, notNull && isLodBorderChunk, 6);
+        addData(commands, notNull && isVisibleGE(cameraChunkZ, modelChunkZ), NORTH, originIndex);
+        addData(commands, notNull && isVisibleGE(cameraChunkY, modelChunkY), TOP, originIndex);
+        addData(commands, notNull && isVisibleGE(cameraChunkX, modelChunkX), WEST, originIndex);
+        addData(commands, notNull && isVisibleLE(cameraChunkZ, modelChunkZ), SOUTH, originIndex);
+        addData(commands, notNull && isVisibleLE(cameraChunkY, modelChunkY), BOTTOM, originIndex);
+        addData(commands, notNull && isVisibleLE(cameraChunkX, modelChunkX), EAST, originIndex);
+        addData(commands, notNull && isLodBorderChunk, 6, originIndex);
     }
 
-    public void addDataWithoutOcclusionCulling(IntArrayList commands, long cameraChunkX, long cameraChunkY, long cameraChunkZ, boolean isLodBorderChunk) {
+    public void addDataWithoutOcclusionCulling(IntArrayList commands, long cameraChunkX, long cameraChunkY, long cameraChunkZ, boolean isLodBorderChunk, int originIndex) {
         if (isEmpty()) return;
         long modelChunkX = chunkX();
         long modelChunkY = chunkY();
         long modelChunkZ = chunkZ();
 
-        if (isVisibleGE(cameraChunkZ, modelChunkZ)) addData(commands, NORTH);
-        if (isVisibleGE(cameraChunkY, modelChunkY)) addData(commands, TOP);
-        if (isVisibleGE(cameraChunkX, modelChunkX)) addData(commands, WEST);
-        if (isVisibleLE(cameraChunkZ, modelChunkZ)) addData(commands, SOUTH);
-        if (isVisibleLE(cameraChunkY, modelChunkY)) addData(commands, BOTTOM);
-        if (isVisibleLE(cameraChunkX, modelChunkX)) addData(commands, EAST);
-        if (isLodBorderChunk) addData(commands, 6);
+        if (isVisibleGE(cameraChunkZ, modelChunkZ)) addData(commands, NORTH, originIndex);
+        if (isVisibleGE(cameraChunkY, modelChunkY)) addData(commands, TOP, originIndex);
+        if (isVisibleGE(cameraChunkX, modelChunkX)) addData(commands, WEST, originIndex);
+        if (isVisibleLE(cameraChunkZ, modelChunkZ)) addData(commands, SOUTH, originIndex);
+        if (isVisibleLE(cameraChunkY, modelChunkY)) addData(commands, BOTTOM, originIndex);
+        if (isVisibleLE(cameraChunkX, modelChunkX)) addData(commands, EAST, originIndex);
+        if (isLodBorderChunk) addData(commands, 6, originIndex);
     }
 
     public boolean isEmpty() {
         return vertexCounts == null || indices == null;
     }
 
+    public OpaqueModel moveTo(int start) {
+        return new OpaqueModel(totalX, totalY, totalZ, LOD, start, vertexCounts, new int[FACE_COUNT], getIndices(vertexCounts, start, false));
+    }
+
     public void delete() {
         glDeleteBuffers(bufferOrStart);
     }
@@ -78,18 +85,18 @@ public record OpaqueModel(long totalX, long totalY, long totalZ, int LOD, int bu
     }
 
 
-    private void addData(IntArrayList commands, boolean isVisible, int side) {
+    private void addData(IntArrayList commands, boolean isVisible, int side, int originIndex) {
         commands.add(isVisible ? vertexCounts[side] : 0);
         commands.add(0);
         commands.add(isVisible ? indices[side] : 0);
-        commands.add(0);
+        commands.add(originIndex);
     }
 
-    private void addData(IntArrayList commands, int side) {
+    private void addData(IntArrayList commands, int side, int originIndex) {
         commands.add(vertexCounts[side]);
         commands.add(1);
         commands.add(indices[side]);
-        commands.add(0);
+        commands.add(originIndex);
     }
 
     private boolean isVisibleLE(long cameraChunk, long modelChunk) {
@@ -111,6 +118,6 @@ public record OpaqueModel(long totalX, long totalY, long totalZ, int LOD, int bu
 
     private static int firstIndex(int bufferOrStart, boolean isBuffer) {
         if (isBuffer) return 0;
-        return (bufferOrStart >> 2) * MeshGenerator.VERTICES_PER_QUAD / MeshGenerator.INTS_PER_VERTEX;
+        return (bufferOrStart >> 2) * MeshGenerator.VERTICES_PER_QUAD / VertexFormat.INTS_PER_COMPACT_VERTEX;
     }
 }
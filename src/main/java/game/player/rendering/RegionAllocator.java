@@ -0,0 +1,250 @@
+package game.player.rendering;
+
+import java.util.HashMap;
+
+/**
+ * The bookkeeping of the {@link MemoryAllocator}, knows nothing about OpenGL.
+ * <p>
+ * Free regions are kept in segregated lists, binned by the highest bit of their size and the three bits below it,
+ * with a bitmap of the non empty bins. The free region at the end of the buffer isn't binned and only used if no
+ * binned region fits, which keeps allocations low in the buffer. Every region also knows its neighbors in address order,
+ * so freeing and coalescing is constant time. Used bytes and the highest allocated address are maintained on the fly.
+ */
+public final class RegionAllocator {
+
+    public static final int NO_OWNER = -1;
+
+    public RegionAllocator(int capacity) {
+        this.capacity = capacity;
+        last = new Region(0, capacity);
+    }
+
+    /**
+     * @return The start of the allocated region or {@code -1} if no free region is big enough.
+     */
+    public int allocate(int size, int owner) {
+        if (size <= 0) return -1;
+        Region region = findFreeRegion(size, true);
+        if (region == null) return -1;
+        return allocateIn(region, size, owner);
+    }
+
+    /**
+     * @return Whether a region started at {@code start}.
+     */
+    public boolean free(int start) {
+        Region region = usedRegions.remove(start);
+        if (region == null) return false;
+        usedBytes -= region.size;
+        region.free = true;
+        region.owner = NO_OWNER;
+
+        Region next = region.next;
+        if (next != null && next.free) {
+            removeFromBin(next);
+            region.size += next.size;
+            unlink(next);
+        }
+        Region previous = region.previous;
+        if (previous != null && previous.free) {
+            removeFromBin(previous);
+            previous.size += region.size;
+            unlink(region);
+            region = previous;
+        }
+        insertIntoBin(region);
+        return true;
+    }
+
+    public void grow(int newCapacity) {
+        if (newCapacity <= capacity) return;
+        int addedSize = newCapacity - capacity;
+
+        if (last.free) last.size += addedSize;
+        else linkAfter(last, new Region(capacity, addedSize));
+        capacity = newCapacity;
+    }
+
+    public void setOwner(int start, int owner) {
+        Region region = usedRegions.get(start);
+        if (region != null) region.owner = owner;
+    }
+
+    /**
+     * Moves the highest used regions into free regions further down until {@code maxBytes} are moved
+     * or the highest region can't be moved.
+     *
+     * @return The number of moved bytes.
+     */
+    public int compact(int maxBytes, Relocator relocator) {
+        int movedBytes = 0;
+        while (movedBytes < maxBytes) {
+            Region highest = last.free ? last.previous : last;
+            if (highest == null) break;
+
+            // The trailing free region is the only one above the highest used region
+            Region target = findFreeRegion(highest.size, false);
+            if (target == null) break;
+
+            int from = highest.start, size = highest.size, owner = highest.owner;
+            int to = allocateIn(target, size, owner);
+            if (!relocator.relocate(owner, from, to, size)) {
+                free(to);
+                break;
+            }
+            free(from);
+            movedBytes += size;
+        }
+        return movedBytes;
+    }
+
+    public int getUsed() {
+        return usedBytes;
+    }
+
+    public int getFree() {
+        return capacity - usedBytes;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getHighestAllocated() {
+        return last.free ? last.start : capacity;
+    }
+
+    public int getUsedRegionCount() {
+        return usedRegions.size();
+    }
+
+    public int getFreeRegionCount() {
+        return last.free ? binnedRegionCount + 1 : binnedRegionCount;
+    }
+
+
+    private Region findFreeRegion(int size, boolean includeLast) {
+        // Every region in this bin or above is big enough
+        long roundedSize = roundUpToBinSize(size);
+        if (roundedSize <= Integer.MAX_VALUE) {
+            int binIndex = getFirstNonEmptyBin(getBinIndex((int) roundedSize));
+            if (binIndex != -1) return bins[binIndex];
+        }
+
+        // Only some regions in the bin of the size itself may be big enough
+        for (Region region = bins[getBinIndex(size)]; region != null; region = region.nextFree)
+            if (region.size >= size) return region;
+        return includeLast && last.free && last.size >= size ? last : null;
+    }
+
+    private int allocateIn(Region region, int size, int owner) {
+        removeFromBin(region);
+        if (region.size > size) {
+            Region remainder = new Region(region.start + size, region.size - size);
+            linkAfter(region, remainder);
+            insertIntoBin(remainder);
+            region.size = size;
+        }
+
+        region.free = false;
+        region.owner = owner;
+        usedRegions.put(region.start, region);
+        usedBytes += size;
+        return region.start;
+    }
+
+    private int getFirstNonEmptyBin(int binIndex) {
+        int wordIndex = binIndex >> 6;
+        long word = nonEmptyBins[wordIndex] & -1L << binIndex;
+        while (word == 0) {
+            if (++wordIndex == nonEmptyBins.length) return -1;
+            word = nonEmptyBins[wordIndex];
+        }
+        return wordIndex << 6 | Long.numberOfTrailingZeros(word);
+    }
+
+    private void insertIntoBin(Region region) {
+        if (region == last) return;
+        int binIndex = getBinIndex(region.size);
+        Region head = bins[binIndex];
+        region.previousFree = null;
+        region.nextFree = head;
+        if (head != null) head.previousFree = region;
+        bins[binIndex] = region;
+        nonEmptyBins[binIndex >> 6] |= 1L << binIndex;
+        binnedRegionCount++;
+    }
+
+    private void removeFromBin(Region region) {
+        if (region == last) return;
+        int binIndex = getBinIndex(region.size);
+        if (region.previousFree != null) region.previousFree.nextFree = region.nextFree;
+        else bins[binIndex] = region.nextFree;
+        if (region.nextFree != null) region.nextFree.previousFree = region.previousFree;
+        if (bins[binIndex] == null) nonEmptyBins[binIndex >> 6] &= ~(1L << binIndex);
+        region.previousFree = null;
+        region.nextFree = null;
+        binnedRegionCount--;
+    }
+
+    private void linkAfter(Region region, Region added) {
+        added.previous = region;
+        added.next = region.next;
+        if (region.next != null) region.next.previous = added;
+        else last = added;
+        region.next = added;
+    }
+
+    private void unlink(Region region) {
+        if (region.previous != null) region.previous.next = region.next;
+        if (region.next != null) region.next.previous = region.previous;
+        else last = region.previous;
+    }
+
+    private static int getBinIndex(int size) {
+        if (size < SUB_BIN_COUNT) return size;
+        int highestBit = 31 - Integer.numberOfLeadingZeros(size);
+        return (highestBit - SUB_BIN_BITS + 1 << SUB_BIN_BITS) | size >>> highestBit - SUB_BIN_BITS & SUB_BIN_COUNT - 1;
+    }
+
+    private static long roundUpToBinSize(int size) {
+        if (size < SUB_BIN_COUNT) return size;
+        int highestBit = 31 - Integer.numberOfLeadingZeros(size);
+        return size + (1L << highestBit - SUB_BIN_BITS) - 1;
+    }
+
+    private final HashMap<Integer, Region> usedRegions = new HashMap<>();
+    private final Region[] bins = new Region[BIN_COUNT];
+    private final long[] nonEmptyBins = new long[BIN_COUNT + 63 >> 6];
+    private Region last;
+    private int capacity;
+    private int usedBytes = 0;
+    private int binnedRegionCount = 0;
+
+    private static final int SUB_BIN_BITS = 3;
+    private static final int SUB_BIN_COUNT = 1 << SUB_BIN_BITS;
+    private static final int BIN_COUNT = getBinIndex(Integer.MAX_VALUE) + 1;
+
+    public interface Relocator {
+        /**
+         * Called after a region of the allocation owned by {@code owner} was reserved at {@code to}.
+         *
+         * @return Whether the allocation was moved, {@code from} is freed if so, otherwise {@code to} is freed.
+         */
+        boolean relocate(int owner, int from, int to, int size);
+    }
+
+    private static final class Region {
+        int start;
+        int size;
+        int owner = NO_OWNER;
+        boolean free = true;
+        Region previous, next;
+        Region previousFree, nextFree;
+
+        Region(int start, int size) {
+            this.start = start;
+            this.size = size;
+        }
+    }
+}
@@ -417,6 +417,8 @@ public final class Renderer extends Renderable {
             renderingOptimizer.populateOpaqueShadowIndirectBuffer(getRenderTime());
 
             glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 0, player.getMeshCollector().getBuffer());
+            glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 1, player.getMeshCollector().getOriginBuffer());
+            shader.setUniform("compactVertices", true);
             glBindBuffer(GL_DRAW_INDIRECT_BUFFER, renderingOptimizer.getShadowIndirectBuffer());
 
             int drawCount = renderingOptimizer.getShadowDrawCount();
@@ -464,6 +466,8 @@ public final class Renderer extends Renderable {
             renderingOptimizer.populateGlassShadowIndirectBuffer();
 
             glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 0, player.getMeshCollector().getBuffer());
+            glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 1, player.getMeshCollector().getOriginBuffer());
+            shader.setUniform("compactVertices", true);
             glBindBuffer(GL_DRAW_INDIRECT_BUFFER, renderingOptimizer.getShadowIndirectBuffer());
 
             int drawCount = renderingOptimizer.getShadowDrawCount();
@@ -503,6 +507,8 @@ public final class Renderer extends Renderable {
         shader.setUniform("sunMatrix", sunMatrix);
         shader.setUniform("cameraPosition", cameraPosition.getInChunkPosition());
         glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 0, player.getMeshCollector().getBuffer());
+        glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 1, player.getMeshCollector().getOriginBuffer());
+        shader.setUniform("compactVertices", true);
         glBindBuffer(GL_DRAW_INDIRECT_BUFFER, renderingOptimizer.getOpaqueIndirectBuffer());
 
         int flags = getFlags(cameraPosition);
@@ -576,6 +582,8 @@ public final class Renderer extends Renderable {
         setUpShadowMappedRendering(sunMatrix, shader);
         shader.setUniform("cameraPosition", cameraPosition.getInChunkPosition());
         glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 0, player.getMeshCollector().getBuffer());
+        glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 1, player.getMeshCollector().getOriginBuffer());
+        shader.setUniform("compactVertices", true);
         glBindBuffer(GL_DRAW_INDIRECT_BUFFER, renderingOptimizer.getTransparentIndirectBuffer());
 
         int flags = getFlags(cameraPosition);
@@ -621,6 +629,8 @@ public final class Renderer extends Renderable {
         Shader shader = AssetManager.get(Shaders.GLASS);
         setUpGlassRendering(shader, projectionViewMatrix, cameraPosition.longX, cameraPosition.longY, cameraPosition.longZ);
         glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 0, player.getMeshCollector().getBuffer());
+        glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 1, player.getMeshCollector().getOriginBuffer());
+        shader.setUniform("compactVertices", true);
         glBindBuffer(GL_DRAW_INDIRECT_BUFFER, renderingOptimizer.getGlassIndirectBuffer());
 
         for (int lod = 0, lodCount = Game.getWorld().LOD_COUNT; lod < lodCount; lod++) {
@@ -847,7 +857,9 @@ public final class Renderer extends Renderable {
         setUpVolumeRendering(cameraPositon, projectionViewMatrix, shader);
         MeshCollector meshCollector = player.getMeshCollector();
 
-        for (Chunk chunk : Game.getWorld().getLod(lod)) {
+        World world = Game.getWorld();
+        for (int chunkIndex = 0; chunkIndex < world.CHUNKS_PER_LOD; chunkIndex++) {
+            Chunk chunk = world.getChunk(chunkIndex, lod);
             if (chunk == null || meshCollector.isIsolated(chunk.X, chunk.Y, chunk.Z, lod)) continue;
             if ((renderingOptimizer.getVisibilityBits(lod)[chunk.INDEX >> 6] & 1L << chunk.INDEX) == 0) continue;
 
@@ -866,7 +878,9 @@ public final class Renderer extends Renderable {
         setUpVolumeRendering(cameraPositon, projectionViewMatrix, shader);
         MeshCollector meshCollector = player.getMeshCollector();
 
-        for (Chunk chunk : Game.getWorld().getLod(lod)) {
+        World world = Game.getWorld();
+        for (int chunkIndex = 0; chunkIndex < world.CHUNKS_PER_LOD; chunkIndex++) {
+            Chunk chunk = world.getChunk(chunkIndex, lod);
             if (chunk == null) continue;
             if ((renderingOptimizer.getVisibilityBits(lod)[chunk.INDEX >> 6] & 1L << chunk.INDEX) == 0) continue;
             OpaqueModel opaqueModel = meshCollector.getOpaqueModel(chunk.INDEX, lod);
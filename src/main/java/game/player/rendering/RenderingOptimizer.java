@@ -12,16 +12,14 @@ import game.player.Player;
 import game.server.Game;
 import game.settings.IntSettings;
 import game.settings.OptionSettings;
+import game.settings.ToggleSettings;
 import game.utils.Position;
 import game.utils.Transformation;
-import game.utils.Utils;
 
 import org.joml.FrustumIntersection;
 import org.joml.Matrix4f;
 import org.joml.Vector3f;
 
-import java.util.Arrays;
-
 import static game.utils.Constants.*;
 import static org.lwjgl.opengl.GL46.*;
 
@@ -31,6 +29,7 @@ public final class RenderingOptimizer {
 
     public RenderingOptimizer(MeshCollector meshCollector) {
         this.meshCollector = meshCollector;
+        visibilityComputer = new VisibilityComputer(meshCollector);
         int chunksPerLod = Game.getWorld().CHUNKS_PER_LOD, lodCount = Game.getWorld().LOD_COUNT;
 
         shadowIndirectBuffer = glGenBuffers();
@@ -61,50 +60,42 @@ public final class RenderingOptimizer {
     // Occlusion culling for normal rendering
     public void computeVisibility(Player player, Position cameraPosition, Matrix4f projectionViewMatrix) {
         if (cameraPosition == null || projectionViewMatrix == null) return;
-        FrustumIntersection frustumIntersection = new FrustumIntersection(Transformation.getFrustumCullingMatrix(player.getCamera()));
+        Matrix4f frustumCullingMatrix = Transformation.getFrustumCullingMatrix(player.getCamera());
+        FrustumIntersection frustumIntersection = new FrustumIntersection(frustumCullingMatrix);
         Vector3l position = cameraPosition.longPosition();
+        Option occlusionCullingOption = OptionSettings.OCCLUSION_CULLING.value();
+        boolean occlusionCulling = occlusionCullingOption == OcclusionCullingOptions.NORMAL || occlusionCullingOption == OcclusionCullingOptions.AGGRESSIVE;
+        float[] softwareCullingMatrix = occlusionCullingOption == OcclusionCullingOptions.SOFTWARE ? frustumCullingMatrix.get(new float[16]) : null;
+
+        visibilityComputer.computeVisibility(frustumIntersection, softwareCullingMatrix, position.x, position.y, position.z,
+                occlusionCulling, ToggleSettings.PARALLEL_VISIBILITY.value());
 
-        cameraChunkX = position.x >>> CHUNK_SIZE_BITS;
-        cameraChunkY = position.y >>> CHUNK_SIZE_BITS;
-        cameraChunkZ = position.z >>> CHUNK_SIZE_BITS;
-        cameraX = position.x;
-        cameraY = position.y;
-        cameraZ = position.z;
-
-        int lodCount = Game.getWorld().LOD_COUNT;
-        for (int lod = 0; lod < lodCount; lod++) computeLodVisibility(lod, frustumIntersection);
-        for (int lod = lodCount - 1; lod >= 0; lod--) removeLodVisibilityOverlap(lod);
-
-        opaqueCommands.clear();
-        transparentCommands.clear();
-        glassCommands.clear();
-        if (OptionSettings.OCCLUSION_CULLING.value() != OcclusionCullingOptions.DISABLED)
-            generateIndirectCommandsWithOcclusionCulling(cameraPosition, projectionViewMatrix);
-        else generateIndirectCommandsWithoutOcclusionCulling();
+        if (occlusionCulling) uploadCommandsWithOcclusionCulling(cameraPosition, projectionViewMatrix);
+        else uploadCommandsWithoutOcclusionCulling();
     }
 
     public long getOpaqueLodStart(int lod) {
-        return lodStarts[lod * 3];
+        return visibilityComputer.getLodStart(lod, VisibilityComputer.OPAQUE);
     }
 
     public int getOpaqueLodDrawCount(int lod) {
-        return lodDrawCounts[lod * 3];
+        return visibilityComputer.getLodDrawCount(lod, VisibilityComputer.OPAQUE);
     }
 
     public long getTransparentLodStart(int lod) {
-        return lodStarts[lod * 3 + 1];
+        return visibilityComputer.getLodStart(lod, VisibilityComputer.TRANSPARENT);
     }
 
     public int getTransparentLodDrawCount(int lod) {
-        return lodDrawCounts[lod * 3 + 1];
+        return visibilityComputer.getLodDrawCount(lod, VisibilityComputer.TRANSPARENT);
     }
 
     public long getGlassLodStart(int lod) {
-        return lodStarts[lod * 3 + 2];
+        return visibilityComputer.getLodStart(lod, VisibilityComputer.GLASS);
     }
 
     public int getGlassLodDrawCount(int lod) {
-        return lodDrawCounts[lod * 3 + 2];
+        return visibilityComputer.getLodDrawCount(lod, VisibilityComputer.GLASS);
     }
 
     public int getOpaqueIndirectBuffer() {
@@ -127,32 +118,32 @@ public final class RenderingOptimizer {
         int zOffset = sunDirection.z < 0 ? 1 : -1;
         int shadowLod = Math.min(SHADOW_LOD, IntSettings.LOD_COUNT.value() - 1);
 
-        opaqueCommands.clear();
+        shadowCommands.clear();
         for (int chunkIndex = 0; chunkIndex < Game.getWorld().CHUNKS_PER_LOD; chunkIndex++) {
             OpaqueModel model = meshCollector.getOpaqueModel(chunkIndex, shadowLod);
             if (model == null || model.isEmpty()) continue;
 
-            model.addDataWithoutOcclusionCulling(opaqueCommands,
+            model.addDataWithoutOcclusionCulling(shadowCommands,
                     model.chunkX() + xOffset,
                     model.chunkY() + yOffset,
-                    model.chunkZ() + zOffset, false);
+                    model.chunkZ() + zOffset, false, MeshCollector.getOriginIndex(chunkIndex, shadowLod));
         }
-        shadowDrawCount = opaqueCommands.size() * 4 / INDIRECT_COMMAND_SIZE;
-        glNamedBufferSubData(shadowIndirectBuffer, 0, opaqueCommands.toArray());
+        shadowDrawCount = shadowCommands.size() * 4 / INDIRECT_COMMAND_SIZE;
+        glNamedBufferSubData(shadowIndirectBuffer, 0, shadowCommands.toArray());
     }
 
     public void populateGlassShadowIndirectBuffer() {
         int shadowLod = Math.min(SHADOW_LOD, IntSettings.LOD_COUNT.value() - 1);
 
-        opaqueCommands.clear();
+        shadowCommands.clear();
         for (int chunkIndex = 0; chunkIndex < Game.getWorld().CHUNKS_PER_LOD; chunkIndex++) {
             TransparentModel model = meshCollector.getTransparentModel(chunkIndex, shadowLod);
             if (model == null || model.isGlassEmpty()) continue;
 
-            model.addGlassData(opaqueCommands);
+            model.addGlassData(shadowCommands, MeshCollector.getOriginIndex(chunkIndex, shadowLod));
         }
-        shadowDrawCount = opaqueCommands.size() * 4 / INDIRECT_COMMAND_SIZE;
-        glNamedBufferSubData(shadowIndirectBuffer, 0, opaqueCommands.toArray());
+        shadowDrawCount = shadowCommands.size() * 4 / INDIRECT_COMMAND_SIZE;
+        glNamedBufferSubData(shadowIndirectBuffer, 0, shadowCommands.toArray());
     }
 
     public int getShadowIndirectBuffer() {
@@ -172,270 +163,28 @@ public final class RenderingOptimizer {
     }
 
     public long[] getVisibilityBits(int lod) {
-        return visibilityBits[lod];
+        return visibilityComputer.getVisibilityBits(lod);
     }
 
 
-    private void generateIndirectCommandsWithOcclusionCulling(Position cameraPosition, Matrix4f projectionViewMatrix) {
-        aabbs.clear();
-        int lodCount = Game.getWorld().LOD_COUNT;
-        for (int lod = 0; lod < lodCount; lod++) generateIndirectCommandsWithOcclusionCulling(lod);
-        int occludeeCount = aabbs.size() / AABB_INT_SIZE;
-
-        glNamedBufferSubData(opaqueIndirectBuffer, 0, opaqueCommands.toArray());
-        glNamedBufferSubData(transparentIndirectBuffer, 0, transparentCommands.toArray());
-        glNamedBufferSubData(glassIndirectBuffer, 0, glassCommands.toArray());
-        glNamedBufferSubData(occludeeBuffer, 0, aabbs.toArray());
-
-        aabbs.clear();
-        for (int lod = 0; lod < lodCount; lod++) populateOccluderBuffer(lod);
-        glNamedBufferSubData(occluderBuffer, 0, aabbs.toArray());
-        int occluderCount = aabbs.size() / AABB_INT_SIZE;
-
-        renderOccluders(cameraPosition, projectionViewMatrix, occluderCount);
-        renderOccludees(cameraPosition, projectionViewMatrix, occludeeCount);
-    }
+    private void uploadCommandsWithOcclusionCulling(Position cameraPosition, Matrix4f projectionViewMatrix) {
+        IntArrayList occludees = visibilityComputer.getOccludees();
+        IntArrayList occluders = visibilityComputer.getOccluders();
 
-    private void generateIndirectCommandsWithoutOcclusionCulling() {
-        for (int lod = 0, lodCount = Game.getWorld().LOD_COUNT; lod < lodCount; lod++) generateIndirectCommandsWithoutOcclusionCulling(lod);
+        glNamedBufferSubData(opaqueIndirectBuffer, 0, visibilityComputer.getOpaqueCommands().toArray());
+        glNamedBufferSubData(transparentIndirectBuffer, 0, visibilityComputer.getTransparentCommands().toArray());
+        glNamedBufferSubData(glassIndirectBuffer, 0, visibilityComputer.getGlassCommands().toArray());
+        glNamedBufferSubData(occludeeBuffer, 0, occludees.toArray());
+        glNamedBufferSubData(occluderBuffer, 0, occluders.toArray());
 
-        glNamedBufferSubData(opaqueIndirectBuffer, 0, opaqueCommands.toArray());
-        glNamedBufferSubData(transparentIndirectBuffer, 0, transparentCommands.toArray());
-        glNamedBufferSubData(glassIndirectBuffer, 0, glassCommands.toArray());
+        renderOccluders(cameraPosition, projectionViewMatrix, occluders.size() / AABB_INT_SIZE);
+        renderOccludees(cameraPosition, projectionViewMatrix, occludees.size() / AABB_INT_SIZE);
     }
 
-    private void computeLodVisibility(int lod, FrustumIntersection frustumIntersection) {
-        lodVisibilityBits = visibilityBits[lod];
-        Arrays.fill(lodVisibilityBits, 0L);
-
-        int width = Game.getWorld().RENDERED_WORLD_WIDTH;
-        long chunkX = (cameraChunkX >> lod) - (width >> 1);
-        long chunkY = (cameraChunkY >> lod) - (width >> 1);
-        long chunkZ = (cameraChunkZ >> lod) - (width >> 1);
-        fillVisibleChunks(lod, frustumIntersection, width, chunkX, chunkY, chunkZ);
-    }
-
-    private void fillVisibleChunks(int lod, FrustumIntersection intersection, int length, long chunkX, long chunkY, long chunkZ) {
-        if (length < 1) throw new IllegalArgumentException("Length cannot be %d\n".formatted(length));
-        int chunkSizeBits = CHUNK_SIZE_BITS + lod;
-
-        if (length == 1) {
-            if (intersection.testAab(
-                    (chunkX << chunkSizeBits) - cameraX,
-                    (chunkY << chunkSizeBits) - cameraY,
-                    (chunkZ << chunkSizeBits) - cameraZ,
-                    (chunkX + 1 << chunkSizeBits) - cameraX,
-                    (chunkY + 1 << chunkSizeBits) - cameraY,
-                    (chunkZ + 1 << chunkSizeBits) - cameraZ)) {
-                int chunkIndex = Utils.getChunkIndex(chunkX, chunkY, chunkZ, lod);
-                lodVisibilityBits[chunkIndex >> 6] |= 1L << chunkIndex;
-            }
-            return;
-        }
-
-        int intersectionType = intersection.intersectAab(
-                (chunkX << chunkSizeBits) - cameraX,
-                (chunkY << chunkSizeBits) - cameraY,
-                (chunkZ << chunkSizeBits) - cameraZ,
-                (chunkX + length << chunkSizeBits) - cameraX,
-                (chunkY + length << chunkSizeBits) - cameraY,
-                (chunkZ + length << chunkSizeBits) - cameraZ);
-
-        if (intersectionType == FrustumIntersection.INSIDE) {
-            for (long x = chunkX; x < chunkX + length; x++)
-                for (long y = chunkY; y < chunkY + length; y++)
-                    for (long z = chunkZ; z < chunkZ + length; z++) {
-                        int chunkIndex = Utils.getChunkIndex(x, y, z, lod);
-                        lodVisibilityBits[chunkIndex >> 6] |= 1L << chunkIndex;
-                    }
-        }
-        if (intersectionType == FrustumIntersection.INTERSECT) {
-            length >>= 1;
-            fillVisibleChunks(lod, intersection, length, chunkX, chunkY, chunkZ);
-            fillVisibleChunks(lod, intersection, length, chunkX, chunkY, chunkZ + length);
-            fillVisibleChunks(lod, intersection, length, chunkX, chunkY + length, chunkZ);
-            fillVisibleChunks(lod, intersection, length, chunkX, chunkY + length, chunkZ + length);
-            fillVisibleChunks(lod, intersection, length, chunkX + length, chunkY, chunkZ);
-            fillVisibleChunks(lod, intersection, length, chunkX + length, chunkY, chunkZ + length);
-            fillVisibleChunks(lod, intersection, length, chunkX + length, chunkY + length, chunkZ);
-            fillVisibleChunks(lod, intersection, length, chunkX + length, chunkY + length, chunkZ + length);
-        }
-    }
-
-    private void removeLodVisibilityOverlap(int lod) {
-        long[] lodVisibilityBits = visibilityBits[lod];
-
-        for (int bitsIndex = 0; bitsIndex < LONGS_PER_LOD_BITS; bitsIndex++)
-            for (int chunkIndex = (bitsIndex << 6) + Long.numberOfTrailingZeros(lodVisibilityBits[bitsIndex]),
-                 end = bitsIndex + 1 << 6; chunkIndex < end; chunkIndex++) {
-
-                if ((lodVisibilityBits[bitsIndex] & 1L << chunkIndex) == 0) continue;
-
-                OpaqueModel opaqueModel = meshCollector.getOpaqueModel(chunkIndex, lod);
-                TransparentModel transparentModel = meshCollector.getTransparentModel(chunkIndex, lod);
-                if (opaqueModel == null || transparentModel == null) {
-                    lodVisibilityBits[bitsIndex] &= ~(1L << chunkIndex);
-                    continue;
-                }
-
-                long lodModelX = opaqueModel.chunkX();
-                long lodModelY = opaqueModel.chunkY();
-                long lodModelZ = opaqueModel.chunkZ();
-
-                if (lod == 0 || modelFarEnoughAway(lodModelX, lodModelY, lodModelZ, lod)) continue;
-
-                long nextLodX = lodModelX << 1;
-                long nextLodY = lodModelY << 1;
-                long nextLodZ = lodModelZ << 1;
-                if (modelCubePresent(nextLodX, nextLodY, nextLodZ, lod - 1)) lodVisibilityBits[bitsIndex] &= ~(1L << chunkIndex);
-                else clearModelCubeVisibility(nextLodX, nextLodY, nextLodZ, lod - 1);
-            }
-    }
-
-    private boolean modelFarEnoughAway(long lodModelX, long lodModelY, long lodModelZ, int lod) {
-        int requiredDistance = (IntSettings.RENDER_DISTANCE.value() >> 1) + 1;
-        long distanceX = Math.abs(Utils.getWrappedChunkCoordinate(lodModelX, cameraChunkX >> lod, lod) - (cameraChunkX >> lod));
-        long distanceY = Math.abs(Utils.getWrappedChunkCoordinate(lodModelY, cameraChunkY >> lod, lod) - (cameraChunkY >> lod));
-        long distanceZ = Math.abs(Utils.getWrappedChunkCoordinate(lodModelZ, cameraChunkZ >> lod, lod) - (cameraChunkZ >> lod));
-
-        return distanceX > requiredDistance || distanceZ > requiredDistance || distanceY > requiredDistance;
-    }
-
-    private boolean modelCubePresent(long lodModelX, long lodModelY, long lodModelZ, int lod) {
-        return meshCollector.isModelPresent(lodModelX, lodModelY, lodModelZ, lod)
-                && meshCollector.isModelPresent(lodModelX, lodModelY, lodModelZ + 1, lod)
-                && meshCollector.isModelPresent(lodModelX, lodModelY + 1, lodModelZ, lod)
-                && meshCollector.isModelPresent(lodModelX, lodModelY + 1, lodModelZ + 1, lod)
-                && meshCollector.isModelPresent(lodModelX + 1, lodModelY, lodModelZ, lod)
-                && meshCollector.isModelPresent(lodModelX + 1, lodModelY, lodModelZ + 1, lod)
-                && meshCollector.isModelPresent(lodModelX + 1, lodModelY + 1, lodModelZ, lod)
-                && meshCollector.isModelPresent(lodModelX + 1, lodModelY + 1, lodModelZ + 1, lod);
-    }
-
-    private boolean isLodBorderChunk(long chunkX, long chunkY, long chunkZ, int lod) {
-        if (lod == 0) return false;
-        long distanceX = Utils.getWrappedChunkCoordinate(chunkX, cameraChunkX >> lod, lod) - (cameraChunkX >> lod);
-        long distanceY = Utils.getWrappedChunkCoordinate(chunkY, cameraChunkY >> lod, lod) - (cameraChunkY >> lod);
-        long distanceZ = Utils.getWrappedChunkCoordinate(chunkZ, cameraChunkZ >> lod, lod) - (cameraChunkZ >> lod);
-
-        int index = Utils.getChunkIndex(chunkX + (distanceX > 0 ? -1 : 1), chunkY, chunkZ, lod);
-        if ((visibilityBits[lod][index >> 6] & 1L << index) == 0) return true;
-
-        index = Utils.getChunkIndex(chunkX, chunkY, chunkZ + (distanceZ > 0 ? -1 : 1), lod);
-        if ((visibilityBits[lod][index >> 6] & 1L << index) == 0) return true;
-
-        index = Utils.getChunkIndex(chunkX, chunkY + (distanceY > 0 ? -1 : 1), chunkZ, lod);
-        return (visibilityBits[lod][index >> 6] & 1L << index) == 0;
-    }
-
-    private void clearModelCubeVisibility(long lodModelX, long lodModelY, long lodModelZ, int lod) {
-        long[] lodVisibilityBits = visibilityBits[lod];
-        int chunkIndex;
-        chunkIndex = Utils.getChunkIndex(lodModelX, lodModelY, lodModelZ, lod);
-        lodVisibilityBits[chunkIndex >> 6] &= ~(3L << chunkIndex);
-        chunkIndex = Utils.getChunkIndex(lodModelX, lodModelY, lodModelZ + 1, lod);
-        lodVisibilityBits[chunkIndex >> 6] &= ~(3L << chunkIndex);
-        chunkIndex = Utils.getChunkIndex(lodModelX + 1, lodModelY, lodModelZ, lod);
-        lodVisibilityBits[chunkIndex >> 6] &= ~(3L << chunkIndex);
-        chunkIndex = Utils.getChunkIndex(lodModelX + 1, lodModelY, lodModelZ + 1, lod);
-        lodVisibilityBits[chunkIndex >> 6] &= ~(3L << chunkIndex);
-    }
-
-    private void generateIndirectCommandsWithOcclusionCulling(int lod) {
-        int drawCount = 0;
-        lodStarts[lod * 3 + 0] = (long) opaqueCommands.size() / 4 * INDIRECT_COMMAND_SIZE;
-        lodStarts[lod * 3 + 1] = (long) transparentCommands.size() / 4 * INDIRECT_COMMAND_SIZE;
-        lodStarts[lod * 3 + 2] = (long) glassCommands.size() / 4 * INDIRECT_COMMAND_SIZE;
-
-        long[] lodVisibilityBits = visibilityBits[lod];
-        long lodCameraChunkX = cameraChunkX >> lod;
-        long lodCameraChunkY = cameraChunkY >> lod;
-        long lodCameraChunkZ = cameraChunkZ >> lod;
-
-        for (int bitsIndex = 0; bitsIndex < LONGS_PER_LOD_BITS; bitsIndex++)
-            for (int chunkIndex = (bitsIndex << 6) + Long.numberOfTrailingZeros(lodVisibilityBits[bitsIndex]),
-                 end = bitsIndex + 1 << 6; chunkIndex < end; chunkIndex++) {
-
-                if ((lodVisibilityBits[bitsIndex] & 1L << chunkIndex) == 0) continue;
-
-                OpaqueModel opaqueModel = meshCollector.getOpaqueModel(chunkIndex, lod);
-                TransparentModel transparentModel = meshCollector.getTransparentModel(chunkIndex, lod);
-                AABB occludee = meshCollector.getOccludee(chunkIndex, lod);
-                if (opaqueModel == null || transparentModel == null) continue;
-                if (opaqueModel.isEmpty() && transparentModel.isEmpty()) continue;
-
-                drawCount++;
-                boolean isBorderChunk = isLodBorderChunk(opaqueModel.chunkX(), opaqueModel.chunkY(), opaqueModel.chunkZ(), lod);
-                opaqueModel.addDataWithOcclusionCulling(opaqueCommands, lodCameraChunkX, lodCameraChunkY, lodCameraChunkZ, isBorderChunk);
-                transparentModel.addDataWithOcclusionCulling(transparentCommands, glassCommands);
-                occludee.addData(aabbs, (int) opaqueModel.totalX(), (int) opaqueModel.totalY(), (int) opaqueModel.totalZ(), lod);
-
-                if (Utils.chunkDistance(lodCameraChunkX, lodCameraChunkY, lodCameraChunkZ, opaqueModel.chunkX(), opaqueModel.chunkY(), opaqueModel.chunkZ(), lod) <= 1) {
-                    opaqueCommands.set(opaqueCommands.size() - 3, 1);
-                    opaqueCommands.set(opaqueCommands.size() - 7, 1);
-                    opaqueCommands.set(opaqueCommands.size() - 11, 1);
-                    opaqueCommands.set(opaqueCommands.size() - 15, 1);
-                    opaqueCommands.set(opaqueCommands.size() - 19, 1);
-                    opaqueCommands.set(opaqueCommands.size() - 23, 1);
-                    opaqueCommands.set(opaqueCommands.size() - 27, 1);
-                    transparentCommands.set(transparentCommands.size() - 3, 1);
-                    glassCommands.set(glassCommands.size() - 3, 1);
-                }
-            }
-        lodDrawCounts[lod * 3 + 0] = drawCount * 7;
-        lodDrawCounts[lod * 3 + 1] = drawCount;
-        lodDrawCounts[lod * 3 + 2] = drawCount;
-    }
-
-    private void generateIndirectCommandsWithoutOcclusionCulling(int lod) {
-        int oldOpaqueDrawCount = opaqueCommands.size() / 4;
-        int oldTransparentDrawCount = transparentCommands.size() / 4;
-        int oldGlassDrawCount = glassCommands.size() / 4;
-        lodStarts[lod * 3 + 0] = (long) opaqueCommands.size() / 4 * INDIRECT_COMMAND_SIZE;
-        lodStarts[lod * 3 + 1] = (long) transparentCommands.size() / 4 * INDIRECT_COMMAND_SIZE;
-        lodStarts[lod * 3 + 2] = (long) glassCommands.size() / 4 * INDIRECT_COMMAND_SIZE;
-
-        long[] lodVisibilityBits = visibilityBits[lod];
-        long lodCameraChunkX = cameraChunkX >> lod;
-        long lodCameraChunkY = cameraChunkY >> lod;
-        long lodCameraChunkZ = cameraChunkZ >> lod;
-
-        for (int bitsIndex = 0; bitsIndex < LONGS_PER_LOD_BITS; bitsIndex++)
-            for (int chunkIndex = (bitsIndex << 6) + Long.numberOfTrailingZeros(lodVisibilityBits[bitsIndex]),
-                 end = bitsIndex + 1 << 6; chunkIndex < end; chunkIndex++) {
-
-                if ((lodVisibilityBits[bitsIndex] & 1L << chunkIndex) == 0) continue;
-
-                OpaqueModel opaqueModel = meshCollector.getOpaqueModel(chunkIndex, lod);
-                TransparentModel transparentModel = meshCollector.getTransparentModel(chunkIndex, lod);
-                if (opaqueModel == null || transparentModel == null) continue;
-
-                boolean isBorderChunk = isLodBorderChunk(opaqueModel.chunkX(), opaqueModel.chunkY(), opaqueModel.chunkZ(), lod);
-                opaqueModel.addDataWithoutOcclusionCulling(opaqueCommands, lodCameraChunkX, lodCameraChunkY, lodCameraChunkZ, isBorderChunk);
-                transparentModel.addDataWithoutOcclusionCulling(transparentCommands, glassCommands);
-            }
-
-        lodDrawCounts[lod * 3 + 0] = opaqueCommands.size() / 4 - oldOpaqueDrawCount;
-        lodDrawCounts[lod * 3 + 1] = transparentCommands.size() / 4 - oldTransparentDrawCount;
-        lodDrawCounts[lod * 3 + 2] = glassCommands.size() / 4 - oldGlassDrawCount;
-    }
-
-    private void populateOccluderBuffer(int lod) {
-        long[] lodVisibilityBits = visibilityBits[lod];
-
-        for (int bitsIndex = 0; bitsIndex < LONGS_PER_LOD_BITS; bitsIndex++)
-            for (int chunkIndex = (bitsIndex << 6) + Long.numberOfTrailingZeros(lodVisibilityBits[bitsIndex]),
-                 end = bitsIndex + 1 << 6; chunkIndex < end; chunkIndex++) {
-
-                if ((lodVisibilityBits[bitsIndex] & 1L << chunkIndex) == 0) continue;
-                OpaqueModel opaqueModel = meshCollector.getOpaqueModel(chunkIndex, lod);
-                if (opaqueModel == null || opaqueModel.isEmpty()) continue;
-
-                if (meshCollector.isIsolated(opaqueModel.chunkX(), opaqueModel.chunkY(), opaqueModel.chunkZ(), lod)) continue;
-
-                AABB occluder = meshCollector.getOccluder(chunkIndex, lod);
-                if (occluder != null) occluder.addData(aabbs, (int) opaqueModel.totalX(), (int) opaqueModel.totalY(), (int) opaqueModel.totalZ(), lod);
-            }
+    private void uploadCommandsWithoutOcclusionCulling() {
+        glNamedBufferSubData(opaqueIndirectBuffer, 0, visibilityComputer.getOpaqueCommands().toArray());
+        glNamedBufferSubData(transparentIndirectBuffer, 0, visibilityComputer.getTransparentCommands().toArray());
+        glNamedBufferSubData(glassIndirectBuffer, 0, visibilityComputer.getGlassCommands().toArray());
     }
 
     private void renderOccluders(Position cameraPosition, Matrix4f projectionViewMatrix, int occluderCount) {
@@ -487,30 +236,19 @@ public final class RenderingOptimizer {
     }
 
 
-    private long[] lodVisibilityBits;
     private final MeshCollector meshCollector;
-    private long cameraChunkX, cameraChunkY, cameraChunkZ;
-    private long cameraX, cameraY, cameraZ;
+    private final VisibilityComputer visibilityComputer;
 
     private final int opaqueIndirectBuffer, transparentIndirectBuffer, glassIndirectBuffer, shadowIndirectBuffer;
     private final int occluderBuffer, occludeeBuffer;
-
-    private final int LONGS_PER_LOD_BITS = Game.getWorld().CHUNKS_PER_LOD / 64;
-
-    private final long[][] visibilityBits = new long[Game.getWorld().LOD_COUNT][LONGS_PER_LOD_BITS];
-    private final long[] lodStarts = new long[Game.getWorld().LOD_COUNT * 3];
-    private final int[] lodDrawCounts = new int[Game.getWorld().LOD_COUNT * 3];
     private int shadowDrawCount;
 
-    private final IntArrayList opaqueCommands = new IntArrayList(INDIRECT_COMMAND_SIZE * 256);
-    private final IntArrayList transparentCommands = new IntArrayList(INDIRECT_COMMAND_SIZE * 128);
-    private final IntArrayList glassCommands = new IntArrayList(INDIRECT_COMMAND_SIZE * 128);
-    private final IntArrayList aabbs = new IntArrayList(AABB_INT_SIZE * 256);
+    private final IntArrayList shadowCommands = new IntArrayList(INDIRECT_COMMAND_SIZE * 256);
 
     private static final int AABB_INT_SIZE = 4;
 
     public enum OcclusionCullingOptions implements Option, Translatable {
-        DISABLED, NORMAL, AGGRESSIVE;
+        DISABLED, NORMAL, AGGRESSIVE, SOFTWARE;
 
         @Override
         public String translationFileName() {
@@ -0,0 +1,245 @@
+package game.player.rendering;
+
+import java.util.Arrays;
+
+/**
+ * Occlusion culling without the GPU, the occluder boxes are rasterized into a small depth buffer on the CPU
+ * and the occludee boxes are tested against a min depth hierarchy built on top of it.
+ * <p>
+ * All boxes are relative to the camera, the matrix is column major like {@code Matrix4f.get(float[])} writes it.
+ * Depth is stored as {@code 1 / w}, so bigger values are closer and the cleared buffer is infinitely far away.
+ * <p>
+ * Both sides are conservative: an occluder only covers the pixels that lie completely inside of its silhouette
+ * and only with the depth of its farthest corner, while an occludee is tested with all pixels it touches
+ * and the depth of its closest corner. Boxes crossing the near plane never occlude and are never occluded.
+ * <p>
+ * The spans of a row are filled with plain max loops. Measured on their own, these loops ran about six times slower
+ * with the jit's superword vectorization turned off, so they are left to the jit instead of the Vector API.
+ */
+public final class SoftwareOcclusionCuller {
+
+    public static final int WIDTH = 256;
+    public static final int HEIGHT = 128;
+
+    public SoftwareOcclusionCuller() {
+        levels = new float[LEVEL_COUNT][];
+        for (int level = 0; level < LEVEL_COUNT; level++) levels[level] = new float[(WIDTH >> level) * (HEIGHT >> level)];
+    }
+
+    public void clear(float[] projectionViewMatrix) {
+        System.arraycopy(projectionViewMatrix, 0, matrix, 0, 16);
+        Arrays.fill(levels[0], 0.0F);
+        occluderCount = 0;
+    }
+
+    public void addOccluder(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        if (!projectCorners(minX, minY, minZ, maxX, maxY, maxZ)) return;
+        float farthestDepth = Float.POSITIVE_INFINITY, minScreenX = Float.POSITIVE_INFINITY, minScreenY = Float.POSITIVE_INFINITY;
+        float maxScreenX = Float.NEGATIVE_INFINITY, maxScreenY = Float.NEGATIVE_INFINITY;
+        for (int corner = 0; corner < 8; corner++) {
+            farthestDepth = Math.min(farthestDepth, cornerDepths[corner]);
+            minScreenX = Math.min(minScreenX, cornerXs[corner]);
+            minScreenY = Math.min(minScreenY, cornerYs[corner]);
+            maxScreenX = Math.max(maxScreenX, cornerXs[corner]);
+            maxScreenY = Math.max(maxScreenY, cornerYs[corner]);
+        }
+        // Far away occluders are too small to cover a whole pixel
+        if (maxScreenX - minScreenX < 1.0F || maxScreenY - minScreenY < 1.0F) return;
+        if (maxScreenX < 0.0F || maxScreenY < 0.0F || minScreenX > WIDTH || minScreenY > HEIGHT) return;
+
+        int hullSize = computeHull();
+        if (hullSize < 3) return;
+        fillHull(hullSize, farthestDepth);
+        occluderCount++;
+    }
+
+    /**
+     * Has to be called after the last occluder and before the first occludee.
+     */
+    public void buildHierarchy() {
+        for (int level = 1; level < LEVEL_COUNT; level++) {
+            float[] source = levels[level - 1], target = levels[level];
+            int sourceWidth = WIDTH >> level - 1, targetWidth = WIDTH >> level, targetHeight = HEIGHT >> level;
+
+            for (int y = 0; y < targetHeight; y++) {
+                int upper = (y << 1) * sourceWidth, lower = upper + sourceWidth;
+                for (int x = 0; x < targetWidth; x++)
+                    target[y * targetWidth + x] = Math.min(
+                            Math.min(source[upper + (x << 1)], source[upper + (x << 1) + 1]),
+                            Math.min(source[lower + (x << 1)], source[lower + (x << 1) + 1]));
+            }
+        }
+    }
+
+    /**
+     * Only reads the buffer, so it can be called from multiple threads at once.
+     */
+    public boolean isOccluded(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        float closestDepth = 0.0F, minScreenX = Float.POSITIVE_INFINITY, minScreenY = Float.POSITIVE_INFINITY;
+        float maxScreenX = Float.NEGATIVE_INFINITY, maxScreenY = Float.NEGATIVE_INFINITY;
+
+        for (int corner = 0; corner < 8; corner++) {
+            float x = (corner & 4) == 0 ? minX : maxX;
+            float y = (corner & 2) == 0 ? minY : maxY;
+            float z = (corner & 1) == 0 ? minZ : maxZ;
+
+            float clipW = matrix[3] * x + matrix[7] * y + matrix[11] * z + matrix[15];
+            if (clipW < MIN_W) return false;
+            float depth = 1.0F / clipW;
+            float screenX = ((matrix[0] * x + matrix[4] * y + matrix[8] * z + matrix[12]) * depth * 0.5F + 0.5F) * WIDTH;
+            float screenY = ((matrix[1] * x + matrix[5] * y + matrix[9] * z + matrix[13]) * depth * 0.5F + 0.5F) * HEIGHT;
+
+            closestDepth = Math.max(closestDepth, depth);
+            minScreenX = Math.min(minScreenX, screenX);
+            minScreenY = Math.min(minScreenY, screenY);
+            maxScreenX = Math.max(maxScreenX, screenX);
+            maxScreenY = Math.max(maxScreenY, screenY);
+        }
+
+        // The parts of the box that are off screen can't be seen anyway
+        int testMinX = Math.max(0, (int) Math.floor(minScreenX));
+        int testMinY = Math.max(0, (int) Math.floor(minScreenY));
+        int testMaxX = Math.min(WIDTH - 1, (int) Math.floor(maxScreenX));
+        int testMaxY = Math.min(HEIGHT - 1, (int) Math.floor(maxScreenY));
+        if (testMinX > testMaxX || testMinY > testMaxY) return false;
+
+        int topLevel = LEVEL_COUNT - 1;
+        for (int tileY = testMinY >> topLevel; tileY <= testMaxY >> topLevel; tileY++)
+            for (int tileX = testMinX >> topLevel; tileX <= testMaxX >> topLevel; tileX++)
+                if (!isTileOccluded(topLevel, tileX, tileY, testMinX, testMinY, testMaxX, testMaxY, closestDepth)) return false;
+        return true;
+    }
+
+    public int getOccluderCount() {
+        return occluderCount;
+    }
+
+    public float getDepth(int x, int y) {
+        return levels[0][y * WIDTH + x];
+    }
+
+
+    private boolean isTileOccluded(int level, int tileX, int tileY, int minX, int minY, int maxX, int maxY, float depth) {
+        int tileMinX = tileX << level, tileMinY = tileY << level, tileMaxX = tileMinX + (1 << level) - 1, tileMaxY = tileMinY + (1 << level) - 1;
+        if (tileMinX > maxX || tileMinY > maxY || tileMaxX < minX || tileMaxY < minY) return true;
+
+        if (levels[level][tileY * (WIDTH >> level) + tileX] > depth) return true;
+        if (level == 0) return false;
+
+        int childX = tileX << 1, childY = tileY << 1;
+        return isTileOccluded(level - 1, childX, childY, minX, minY, maxX, maxY, depth)
+                && isTileOccluded(level - 1, childX + 1, childY, minX, minY, maxX, maxY, depth)
+                && isTileOccluded(level - 1, childX, childY + 1, minX, minY, maxX, maxY, depth)
+                && isTileOccluded(level - 1, childX + 1, childY + 1, minX, minY, maxX, maxY, depth);
+    }
+
+    /**
+     * @return Whether all corners are in front of the near plane.
+     */
+    private boolean projectCorners(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        for (int corner = 0; corner < 8; corner++) {
+            float x = (corner & 4) == 0 ? minX : maxX;
+            float y = (corner & 2) == 0 ? minY : maxY;
+            float z = (corner & 1) == 0 ? minZ : maxZ;
+
+            float clipW = matrix[3] * x + matrix[7] * y + matrix[11] * z + matrix[15];
+            if (clipW < MIN_W) return false;
+            float clipX = matrix[0] * x + matrix[4] * y + matrix[8] * z + matrix[12];
+            float clipY = matrix[1] * x + matrix[5] * y + matrix[9] * z + matrix[13];
+
+            float depth = 1.0F / clipW;
+            cornerXs[corner] = (clipX * depth * 0.5F + 0.5F) * WIDTH;
+            cornerYs[corner] = (clipY * depth * 0.5F + 0.5F) * HEIGHT;
+            cornerDepths[corner] = depth;
+        }
+        return true;
+    }
+
+    /**
+     * Andrew's monotone chain over the projected corners, the silhouette of a box is their convex hull.
+     *
+     * @return The number of counterclockwise hull vertices in {@link #hullXs} and {@link #hullYs}.
+     */
+    private int computeHull() {
+        for (int corner = 0; corner < 8; corner++) sortedCorners[corner] = corner;
+        for (int index = 1; index < 8; index++) {
+            int corner = sortedCorners[index], previous = index - 1;
+            while (previous >= 0 && isBefore(corner, sortedCorners[previous])) {
+                sortedCorners[previous + 1] = sortedCorners[previous];
+                previous--;
+            }
+            sortedCorners[previous + 1] = corner;
+        }
+
+        int size = 0;
+        for (int index = 0; index < 8; index++) size = addHullPoint(size, 2, sortedCorners[index]);
+        for (int index = 6, lowerSize = size + 1; index >= 0; index--) size = addHullPoint(size, lowerSize, sortedCorners[index]);
+        return size - 1;
+    }
+
+    private boolean isBefore(int corner, int other) {
+        return cornerXs[corner] < cornerXs[other] || cornerXs[corner] == cornerXs[other] && cornerYs[corner] < cornerYs[other];
+    }
+
+    private int addHullPoint(int size, int minSize, int corner) {
+        float x = cornerXs[corner], y = cornerYs[corner];
+        while (size >= minSize && cross(hullXs[size - 2], hullYs[size - 2], hullXs[size - 1], hullYs[size - 1], x, y) <= 0.0F) size--;
+        hullXs[size] = x;
+        hullYs[size] = y;
+        return size + 1;
+    }
+
+    private void fillHull(int hullSize, float depth) {
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+        for (int vertex = 0; vertex < hullSize; vertex++) {
+            int next = vertex + 1 == hullSize ? 0 : vertex + 1;
+            float deltaX = hullXs[next] - hullXs[vertex], deltaY = hullYs[next] - hullYs[vertex];
+            // Inside is left of every edge, the threshold moves each edge inwards by half a pixel diagonal
+            edgeAs[vertex] = -deltaY;
+            edgeBs[vertex] = deltaX;
+            edgeCs[vertex] = deltaY * hullXs[vertex] - deltaX * hullYs[vertex] - 0.5F * (Math.abs(deltaX) + Math.abs(deltaY));
+
+            minX = Math.min(minX, hullXs[vertex]);
+            minY = Math.min(minY, hullYs[vertex]);
+            maxX = Math.max(maxX, hullXs[vertex]);
+            maxY = Math.max(maxY, hullYs[vertex]);
+        }
+
+        int startY = Math.max(0, (int) Math.ceil(minY)), endY = Math.min(HEIGHT - 1, (int) Math.floor(maxY) - 1);
+        int clampedMinX = Math.max(0, (int) Math.ceil(minX)), clampedMaxX = Math.min(WIDTH - 1, (int) Math.floor(maxX) - 1);
+        float[] depths = levels[0];
+
+        for (int y = startY; y <= endY; y++) {
+            float centerY = y + 0.5F;
+            float spanStart = clampedMinX, spanEnd = clampedMaxX;
+
+            // Every edge limits the row to a half line, the fully covered pixels are the intersection of them
+            for (int edge = 0; edge < hullSize; edge++) {
+                float a = edgeAs[edge], rest = edgeBs[edge] * centerY + edgeCs[edge];
+                if (a > 0.0F) spanStart = Math.max(spanStart, (float) Math.ceil(-rest / a - 0.5F));
+                else if (a < 0.0F) spanEnd = Math.min(spanEnd, (float) Math.floor(-rest / a - 0.5F));
+                else if (rest < 0.0F) spanEnd = -1.0F;
+            }
+
+            int row = y * WIDTH;
+            for (int x = row + (int) spanStart, end = row + (int) spanEnd; x <= end; x++) depths[x] = Math.max(depths[x], depth);
+        }
+    }
+
+    private static float cross(float originX, float originY, float firstX, float firstY, float secondX, float secondY) {
+        return (firstX - originX) * (secondY - originY) - (firstY - originY) * (secondX - originX);
+    }
+
+    private final float[][] levels;
+    private final float[] matrix = new float[16];
+    private final float[] cornerXs = new float[8], cornerYs = new float[8], cornerDepths = new float[8];
+    private final int[] sortedCorners = new int[8];
+    private final float[] hullXs = new float[17], hullYs = new float[17];
+    private final float[] edgeAs = new float[16], edgeBs = new float[16], edgeCs = new float[16];
+    private int occluderCount;
+
+    private static final int LEVEL_COUNT = 5;
+    // Boxes closer than this to the camera plane are never culled
+    private static final float MIN_W = 0.01F;
+}
@@ -0,0 +1,69 @@
+package game.player.rendering;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+
+import static org.lwjgl.opengl.GL46.*;
+
+/**
+ * A persistently mapped buffer the meshing threads write vertices into, managed by a {@link StagingRing}.
+ * The render thread only issues GPU side copies out of it and frees the slices once a fence says the copies are done.
+ */
+public final class StagingBuffer {
+
+    public StagingBuffer(int capacity) {
+        buffer = glCreateBuffers();
+        glNamedBufferStorage(buffer, capacity, MAP_FLAGS);
+        ByteBuffer memory = glMapNamedBufferRange(buffer, 0, capacity, MAP_FLAGS);
+        ring = new StagingRing(memory);
+    }
+
+    public void copyInto(StagingRing.Slice slice, int targetBuffer, int targetStart) {
+        glCopyNamedBufferSubData(buffer, targetBuffer, slice.offset(), targetStart, slice.size());
+        copiedSlices.add(slice);
+    }
+
+    /**
+     * Fences every copy issued since the last call, the copied slices are freed once the fence is signaled.
+     */
+    public void submitCopies() {
+        if (copiedSlices.isEmpty()) return;
+        pendingCopies.addLast(new PendingCopies(glFenceSync(GL_SYNC_GPU_COMMANDS_COMPLETE, 0), new ArrayList<>(copiedSlices)));
+        copiedSlices.clear();
+    }
+
+    public void freeFinishedCopies() {
+        while (!pendingCopies.isEmpty()) {
+            PendingCopies copies = pendingCopies.peekFirst();
+            int status = glClientWaitSync(copies.fence, 0, 0L);
+            if (status != GL_ALREADY_SIGNALED && status != GL_CONDITION_SATISFIED) return;
+
+            glDeleteSync(copies.fence);
+            for (StagingRing.Slice slice : copies.slices) ring.free(slice);
+            pendingCopies.pollFirst();
+        }
+    }
+
+    public StagingRing getRing() {
+        return ring;
+    }
+
+    public void cleanUp() {
+        for (PendingCopies copies : pendingCopies) glDeleteSync(copies.fence);
+        pendingCopies.clear();
+        glUnmapNamedBuffer(buffer);
+        glDeleteBuffers(buffer);
+    }
+
+
+    private final int buffer;
+    private final StagingRing ring;
+    private final ArrayList<StagingRing.Slice> copiedSlices = new ArrayList<>();
+    private final ArrayDeque<PendingCopies> pendingCopies = new ArrayDeque<>();
+
+    private static final int MAP_FLAGS = GL_MAP_WRITE_BIT | GL_MAP_PERSISTENT_BIT | GL_MAP_COHERENT_BIT;
+
+    private record PendingCopies(long fence, ArrayList<StagingRing.Slice> slices) {
+    }
+}
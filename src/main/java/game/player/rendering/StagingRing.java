@@ -0,0 +1,103 @@
+package game.player.rendering;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+
+/**
+ * Hands out slices of one buffer in allocation order. The meshing threads write the vertices of a mesh into a slice
+ * and the render thread frees it, once the GPU has copied it into the {@link MemoryAllocator} buffer.
+ * <p>
+ * Slices are freed in any order, but their memory is only reused once every older slice is freed as well.
+ * Knows nothing about OpenGL, so it works just as well on a plain direct buffer.
+ */
+public final class StagingRing {
+
+    public StagingRing(ByteBuffer memory) {
+        this.memory = memory;
+        capacity = memory.capacity();
+    }
+
+    /**
+     * @return A slice of exactly {@code size} bytes or {@code null} if there currently isn't enough contiguous space.
+     */
+    public synchronized Slice allocate(int size) {
+        if (size <= 0 || size > capacity) return null;
+        int start;
+
+        if (liveSlices.isEmpty()) start = 0;
+        else {
+            int tail = liveSlices.peekFirst().offset;
+            if (head > tail) {
+                // Slices never wrap around, the rest of the memory is skipped if the slice doesn't fit
+                if (size <= capacity - head) start = head;
+                else if (size <= tail) start = 0;
+                else return null;
+            } else if (size <= tail - head) start = head;
+            else return null;
+        }
+
+        Slice slice = new Slice(start, size, memory.slice(start, size).order(ByteOrder.nativeOrder()));
+        liveSlices.addLast(slice);
+        head = start + size;
+        usedBytes += size;
+        return slice;
+    }
+
+    public synchronized void free(Slice slice) {
+        if (slice == null || slice.freed) return;
+        slice.freed = true;
+        usedBytes -= slice.size;
+
+        while (!liveSlices.isEmpty() && liveSlices.peekFirst().freed) liveSlices.pollFirst();
+        if (liveSlices.isEmpty()) head = 0;
+    }
+
+    public synchronized int getUsedBytes() {
+        return usedBytes;
+    }
+
+    public synchronized int getLiveSliceCount() {
+        return liveSlices.size();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public ByteBuffer getMemory() {
+        return memory;
+    }
+
+
+    private final ByteBuffer memory;
+    private final int capacity;
+    private final ArrayDeque<Slice> liveSlices = new ArrayDeque<>();
+    private int head = 0;
+    private int usedBytes = 0;
+
+    public static final class Slice {
+
+        public int offset() {
+            return offset;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public ByteBuffer buffer() {
+            return buffer;
+        }
+
+        private Slice(int offset, int size, ByteBuffer buffer) {
+            this.offset = offset;
+            this.size = size;
+            this.buffer = buffer;
+        }
+
+        private final int offset, size;
+        private final ByteBuffer buffer;
+        private boolean freed = false;
+    }
+}
@@ -11,39 +11,38 @@ public record TransparentModel(long totalX, long totalY, long totalZ, int LOD, i
 
     public TransparentModel(Vector3l position, int transparentVertexCount, int glassVertexCount, int bufferOrStart, int lod) {
         this(position.x << lod, position.y << lod, position.z << lod,
-                lod, bufferOrStart, transparentVertexCount, glassVertexCount,
-                (bufferOrStart >> 2) * MeshGenerator.VERTICES_PER_QUAD / MeshGenerator.INTS_PER_VERTEX);
+                lod, bufferOrStart, transparentVertexCount, glassVertexCount, getIndex(bufferOrStart));
     }
 
-    public void addDataWithOcclusionCulling(IntArrayList transparentCommands, IntArrayList glassCommands) {
+    public void addDataWithOcclusionCulling(IntArrayList transparentCommands, IntArrayList glassCommands, int originIndex) {
         transparentCommands.add(isTransparentEmpty() ? 0 : transparentVertexCount);
         transparentCommands.add(0);
         transparentCommands.add(isTransparentEmpty() ? 0 : index);
-        transparentCommands.add(0);
+        transparentCommands.add(originIndex);
 
         glassCommands.add(isGlassEmpty() ? 0 : glassVertexCount);
         glassCommands.add(0);
         glassCommands.add(isGlassEmpty() ? 0 : index + transparentVertexCount);
-        glassCommands.add(0);
+        glassCommands.add(originIndex);
     }
 
-    public void addDataWithoutOcclusionCulling(IntArrayList transparentCommands, IntArrayList glassCommands) {
-        if (!isTransparentEmpty()) addTransparentData(transparentCommands);
-        if (!isGlassEmpty()) addGlassData(glassCommands);
+    public void addDataWithoutOcclusionCulling(IntArrayList transparentCommands, IntArrayList glassCommands, int originIndex) {
+        if (!isTransparentEmpty()) addTransparentData(transparentCommands, originIndex);
+        if (!isGlassEmpty()) addGlassData(glassCommands, originIndex);
     }
 
-    public void addGlassData(IntArrayList glassCommands) {
+    public void addGlassData(IntArrayList glassCommands, int originIndex) {
         glassCommands.add(glassVertexCount);
         glassCommands.add(1);
         glassCommands.add(index + transparentVertexCount);
-        glassCommands.add(0);
+        glassCommands.add(originIndex);
     }
 
-    public void addTransparentData(IntArrayList transparentCommands) {
+    public void addTransparentData(IntArrayList transparentCommands, int originIndex) {
         transparentCommands.add(transparentVertexCount);
         transparentCommands.add(1);
         transparentCommands.add(index);
-        transparentCommands.add(0);
+        transparentCommands.add(originIndex);
     }
 
     public boolean isTransparentEmpty() {
@@ -58,6 +57,10 @@ public record TransparentModel(long totalX, long totalY, long totalZ, int LOD, i
         return isTransparentEmpty() && isGlassEmpty();
     }
 
+    public TransparentModel moveTo(int start) {
+        return new TransparentModel(totalX, totalY, totalZ, LOD, start, transparentVertexCount, glassVertexCount, getIndex(start));
+    }
+
     public void delete() {
         glDeleteBuffers(bufferOrStart);
     }
@@ -73,5 +76,9 @@ public record TransparentModel(long totalX, long totalY, long totalZ, int LOD, i
     public long chunkZ() {
         return totalZ >>> CHUNK_SIZE_BITS + LOD;
     }
-}
 
+
+    private static int getIndex(int start) {
+        return (start >> 2) * MeshGenerator.VERTICES_PER_QUAD / VertexFormat.INTS_PER_COMPACT_VERTEX;
+    }
+}
@@ -0,0 +1,82 @@
+package game.player.rendering;
+
+/**
+ * The layout of the faces in the mesh buffers, has to match Material.vert and StructureHologram.vert.
+ * <p>
+ * Chunk meshes use the compact layout, two ints per face: the position inside the chunk and the face data.
+ * The origin of the chunk is looked up per draw in the chunk origins buffer, indexed by the base instance of the draw command.
+ * Structure meshes can be bigger than a chunk, so they keep the wide layout of the absolute x, y and z followed by the face data.
+ * <p>
+ * Face data: {@code properties << 24 | faceSize1 << 17 | faceSize2 << 11 | side << 8 | material},
+ * both face sizes are stored minus one.
+ */
+public final class VertexFormat {
+
+    public static final int INTS_PER_COMPACT_VERTEX = 2;
+    public static final int INTS_PER_WIDE_VERTEX = 4;
+    public static final int INTS_PER_ORIGIN = 3;
+    public static final int PROPERTIES_OFFSET = 24;
+
+    public static int packPosition(int inChunkX, int inChunkY, int inChunkZ) {
+        return inChunkX | inChunkY << POSITION_BITS | inChunkZ << 2 * POSITION_BITS;
+    }
+
+    public static int packFaceData(int properties, int faceSize1, int faceSize2, int side, byte material) {
+        return properties << PROPERTIES_OFFSET | faceSize1 << 17 | faceSize2 << 11 | side << 8 | material & 0xFF;
+    }
+
+    public static int getX(int position) {
+        return position & POSITION_MASK;
+    }
+
+    public static int getY(int position) {
+        return position >> POSITION_BITS & POSITION_MASK;
+    }
+
+    public static int getZ(int position) {
+        return position >> 2 * POSITION_BITS & POSITION_MASK;
+    }
+
+    public static int getProperties(int faceData) {
+        return faceData >>> PROPERTIES_OFFSET;
+    }
+
+    public static int getFaceSize1(int faceData) {
+        return faceData >> 17 & FACE_SIZE_MASK;
+    }
+
+    public static int getFaceSize2(int faceData) {
+        return faceData >> 11 & FACE_SIZE_MASK;
+    }
+
+    public static int getSide(int faceData) {
+        return faceData >> 8 & 7;
+    }
+
+    public static byte getMaterial(int faceData) {
+        return (byte) faceData;
+    }
+
+    /**
+     * Converts compact faces back into the wide layout, as if they had been meshed with the given chunk origin.
+     */
+    public static int[] toWide(int[] compactVertices, int originX, int originY, int originZ) {
+        int faceCount = compactVertices.length / INTS_PER_COMPACT_VERTEX;
+        int[] wideVertices = new int[faceCount * INTS_PER_WIDE_VERTEX];
+        for (int face = 0; face < faceCount; face++) {
+            int position = compactVertices[face * INTS_PER_COMPACT_VERTEX];
+            wideVertices[face * INTS_PER_WIDE_VERTEX] = originX | getX(position);
+            wideVertices[face * INTS_PER_WIDE_VERTEX + 1] = originY | getY(position);
+            wideVertices[face * INTS_PER_WIDE_VERTEX + 2] = originZ | getZ(position);
+            wideVertices[face * INTS_PER_WIDE_VERTEX + 3] = compactVertices[face * INTS_PER_COMPACT_VERTEX + 1];
+        }
+        return wideVertices;
+    }
+
+    private VertexFormat() {
+    }
+
+    private static final int POSITION_BITS = 6;
+    private static final int POSITION_MASK = (1 << POSITION_BITS) - 1;
+    private static final int FACE_SIZE_MASK = 63;
+}
@@ -0,0 +1,557 @@
+package game.player.rendering;
+
+import core.utils.IntArrayList;
+import core.utils.ParallelUtils;
+
+import game.server.Game;
+import game.settings.IntSettings;
+import game.utils.Utils;
+
+import org.joml.FrustumIntersection;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.IntConsumer;
+
+import static game.utils.Constants.*;
+
+/**
+ * Finds the visible models of every lod and generates their indirect draw commands, knows nothing about OpenGL.
+ * <p>
+ * The frustum walk and the command generation of a lod don't depend on the other lods, so in parallel mode every lod
+ * is handled by its own task on a small pool of its own, writing into its own lists which are concatenated afterwards.
+ * The common pool is kept busy by edits and shape rasterization, which would otherwise stall the frame.
+ * Only removing the overlap between lods runs in order.
+ * <p>
+ * The commands of every visible model are kept for the next frame. As long as the models, the camera chunk and whether
+ * the model borders the next lod are the same, the kept commands are copied instead of being generated again.
+ * <p>
+ * With software occlusion culling the occluders of all visible models are rasterized by the {@link SoftwareOcclusionCuller}
+ * before any commands are generated, occluded models don't get any commands.
+ */
+public final class VisibilityComputer {
+
+    public VisibilityComputer(ModelSource models) {
+        this.models = models;
+        int lodCount = Game.getWorld().LOD_COUNT;
+        longsPerLodBits = Game.getWorld().CHUNKS_PER_LOD / 64;
+
+        visibilityBits = new long[lodCount][longsPerLodBits];
+        lodCommands = new LodCommands[lodCount];
+        cachedLodCommands = new LodCommands[lodCount];
+        for (int lod = 0; lod < lodCount; lod++) {
+            lodCommands[lod] = new LodCommands();
+            cachedLodCommands[lod] = new LodCommands();
+        }
+        lodStarts = new long[lodCount * 3];
+        lodDrawCounts = new int[lodCount * 3];
+    }
+
+    /**
+     * @param intersection          The frustum relative to the camera position.
+     * @param softwareCullingMatrix The matrix of that frustum in column major order, null to not cull occluded models on the CPU.
+     * @param occlusionCulling      Whether the commands are generated for the occlusion culling pass on the GPU.
+     */
+    public void computeVisibility(FrustumIntersection intersection, float[] softwareCullingMatrix, long cameraX, long cameraY, long cameraZ,
+                                  boolean occlusionCulling, boolean parallel) {
+        cameraChunkX = cameraX >>> CHUNK_SIZE_BITS;
+        cameraChunkY = cameraY >>> CHUNK_SIZE_BITS;
+        cameraChunkZ = cameraZ >>> CHUNK_SIZE_BITS;
+        this.cameraX = cameraX;
+        this.cameraY = cameraY;
+        this.cameraZ = cameraZ;
+
+        int lodCount = visibilityBits.length;
+        forEachLod(parallel, lod -> computeLodVisibility(lod, intersection));
+        for (int lod = lodCount - 1; lod >= 0; lod--) removeLodVisibilityOverlap(lod);
+        if (softwareCullingMatrix != null) rasterizeOccluders(softwareCullingMatrix);
+        forEachLod(parallel, lod -> generateLodCommands(lod, occlusionCulling, softwareCullingMatrix != null));
+        mergeLodCommands(occlusionCulling);
+    }
+
+    public IntArrayList getOpaqueCommands() {
+        return opaqueCommands;
+    }
+
+    public IntArrayList getTransparentCommands() {
+        return transparentCommands;
+    }
+
+    public IntArrayList getGlassCommands() {
+        return glassCommands;
+    }
+
+    /**
+     * Only filled with occlusion culling, in the same order as the commands.
+     */
+    public IntArrayList getOccludees() {
+        return occludees;
+    }
+
+    /**
+     * Only filled with occlusion culling.
+     */
+    public IntArrayList getOccluders() {
+        return occluders;
+    }
+
+    public long getLodStart(int lod, int commandType) {
+        return lodStarts[lod * 3 + commandType];
+    }
+
+    public int getLodDrawCount(int lod, int commandType) {
+        return lodDrawCounts[lod * 3 + commandType];
+    }
+
+    public long[] getVisibilityBits(int lod) {
+        return visibilityBits[lod];
+    }
+
+    public int getReusedModelCount() {
+        return reusedModelCount;
+    }
+
+    public int getGeneratedModelCount() {
+        return generatedModelCount;
+    }
+
+    public int getSoftwareCulledModelCount() {
+        return softwareCulledModelCount;
+    }
+
+
+    private void forEachLod(boolean parallel, IntConsumer action) {
+        if (!parallel) {
+            for (int lod = 0; lod < visibilityBits.length; lod++) action.accept(lod);
+            return;
+        }
+        ArrayList<ForkJoinTask<?>> tasks = new ArrayList<>(visibilityBits.length);
+        for (int lod = 0; lod < visibilityBits.length; lod++) {
+            int taskLod = lod;
+            tasks.add(ForkJoinTask.adapt(() -> action.accept(taskLod)));
+        }
+        ParallelUtils.invokeAll(POOL, tasks);
+    }
+
+    private void computeLodVisibility(int lod, FrustumIntersection intersection) {
+        long[] lodVisibilityBits = visibilityBits[lod];
+        Arrays.fill(lodVisibilityBits, 0L);
+
+        int width = Game.getWorld().RENDERED_WORLD_WIDTH;
+        long chunkX = (cameraChunkX >> lod) - (width >> 1);
+        long chunkY = (cameraChunkY >> lod) - (width >> 1);
+        long chunkZ = (cameraChunkZ >> lod) - (width >> 1);
+        fillVisibleChunks(lodVisibilityBits, lod, intersection, width, chunkX, chunkY, chunkZ);
+    }
+
+    private void fillVisibleChunks(long[] lodVisibilityBits, int lod, FrustumIntersection intersection, int length, long chunkX, long chunkY, long chunkZ) {
+        if (length < 1) throw new IllegalArgumentException("Length cannot be %d\n".formatted(length));
+        int chunkSizeBits = CHUNK_SIZE_BITS + lod;
+
+        if (length == 1) {
+            if (intersection.testAab(
+                    (chunkX << chunkSizeBits) - cameraX,
+                    (chunkY << chunkSizeBits) - cameraY,
+                    (chunkZ << chunkSizeBits) - cameraZ,
+                    (chunkX + 1 << chunkSizeBits) - cameraX,
+                    (chunkY + 1 << chunkSizeBits) - cameraY,
+                    (chunkZ + 1 << chunkSizeBits) - cameraZ)) {
+                int chunkIndex = Utils.getChunkIndex(chunkX, chunkY, chunkZ, lod);
+                lodVisibilityBits[chunkIndex >> 6] |= 1L << chunkIndex;
+            }
+            return;
+        }
+
+        int intersectionType = intersection.intersectAab(
+                (chunkX << chunkSizeBits) - cameraX,
+                (chunkY << chunkSizeBits) - cameraY,
+                (chunkZ << chunkSizeBits) - cameraZ,
+                (chunkX + length << chunkSizeBits) - cameraX,
+                (chunkY + length << chunkSizeBits) - cameraY,
+                (chunkZ + length << chunkSizeBits) - cameraZ);
+
+        if (intersectionType == FrustumIntersection.INSIDE) {
+            for (long x = chunkX; x < chunkX + length; x++)
+                for (long y = chunkY; y < chunkY + length; y++)
+                    for (long z = chunkZ; z < chunkZ + length; z++) {
+                        int chunkIndex = Utils.getChunkIndex(x, y, z, lod);
+                        lodVisibilityBits[chunkIndex >> 6] |= 1L << chunkIndex;
+                    }
+        }
+        if (intersectionType == FrustumIntersection.INTERSECT) {
+            length >>= 1;
+            fillVisibleChunks(lodVisibilityBits, lod, intersection, length, chunkX, chunkY, chunkZ);
+            fillVisibleChunks(lodVisibilityBits, lod, intersection, length, chunkX, chunkY, chunkZ + length);
+            fillVisibleChunks(lodVisibilityBits, lod, intersection, length, chunkX, chunkY + length, chunkZ);
+            fillVisibleChunks(lodVisibilityBits, lod, intersection, length, chunkX, chunkY + length, chunkZ + length);
+            fillVisibleChunks(lodVisibilityBits, lod, intersection, length, chunkX + length, chunkY, chunkZ);
+            fillVisibleChunks(lodVisibilityBits, lod, intersection, length, chunkX + length, chunkY, chunkZ + length);
+            fillVisibleChunks(lodVisibilityBits, lod, intersection, length, chunkX + length, chunkY + length, chunkZ);
+            fillVisibleChunks(lodVisibilityBits, lod, intersection, length, chunkX + length, chunkY + length, chunkZ + length);
+        }
+    }
+
+    private void removeLodVisibilityOverlap(int lod) {
+        long[] lodVisibilityBits = visibilityBits[lod];
+
+        for (int bitsIndex = 0; bitsIndex < longsPerLodBits; bitsIndex++)
+            for (int chunkIndex = (bitsIndex << 6) + Long.numberOfTrailingZeros(lodVisibilityBits[bitsIndex]),
+                 end = bitsIndex + 1 << 6; chunkIndex < end; chunkIndex++) {
+
+                if ((lodVisibilityBits[bitsIndex] & 1L << chunkIndex) == 0) continue;
+
+                OpaqueModel opaqueModel = models.getOpaqueModel(chunkIndex, lod);
+                TransparentModel transparentModel = models.getTransparentModel(chunkIndex, lod);
+                if (opaqueModel == null || transparentModel == null) {
+                    lodVisibilityBits[bitsIndex] &= ~(1L << chunkIndex);
+                    continue;
+                }
+
+                long lodModelX = opaqueModel.chunkX();
+                long lodModelY = opaqueModel.chunkY();
+                long lodModelZ = opaqueModel.chunkZ();
+
+                if (lod == 0 || modelFarEnoughAway(lodModelX, lodModelY, lodModelZ, lod)) continue;
+
+                long nextLodX = lodModelX << 1;
+                long nextLodY = lodModelY << 1;
+                long nextLodZ = lodModelZ << 1;
+                if (modelCubePresent(nextLodX, nextLodY, nextLodZ, lod - 1)) lodVisibilityBits[bitsIndex] &= ~(1L << chunkIndex);
+                else clearModelCubeVisibility(nextLodX, nextLodY, nextLodZ, lod - 1);
+            }
+    }
+
+    private boolean modelFarEnoughAway(long lodModelX, long lodModelY, long lodModelZ, int lod) {
+        int requiredDistance = (IntSettings.RENDER_DISTANCE.value() >> 1) + 1;
+        long distanceX = Math.abs(Utils.getWrappedChunkCoordinate(lodModelX, cameraChunkX >> lod, lod) - (cameraChunkX >> lod));
+        long distanceY = Math.abs(Utils.getWrappedChunkCoordinate(lodModelY, cameraChunkY >> lod, lod) - (cameraChunkY >> lod));
+        long distanceZ = Math.abs(Utils.getWrappedChunkCoordinate(lodModelZ, cameraChunkZ >> lod, lod) - (cameraChunkZ >> lod));
+
+        return distanceX > requiredDistance || distanceZ > requiredDistance || distanceY > requiredDistance;
+    }
+
+    private boolean modelCubePresent(long lodModelX, long lodModelY, long lodModelZ, int lod) {
+        return models.isModelPresent(lodModelX, lodModelY, lodModelZ, lod)
+                && models.isModelPresent(lodModelX, lodModelY, lodModelZ + 1, lod)
+                && models.isModelPresent(lodModelX, lodModelY + 1, lodModelZ, lod)
+                && models.isModelPresent(lodModelX, lodModelY + 1, lodModelZ + 1, lod)
+                && models.isModelPresent(lodModelX + 1, lodModelY, lodModelZ, lod)
+                && models.isModelPresent(lodModelX + 1, lodModelY, lodModelZ + 1, lod)
+                && models.isModelPresent(lodModelX + 1, lodModelY + 1, lodModelZ, lod)
+                && models.isModelPresent(lodModelX + 1, lodModelY + 1, lodModelZ + 1, lod);
+    }
+
+    private boolean isLodBorderChunk(long chunkX, long chunkY, long chunkZ, int lod) {
+        if (lod == 0) return false;
+        long distanceX = Utils.getWrappedChunkCoordinate(chunkX, cameraChunkX >> lod, lod) - (cameraChunkX >> lod);
+        long distanceY = Utils.getWrappedChunkCoordinate(chunkY, cameraChunkY >> lod, lod) - (cameraChunkY >> lod);
+        long distanceZ = Utils.getWrappedChunkCoordinate(chunkZ, cameraChunkZ >> lod, lod) - (cameraChunkZ >> lod);
+
+        int index = Utils.getChunkIndex(chunkX + (distanceX > 0 ? -1 : 1), chunkY, chunkZ, lod);
+        if ((visibilityBits[lod][index >> 6] & 1L << index) == 0) return true;
+
+        index = Utils.getChunkIndex(chunkX, chunkY, chunkZ + (distanceZ > 0 ? -1 : 1), lod);
+        if ((visibilityBits[lod][index >> 6] & 1L << index) == 0) return true;
+
+        index = Utils.getChunkIndex(chunkX, chunkY + (distanceY > 0 ? -1 : 1), chunkZ, lod);
+        return (visibilityBits[lod][index >> 6] & 1L << index) == 0;
+    }
+
+    private void clearModelCubeVisibility(long lodModelX, long lodModelY, long lodModelZ, int lod) {
+        long[] lodVisibilityBits = visibilityBits[lod];
+        int chunkIndex;
+        chunkIndex = Utils.getChunkIndex(lodModelX, lodModelY, lodModelZ, lod);
+        lodVisibilityBits[chunkIndex >> 6] &= ~(3L << chunkIndex);
+        chunkIndex = Utils.getChunkIndex(lodModelX, lodModelY, lodModelZ + 1, lod);
+        lodVisibilityBits[chunkIndex >> 6] &= ~(3L << chunkIndex);
+        chunkIndex = Utils.getChunkIndex(lodModelX + 1, lodModelY, lodModelZ, lod);
+        lodVisibilityBits[chunkIndex >> 6] &= ~(3L << chunkIndex);
+        chunkIndex = Utils.getChunkIndex(lodModelX + 1, lodModelY, lodModelZ + 1, lod);
+        lodVisibilityBits[chunkIndex >> 6] &= ~(3L << chunkIndex);
+    }
+
+    private void rasterizeOccluders(float[] softwareCullingMatrix) {
+        softwareCuller.clear(softwareCullingMatrix);
+
+        for (int lod = 0; lod < visibilityBits.length; lod++) {
+            long[] lodVisibilityBits = visibilityBits[lod];
+            for (int bitsIndex = 0; bitsIndex < longsPerLodBits; bitsIndex++)
+                for (int chunkIndex = (bitsIndex << 6) + Long.numberOfTrailingZeros(lodVisibilityBits[bitsIndex]),
+                     end = bitsIndex + 1 << 6; chunkIndex < end; chunkIndex++) {
+
+                    if ((lodVisibilityBits[bitsIndex] & 1L << chunkIndex) == 0) continue;
+                    OpaqueModel opaqueModel = models.getOpaqueModel(chunkIndex, lod);
+                    if (opaqueModel == null || opaqueModel.isEmpty()) continue;
+
+                    if (models.isIsolated(opaqueModel.chunkX(), opaqueModel.chunkY(), opaqueModel.chunkZ(), lod)) continue;
+
+                    AABB occluder = models.getOccluder(chunkIndex, lod);
+                    if (occluder == null || occluder.isEmpty()) continue;
+                    float originX = opaqueModel.totalX() - cameraX, originY = opaqueModel.totalY() - cameraY, originZ = opaqueModel.totalZ() - cameraZ;
+                    softwareCuller.addOccluder(
+                            originX + (occluder.minX << lod), originY + (occluder.minY << lod), originZ + (occluder.minZ << lod),
+                            originX + (occluder.maxX << lod), originY + (occluder.maxY << lod), originZ + (occluder.maxZ << lod));
+                }
+        }
+        softwareCuller.buildHierarchy();
+    }
+
+    private boolean isSoftwareOccluded(OpaqueModel opaqueModel, AABB occludee, int lod) {
+        if (occludee == null) return false;
+        float originX = opaqueModel.totalX() - cameraX, originY = opaqueModel.totalY() - cameraY, originZ = opaqueModel.totalZ() - cameraZ;
+        return softwareCuller.isOccluded(
+                originX + (occludee.minX << lod), originY + (occludee.minY << lod), originZ + (occludee.minZ << lod),
+                originX + (occludee.maxX << lod), originY + (occludee.maxY << lod), originZ + (occludee.maxZ << lod));
+    }
+
+    private void generateLodCommands(int lod, boolean occlusionCulling, boolean softwareCulling) {
+        // Last frame's commands become the cache of this frame
+        LodCommands cache = lodCommands[lod];
+        LodCommands commands = cachedLodCommands[lod];
+        lodCommands[lod] = commands;
+        cachedLodCommands[lod] = cache;
+
+        long lodCameraChunkX = cameraChunkX >> lod;
+        long lodCameraChunkY = cameraChunkY >> lod;
+        long lodCameraChunkZ = cameraChunkZ >> lod;
+        commands.clear(lodCameraChunkX, lodCameraChunkY, lodCameraChunkZ, occlusionCulling);
+        boolean cacheValid = cache.matches(lodCameraChunkX, lodCameraChunkY, lodCameraChunkZ, occlusionCulling);
+        int cachedEntry = 0;
+
+        long[] lodVisibilityBits = visibilityBits[lod];
+        for (int bitsIndex = 0; bitsIndex < longsPerLodBits; bitsIndex++)
+            for (int chunkIndex = (bitsIndex << 6) + Long.numberOfTrailingZeros(lodVisibilityBits[bitsIndex]),
+                 end = bitsIndex + 1 << 6; chunkIndex < end; chunkIndex++) {
+
+                if ((lodVisibilityBits[bitsIndex] & 1L << chunkIndex) == 0) continue;
+
+                OpaqueModel opaqueModel = models.getOpaqueModel(chunkIndex, lod);
+                TransparentModel transparentModel = models.getTransparentModel(chunkIndex, lod);
+                AABB occludee = occlusionCulling ? models.getOccludee(chunkIndex, lod) : null;
+                if (opaqueModel == null || transparentModel == null) continue;
+                if (occlusionCulling && opaqueModel.isEmpty() && transparentModel.isEmpty()) continue;
+                if (softwareCulling && (!opaqueModel.isEmpty() || !transparentModel.isEmpty())
+                        && Utils.chunkDistance(lodCameraChunkX, lodCameraChunkY, lodCameraChunkZ, opaqueModel.chunkX(), opaqueModel.chunkY(), opaqueModel.chunkZ(), lod) > 1
+                        && isSoftwareOccluded(opaqueModel, models.getOccludee(chunkIndex, lod), lod)) {
+                    commands.softwareCulledModelCount++;
+                    continue;
+                }
+
+                boolean isBorderChunk = isLodBorderChunk(opaqueModel.chunkX(), opaqueModel.chunkY(), opaqueModel.chunkZ(), lod);
+
+                // Both are ordered by chunk index, so the cache is only walked once
+                if (cacheValid) {
+                    while (cachedEntry < cache.size() && cache.getChunkIndex(cachedEntry) < chunkIndex) cachedEntry++;
+                    if (cachedEntry < cache.size() && cache.isSame(cachedEntry, chunkIndex, opaqueModel, transparentModel, occludee, isBorderChunk)) {
+                        commands.copyEntry(cache, cachedEntry);
+                        continue;
+                    }
+                }
+
+                commands.startEntry(chunkIndex, opaqueModel, transparentModel, occludee, isBorderChunk);
+                int originIndex = MeshCollector.getOriginIndex(chunkIndex, lod);
+                if (occlusionCulling) {
+                    opaqueModel.addDataWithOcclusionCulling(commands.opaqueCommands, lodCameraChunkX, lodCameraChunkY, lodCameraChunkZ, isBorderChunk, originIndex);
+                    transparentModel.addDataWithOcclusionCulling(commands.transparentCommands, commands.glassCommands, originIndex);
+                    occludee.addData(commands.occludees, (int) opaqueModel.totalX(), (int) opaqueModel.totalY(), (int) opaqueModel.totalZ(), lod);
+
+                    if (Utils.chunkDistance(lodCameraChunkX, lodCameraChunkY, lodCameraChunkZ, opaqueModel.chunkX(), opaqueModel.chunkY(), opaqueModel.chunkZ(), lod) <= 1)
+                        commands.setAlwaysVisible();
+                } else {
+                    opaqueModel.addDataWithoutOcclusionCulling(commands.opaqueCommands, lodCameraChunkX, lodCameraChunkY, lodCameraChunkZ, isBorderChunk, originIndex);
+                    transparentModel.addDataWithoutOcclusionCulling(commands.transparentCommands, commands.glassCommands, originIndex);
+                }
+            }
+
+        if (occlusionCulling) populateOccluders(lod, commands.occluders);
+    }
+
+    private void populateOccluders(int lod, IntArrayList lodOccluders) {
+        long[] lodVisibilityBits = visibilityBits[lod];
+
+        for (int bitsIndex = 0; bitsIndex < longsPerLodBits; bitsIndex++)
+            for (int chunkIndex = (bitsIndex << 6) + Long.numberOfTrailingZeros(lodVisibilityBits[bitsIndex]),
+                 end = bitsIndex + 1 << 6; chunkIndex < end; chunkIndex++) {
+
+                if ((lodVisibilityBits[bitsIndex] & 1L << chunkIndex) == 0) continue;
+                OpaqueModel opaqueModel = models.getOpaqueModel(chunkIndex, lod);
+                if (opaqueModel == null || opaqueModel.isEmpty()) continue;
+
+                if (models.isIsolated(opaqueModel.chunkX(), opaqueModel.chunkY(), opaqueModel.chunkZ(), lod)) continue;
+
+                AABB occluder = models.getOccluder(chunkIndex, lod);
+                if (occluder != null) occluder.addData(lodOccluders, (int) opaqueModel.totalX(), (int) opaqueModel.totalY(), (int) opaqueModel.totalZ(), lod);
+            }
+    }
+
+    private void mergeLodCommands(boolean occlusionCulling) {
+        opaqueCommands.clear();
+        transparentCommands.clear();
+        glassCommands.clear();
+        occludees.clear();
+        occluders.clear();
+        reusedModelCount = 0;
+        generatedModelCount = 0;
+        softwareCulledModelCount = 0;
+
+        for (int lod = 0; lod < lodCommands.length; lod++) {
+            LodCommands commands = lodCommands[lod];
+            lodStarts[lod * 3 + OPAQUE] = (long) opaqueCommands.size() / 4 * RenderingOptimizer.INDIRECT_COMMAND_SIZE;
+            lodStarts[lod * 3 + TRANSPARENT] = (long) transparentCommands.size() / 4 * RenderingOptimizer.INDIRECT_COMMAND_SIZE;
+            lodStarts[lod * 3 + GLASS] = (long) glassCommands.size() / 4 * RenderingOptimizer.INDIRECT_COMMAND_SIZE;
+
+            // With occlusion culling every model has all of its commands, some of them empty
+            lodDrawCounts[lod * 3 + OPAQUE] = occlusionCulling ? commands.size() * OpaqueModel.FACE_COUNT : commands.opaqueCommands.size() / 4;
+            lodDrawCounts[lod * 3 + TRANSPARENT] = occlusionCulling ? commands.size() : commands.transparentCommands.size() / 4;
+            lodDrawCounts[lod * 3 + GLASS] = occlusionCulling ? commands.size() : commands.glassCommands.size() / 4;
+
+            opaqueCommands.addAll(commands.opaqueCommands, 0, commands.opaqueCommands.size());
+            transparentCommands.addAll(commands.transparentCommands, 0, commands.transparentCommands.size());
+            glassCommands.addAll(commands.glassCommands, 0, commands.glassCommands.size());
+            occludees.addAll(commands.occludees, 0, commands.occludees.size());
+            occluders.addAll(commands.occluders, 0, commands.occluders.size());
+            reusedModelCount += commands.reusedModelCount;
+            generatedModelCount += commands.size() - commands.reusedModelCount;
+            softwareCulledModelCount += commands.softwareCulledModelCount;
+        }
+    }
+
+    private final ModelSource models;
+    private final int longsPerLodBits;
+    private final long[][] visibilityBits;
+    private final LodCommands[] lodCommands, cachedLodCommands;
+    private final long[] lodStarts;
+    private final int[] lodDrawCounts;
+    private long cameraChunkX, cameraChunkY, cameraChunkZ;
+    private long cameraX, cameraY, cameraZ;
+    private int reusedModelCount, generatedModelCount, softwareCulledModelCount;
+    private final SoftwareOcclusionCuller softwareCuller = new SoftwareOcclusionCuller();
+
+    private final IntArrayList opaqueCommands = new IntArrayList(RenderingOptimizer.INDIRECT_COMMAND_SIZE * 256);
+    private final IntArrayList transparentCommands = new IntArrayList(RenderingOptimizer.INDIRECT_COMMAND_SIZE * 128);
+    private final IntArrayList glassCommands = new IntArrayList(RenderingOptimizer.INDIRECT_COMMAND_SIZE * 128);
+    private final IntArrayList occludees = new IntArrayList(AABB_INT_SIZE * 256);
+    private final IntArrayList occluders = new IntArrayList(AABB_INT_SIZE * 256);
+
+    public static final int OPAQUE = 0;
+    public static final int TRANSPARENT = 1;
+    public static final int GLASS = 2;
+    private static final int AABB_INT_SIZE = 4;
+    private static final int COMMAND_INT_SIZE = 4;
+    // A few threads are enough for one task per lod, the workers are daemon threads and idle ones time out
+    private static final ForkJoinPool POOL = new ForkJoinPool(Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    /**
+     * Everything the visibility computation needs to know about the meshed chunks, implemented by the {@link MeshCollector}.
+     */
+    public interface ModelSource {
+        OpaqueModel getOpaqueModel(int chunkIndex, int lod);
+
+        TransparentModel getTransparentModel(int chunkIndex, int lod);
+
+        AABB getOccluder(int chunkIndex, int lod);
+
+        AABB getOccludee(int chunkIndex, int lod);
+
+        boolean isModelPresent(long lodModelX, long lodModelY, long lodModelZ, int lod);
+
+        boolean isIsolated(long chunkX, long chunkY, long chunkZ, int lod);
+    }
+
+    /**
+     * The commands of the visible models of one lod, with what they were generated from.
+     */
+    private static final class LodCommands {
+
+        void clear(long cameraChunkX, long cameraChunkY, long cameraChunkZ, boolean occlusionCulling) {
+            opaqueCommands.clear();
+            transparentCommands.clear();
+            glassCommands.clear();
+            occludees.clear();
+            occluders.clear();
+            entries.clear();
+            opaqueModels.clear();
+            transparentModels.clear();
+            occludeeModels.clear();
+            reusedModelCount = 0;
+            softwareCulledModelCount = 0;
+
+            this.cameraChunkX = cameraChunkX;
+            this.cameraChunkY = cameraChunkY;
+            this.cameraChunkZ = cameraChunkZ;
+            this.occlusionCulling = occlusionCulling;
+        }
+
+        boolean matches(long cameraChunkX, long cameraChunkY, long cameraChunkZ, boolean occlusionCulling) {
+            return this.cameraChunkX == cameraChunkX && this.cameraChunkY == cameraChunkY && this.cameraChunkZ == cameraChunkZ
+                    && this.occlusionCulling == occlusionCulling;
+        }
+
+        int size() {
+            return opaqueModels.size();
+        }
+
+        int getChunkIndex(int entry) {
+            return entries.getData()[entry * ENTRY_INT_SIZE] >>> 1;
+        }
+
+        boolean isSame(int entry, int chunkIndex, OpaqueModel opaqueModel, TransparentModel transparentModel, AABB occludee, boolean isBorderChunk) {
+            return entries.getData()[entry * ENTRY_INT_SIZE] == (chunkIndex << 1 | (isBorderChunk ? 1 : 0))
+                    && opaqueModels.get(entry) == opaqueModel
+                    && transparentModels.get(entry) == transparentModel
+                    && occludeeModels.get(entry) == occludee;
+        }
+
+        void startEntry(int chunkIndex, OpaqueModel opaqueModel, TransparentModel transparentModel, AABB occludee, boolean isBorderChunk) {
+            entries.add(chunkIndex << 1 | (isBorderChunk ? 1 : 0));
+            entries.add(opaqueCommands.size());
+            entries.add(transparentCommands.size());
+            entries.add(glassCommands.size());
+            entries.add(occludees.size());
+            opaqueModels.add(opaqueModel);
+            transparentModels.add(transparentModel);
+            occludeeModels.add(occludee);
+        }
+
+        void copyEntry(LodCommands cache, int entry) {
+            int[] cachedEntries = cache.entries.getData();
+            int start = entry * ENTRY_INT_SIZE, next = start + ENTRY_INT_SIZE;
+            boolean last = entry == cache.size() - 1;
+            startEntry(cachedEntries[start] >>> 1, cache.opaqueModels.get(entry), cache.transparentModels.get(entry),
+                    cache.occludeeModels.get(entry), (cachedEntries[start] & 1) != 0);
+
+            opaqueCommands.addAll(cache.opaqueCommands, cachedEntries[start + 1], last ? cache.opaqueCommands.size() : cachedEntries[next + 1]);
+            transparentCommands.addAll(cache.transparentCommands, cachedEntries[start + 2], last ? cache.transparentCommands.size() : cachedEntries[next + 2]);
+            glassCommands.addAll(cache.glassCommands, cachedEntries[start + 3], last ? cache.glassCommands.size() : cachedEntries[next + 3]);
+            occludees.addAll(cache.occludees, cachedEntries[start + 4], last ? cache.occludees.size() : cachedEntries[next + 4]);
+            reusedModelCount++;
+        }
+
+        // Models right next to the camera are drawn even if they are occluded
+        void setAlwaysVisible() {
+            for (int command = opaqueCommands.size() - 4 * OpaqueModel.FACE_COUNT; command < opaqueCommands.size(); command += COMMAND_INT_SIZE)
+                opaqueCommands.set(command + 1, 1);
+            transparentCommands.set(transparentCommands.size() - 3, 1);
+            glassCommands.set(glassCommands.size() - 3, 1);
+        }
+
+        final IntArrayList opaqueCommands = new IntArrayList(RenderingOptimizer.INDIRECT_COMMAND_SIZE * 64);
+        final IntArrayList transparentCommands = new IntArrayList(RenderingOptimizer.INDIRECT_COMMAND_SIZE * 32);
+        final IntArrayList glassCommands = new IntArrayList(RenderingOptimizer.INDIRECT_COMMAND_SIZE * 32);
+        final IntArrayList occludees = new IntArrayList(AABB_INT_SIZE * 64);
+        final IntArrayList occluders = new IntArrayList(AABB_INT_SIZE * 64);
+
+        private final IntArrayList entries = new IntArrayList(ENTRY_INT_SIZE * 64);
+        private final ArrayList<OpaqueModel> opaqueModels = new ArrayList<>();
+        private final ArrayList<TransparentModel> transparentModels = new ArrayList<>();
+        private final ArrayList<AABB> occludeeModels = new ArrayList<>();
+        private long cameraChunkX, cameraChunkY, cameraChunkZ;
+        private boolean occlusionCulling;
+        private int reusedModelCount, softwareCulledModelCount;
+
+        // chunkIndex << 1 | isBorderChunk, then the start of the entry in every list
+        private static final int ENTRY_INT_SIZE = 5;
+    }
+}
@@ -8,7 +8,7 @@ import game.player.interaction.ShapePlaceable;
 import game.server.Game;
 import game.server.generation.Structure;
 import game.server.material.Material;
-import game.server.materials_data.MaterialsData;
+import game.server.materials_data.SparseBitMap;
 import game.settings.FloatSettings;
 import game.settings.OptionSettings;
 import game.utils.Position;
@@ -72,21 +72,16 @@ public final class PlaceBreakSound {
         int lengthX = placeable.getLengthX();
         int lengthY = placeable.getLengthY();
         int lengthZ = placeable.getLengthZ();
-        long[] bitMap = placeable.getBitMap();
+        SparseBitMap bitMap = placeable.getBitMap();
         byte material = placeable.getMaterial();
 
-        for (int xOffset = 0; xOffset < lengthX; xOffset ++)
-            for (int yOffset = 0; yOffset < lengthY; yOffset ++)
-                for (int zOffset = 0; zOffset < lengthZ; zOffset ++) {
+        bitMap.forEach(lengthX, lengthY, lengthZ, 1, (xOffset, yOffset, zOffset) -> {
+            byte previousMaterial = Game.getWorld().getMaterial(startX + xOffset, startY + yOffset, startZ + zOffset, 0);
+            if (previousMaterial == AIR || previousMaterial == OUT_OF_WORLD
+                    || previousMaterial == material
+                    || breakHeldOnly && previousMaterial != heldMaterial) return;
 
-                    int bitMapIndex = MaterialsData.getUncompressedIndex(xOffset, yOffset, zOffset);
-                    if ((bitMap[bitMapIndex >> 6] & 1L << bitMapIndex) == 0) continue;
-                    byte previousMaterial = Game.getWorld().getMaterial(startX + xOffset, startY + yOffset, startZ + zOffset, 0);
-                    if (previousMaterial == AIR || previousMaterial == OUT_OF_WORLD
-                            || previousMaterial == material
-                            || breakHeldOnly && previousMaterial != heldMaterial) continue;
-
-                    involvedMaterials[previousMaterial & 0xFF] = true;
-                }
+            involvedMaterials[previousMaterial & 0xFF] = true;
+        });
     }
 }
@@ -106,7 +106,7 @@ public final class Chunk {
         modified = true;
     }
 
-    private MaterialsData materials;
+    private volatile MaterialsData materials;
     private boolean modified;
-    private Status generationStatus = Status.NOT_STARTED;
+    private volatile Status generationStatus = Status.NOT_STARTED;
 }
@@ -0,0 +1,122 @@
+package game.server;
+
+import core.utils.ParallelUtils;
+import core.utils.Vector3l;
+
+import game.player.interaction.ChunkPlaceable;
+import game.player.interaction.Placeable;
+import game.server.saving.ChunkSaver;
+import game.settings.ToggleSettings;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Applies placements by splitting them into one job per chunk, which run on the common pool.
+ * <p>
+ * Placements only write into LOD 0, the {@link game.server.saving.LodPropagator} rebuilds the higher LODs from it.
+ * Every job only writes into its own chunk, so the jobs of a placement never wait on each other. Placements are applied
+ * one after another, so all writes into a chunk happen in the order the placements were requested. The affected chunks
+ * are only reported once every job finished, so nothing gets remeshed with a partially applied placement.
+ * If a job throws, the placement is aborted and the exception is rethrown once the other jobs finished. The chunks
+ * the finished jobs and the failed job wrote into are still reported, they have to be remeshed either way.
+ */
+public final class EditExecutor {
+
+    /**
+     * Only {@link ChunkPlaceable}s can be placed, the other {@link game.player.interaction.ShapePlaceable}s are wrapped
+     * into a {@link game.player.interaction.RepeatPlaceable} before they reach the server.
+     *
+     * @param affectedChunks Receives every chunk that has to be remeshed, even if the placement throws
+     */
+    public synchronized void place(Placeable placeable, Vector3l position, ArrayList<Chunk> affectedChunks) {
+        if (!(placeable instanceof ChunkPlaceable chunkPlaceable))
+            throw new IllegalArgumentException("Can't place " + placeable.getClass().getSimpleName() + " per chunk");
+        long start = System.nanoTime();
+        ArrayList<ChunkJob> jobs = new ArrayList<>();
+
+        long[] range = chunkPlaceable.getChunkRange(position, 0);
+        if (range != null)
+            for (long chunkX = range[0]; chunkX <= range[3]; chunkX++)
+                for (long chunkY = range[1]; chunkY <= range[4]; chunkY++)
+                    for (long chunkZ = range[2]; chunkZ <= range[5]; chunkZ++)
+                        jobs.add(new ChunkJob(chunkPlaceable, position, chunkX, chunkY, chunkZ));
+
+        try {
+            if (jobs.size() > 1 && ToggleSettings.PARALLEL_EDITS.value())
+                ParallelUtils.invokeAll(jobs);
+            else for (ChunkJob job : jobs) job.invoke();
+        } finally {
+            for (ChunkJob job : jobs) affectedChunks.addAll(job.affectedChunks);
+            recordLatency(System.nanoTime() - start, jobs.size());
+        }
+    }
+
+    public Metrics getMetrics() {
+        long[] latencies;
+        long edits;
+        int lastJobCount;
+        synchronized (latencyLock) {
+            edits = editCount;
+            lastJobCount = this.lastJobCount;
+            latencies = Arrays.copyOf(this.latencies, (int) Math.min(editCount, LATENCY_SAMPLES));
+        }
+        Arrays.sort(latencies);
+        return new Metrics(edits, lastJobCount, percentileMillis(latencies, 50), percentileMillis(latencies, 95), percentileMillis(latencies, 99));
+    }
+
+
+    private void recordLatency(long latency, int jobCount) {
+        synchronized (latencyLock) {
+            latencies[(int) (editCount % LATENCY_SAMPLES)] = latency;
+            editCount++;
+            lastJobCount = jobCount;
+        }
+    }
+
+    private static float percentileMillis(long[] sortedLatencies, int percentile) {
+        if (sortedLatencies.length == 0) return 0.0F;
+        int index = Math.min(sortedLatencies.length - 1, sortedLatencies.length * percentile / 100);
+        return sortedLatencies[index] / 1_000_000.0F;
+    }
+
+    private final Object latencyLock = new Object();
+    private final long[] latencies = new long[LATENCY_SAMPLES];
+    private long editCount = 0;
+    private int lastJobCount = 0;
+
+    // Percentiles are taken over the most recent edits only
+    private static final int LATENCY_SAMPLES = 256;
+
+    public record Metrics(long edits, int lastJobCount, float medianMillis, float p95Millis, float p99Millis) {
+    }
+
+    private static final class ChunkJob extends RecursiveAction {
+
+        private ChunkJob(ChunkPlaceable placeable, Vector3l position, long chunkX, long chunkY, long chunkZ) {
+            this.placeable = placeable;
+            this.position = position;
+            this.chunkX = chunkX;
+            this.chunkY = chunkY;
+            this.chunkZ = chunkZ;
+        }
+
+        @Override
+        protected void compute() {
+            Chunk chunk = new ChunkSaver().loadAndGenerate(chunkX, chunkY, chunkZ, 0);
+            try {
+                placeable.placeInChunk(chunk, position, affectedChunks);
+            } catch (RuntimeException exception) {
+                // The chunk may already be partially written
+                if (!affectedChunks.contains(chunk)) affectedChunks.add(chunk);
+                throw exception;
+            }
+        }
+
+        private final ChunkPlaceable placeable;
+        private final Vector3l position;
+        private final long chunkX, chunkY, chunkZ;
+        private final ArrayList<Chunk> affectedChunks = new ArrayList<>();
+    }
+}
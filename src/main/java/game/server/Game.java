@@ -56,9 +56,10 @@ public final class Game {
         new ServerSaver().save(server, ServerSaver.getSaveFileLocation(worldName));
         new WorldSaver().save(world, WorldSaver.getSaveFileLocation(worldName));
 
-        world.cleanUp();
-        player.cleanUp();
+        // Stops everything that could still modify chunks before the world writes them out
         server.cleanUp();
+        player.cleanUp();
+        world.cleanUp();
     }
 
     public static void updateRenderDistance(int oldRenderDistance) {
@@ -83,6 +84,11 @@ public final class Game {
         server.startTicks();
     }
 
+    public static void updateGenerationThreads(int oldThreadCount) {
+        if (server == null || oldThreadCount == IntSettings.GENERATION_THREADS.value()) return;
+        server.getGenerator().updateThreadCount();
+    }
+
 
     public static Player getPlayer() {
         return player;
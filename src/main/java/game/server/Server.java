@@ -3,6 +3,7 @@ package game.server;
 import core.assets.CoreSounds;
 import core.rendering_api.CrashAction;
 import core.rendering_api.CrashCallback;
+import core.rendering_api.Debug;
 import core.settings.CoreFloatSettings;
 import core.settings.optionSettings.ColorOption;
 import core.sound.Sound;
@@ -14,7 +15,8 @@ import game.player.rendering.MeshCollector;
 import game.server.command.Command;
 import game.server.command.CommandResult;
 import game.server.generation.ChunkGenerator;
-import game.server.saving.ChunkSaver;
+import game.server.saving.ChunkWriter;
+import game.server.saving.LodPropagator;
 import game.settings.FloatSettings;
 import game.settings.IntSettings;
 import game.settings.ToggleSettings;
@@ -59,35 +61,36 @@ public final class Server implements CrashCallback {
 
     public static void unloadDistantChunks(Vector3l playerChunkPosition) {
         MeshCollector meshCollector = Game.getPlayer().getMeshCollector();
-        ChunkSaver saver = new ChunkSaver();
+        World world = Game.getWorld();
 
-        for (int lod = 0, lodCount = Game.getWorld().LOD_COUNT; lod < lodCount; lod++) {
+        for (int lod = 0, lodCount = world.LOD_COUNT; lod < lodCount; lod++) {
             long lodPlayerX = playerChunkPosition.x >> lod;
             long lodPlayerY = playerChunkPosition.y >> lod;
             long lodPlayerZ = playerChunkPosition.z >> lod;
 
-            for (Chunk chunk : Game.getWorld().getLod(lod)) {
+            for (int chunkIndex = 0; chunkIndex < world.CHUNKS_PER_LOD; chunkIndex++) {
+                Chunk chunk = world.getChunk(chunkIndex, lod);
                 if (chunk == null) continue;
 
                 if (Utils.outsideRenderKeepDistance(lodPlayerX, lodPlayerY, lodPlayerZ, chunk.X, chunk.Y, chunk.Z, chunk.LOD))
                     meshCollector.removeMesh(chunk.INDEX, chunk.LOD);
 
                 if (Utils.outsideChunkKeepDistance(lodPlayerX, lodPlayerY, lodPlayerZ, chunk.X, chunk.Y, chunk.Z, chunk.LOD)) {
-                    Game.getWorld().setNull(chunk.INDEX, chunk.LOD);
-                    if (chunk.isModified()) saver.save(chunk, ChunkSaver.getSaveFileLocation(chunk.ID, chunk.LOD));
+                    if (chunk.isModified()) ChunkWriter.queue(chunk);
+                    world.removeChunk(chunk);
                 }
             }
         }
     }
 
     public static void unloadAll() {
-        ChunkSaver saver = new ChunkSaver();
-
-        for (int lod = 0, lodCount = Game.getWorld().LOD_COUNT; lod < lodCount; lod++)
-            for (Chunk chunk : Game.getWorld().getLod(lod)) {
+        World world = Game.getWorld();
+        for (int lod = 0, lodCount = world.LOD_COUNT; lod < lodCount; lod++)
+            for (int chunkIndex = 0; chunkIndex < world.CHUNKS_PER_LOD; chunkIndex++) {
+                Chunk chunk = world.getChunk(chunkIndex, lod);
                 if (chunk == null) continue;
-                Game.getWorld().setNull(chunk.INDEX, chunk.LOD);
-                if (chunk.isModified()) saver.save(chunk, ChunkSaver.getSaveFileLocation(chunk.ID, chunk.LOD));
+                if (chunk.isModified()) ChunkWriter.queue(chunk);
+                world.removeChunk(chunk);
             }
     }
 
@@ -115,18 +118,23 @@ public final class Server implements CrashCallback {
         Player player = Game.getPlayer();
         if (!ToggleSettings.NO_CLIP.value() && placeable.intersectsAABB(position, player.getMinCoordinate(), player.getMaxCoordinate())) return false;
 
+        ArrayList<Chunk> affectedChunks = new ArrayList<>();
+        try {
+            // Higher lods are rebuilt from lod 0 by the LodPropagator
+            editExecutor.place(placeable, position, affectedChunks);
+        } catch (RuntimeException exception) {
+            Debug.err("Aborted placing at %s: %s%n", position, exception);
+            return false;
+        } finally {
+            // Chunks written before an abort still have to be remeshed and propagated
+            MeshCollector meshCollector = player.getMeshCollector();
+            for (Chunk chunk : affectedChunks) if (chunk != null) meshCollector.setMeshed(false, chunk.INDEX, chunk.LOD);
+            LodPropagator.rebuildParents(affectedChunks);
+            scheduleGeneratorRestart();
+        }
+
         placeable.playSounds(position);
         placeable.spawnParticles(position);
-
-        MeshCollector meshCollector = player.getMeshCollector();
-        for (int lod = 0, lodCount = Game.getWorld().LOD_COUNT; lod < lodCount; lod++) placeable.place(position, lod);
-        for (Chunk chunk : placeable.getAffectedChunks()) {
-            if (chunk == null) continue;
-            meshCollector.setMeshed(false, chunk.INDEX, chunk.LOD);
-        }
-        synchronized (generator) {
-            generatorRestartScheduled = true;
-        }
         return true;
     }
 
@@ -152,6 +160,14 @@ public final class Server implements CrashCallback {
         }
     }
 
+    public EditExecutor getEditExecutor() {
+        return editExecutor;
+    }
+
+    public ChunkGenerator getGenerator() {
+        return generator;
+    }
+
     public void sendPlayerMessage(String message) {
         if (message == null || message.isEmpty()) return;
         synchronized (messages) {
@@ -242,6 +258,7 @@ public final class Server implements CrashCallback {
     private ScheduledExecutorService executor = null;
     private final ArrayList<ChatMessage> messages;
     private final ChunkGenerator generator = new ChunkGenerator();
+    private final EditExecutor editExecutor = new EditExecutor();
     private final HashMap<Object, Function> functions = new HashMap<>();
 
     private long gameTickStartTime;
@@ -5,13 +5,20 @@ import core.utils.FileManager;
 import core.utils.MathUtils;
 
 import game.server.generation.WorldGeneration;
+import game.server.materials_data.MaterialsData;
 import game.server.saving.ChunkSaver;
+import game.server.saving.ChunkWriter;
+import game.server.saving.LodPropagator;
 import game.settings.IntSettings;
 import game.utils.Position;
 import game.utils.Status;
 import game.utils.Utils;
 
+import org.joml.Vector3f;
+
 import java.io.File;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 
 import static game.utils.Constants.*;
 
@@ -33,7 +40,8 @@ public final class World {
         CHUNKS_PER_LOD = RENDERED_WORLD_WIDTH * RENDERED_WORLD_WIDTH * RENDERED_WORLD_WIDTH;
 
         WorldGeneration.SEED = seed;
-        chunks = new Chunk[LOD_COUNT][RENDERED_WORLD_WIDTH * RENDERED_WORLD_WIDTH * RENDERED_WORLD_WIDTH];
+        chunks = new Chunk[LOD_COUNT][CHUNKS_PER_LOD];
+        stamps = new long[LOD_COUNT][CHUNKS_PER_LOD];
     }
 
     public World(World oldWorld, boolean updateRenderDistance) {
@@ -46,11 +54,11 @@ public final class World {
             RENDERED_WORLD_WIDTH_BITS = Integer.numberOfTrailingZeros(RENDERED_WORLD_WIDTH);
             CHUNKS_PER_LOD = RENDERED_WORLD_WIDTH * RENDERED_WORLD_WIDTH * RENDERED_WORLD_WIDTH;
 
-            chunks = new Chunk[LOD_COUNT][RENDERED_WORLD_WIDTH * RENDERED_WORLD_WIDTH * RENDERED_WORLD_WIDTH];
+            chunks = new Chunk[LOD_COUNT][CHUNKS_PER_LOD];
+            stamps = new long[LOD_COUNT][CHUNKS_PER_LOD];
             name = oldWorld.name;
 
             Position playerPosition = Game.getPlayer().getPosition();
-            ChunkSaver saver = new ChunkSaver();
 
             for (int lod = 0; lod < LOD_COUNT; lod++) {
                 long cameraX = playerPosition.longX >>> CHUNK_SIZE_BITS + lod;
@@ -60,8 +68,7 @@ public final class World {
                 for (Chunk chunk : oldWorld.chunks[lod]) {
                     if (chunk == null) continue;
                     if (Utils.outsideChunkKeepDistance(cameraX, cameraY, cameraZ, chunk.X, chunk.Y, chunk.Z, chunk.LOD)) {
-                        if (chunk.isModified())
-                            saver.save(chunk, ChunkSaver.getSaveFileLocation(chunk.ID, chunk.LOD));
+                        if (chunk.isModified()) ChunkWriter.queue(chunk);
                         continue;
                     }
                     chunk.INDEX = Utils.getChunkIndex(chunk.X, chunk.Y, chunk.Z, chunk.LOD, renderDistance);
@@ -75,32 +82,65 @@ public final class World {
             RENDERED_WORLD_WIDTH_BITS = oldWorld.RENDERED_WORLD_WIDTH_BITS;
             CHUNKS_PER_LOD = oldWorld.CHUNKS_PER_LOD;
 
-            chunks = new Chunk[LOD_COUNT][RENDERED_WORLD_WIDTH * RENDERED_WORLD_WIDTH * RENDERED_WORLD_WIDTH];
+            chunks = new Chunk[LOD_COUNT][CHUNKS_PER_LOD];
+            stamps = new long[LOD_COUNT][CHUNKS_PER_LOD];
             name = oldWorld.name;
             System.arraycopy(oldWorld.chunks, 0, chunks, 0, Math.min(LOD_COUNT, oldWorld.LOD_COUNT));
+            System.arraycopy(oldWorld.stamps, 0, stamps, 0, Math.min(LOD_COUNT, oldWorld.LOD_COUNT));
         }
     }
 
     public static void init() {
+        ChunkSaver.migrateChunkFiles();
         ChunkSaver.generateHigherLODs();
         Server.loadImmediateSurroundings();
         Sound.setDistanceScaler(0.0625F);
     }
 
     public Chunk getChunk(long chunkX, long chunkY, long chunkZ, int lod) {
-        return chunks[lod][Utils.getChunkIndex(chunkX, chunkY, chunkZ, lod)];
+        return getChunk(Utils.getChunkIndex(chunkX, chunkY, chunkZ, lod), lod);
     }
 
     public Chunk getChunk(int chunkIndex, int lod) {
-        return chunks[lod][chunkIndex];
+        return (Chunk) CHUNKS.getAcquire(chunks[lod], chunkIndex);
+    }
+
+    /**
+     * The stamp of a slot changes every time a different chunk is stored into it and is odd while a store is in progress.
+     * Read it before and after working on a chunk to detect the slot having been recycled in between.
+     */
+    public long getStamp(int chunkIndex, int lod) {
+        return (long) STAMPS.getAcquire(stamps[lod], chunkIndex);
+    }
+
+    /**
+     * @return The chunk previously stored in the slot of {@code chunk}.
+     */
+    public Chunk storeChunk(Chunk chunk) {
+        return exchangeChunk(chunk.getIndex(), chunk.LOD, chunk);
     }
 
-    public Chunk[] getLod(int lod) {
-        return chunks[lod];
+    /**
+     * Atomically replaces {@code expected} with {@code chunk} in the slot of {@code chunk}.
+     *
+     * @return Whether the slot still held {@code expected} and was updated.
+     */
+    public boolean compareAndSetChunk(Chunk expected, Chunk chunk) {
+        int chunkIndex = chunk.getIndex();
+        long stamp = beginStore(chunkIndex, chunk.LOD);
+        boolean swapped = CHUNKS.compareAndSet(chunks[chunk.LOD], chunkIndex, expected, chunk);
+        endStore(chunkIndex, chunk.LOD, stamp, swapped && expected != chunk);
+        return swapped;
     }
 
-    public void storeChunk(Chunk chunk) {
-        chunks[chunk.LOD][chunk.getIndex()] = chunk;
+    /**
+     * Removes {@code chunk} from its slot unless the slot has already been recycled for a different chunk.
+     */
+    public boolean removeChunk(Chunk chunk) {
+        long stamp = beginStore(chunk.INDEX, chunk.LOD);
+        boolean removed = CHUNKS.compareAndSet(chunks[chunk.LOD], chunk.INDEX, chunk, null);
+        endStore(chunk.INDEX, chunk.LOD, stamp, removed);
+        return removed;
     }
 
     public Status getGenerationStatus(long chunkX, long chunkY, long chunkZ, int lod) {
@@ -115,26 +155,140 @@ public final class World {
         return chunk.getSaveMaterial((int) x & CHUNK_SIZE_MASK, (int) y & CHUNK_SIZE_MASK, (int) z & CHUNK_SIZE_MASK);
     }
 
-    public void setNull(int chunkIndex, int lod) {
-        chunks[lod][chunkIndex] = null;
+    /**
+     * Fills the materials of the given box into {@code target} at {@link MaterialsData#getUncompressedIndex(int, int, int)} of their position relative to the minimum corner.
+     * Every overlapped chunk is only looked up once and homogenous nodes are copied without descending into them.
+     */
+    public void fillMaterialsInto(byte[] target, long minX, long minY, long minZ, int lengthX, int lengthY, int lengthZ, int lod) {
+        if (lengthX <= 0 || lengthY <= 0 || lengthZ <= 0) return;
+        long maxX = minX + lengthX, maxY = minY + lengthY, maxZ = minZ + lengthZ;
+
+        for (long chunkX = minX >> CHUNK_SIZE_BITS; chunkX <= maxX - 1 >> CHUNK_SIZE_BITS; chunkX++)
+            for (long chunkY = minY >> CHUNK_SIZE_BITS; chunkY <= maxY - 1 >> CHUNK_SIZE_BITS; chunkY++)
+                for (long chunkZ = minZ >> CHUNK_SIZE_BITS; chunkZ <= maxZ - 1 >> CHUNK_SIZE_BITS; chunkZ++) {
+                    long startX = Math.max(minX, chunkX << CHUNK_SIZE_BITS);
+                    long startY = Math.max(minY, chunkY << CHUNK_SIZE_BITS);
+                    long startZ = Math.max(minZ, chunkZ << CHUNK_SIZE_BITS);
+                    int sizeX = (int) (Math.min(maxX, chunkX + 1 << CHUNK_SIZE_BITS) - startX);
+                    int sizeY = (int) (Math.min(maxY, chunkY + 1 << CHUNK_SIZE_BITS) - startY);
+                    int sizeZ = (int) (Math.min(maxZ, chunkZ + 1 << CHUNK_SIZE_BITS) - startZ);
+                    int targetX = (int) (startX - minX), targetY = (int) (startY - minY), targetZ = (int) (startZ - minZ);
+
+                    Chunk chunk = getChunk(chunkX, chunkY, chunkZ, lod);
+                    if (chunk == null) fillOutOfWorld(target, targetX, targetY, targetZ, sizeX, sizeY, sizeZ);
+                    else chunk.getMaterials().fillUncompressedMaterialsInto(target, targetX, targetY, targetZ,
+                            (int) startX & CHUNK_SIZE_MASK, (int) startY & CHUNK_SIZE_MASK, (int) startZ & CHUNK_SIZE_MASK, sizeX, sizeY, sizeZ);
+                }
+    }
+
+    /**
+     * Walks the voxels intersected by the ray in order and hands each of them to {@code visitor} until it returns a result.
+     * Chunks and homogenous nodes are only looked up when the ray enters them.
+     *
+     * @return The first result of {@code visitor} or {@code null} if the ray exceeds {@code reach} or leaves the loaded world first.
+     */
+    public <T> T traceRay(Position origin, Vector3f dir, float reach, RayVisitor<T> visitor) {
+        long x = origin.longX;
+        long y = origin.longY;
+        long z = origin.longZ;
+
+        int xDir = dir.x < 0 ? -1 : 1;
+        int yDir = dir.y < 0 ? -1 : 1;
+        int zDir = dir.z < 0 ? -1 : 1;
+
+        int xSide = dir.x < 0 ? WEST : EAST;
+        int ySide = dir.y < 0 ? TOP : BOTTOM;
+        int zSide = dir.z < 0 ? NORTH : SOUTH;
+
+        double dirXSquared = dir.x * dir.x;
+        double dirYSquared = dir.y * dir.y;
+        double dirZSquared = dir.z * dir.z;
+        double xUnit = (float) Math.sqrt(1 + (dirYSquared + dirZSquared) / dirXSquared);
+        double yUnit = (float) Math.sqrt(1 + (dirXSquared + dirZSquared) / dirYSquared);
+        double zUnit = (float) Math.sqrt(1 + (dirXSquared + dirYSquared) / dirZSquared);
+
+        double lengthX = xUnit * (dir.x < 0 ? origin.fractionX : 1 - origin.fractionX);
+        double lengthY = yUnit * (dir.y < 0 ? origin.fractionY : 1 - origin.fractionY);
+        double lengthZ = zUnit * (dir.z < 0 ? origin.fractionZ : 1 - origin.fractionZ);
+        double length = 0;
+
+        int intersectedSide = 0;
+        Chunk chunk = null;
+        long chunkX = 0, chunkY = 0, chunkZ = 0;
+        long nodeX = 0, nodeY = 0, nodeZ = 0, nodeMask = -1L;
+        byte nodeMaterial = AIR;
+
+        while (length < reach) {
+            if (chunk == null || (x & nodeMask) != nodeX || (y & nodeMask) != nodeY || (z & nodeMask) != nodeZ) {
+                if (chunk == null || x >> CHUNK_SIZE_BITS != chunkX || y >> CHUNK_SIZE_BITS != chunkY || z >> CHUNK_SIZE_BITS != chunkZ) {
+                    chunkX = x >> CHUNK_SIZE_BITS;
+                    chunkY = y >> CHUNK_SIZE_BITS;
+                    chunkZ = z >> CHUNK_SIZE_BITS;
+                    chunk = getChunk(chunkX, chunkY, chunkZ, 0);
+                    if (chunk == null) return null;
+                }
+                int materialAndSizeBits = chunk.getMaterials().getMaterialAndNodeSizeBits((int) x & CHUNK_SIZE_MASK, (int) y & CHUNK_SIZE_MASK, (int) z & CHUNK_SIZE_MASK);
+                nodeMask = -1L << (materialAndSizeBits >>> 8);
+                nodeX = x & nodeMask;
+                nodeY = y & nodeMask;
+                nodeZ = z & nodeMask;
+                nodeMaterial = (byte) materialAndSizeBits;
+            }
+
+            T result = visitor.visit(x, y, z, intersectedSide, nodeMaterial);
+            if (result != null) return result;
+
+            if (lengthX < lengthZ && lengthX < lengthY) {
+                x = x + xDir;
+                length = lengthX;
+                lengthX += xUnit;
+                intersectedSide = xSide;
+            } else if (lengthZ < lengthX && lengthZ < lengthY) {
+                z = z + zDir;
+                length = lengthZ;
+                lengthZ += zUnit;
+                intersectedSide = zSide;
+            } else {
+                y = y + yDir;
+                length = lengthY;
+                lengthY += yUnit;
+                intersectedSide = ySide;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The chunk previously stored in the slot.
+     */
+    public Chunk setNull(int chunkIndex, int lod) {
+        return exchangeChunk(chunkIndex, lod, null);
     }
 
     public void cleanUp() {
-        ChunkSaver saver = new ChunkSaver();
-        for (Chunk[] lod : chunks)
-            for (Chunk chunk : lod) {
+        for (int lod = 0; lod < LOD_COUNT; lod++)
+            for (int chunkIndex = 0; chunkIndex < CHUNKS_PER_LOD; chunkIndex++) {
+                Chunk chunk = getChunk(chunkIndex, lod);
                 if (chunk == null || !chunk.isModified()) continue;
-                saver.save(chunk, ChunkSaver.getSaveFileLocation(chunk.ID, chunk.LOD));
+                ChunkWriter.queue(chunk);
             }
+        LodPropagator.flush();
+        LodPropagator.cleanUp();
+        ChunkWriter.flush();
 
         deleteHigherLODs(LOD_COUNT - 1);
+        ChunkSaver.closeRegionFiles();
     }
 
     public static void deleteHigherLODs(int maxKeptLod) {
+        LodPropagator.flush();
+        ChunkWriter.flush();
         File[] lodFiles = FileManager.getChildren(new File(ChunkSaver.getSaveFileLocation()));
         for (File file : lodFiles) {
             String fileLod = file.getName();
-            if (!MathUtils.isInteger(fileLod, 10) || Integer.parseInt(fileLod) > maxKeptLod) FileManager.delete(file);
+            if (MathUtils.isInteger(fileLod, 10) && Integer.parseInt(fileLod) <= maxKeptLod) continue;
+            ChunkSaver.closeRegionFiles(file);
+            FileManager.delete(file);
         }
     }
 
@@ -146,6 +300,43 @@ public final class World {
         return name;
     }
 
+    private Chunk exchangeChunk(int chunkIndex, int lod, Chunk chunk) {
+        long stamp = beginStore(chunkIndex, lod);
+        Chunk previous = (Chunk) CHUNKS.getAndSet(chunks[lod], chunkIndex, chunk);
+        endStore(chunkIndex, lod, stamp, previous != chunk);
+        return previous;
+    }
+
+    // Makes the stamp odd, which also keeps other stores to the slot out until endStore()
+    private long beginStore(int chunkIndex, int lod) {
+        long[] lodStamps = stamps[lod];
+        while (true) {
+            long stamp = (long) STAMPS.getVolatile(lodStamps, chunkIndex);
+            if ((stamp & 1) == 0 && STAMPS.compareAndSet(lodStamps, chunkIndex, stamp, stamp + 1)) return stamp;
+            Thread.onSpinWait();
+        }
+    }
+
+    private void endStore(int chunkIndex, int lod, long stamp, boolean changed) {
+        STAMPS.setRelease(stamps[lod], chunkIndex, changed ? stamp + 2 : stamp);
+    }
+
+    private static void fillOutOfWorld(byte[] target, int targetX, int targetY, int targetZ, int sizeX, int sizeY, int sizeZ) {
+        for (int x = targetX; x < targetX + sizeX; x++)
+            for (int z = targetZ; z < targetZ + sizeZ; z++)
+                for (int y = targetY; y < targetY + sizeY; y++)
+                    target[MaterialsData.getUncompressedIndex(x, y, z)] = OUT_OF_WORLD;
+    }
+
+
     private String name;
     private final Chunk[][] chunks;
+    private final long[][] stamps;
+
+    private static final VarHandle CHUNKS = MethodHandles.arrayElementVarHandle(Chunk[].class);
+    private static final VarHandle STAMPS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    public interface RayVisitor<T> {
+        T visit(long x, long y, long z, int intersectedSide, byte material);
+    }
 }
@@ -1,12 +1,13 @@
 package game.server;
 
 import core.rendering_api.Debug;
-import core.utils.FileManager;
 import game.server.generation.WorldGeneration;
 import game.server.saving.ChunkSaver;
+import game.server.saving.LodPropagator;
 import game.server.saving.WorldSaver;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Arrays;
 
 public final class WorldOptimizer {
@@ -16,41 +17,40 @@ public final class WorldOptimizer {
         World world = new WorldSaver().load(WorldSaver.getSaveFileLocation(worldName));
         world.setName(worldName);
         if (!Game.setTemporaryWorld(world)) return;
+        ChunkSaver.migrateChunkFiles();
+        ChunkSaver.generateHigherLODs(); // Only generates LODs that are missing entirely
 
         long start = System.nanoTime();
-        deleteHigherLODs();
-        Debug.log("Deleted higher LODs. Took %sms%n", (System.nanoTime() - start) / 1_000_000);
+        ArrayList<ChunkID> deletedChunks = new ArrayList<>();
+        deleteRedundantChunks(deletedChunks);
+        Debug.log("Deleted %s redundant chunks. Took %sms%n", deletedChunks.size(), (System.nanoTime() - start) / 1_000_000);
 
         start = System.nanoTime();
-        int deletedChunkCount = deleteRedundantChunks();
-        Debug.log("Deleted %s redundant chunks. Took %sms%n", deletedChunkCount, (System.nanoTime() - start) / 1_000_000);
-
-        ChunkSaver.generateHigherLODs();
+        for (ChunkID id : deletedChunks) LodPropagator.markDirty(id, 0);
+        LodPropagator.flush();
+        Debug.log("Updated higher LODs. Took %sms%n", (System.nanoTime() - start) / 1_000_000);
 
+        world.cleanUp();
         Game.removeTemporaryWorld();
     }
 
-    private static void deleteHigherLODs() {
-        World.deleteHigherLODs(0);
-    }
-
-    private static int deleteRedundantChunks() {
-        File[] chunkFiles = FileManager.getChildren(new File(ChunkSaver.getSaveFileLocation(0)));
-        if (chunkFiles == null) return 0;
+    private static void deleteRedundantChunks(ArrayList<ChunkID> deletedChunks) {
+        File[] regionFiles = ChunkSaver.getRegionFiles(0);
+        if (regionFiles == null) return;
         ChunkSaver saver = new ChunkSaver();
 
-        int counter = 0;
-        for (File chunkFile : chunkFiles) {
-            if (chunkFile == null) continue;
-            boolean deleted = deleteIfRedundant(saver, chunkFile);
-            if (deleted) counter++;
+        for (File regionFile : regionFiles) {
+            if (regionFile == null) continue;
+            for (int slot : ChunkSaver.getOccupiedSlots(regionFile)) deleteIfRedundant(saver, regionFile, slot, deletedChunks);
         }
-        return counter;
     }
 
-    private static boolean deleteIfRedundant(ChunkSaver saver, File chunkFile) {
-        Chunk savedChunk = saver.load(chunkFile.getPath());
-        if (savedChunk == null) return delete(chunkFile);
+    private static void deleteIfRedundant(ChunkSaver saver, File regionFile, int slot, ArrayList<ChunkID> deletedChunks) {
+        Chunk savedChunk = saver.fromBytes(ChunkSaver.readSlot(regionFile, slot));
+        if (savedChunk == null) {
+            ChunkSaver.removeSlot(regionFile, slot);
+            return;
+        }
         Chunk worldChunk = new Chunk(savedChunk.X, savedChunk.Y, savedChunk.Z, savedChunk.LOD);
 
         WorldGeneration.generate(worldChunk);
@@ -59,14 +59,11 @@ public final class WorldOptimizer {
         byte[] savedData = savedChunk.getMaterials().getBytes();
         byte[] worldData = worldChunk.getMaterials().getBytes();
 
-        if (!Arrays.equals(savedData, worldData)) return false;
-
+        // The generated chunk must not shadow the saved one when the higher LODs get rebuilt
         Game.getWorld().setNull(worldChunk.INDEX, worldChunk.LOD);
-        return delete(chunkFile);
-    }
+        if (!Arrays.equals(savedData, worldData)) return;
 
-    private static boolean delete(File chunkFile) {
-        FileManager.delete(chunkFile);
-        return true;
+        ChunkSaver.removeSlot(regionFile, slot);
+        deletedChunks.add(savedChunk.ID);
     }
 }
@@ -1,9 +1,8 @@
 package game.server.biomes;
 
-import core.assets.AssetManager;
-
 import core.utils.MathUtils;
 
+import game.assets.StructureCache;
 import game.assets.StructureCollectionIdentifier;
 import game.server.generation.GenerationData;
 import game.server.generation.Structure;
@@ -42,6 +41,6 @@ public interface Biome {
 
     static WorldGenStructure getRandomStructure(long x, long y, long z, StructureCollectionIdentifier structures) {
         byte transform = (byte) (MathUtils.hash((int) x >>> CHUNK_SIZE_BITS, (int) z >>> CHUNK_SIZE_BITS, (int) WorldGeneration.SEED ^ 0xEB0A8449) & Structure.ALL_TRANSFORMS);
-        return new WorldGenStructure(x, y, z, AssetManager.get(structures).getRandom((int) x, (int) y, (int) z), transform);
+        return new WorldGenStructure(x, y, z, StructureCache.getCollection(structures).getRandom((int) x, (int) y, (int) z), transform);
     }
 }
\ No newline at end of file
@@ -1,17 +1,15 @@
 package game.server.command;
 
-import core.assets.AssetManager;
 import core.utils.MathUtils;
 import core.utils.Vector3l;
 
-import game.assets.StructureIdentifier;
+import game.assets.StructureCache;
 import game.player.Player;
 import game.player.interaction.PlacingState;
 import game.player.interaction.RepeatPlaceable;
 import game.player.interaction.StructureSelector;
 import game.player.interaction.Target;
 import game.server.Game;
-import game.server.World;
 import game.server.generation.Structure;
 import game.server.materials_data.MaterialsData;
 import game.server.saving.StructureSaver;
@@ -76,20 +74,15 @@ public final class StructureCommand {
         int sizeBits = Integer.numberOfTrailingZeros(MathUtils.nextLargestPowOf2(MathUtils.max(sizeX, sizeY, sizeZ)));
         byte[] uncompressedMaterials = new byte[1 << sizeBits * 3];
 
-        World world = Game.getWorld();
-        for (int structureX = 0; structureX < sizeX; structureX++)
-            for (int structureY = 0; structureY < sizeY; structureY++)
-                for (int structureZ = 0; structureZ < sizeZ; structureZ++) {
-                    byte material = world.getMaterial(minPosition.x + structureX, minPosition.y + structureY, minPosition.z + structureZ, 0);
-                    int index = MaterialsData.getUncompressedIndex(structureX, structureY, structureZ);
-                    uncompressedMaterials[index] = material;
-                }
+        Game.getWorld().fillMaterialsInto(uncompressedMaterials, minPosition.x, minPosition.y, minPosition.z, sizeX, sizeY, sizeZ, 0);
 
         Structure structure = new Structure(sizeX, sizeY, sizeZ, MaterialsData.getCompressedMaterials(sizeBits, uncompressedMaterials));
         StructureSaver structureSaver = new StructureSaver();
 
+        // Drops the mapping of the old file before overwriting it and the old structure after
+        StructureCache.invalidate(fileName);
         structureSaver.save(structure, saveFileLocation);
-        AssetManager.delete(new StructureIdentifier(fileName));
+        StructureCache.invalidate(fileName);
         return CommandResult.success();
     }
 }
@@ -3,25 +3,41 @@ package game.server.generation;
 import core.rendering_api.Debug;
 import core.utils.Vector3l;
 
+import game.player.Player;
+import game.player.rendering.Camera;
 import game.player.rendering.Mesh;
 import game.player.rendering.MeshCollector;
 import game.player.rendering.MeshGenerator;
 import game.server.*;
+import game.server.generation.ChunkTaskQueue.ColumnRequest;
+import game.server.generation.ChunkTaskQueue.QueuedTask;
+import game.server.generation.MeshDependencies.MeshKey;
 import game.server.saving.ChunkSaver;
 import game.settings.IntSettings;
 import game.utils.Status;
+import game.utils.Transformation;
 import game.utils.Utils;
 
+import org.joml.FrustumIntersection;
+
+import java.util.ArrayList;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 import static game.utils.Constants.*;
 
+/**
+ * Generates and meshes the columns around the player on a pool of worker threads.
+ * <p>
+ * Columns are ranked by LOD, distance to the player and whether they are in view. Moving the player re-ranks the
+ * queued columns instead of discarding them. Meshing never occupies the last worker while generation work is left.
+ */
 public final class ChunkGenerator {
 
     public ChunkGenerator() {
-        executor = (ThreadPoolExecutor) Executors.newFixedThreadPool(NUMBER_OF_GENERATION_THREADS);
+        generationQueue = new ChunkTaskQueue((chunkX, playerChunkY, chunkZ, lod) -> new Generator(chunkX, playerChunkY, chunkZ, lod, this));
+        meshingQueue = new ChunkTaskQueue(MeshHandler::new);
     }
 
     public static void loadImmediateSurroundings() {
@@ -31,16 +47,17 @@ public final class ChunkGenerator {
         long playerChunkY = playerPosition.y >>> CHUNK_SIZE_BITS;
         long playerChunkZ = playerPosition.z >>> CHUNK_SIZE_BITS;
 
-        ThreadPoolExecutor executor = (ThreadPoolExecutor) Executors.newFixedThreadPool(NUMBER_OF_GENERATION_THREADS);
-        executor.submit(new Generator(playerChunkX + 0, playerChunkY, playerChunkZ + 1, 0));
-        executor.submit(new Generator(playerChunkX + 0, playerChunkY, playerChunkZ + 0, 0));
-        executor.submit(new Generator(playerChunkX + 0, playerChunkY, playerChunkZ - 1, 0));
-        executor.submit(new Generator(playerChunkX + 1, playerChunkY, playerChunkZ + 1, 0));
-        executor.submit(new Generator(playerChunkX + 1, playerChunkY, playerChunkZ + 0, 0));
-        executor.submit(new Generator(playerChunkX + 1, playerChunkY, playerChunkZ - 1, 0));
-        executor.submit(new Generator(playerChunkX - 1, playerChunkY, playerChunkZ + 1, 0));
-        executor.submit(new Generator(playerChunkX - 1, playerChunkY, playerChunkZ + 0, 0));
-        executor.submit(new Generator(playerChunkX - 1, playerChunkY, playerChunkZ - 1, 0));
+        ChunkGenerator generator = Game.getServer().getGenerator();
+        ThreadPoolExecutor executor = (ThreadPoolExecutor) Executors.newFixedThreadPool(IntSettings.GENERATION_THREADS.value());
+        executor.submit(new Generator(playerChunkX + 0, playerChunkY, playerChunkZ + 1, 0, generator));
+        executor.submit(new Generator(playerChunkX + 0, playerChunkY, playerChunkZ + 0, 0, generator));
+        executor.submit(new Generator(playerChunkX + 0, playerChunkY, playerChunkZ - 1, 0, generator));
+        executor.submit(new Generator(playerChunkX + 1, playerChunkY, playerChunkZ + 1, 0, generator));
+        executor.submit(new Generator(playerChunkX + 1, playerChunkY, playerChunkZ + 0, 0, generator));
+        executor.submit(new Generator(playerChunkX + 1, playerChunkY, playerChunkZ - 1, 0, generator));
+        executor.submit(new Generator(playerChunkX - 1, playerChunkY, playerChunkZ + 1, 0, generator));
+        executor.submit(new Generator(playerChunkX - 1, playerChunkY, playerChunkZ + 0, 0, generator));
+        executor.submit(new Generator(playerChunkX - 1, playerChunkY, playerChunkZ - 1, 0, generator));
 
         executor.shutdown();
         try {
@@ -53,12 +70,67 @@ public final class ChunkGenerator {
 
     public void restart() {
         Vector3l playerChunkPosition = Game.getPlayer().getPosition().getChunkCoordinate();
-        synchronized (this) {
-            executor.getQueue().clear();
-        }
         Server.unloadDistantChunks(playerChunkPosition);
 
-        submitTasks(playerChunkPosition.x, playerChunkPosition.y, playerChunkPosition.z);
+        ArrayList<ColumnRequest> generationRequests = new ArrayList<>();
+        ArrayList<ColumnRequest> meshingRequests = new ArrayList<>();
+        collectRequests(playerChunkPosition.x, playerChunkPosition.y, playerChunkPosition.z, generationRequests, meshingRequests);
+
+        synchronized (lock) {
+            if (shutdown) return;
+            meshDependencies.removeDistant(playerChunkPosition.x, playerChunkPosition.y, playerChunkPosition.z);
+            generationQueue.update(generationRequests);
+            meshingQueue.update(meshingRequests);
+            updateThreadCount();
+        }
+    }
+
+    public void updateThreadCount() {
+        synchronized (lock) {
+            targetWorkerCount = IntSettings.GENERATION_THREADS.value();
+            while (!shutdown && workerCount < targetWorkerCount) startWorker();
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Marks the chunk as generated and queues every chunk around it that can be meshed now.
+     */
+    public void chunkGenerated(Chunk chunk) {
+        Player player = Game.getPlayer();
+        World world = Game.getWorld();
+        if (player == null || world == null) return;
+        Vector3l playerChunkPosition = player.getPosition().getChunkCoordinate();
+
+        synchronized (lock) {
+            if (shutdown) return;
+            meshDependencies.chunkGenerated(world, player.getMeshCollector(), chunk, playerChunkPosition.x, playerChunkPosition.y, playerChunkPosition.z);
+            if (meshDependencies.hasReady()) lock.notifyAll();
+        }
+    }
+
+    public QueueMetrics getGenerationMetrics() {
+        synchronized (lock) {
+            return generationQueue.getMetrics();
+        }
+    }
+
+    public QueueMetrics getMeshingMetrics() {
+        synchronized (lock) {
+            return meshingQueue.getMetrics();
+        }
+    }
+
+    public int getReadyMeshCount() {
+        synchronized (lock) {
+            return meshDependencies.getReadyCount();
+        }
+    }
+
+    public int getWaitingMeshCount() {
+        synchronized (lock) {
+            return meshDependencies.getWaitingCount();
+        }
     }
 
     public void cleanUp() {
@@ -67,68 +139,225 @@ public final class ChunkGenerator {
 
 
     private void waitUntilHalt() {
-        synchronized (this) {
-            executor.getQueue().clear();
+        synchronized (lock) {
+            shutdown = true;
+            generationQueue.clear();
+            meshingQueue.clear();
+            meshDependencies.clear();
+            lock.notifyAll();
+            try {
+                while (workerCount > 0) lock.wait();
+            } catch (InterruptedException exception) {
+                Debug.err("Crashed when awaiting termination");
+                exception.printStackTrace();
+            }
         }
-        executor.shutdown();
+    }
+
+    private void startWorker() {
+        Thread worker = new Thread(this::workLoop, "Chunk Generator " + workerCount);
+        worker.setDaemon(true);
+        workerCount++;
+        worker.start();
+    }
+
+    private void workLoop() {
         try {
-            //noinspection ResultOfMethodCallIgnored
-            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
-        } catch (InterruptedException e) {
-            Debug.err("Crashed when awaiting termination");
-            e.printStackTrace();
+            work(new MeshGenerator());
+        } catch (Throwable throwable) {
+            // Tasks only let errors through, which still have to release the worker
+            synchronized (lock) {
+                workerCount--;
+                lock.notifyAll();
+            }
+            throw throwable;
         }
     }
 
-    private void submitTasks(long playerChunkX, long playerChunkY, long playerChunkZ) {
-        for (int lod = 0, lodCount = Game.getWorld().LOD_COUNT; lod < lodCount; lod++) {
-            long lodPlayerX = playerChunkX >> lod;
-            long lodPlayerY = playerChunkY >> lod;
-            long lodPlayerZ = playerChunkZ >> lod;
+    private void work(MeshGenerator meshGenerator) {
+        while (true) {
+            ChunkTaskQueue queue = null;
+            QueuedTask task = null;
+            MeshKey readyMesh = null;
+            synchronized (lock) {
+                while (true) {
+                    if (shutdown || workerCount > targetWorkerCount) {
+                        workerCount--;
+                        lock.notifyAll();
+                        return;
+                    }
+                    if (shouldMeshReadyChunk()) {
+                        readyMesh = meshDependencies.pollReady();
+                        readyMeshesRunning++;
+                        break;
+                    }
+                    queue = selectQueue();
+                    if (queue != null) break;
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException exception) {
+                        workerCount--;
+                        lock.notifyAll();
+                        return;
+                    }
+                }
+                if (queue != null) task = queue.poll();
+            }
+
+            if (readyMesh != null) {
+                boolean meshed = false;
+                try {
+                    ChunkID id = readyMesh.id();
+                    meshed = meshChunk(meshGenerator, Game.getWorld(), Game.getPlayer().getMeshCollector(), id.chunkX(), id.chunkY(), id.chunkZ(), readyMesh.lod());
+                } catch (Exception exception) {
+                    Debug.err("Meshing ready chunk:");
+                    Debug.err(exception.getClass());
+                    exception.printStackTrace();
+                } finally {
+                    synchronized (lock) {
+                        readyMeshesRunning--;
+                        meshDependencies.meshFinished(readyMesh, meshed);
+                        if (meshDependencies.hasReady()) lock.notifyAll();
+                    }
+                }
+                continue;
+            }
 
-            for (int ring = 0; ring <= IntSettings.RENDER_DISTANCE.value() + 1; ring++) {
-                submitRingGeneration(lodPlayerX, lodPlayerY, lodPlayerZ, ring, lod);
-                submitRingMeshing(lodPlayerX, lodPlayerY, lodPlayerZ, ring - 2, lod);
+            long start = System.nanoTime();
+            try {
+                queue.createRunnable(task).run();
+            } catch (Exception exception) {
+                Debug.err("Chunk task:");
+                Debug.err(exception.getClass());
+                exception.printStackTrace();
+            } finally {
+                long runTime = System.nanoTime() - start;
+                synchronized (lock) {
+                    queue.finished(task, runTime);
+                }
             }
-            submitRingMeshing(lodPlayerX, lodPlayerY, lodPlayerZ, IntSettings.RENDER_DISTANCE.value(), lod);
         }
     }
 
-    private void submitRingMeshing(long playerChunkX, long playerChunkY, long playerChunkZ, int ring, int lod) {
-        if (ring < 0) return;
-        if (ring == 0) {
-            submitColumnMeshing(playerChunkX, playerChunkY, playerChunkZ, lod);
-            return;
-        }
+    private boolean shouldMeshReadyChunk() {
+        if (!meshDependencies.hasReady()) return false;
+        return generationQueue.peek() == null || getMeshingRunningCount() < workerCount - 1;
+    }
+
+    private ChunkTaskQueue selectQueue() {
+        QueuedTask generation = generationQueue.peek();
+        QueuedTask meshing = meshingQueue.peek();
 
-        for (int chunkX = -ring; chunkX < ring; chunkX++) submitColumnMeshing(chunkX + playerChunkX, playerChunkY, ring + playerChunkZ, lod);
-        for (int chunkZ = ring; chunkZ > -ring; chunkZ--) submitColumnMeshing(ring + playerChunkX, playerChunkY, chunkZ + playerChunkZ, lod);
-        for (int chunkX = ring; chunkX > -ring; chunkX--) submitColumnMeshing(chunkX + playerChunkX, playerChunkY, -ring + playerChunkZ, lod);
-        for (int chunkZ = -ring; chunkZ < ring; chunkZ++) submitColumnMeshing(-ring + playerChunkX, playerChunkY, chunkZ + playerChunkZ, lod);
+        if (meshing == null) return generation == null ? null : generationQueue;
+        if (generation == null) return meshingQueue;
+        if (getMeshingRunningCount() >= workerCount - 1) return generationQueue;
+        return meshing.compareTo(generation) < 0 ? meshingQueue : generationQueue;
     }
 
-    private void submitRingGeneration(long playerChunkX, long playerChunkY, long playerChunkZ, int ring, int lod) {
+    private int getMeshingRunningCount() {
+        return meshingQueue.getRunningCount() + readyMeshesRunning;
+    }
+
+    private static void collectRequests(long playerChunkX, long playerChunkY, long playerChunkZ,
+                                        ArrayList<ColumnRequest> generationRequests, ArrayList<ColumnRequest> meshingRequests) {
+        Camera camera = Game.getPlayer().getCamera();
+        FrustumIntersection frustum = new FrustumIntersection(Transformation.getFrustumCullingMatrix(camera));
+        Vector3l cameraPosition = camera.getPosition().longPosition();
+        int renderDistance = IntSettings.RENDER_DISTANCE.value();
+
+        for (int lod = 0, lodCount = Game.getWorld().LOD_COUNT; lod < lodCount; lod++) {
+            long lodPlayerX = playerChunkX >> lod;
+            long lodPlayerY = playerChunkY >> lod;
+            long lodPlayerZ = playerChunkZ >> lod;
+            int lodRank = lod * (renderDistance + LOD_RANK_OFFSET);
+
+            for (int ring = 0; ring <= renderDistance + 1; ring++)
+                for (long[] column : getRing(lodPlayerX, lodPlayerZ, ring)) {
+                    long chunkX = column[0], chunkZ = column[1];
+                    boolean requiresGeneration = columnRequiresGeneration(chunkX, lodPlayerY, chunkZ, lod);
+                    // Chunks that still get generated are meshed through the MeshDependencies once their neighbors are done
+                    boolean requiresMeshing = !requiresGeneration && ring <= renderDistance && columnRequiresMeshing(chunkX, lodPlayerY, chunkZ, lod);
+                    if (!requiresGeneration && !requiresMeshing) continue;
+
+                    int viewRank = ring <= 1 || isInView(frustum, cameraPosition, chunkX, lodPlayerY, chunkZ, lod) ? 0 : OUT_OF_VIEW_RANK;
+                    int rank = lodRank + viewRank + ring;
+                    if (requiresGeneration) generationRequests.add(new ColumnRequest(chunkX, lodPlayerY, chunkZ, lod, rank));
+                    if (requiresMeshing) meshingRequests.add(new ColumnRequest(chunkX, lodPlayerY, chunkZ, lod, rank));
+                }
+        }
+    }
+
+    private static ArrayList<long[]> getRing(long playerChunkX, long playerChunkZ, int ring) {
+        ArrayList<long[]> columns = new ArrayList<>(Math.max(1, ring * 8));
         if (ring == 0) {
-            submitColumnGeneration(playerChunkX, playerChunkY, playerChunkZ, lod);
-            return;
+            columns.add(new long[]{playerChunkX, playerChunkZ});
+            return columns;
         }
 
-        for (int chunkX = -ring; chunkX < ring; chunkX++) submitColumnGeneration(chunkX + playerChunkX, playerChunkY, ring + playerChunkZ, lod);
-        for (int chunkZ = ring; chunkZ > -ring; chunkZ--) submitColumnGeneration(ring + playerChunkX, playerChunkY, chunkZ + playerChunkZ, lod);
-        for (int chunkX = ring; chunkX > -ring; chunkX--) submitColumnGeneration(chunkX + playerChunkX, playerChunkY, -ring + playerChunkZ, lod);
-        for (int chunkZ = -ring; chunkZ < ring; chunkZ++) submitColumnGeneration(-ring + playerChunkX, playerChunkY, chunkZ + playerChunkZ, lod);
+        for (int chunkX = -ring; chunkX < ring; chunkX++) columns.add(new long[]{chunkX + playerChunkX, ring + playerChunkZ});
+        for (int chunkZ = ring; chunkZ > -ring; chunkZ--) columns.add(new long[]{ring + playerChunkX, chunkZ + playerChunkZ});
+        for (int chunkX = ring; chunkX > -ring; chunkX--) columns.add(new long[]{chunkX + playerChunkX, -ring + playerChunkZ});
+        for (int chunkZ = -ring; chunkZ < ring; chunkZ++) columns.add(new long[]{-ring + playerChunkX, chunkZ + playerChunkZ});
+        return columns;
     }
 
-    private void submitColumnGeneration(long chunkX, long playerChunkY, long chunkZ, int lod) {
-        if (executor.isShutdown()) return;
-        if (columnRequiresGeneration(chunkX, playerChunkY, chunkZ, lod))
-            executor.submit(new Generator(chunkX, playerChunkY, chunkZ, lod));
+    private static boolean isInView(FrustumIntersection frustum, Vector3l cameraPosition, long chunkX, long playerChunkY, long chunkZ, int lod) {
+        int chunkSizeBits = CHUNK_SIZE_BITS + lod;
+        int renderDistance = IntSettings.RENDER_DISTANCE.value();
+        return frustum.testAab(
+                (chunkX << chunkSizeBits) - cameraPosition.x,
+                (playerChunkY - renderDistance << chunkSizeBits) - cameraPosition.y,
+                (chunkZ << chunkSizeBits) - cameraPosition.z,
+                (chunkX + 1 << chunkSizeBits) - cameraPosition.x,
+                (playerChunkY + renderDistance + 1 << chunkSizeBits) - cameraPosition.y,
+                (chunkZ + 1 << chunkSizeBits) - cameraPosition.z);
     }
 
-    private void submitColumnMeshing(long chunkX, long playerChunkY, long chunkZ, int lod) {
-        if (executor.isShutdown()) return;
-        if (columnRequiresMeshing(chunkX, playerChunkY, chunkZ, lod))
-            executor.submit(new MeshHandler(chunkX, playerChunkY, chunkZ, lod));
+    /**
+     * @return Whether the chunk got meshed or doesn't need meshing anymore, false if it failed or has to be meshed again
+     */
+    private static boolean meshChunk(MeshGenerator meshGenerator, World world, MeshCollector meshCollector, long chunkX, long chunkY, long chunkZ, int lod) {
+        try {
+            int chunkIndex = Utils.getChunkIndex(chunkX, chunkY, chunkZ, lod);
+            ChunkID expectedId = new ChunkID(chunkX, chunkY, chunkZ, lod);
+            long stamp = world.getStamp(chunkIndex, lod);
+            Chunk chunk = world.getChunk(chunkIndex, lod);
+
+            if (chunk == null) {
+                Debug.err("to mesh chunk is null %d %d %d %d%n", chunkX, chunkY, chunkZ, lod);
+                return true;
+            }
+            if (!chunk.ID.equals(expectedId)) {
+                Debug.err("Chunk has wrong ID %d %d %d %d is %s should be %s%n", chunkX, chunkY, chunkZ, lod, chunk.ID, expectedId);
+                return true;
+            }
+            if (chunk.getGenerationStatus() != Status.DONE) {
+                Debug.err("to mesh chunk hasn't been generated %s%n", chunk.getGenerationStatus().name());
+                Debug.err("%d %d %d %d%n", chunkX, chunkY, chunkZ, lod);
+                return false;
+            }
+
+            if (meshCollector.isMeshed(chunkIndex, lod)) return true;
+            meshCollector.setMeshed(true, chunkIndex, lod);
+
+            Mesh mesh = meshGenerator.generateMesh(chunk, meshCollector.getStagingRing());
+            // The slot got recycled while meshing, the mesh belongs to a chunk that is no longer loaded
+            if (mesh != null && world.getStamp(chunkIndex, lod) != stamp) {
+                mesh.freeStaging(meshCollector.getStagingRing());
+                meshCollector.setMeshed(false, chunkIndex, lod);
+                return true;
+            }
+            if (mesh == null) meshCollector.setMeshed(false, chunkIndex, lod);
+            else meshCollector.queueMesh(mesh);
+            return mesh != null;
+
+        } catch (Exception exception) {
+            Debug.err("Meshing:");
+            Debug.err(exception.getClass());
+            exception.printStackTrace();
+            Debug.err("%d %d %d%n", chunkX, chunkY, chunkZ);
+            return false;
+        }
     }
 
     private static boolean columnRequiresGeneration(long chunkX, long playerChunkY, long chunkZ, int lod) {
@@ -150,9 +379,19 @@ public final class ChunkGenerator {
     }
 
 
-    private final ThreadPoolExecutor executor;
+    private final Object lock = new Object();
+    private final ChunkTaskQueue generationQueue, meshingQueue;
+    private final MeshDependencies meshDependencies = new MeshDependencies();
+    private int workerCount = 0, targetWorkerCount = 0, readyMeshesRunning = 0;
+    private boolean shutdown = false;
 
-    private record Generator(long chunkX, long playerChunkY, long chunkZ, int lod) implements Runnable {
+    private static final int LOD_RANK_OFFSET = 4;
+    private static final int OUT_OF_VIEW_RANK = 4;
+
+    public record QueueMetrics(int queued, int running, long completed, float averageWaitMillis, float averageRunMillis) {
+    }
+
+    private record Generator(long chunkX, long playerChunkY, long chunkZ, int lod, ChunkGenerator generator) implements Runnable {
 
         @Override
         public void run() {
@@ -172,10 +411,8 @@ public final class ChunkGenerator {
             for (long chunkY = playerChunkY - IntSettings.RENDER_DISTANCE.value() - 1; chunkY != playerChunkY + IntSettings.RENDER_DISTANCE.value() + 2; chunkY++) {
                 try {
                     Chunk chunk = saver.load(chunkX, chunkY, chunkZ, lod);
-                    if (chunk.getGenerationStatus() == Status.NOT_STARTED) {
-                        WorldGeneration.generate(chunk, generationData);
-                        Game.getWorld().storeChunk(chunk);
-                    }
+                    if (chunk.getGenerationStatus() == Status.NOT_STARTED) WorldGeneration.generate(chunk, generationData);
+                    if (generator != null) generator.chunkGenerated(chunk);
                 } catch (Exception exception) {
                     Debug.err("Generation:");
                     Debug.err(exception.getClass());
@@ -195,40 +432,8 @@ public final class ChunkGenerator {
             World world = Game.getWorld();
             MeshCollector meshCollector = Game.getPlayer().getMeshCollector();
 
-            for (long chunkY = playerChunkY - IntSettings.RENDER_DISTANCE.value(); chunkY != playerChunkY + IntSettings.RENDER_DISTANCE.value() + 1; chunkY++) {
-                try {
-                    int chunkIndex = Utils.getChunkIndex(chunkX, chunkY, chunkZ, lod);
-                    ChunkID expectedId = new ChunkID(chunkX, chunkY, chunkZ, lod);
-                    Chunk chunk = world.getChunk(chunkIndex, lod);
-
-                    if (chunk == null) {
-                        Debug.err("to mesh chunk is null %d %d %d %d%n", chunkX, chunkY, chunkZ, lod);
-                        continue;
-                    }
-                    if (!chunk.ID.equals(expectedId)) {
-                        Debug.err("Chunk has wrong ID %d %d %d %d is %s should be %s%n", chunkX, chunkY, chunkZ, lod, chunk.ID, expectedId);
-                        continue;
-                    }
-                    if (chunk.getGenerationStatus() != Status.DONE) {
-                        Debug.err("to mesh chunk hasn't been generated %s%n", chunk.getGenerationStatus().name());
-                        Debug.err("%d %d %d %d%n", chunkX, chunkY, chunkZ, lod);
-                        continue;
-                    }
-
-                    if (meshCollector.isMeshed(chunkIndex, lod)) continue;
-                    meshCollector.setMeshed(true, chunkIndex, lod);
-
-                    Mesh mesh = meshGenerator.generateMesh(chunk);
-                    if (mesh == null) meshCollector.setMeshed(false, chunkIndex, lod);
-                    else meshCollector.queueMesh(mesh);
-
-                } catch (Exception exception) {
-                    Debug.err("Meshing:");
-                    Debug.err(exception.getClass());
-                    exception.printStackTrace();
-                    Debug.err("%d %d %d%n", chunkX, chunkY, chunkZ);
-                }
-            }
+            for (long chunkY = playerChunkY - IntSettings.RENDER_DISTANCE.value(); chunkY != playerChunkY + IntSettings.RENDER_DISTANCE.value() + 1; chunkY++)
+                meshChunk(meshGenerator, world, meshCollector, chunkX, chunkY, chunkZ, lod);
         }
     }
 }
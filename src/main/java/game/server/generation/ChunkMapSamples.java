@@ -6,14 +6,22 @@ public record ChunkMapSamples(float[] temperatureMap, float[] humidityMap,
                               float[] heightMap, float[] erosionMap, float[] continentalMap, float[] riverMap, float[] ridgeMap) {
 
     public ChunkMapSamples(long chunkX, long chunkZ, int lod) {
+        this(new SampleGrid(chunkX, chunkZ, lod));
+    }
+
+    private ChunkMapSamples(SampleGrid grid) {
+        this(grid, MapSampleCache.getSamples(grid.totalX, grid.totalZ, grid.count));
+    }
+
+    private ChunkMapSamples(SampleGrid grid, MapSample[] samples) {
         this(
-                mapPadded(chunkX, chunkZ, lod, MapSample::temperatureMapValue),
-                mapPadded(chunkX, chunkZ, lod, MapSample::humidityMapValue),
-                mapPadded(chunkX, chunkZ, lod, MapSample::heightMapValue),
-                mapPadded(chunkX, chunkZ, lod, MapSample::erosionMapValue),
-                mapPadded(chunkX, chunkZ, lod, MapSample::continentalMapValue),
-                mapPadded(chunkX, chunkZ, lod, MapSample::riverMapValue),
-                mapPadded(chunkX, chunkZ, lod, MapSample::ridgeMapValue)
+                mapPadded(grid, samples, MapSample::temperature),
+                mapPadded(grid, samples, MapSample::humidity),
+                mapPadded(grid, samples, MapSample::height),
+                mapPadded(grid, samples, MapSample::erosion),
+                mapPadded(grid, samples, MapSample::continental),
+                mapPadded(grid, samples, MapSample::river),
+                mapPadded(grid, samples, MapSample::ridge)
         );
     }
 
@@ -30,18 +38,9 @@ public record ChunkMapSamples(float[] temperatureMap, float[] humidityMap,
     }
 
 
-    private static float[] mapPadded(long chunkX, long chunkZ, int lod, MapValueFunction function) {
+    private static float[] mapPadded(SampleGrid grid, MapSample[] samples, SampleValueFunction function) {
         float[] map = new float[CHUNK_SIZE_PADDED * CHUNK_SIZE_PADDED];
-        int chunkSizeBits = CHUNK_SIZE_BITS + lod;
-        int gapSize = 1 << lod;
-
-        for (int mapX = 0; mapX < CHUNK_SIZE_PADDED; mapX += INTERPOLATION_SIZE)
-            for (int mapZ = 0; mapZ < CHUNK_SIZE_PADDED; mapZ += INTERPOLATION_SIZE) {
-                long totalX = (chunkX << chunkSizeBits) + (long) mapX * gapSize - gapSize;
-                long totalZ = (chunkZ << chunkSizeBits) + (long) mapZ * gapSize - gapSize;
-
-                map[GenerationData.getMapIndex(mapX, mapZ)] = (float) function.mapValue(totalX, totalZ);
-            }
+        for (int index = 0; index < grid.count; index++) map[grid.mapIndices[index]] = function.value(samples[index]);
 
         for (int mapX = 0; mapX < CHUNK_SIZE_PADDED - 1; mapX += INTERPOLATION_SIZE)
             for (int mapZ = 0; mapZ < CHUNK_SIZE_PADDED - 1; mapZ += INTERPOLATION_SIZE) interpolate(map, mapX, mapZ);
@@ -69,7 +68,34 @@ public record ChunkMapSamples(float[] temperatureMap, float[] humidityMap,
     private static final int INTERPOLATION_SIZE = 8;
     private static final float INTERPOLATION_MULTIPLIER = 1.0F / INTERPOLATION_SIZE;
 
-    private interface MapValueFunction {
-        double mapValue(long totalX, long totalY);
+    private interface SampleValueFunction {
+        float value(MapSample sample);
+    }
+
+    /**
+     * The positions that actually get sampled, every other value gets interpolated.
+     */
+    private static final class SampleGrid {
+
+        private SampleGrid(long chunkX, long chunkZ, int lod) {
+            int chunkSizeBits = CHUNK_SIZE_BITS + lod;
+            int gapSize = 1 << lod;
+
+            for (int mapX = 0; mapX < CHUNK_SIZE_PADDED; mapX += INTERPOLATION_SIZE)
+                for (int mapZ = 0; mapZ < CHUNK_SIZE_PADDED; mapZ += INTERPOLATION_SIZE) {
+                    totalX[count] = (chunkX << chunkSizeBits) + (long) mapX * gapSize - gapSize;
+                    totalZ[count] = (chunkZ << chunkSizeBits) + (long) mapZ * gapSize - gapSize;
+                    mapIndices[count] = GenerationData.getMapIndex(mapX, mapZ);
+                    count++;
+                }
+        }
+
+        private final long[] totalX = new long[SAMPLE_COUNT];
+        private final long[] totalZ = new long[SAMPLE_COUNT];
+        private final int[] mapIndices = new int[SAMPLE_COUNT];
+        private int count = 0;
+
+        private static final int SAMPLES_PER_SIDE = (CHUNK_SIZE_PADDED + INTERPOLATION_SIZE - 1) / INTERPOLATION_SIZE;
+        private static final int SAMPLE_COUNT = SAMPLES_PER_SIDE * SAMPLES_PER_SIDE;
     }
 }
@@ -0,0 +1,125 @@
+package game.server.generation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.PriorityQueue;
+
+/**
+ * Priority queue of column tasks of one kind. Not thread safe, all access is guarded by the owning {@link ChunkGenerator}.
+ * <p>
+ * A column is queued at most once. Updating the queue with a new set of requests re-ranks the already queued tasks,
+ * drops the ones no longer requested and skips the ones currently being worked on.
+ */
+final class ChunkTaskQueue {
+
+    ChunkTaskQueue(TaskFactory factory) {
+        this.factory = factory;
+    }
+
+    void update(ArrayList<ColumnRequest> requests) {
+        epoch++;
+        for (int sequence = 0; sequence < requests.size(); sequence++) {
+            ColumnRequest request = requests.get(sequence);
+            ColumnKey key = new ColumnKey(request.chunkX(), request.chunkZ(), request.lod());
+            QueuedTask task = queued.get(key);
+
+            if (task != null) task.update(request, sequence, epoch);
+            else if (!running.contains(new RunningKey(key, request.playerChunkY())))
+                queued.put(key, new QueuedTask(key, request, sequence, epoch, System.nanoTime()));
+        }
+        queued.values().removeIf(task -> task.epoch != epoch);
+        heap = new PriorityQueue<>(queued.values());
+    }
+
+    QueuedTask peek() {
+        return heap.peek();
+    }
+
+    QueuedTask poll() {
+        QueuedTask task = heap.poll();
+        if (task == null) return null;
+        queued.remove(task.key);
+        running.add(new RunningKey(task.key, task.playerChunkY));
+
+        long waitTime = System.nanoTime() - task.enqueueTime;
+        averageWaitNanos += (waitTime - averageWaitNanos) * AVERAGING_FACTOR;
+        return task;
+    }
+
+    void finished(QueuedTask task, long runTime) {
+        running.remove(new RunningKey(task.key, task.playerChunkY));
+        averageRunNanos += (runTime - averageRunNanos) * AVERAGING_FACTOR;
+        completed++;
+    }
+
+    Runnable createRunnable(QueuedTask task) {
+        return factory.create(task.key.chunkX(), task.playerChunkY, task.key.chunkZ(), task.key.lod());
+    }
+
+    void clear() {
+        queued.clear();
+        heap.clear();
+    }
+
+    int getRunningCount() {
+        return running.size();
+    }
+
+    ChunkGenerator.QueueMetrics getMetrics() {
+        return new ChunkGenerator.QueueMetrics(heap.size(), running.size(), completed,
+                (float) (averageWaitNanos / 1_000_000), (float) (averageRunNanos / 1_000_000));
+    }
+
+
+    private final TaskFactory factory;
+    private final HashMap<ColumnKey, QueuedTask> queued = new HashMap<>();
+    private final HashSet<RunningKey> running = new HashSet<>();
+    private PriorityQueue<QueuedTask> heap = new PriorityQueue<>();
+    private int epoch = 0;
+
+    private long completed = 0;
+    private double averageWaitNanos = 0.0, averageRunNanos = 0.0;
+
+    private static final double AVERAGING_FACTOR = 0.05;
+
+    interface TaskFactory {
+        Runnable create(long chunkX, long playerChunkY, long chunkZ, int lod);
+    }
+
+    record ColumnRequest(long chunkX, long playerChunkY, long chunkZ, int lod, int rank) {
+    }
+
+    private record ColumnKey(long chunkX, long chunkZ, int lod) {
+    }
+
+    private record RunningKey(ColumnKey key, long playerChunkY) {
+    }
+
+    static final class QueuedTask implements Comparable<QueuedTask> {
+
+        @Override
+        public int compareTo(QueuedTask other) {
+            if (rank != other.rank) return Integer.compare(rank, other.rank);
+            return Integer.compare(sequence, other.sequence);
+        }
+
+        private QueuedTask(ColumnKey key, ColumnRequest request, int sequence, int epoch, long enqueueTime) {
+            this.key = key;
+            this.enqueueTime = enqueueTime;
+            update(request, sequence, epoch);
+        }
+
+        private void update(ColumnRequest request, int sequence, int epoch) {
+            this.playerChunkY = request.playerChunkY();
+            this.rank = request.rank();
+            this.sequence = sequence;
+            this.epoch = epoch;
+        }
+
+        private final ColumnKey key;
+        private final long enqueueTime;
+        private long playerChunkY;
+        private int rank, sequence, epoch;
+    }
+}
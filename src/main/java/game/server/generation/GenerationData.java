@@ -322,22 +322,32 @@ public final class GenerationData {
         long structureStartX = (chunkX << CHUNK_SIZE_BITS + lod) - CHUNK_SIZE / 2;
         long structureStartZ = (chunkZ << CHUNK_SIZE_BITS + lod) - CHUNK_SIZE / 2;
 
+        int count = worldGenStructureMap.length;
+        long[] totalX = new long[count], totalZ = new long[count];
+        long[] totalXPlusOne = new long[count], totalZPlusOne = new long[count];
         for (int x = 0; x < sideLength; x++)
             for (int z = 0; z < sideLength; z++) {
-                long totalX = structureStartX + ((long) x << CHUNK_SIZE_BITS);
-                long totalZ = structureStartZ + ((long) z << CHUNK_SIZE_BITS);
-
-                worldGenStructureMap[x * sideLength + z] = structureMapValue(totalX, totalZ);
+                int index = x * sideLength + z;
+                totalX[index] = structureStartX + ((long) x << CHUNK_SIZE_BITS);
+                totalZ[index] = structureStartZ + ((long) z << CHUNK_SIZE_BITS);
+                totalXPlusOne[index] = totalX[index] + 1;
+                totalZPlusOne[index] = totalZ[index] + 1;
             }
+
+        // Sample every candidate at once, the steepness only needs the heights next to each candidate
+        MapSample[] samples = MapSampleCache.getSamples(totalX, totalZ, count);
+        MapSample[] samplesPlusX = MapSampleCache.getSamples(totalXPlusOne, totalZ, count);
+        MapSample[] samplesPlusZ = MapSampleCache.getSamples(totalX, totalZPlusOne, count);
+
+        for (int index = 0; index < count; index++)
+            worldGenStructureMap[index] = structureMapValue(totalX[index], totalZ[index], samples[index], samplesPlusX[index], samplesPlusZ[index]);
         return worldGenStructureMap;
     }
 
-    private static WorldGenStructure structureMapValue(long totalX, long totalZ) {
-        MapSample sample = new MapSample(totalX, totalZ, true, true);
-
+    private static WorldGenStructure structureMapValue(long totalX, long totalZ, MapSample sample, MapSample samplePlusX, MapSample samplePlusZ) {
         double resultingHeight = WorldGeneration.getResultingHeight(sample);
-        double heightPlusX = WorldGeneration.getResultingHeight(totalX + 1, totalZ);
-        double heightPlusZ = WorldGeneration.getResultingHeight(totalX, totalZ + 1);
+        double heightPlusX = WorldGeneration.getResultingHeight(samplePlusX);
+        double heightPlusZ = WorldGeneration.getResultingHeight(samplePlusZ);
         double steepness = Math.max(Math.abs(resultingHeight - heightPlusX), Math.abs(resultingHeight - heightPlusZ));
         int riverDepth = WorldGeneration.getRiverDepth(sample.river());
         if (steepness > 0.4 || riverDepth >= resultingHeight - 16) return null;
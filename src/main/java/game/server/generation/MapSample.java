@@ -2,6 +2,8 @@ package game.server.generation;
 
 import core.utils.OpenSimplex2S;
 
+import java.util.Arrays;
+
 import static game.server.generation.WorldGeneration.SEED;
 
 public record MapSample(float temperature, float humidity,
@@ -22,70 +24,137 @@ public record MapSample(float temperature, float humidity,
 
 
     public static double heightMapValue(long totalX, long totalZ) {
-        double height;
-        height = OpenSimplex2S.noise3_ImproveXY(SEED ^ 0x08D2BCC9BD98BBF5L, totalX * HEIGHT_MAP_FREQUENCY, totalZ * HEIGHT_MAP_FREQUENCY, 0);
-        height += OpenSimplex2S.noise3_ImproveXY(SEED ^ 0xCEC793764665EF7DL, totalX * HEIGHT_MAP_FREQUENCY * 2, totalZ * HEIGHT_MAP_FREQUENCY * 2, 0) * 0.5;
-        height += OpenSimplex2S.noise3_ImproveXY(SEED ^ 0xBD4957D70308DEBFL, totalX * HEIGHT_MAP_FREQUENCY * 4, totalZ * HEIGHT_MAP_FREQUENCY * 4, 0) * 0.25;
-        height += OpenSimplex2S.noise3_ImproveXY(SEED ^ 0xD68F54787A92D53CL, totalX * HEIGHT_MAP_FREQUENCY * 8, totalZ * HEIGHT_MAP_FREQUENCY * 8, 0) * 0.125;
-        height += OpenSimplex2S.noise3_ImproveXY(SEED ^ 0x574730707031DA54L, totalX * HEIGHT_MAP_FREQUENCY * 16, totalZ * HEIGHT_MAP_FREQUENCY * 16, 0) * 0.0625;
-        height += OpenSimplex2S.noise3_ImproveXY(SEED ^ 0xF82698C39EE31D97L, totalX * HEIGHT_MAP_FREQUENCY * 32, totalZ * HEIGHT_MAP_FREQUENCY * 32, 0) * 0.03125;
-        height += OpenSimplex2S.noise3_ImproveXY(SEED ^ 0x6F51382316D4C57FL, totalX * HEIGHT_MAP_FREQUENCY * 64, totalZ * HEIGHT_MAP_FREQUENCY * 64, 0) * 0.015625;
-        height += OpenSimplex2S.noise3_ImproveXY(SEED ^ 0x09D355804F5FB2F7L, totalX * HEIGHT_MAP_FREQUENCY * 128, totalZ * HEIGHT_MAP_FREQUENCY * 128, 0) * 0.0078125;
+        double height = sumOctaves(HEIGHT_OCTAVES, totalX, totalZ);
         return (height * 0.5 + 0.5) * HEIGHT_MAP_MULTIPLIER;
     }
 
     public static double continentalMapValue(long totalX, long totalZ) {
-        double continental;
-        continental = OpenSimplex2S.noise3_ImproveXY(SEED ^ 0xCF71B60E764BFC2CL, totalX * CONTINENTAL_FREQUENCY, totalZ * CONTINENTAL_FREQUENCY, 0);
-        continental += OpenSimplex2S.noise3_ImproveXY(SEED ^ 0x8EF1C1F90DA10C0AL, totalX * CONTINENTAL_FREQUENCY * 6, totalZ * CONTINENTAL_FREQUENCY * 6, 0) * 0.0411;
-        continental += OpenSimplex2S.noise3_ImproveXY(SEED ^ 0x608308CA890553E3L, totalX * CONTINENTAL_FREQUENCY * 12, totalZ * CONTINENTAL_FREQUENCY * 12, 0) * 0.0211;
-        continental += OpenSimplex2S.noise3_ImproveXY(SEED ^ 0xE29B01A5152C8664L, totalX * CONTINENTAL_FREQUENCY * 24, totalZ * CONTINENTAL_FREQUENCY * 24, 0) * 0.0111;
-        continental += OpenSimplex2S.noise3_ImproveXY(SEED ^ 0x27C1986D27551225L, totalX * CONTINENTAL_FREQUENCY * 48, totalZ * CONTINENTAL_FREQUENCY * 48, 0) * 0.00511;
-        continental += OpenSimplex2S.noise3_ImproveXY(SEED ^ 0x33382D4F463883B8L, totalX * CONTINENTAL_FREQUENCY * 160, totalZ * CONTINENTAL_FREQUENCY * 160, 0) * 0.00111;
-        return continental;
+        return sumOctaves(CONTINENTAL_OCTAVES, totalX, totalZ);
     }
 
     public static double riverMapValue(long totalX, long totalZ) {
-        double riverBase = OpenSimplex2S.noise3_ImproveXY(SEED ^ 0x84D43603ED399321L, totalX * RIVER_FREQUENCY, totalZ * RIVER_FREQUENCY, 0);
-        riverBase += OpenSimplex2S.noise3_ImproveXY(SEED ^ 0x344FA574A7E89DF3L, totalX * RIVER_FREQUENCY * 100, totalZ * RIVER_FREQUENCY * 100, 0) * 0.01;
-        riverBase += OpenSimplex2S.noise3_ImproveXY(SEED ^ 0x096A85DA8C830521L, totalX * RIVER_FREQUENCY * 500, totalZ * RIVER_FREQUENCY * 500, 0) * 0.002;
-        double riverBranch = OpenSimplex2S.noise3_ImproveXY(SEED ^ 0x2A1315A298B53255L, totalX * RIVER_FREQUENCY * 5, totalZ * RIVER_FREQUENCY * 5, 0);
-        riverBranch += OpenSimplex2S.noise3_ImproveXY(SEED ^ 0x8A378F8A598A62FBL, totalX * RIVER_FREQUENCY * 500, totalZ * RIVER_FREQUENCY * 500, 0) * 0.002;
+        double riverBase = sumOctaves(RIVER_BASE_OCTAVES, totalX, totalZ);
+        double riverBranch = sumOctaves(RIVER_BRANCH_OCTAVES, totalX, totalZ);
         return Math.min(Math.abs(riverBase), riverBranch * riverBranch + Math.abs(riverBase) * 0.25);
     }
 
     public static double ridgeMapValue(long totalX, long totalZ) {
-        double ridge;
-        ridge = 1 - Math.abs(OpenSimplex2S.noise3_ImproveXY(SEED ^ 0xDD4D88700A5E4D7EL, totalX * RIDGE_FREQUENCY, totalZ * RIDGE_FREQUENCY, 0));
-        ridge += (1 - Math.abs(OpenSimplex2S.noise3_ImproveXY(SEED ^ 0x691FAA55BF0F52F7L, totalX * RIDGE_FREQUENCY * 20, totalZ * RIDGE_FREQUENCY * 20, 0))) * 0.05;
-        ridge += (1 - Math.abs(OpenSimplex2S.noise3_ImproveXY(SEED ^ 0x7D635E3DA74EEFE7L, totalX * RIDGE_FREQUENCY * 400, totalZ * RIDGE_FREQUENCY * 400, 0))) * 0.0025;
-        return ridge;
+        return sumOctaves(RIDGE_OCTAVES, totalX, totalZ);
     }
 
     public static double erosionMapValue(long totalX, long totalZ) {
-        double erosion;
-        erosion = OpenSimplex2S.noise3_ImproveXY(SEED ^ 0xBEF86CF6C75F708DL, totalX * EROSION_FREQUENCY, totalZ * EROSION_FREQUENCY, 0) * 0.9588;
-        erosion += OpenSimplex2S.noise3_ImproveXY(SEED ^ 0xD5398D722513F0A3L, totalX * EROSION_FREQUENCY * 100, totalZ * EROSION_FREQUENCY * 100, 0) * 0.005;
-        erosion += OpenSimplex2S.noise3_ImproveXY(SEED ^ 0x3084497B496D8532L, totalX * EROSION_FREQUENCY * 1000, totalZ * EROSION_FREQUENCY * 1000, 0) * 0.00025;
-        return erosion;
+        return sumOctaves(EROSION_OCTAVES, totalX, totalZ);
     }
 
     public static double temperatureMapValue(long totalX, long totalZ) {
-        double temperature;
-        temperature = OpenSimplex2S.noise3_ImproveXY(SEED ^ 0xADA1CE5C24C4A44FL, totalX * TEMPERATURE_FREQUENCY, totalZ * TEMPERATURE_FREQUENCY, 0) * 0.8888;
-        temperature += OpenSimplex2S.noise3_ImproveXY(SEED ^ 0xEEA0CB5D51C0A447L, totalX * TEMPERATURE_FREQUENCY * 50, totalZ * TEMPERATURE_FREQUENCY * 50, 0) * 0.1111;
-        temperature += OpenSimplex2S.noise3_ImproveXY(SEED ^ 0xF7C6F9389CEEF1A7L, totalX * 0.03125, totalZ * 0.03125, 0) * 0.02;
-        return temperature;
+        return sumOctaves(TEMPERATURE_OCTAVES, totalX, totalZ);
     }
 
     public static double humidityMapValue(long totalX, long totalZ) {
-        double humidity;
-        humidity = OpenSimplex2S.noise3_ImproveXY(SEED ^ 0x41C8F1921D50DF82L, totalX * HUMIDITY_FREQUENCY, totalZ * HUMIDITY_FREQUENCY, 0) * 0.8888;
-        humidity += OpenSimplex2S.noise3_ImproveXY(SEED ^ 0xB935E00850C8416EL, totalX * HUMIDITY_FREQUENCY * 50, totalZ * HUMIDITY_FREQUENCY * 50, 0) * 0.1111;
-        humidity += OpenSimplex2S.noise3_ImproveXY(SEED ^ 0x9BCC9E0E7A1F3A5CL, totalX * 0.03125, totalZ * 0.03125, 0) * 0.02;
-        return humidity;
+        return sumOctaves(HUMIDITY_OCTAVES, totalX, totalZ);
+    }
+
+    public static MapSample[] samples(long[] totalX, long[] totalZ, int count, boolean biomes, boolean height) {
+        double[][] values = SCRATCH.get().values(count);
+        if (biomes) {
+            temperatureMapValues(totalX, totalZ, count, values[0]);
+            humidityMapValues(totalX, totalZ, count, values[1]);
+        } else {
+            // The buffers still hold the values of the last batch
+            Arrays.fill(values[0], 0, count, 0.0);
+            Arrays.fill(values[1], 0, count, 0.0);
+        }
+        if (height) {
+            heightMapValues(totalX, totalZ, count, values[2]);
+            erosionMapValues(totalX, totalZ, count, values[3]);
+            continentalMapValues(totalX, totalZ, count, values[4]);
+            riverMapValues(totalX, totalZ, count, values[5]);
+            ridgeMapValues(totalX, totalZ, count, values[6]);
+        } else for (int map = 2; map < values.length; map++) Arrays.fill(values[map], 0, count, 0.0);
+
+        MapSample[] samples = new MapSample[count];
+        for (int index = 0; index < count; index++)
+            samples[index] = new MapSample((float) values[0][index], (float) values[1][index],
+                    (float) values[2][index], (float) values[3][index], (float) values[4][index], (float) values[5][index], (float) values[6][index]);
+        return samples;
+    }
+
+    // Batched versions, evaluate the first count positions octave by octave and produce exactly the values of the scalar versions
+
+    public static void heightMapValues(long[] totalX, long[] totalZ, int count, double[] result) {
+        sumOctaves(HEIGHT_OCTAVES, totalX, totalZ, count, result);
+        for (int index = 0; index < count; index++) result[index] = (result[index] * 0.5 + 0.5) * HEIGHT_MAP_MULTIPLIER;
+    }
+
+    public static void continentalMapValues(long[] totalX, long[] totalZ, int count, double[] result) {
+        sumOctaves(CONTINENTAL_OCTAVES, totalX, totalZ, count, result);
     }
 
+    public static void riverMapValues(long[] totalX, long[] totalZ, int count, double[] result) {
+        double[] riverBranch = SCRATCH.get().riverBranch(count);
+        sumOctaves(RIVER_BASE_OCTAVES, totalX, totalZ, count, result);
+        sumOctaves(RIVER_BRANCH_OCTAVES, totalX, totalZ, count, riverBranch);
+        for (int index = 0; index < count; index++)
+            result[index] = Math.min(Math.abs(result[index]), riverBranch[index] * riverBranch[index] + Math.abs(result[index]) * 0.25);
+    }
+
+    public static void ridgeMapValues(long[] totalX, long[] totalZ, int count, double[] result) {
+        sumOctaves(RIDGE_OCTAVES, totalX, totalZ, count, result);
+    }
+
+    public static void erosionMapValues(long[] totalX, long[] totalZ, int count, double[] result) {
+        sumOctaves(EROSION_OCTAVES, totalX, totalZ, count, result);
+    }
+
+    public static void temperatureMapValues(long[] totalX, long[] totalZ, int count, double[] result) {
+        sumOctaves(TEMPERATURE_OCTAVES, totalX, totalZ, count, result);
+    }
+
+    public static void humidityMapValues(long[] totalX, long[] totalZ, int count, double[] result) {
+        sumOctaves(HUMIDITY_OCTAVES, totalX, totalZ, count, result);
+    }
+
+
+    private static double sumOctaves(Octave[] octaves, long totalX, long totalZ) {
+        double value = octaves[0].value(octaves[0].noise(totalX, totalZ));
+        for (int octave = 1; octave < octaves.length; octave++) value += octaves[octave].value(octaves[octave].noise(totalX, totalZ));
+        return value;
+    }
+
+    private static void sumOctaves(Octave[] octaves, long[] totalX, long[] totalZ, int count, double[] result) {
+        Scratch scratch = SCRATCH.get();
+        double[] x = scratch.x(count);
+        double[] z = scratch.z(count);
+        float[] noise = scratch.noise(count);
+
+        for (int octaveIndex = 0; octaveIndex < octaves.length; octaveIndex++) {
+            Octave octave = octaves[octaveIndex];
+            for (int index = 0; index < count; index++) {
+                x[index] = totalX[index] * octave.frequency * octave.multiplier;
+                z[index] = totalZ[index] * octave.frequency * octave.multiplier;
+            }
+            OpenSimplex2S.noise3_ImproveXY(SEED ^ octave.seedKey, x, z, 0, noise, count);
+
+            if (octaveIndex == 0) for (int index = 0; index < count; index++) result[index] = octave.value(noise[index]);
+            else for (int index = 0; index < count; index++) result[index] += octave.value(noise[index]);
+        }
+    }
+
+    private record Octave(long seedKey, double frequency, double multiplier, double amplitude, boolean ridged) {
+
+        private Octave(long seedKey, double frequency, double multiplier, double amplitude) {
+            this(seedKey, frequency, multiplier, amplitude, false);
+        }
+
+        private float noise(long totalX, long totalZ) {
+            return OpenSimplex2S.noise3_ImproveXY(SEED ^ seedKey, totalX * frequency * multiplier, totalZ * frequency * multiplier, 0);
+        }
+
+        private double value(float noise) {
+            if (ridged) return (1 - Math.abs(noise)) * amplitude;
+            return noise * amplitude;
+        }
+    }
 
     private static final double TEMPERATURE_FREQUENCY = 1 / 32000.0;
     private static final double HUMIDITY_FREQUENCY = TEMPERATURE_FREQUENCY;
@@ -96,4 +165,82 @@ public record MapSample(float temperature, float humidity,
     private static final double RIDGE_FREQUENCY = 1 / 16300.0;
 
     private static final double HEIGHT_MAP_MULTIPLIER = 250;
+
+    private static final Octave[] HEIGHT_OCTAVES = {
+            new Octave(0x08D2BCC9BD98BBF5L, HEIGHT_MAP_FREQUENCY, 1, 1),
+            new Octave(0xCEC793764665EF7DL, HEIGHT_MAP_FREQUENCY, 2, 0.5),
+            new Octave(0xBD4957D70308DEBFL, HEIGHT_MAP_FREQUENCY, 4, 0.25),
+            new Octave(0xD68F54787A92D53CL, HEIGHT_MAP_FREQUENCY, 8, 0.125),
+            new Octave(0x574730707031DA54L, HEIGHT_MAP_FREQUENCY, 16, 0.0625),
+            new Octave(0xF82698C39EE31D97L, HEIGHT_MAP_FREQUENCY, 32, 0.03125),
+            new Octave(0x6F51382316D4C57FL, HEIGHT_MAP_FREQUENCY, 64, 0.015625),
+            new Octave(0x09D355804F5FB2F7L, HEIGHT_MAP_FREQUENCY, 128, 0.0078125)};
+    private static final Octave[] CONTINENTAL_OCTAVES = {
+            new Octave(0xCF71B60E764BFC2CL, CONTINENTAL_FREQUENCY, 1, 1),
+            new Octave(0x8EF1C1F90DA10C0AL, CONTINENTAL_FREQUENCY, 6, 0.0411),
+            new Octave(0x608308CA890553E3L, CONTINENTAL_FREQUENCY, 12, 0.0211),
+            new Octave(0xE29B01A5152C8664L, CONTINENTAL_FREQUENCY, 24, 0.0111),
+            new Octave(0x27C1986D27551225L, CONTINENTAL_FREQUENCY, 48, 0.00511),
+            new Octave(0x33382D4F463883B8L, CONTINENTAL_FREQUENCY, 160, 0.00111)};
+    private static final Octave[] RIVER_BASE_OCTAVES = {
+            new Octave(0x84D43603ED399321L, RIVER_FREQUENCY, 1, 1),
+            new Octave(0x344FA574A7E89DF3L, RIVER_FREQUENCY, 100, 0.01),
+            new Octave(0x096A85DA8C830521L, RIVER_FREQUENCY, 500, 0.002)};
+    private static final Octave[] RIVER_BRANCH_OCTAVES = {
+            new Octave(0x2A1315A298B53255L, RIVER_FREQUENCY, 5, 1),
+            new Octave(0x8A378F8A598A62FBL, RIVER_FREQUENCY, 500, 0.002)};
+    private static final Octave[] RIDGE_OCTAVES = {
+            new Octave(0xDD4D88700A5E4D7EL, RIDGE_FREQUENCY, 1, 1, true),
+            new Octave(0x691FAA55BF0F52F7L, RIDGE_FREQUENCY, 20, 0.05, true),
+            new Octave(0x7D635E3DA74EEFE7L, RIDGE_FREQUENCY, 400, 0.0025, true)};
+    private static final Octave[] EROSION_OCTAVES = {
+            new Octave(0xBEF86CF6C75F708DL, EROSION_FREQUENCY, 1, 0.9588),
+            new Octave(0xD5398D722513F0A3L, EROSION_FREQUENCY, 100, 0.005),
+            new Octave(0x3084497B496D8532L, EROSION_FREQUENCY, 1000, 0.00025)};
+    private static final Octave[] TEMPERATURE_OCTAVES = {
+            new Octave(0xADA1CE5C24C4A44FL, TEMPERATURE_FREQUENCY, 1, 0.8888),
+            new Octave(0xEEA0CB5D51C0A447L, TEMPERATURE_FREQUENCY, 50, 0.1111),
+            new Octave(0xF7C6F9389CEEF1A7L, 0.03125, 1, 0.02)};
+    private static final Octave[] HUMIDITY_OCTAVES = {
+            new Octave(0x41C8F1921D50DF82L, HUMIDITY_FREQUENCY, 1, 0.8888),
+            new Octave(0xB935E00850C8416EL, HUMIDITY_FREQUENCY, 50, 0.1111),
+            new Octave(0x9BCC9E0E7A1F3A5CL, 0.03125, 1, 0.02)};
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    /**
+     * Buffers of the batched versions, reused by every batch of a thread and only grown when a batch is larger.
+     * Every buffer has a single user at a time, the values of samples hold the results the other buffers get summed into.
+     */
+    private static final class Scratch {
+
+        private double[][] values(int count) {
+            if (values[0].length < count) for (int map = 0; map < values.length; map++) values[map] = new double[count];
+            return values;
+        }
+
+        private double[] riverBranch(int count) {
+            if (riverBranch.length < count) riverBranch = new double[count];
+            return riverBranch;
+        }
+
+        private double[] x(int count) {
+            if (x.length < count) x = new double[count];
+            return x;
+        }
+
+        private double[] z(int count) {
+            if (z.length < count) z = new double[count];
+            return z;
+        }
+
+        private float[] noise(int count) {
+            if (noise.length < count) noise = new float[count];
+            return noise;
+        }
+
+        private final double[][] values = new double[7][0];
+        private double[] riverBranch = new double[0], x = new double[0], z = new double[0];
+        private float[] noise = new float[0];
+    }
 }
@@ -0,0 +1,144 @@
+package game.server.generation;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of {@link MapSample}s keyed by their world position.
+ * <p>
+ * Neighboring columns share the padding row of their sample grids and structure candidates lie on the same positions
+ * for every LOD, so most of these samples get requested more than once. The cache is split into independently locked
+ * segments to keep the generation threads from contending on a single lock.
+ * <p>
+ * Every segment is a table of small buckets holding the positions in primitive arrays, so a lookup doesn't allocate.
+ * A bucket keeps its entries ordered by their last use and drops the least recently used one when it is full.
+ * Cached samples always contain the biome values and remember the seed they were sampled with, samples of
+ * a previous seed are never returned, even if they were stored after the seed changed.
+ */
+public final class MapSampleCache {
+
+    public static final int CAPACITY = 1 << 16;
+
+    private MapSampleCache() {
+
+    }
+
+    public static MapSample[] getSamples(long[] totalX, long[] totalZ, int count) {
+        long seed = WorldGeneration.SEED;
+        MapSample[] samples = new MapSample[count];
+        int[] missingIndices = new int[count];
+        long[] missingX = new long[count], missingZ = new long[count];
+        int missingCount = 0;
+
+        for (int index = 0; index < count; index++) {
+            samples[index] = getSegment(totalX[index], totalZ[index]).get(totalX[index], totalZ[index], seed);
+            if (samples[index] != null) continue;
+            missingIndices[missingCount] = index;
+            missingX[missingCount] = totalX[index];
+            missingZ[missingCount] = totalZ[index];
+            missingCount++;
+        }
+        hits.add(count - missingCount);
+        misses.add(missingCount);
+        if (missingCount == 0) return samples;
+
+        MapSample[] computedSamples = MapSample.samples(missingX, missingZ, missingCount, true, true);
+        for (int index = 0; index < missingCount; index++) {
+            samples[missingIndices[index]] = computedSamples[index];
+            getSegment(missingX[index], missingZ[index]).put(missingX[index], missingZ[index], seed, computedSamples[index]);
+        }
+        return samples;
+    }
+
+    public static float getHitRate() {
+        long hits = MapSampleCache.hits.sum();
+        long total = hits + misses.sum();
+        return total == 0 ? 0.0F : (float) hits / total;
+    }
+
+    public static int getSize() {
+        long seed = WorldGeneration.SEED;
+        int size = 0;
+        for (Segment segment : SEGMENTS) size += segment.size(seed);
+        return size;
+    }
+
+    public static void clear() {
+        for (Segment segment : SEGMENTS) segment.clear();
+        hits.reset();
+        misses.reset();
+    }
+
+
+    private static Segment getSegment(long totalX, long totalZ) {
+        return SEGMENTS[(int) (hash(totalX, totalZ) >>> 32) & SEGMENT_COUNT - 1];
+    }
+
+    private static long hash(long totalX, long totalZ) {
+        long hash = totalX * 0x9E3779B97F4A7C15L ^ totalZ * 0xC2B2AE3D27D4EB4FL;
+        return hash ^ hash >>> 29;
+    }
+
+    private static final int SEGMENT_COUNT = 16;
+    private static final int BUCKET_SIZE = 4;
+    private static final int BUCKETS_PER_SEGMENT = CAPACITY / SEGMENT_COUNT / BUCKET_SIZE;
+    private static final Segment[] SEGMENTS = new Segment[SEGMENT_COUNT];
+    private static final LongAdder hits = new LongAdder(), misses = new LongAdder();
+
+    static {
+        for (int index = 0; index < SEGMENT_COUNT; index++) SEGMENTS[index] = new Segment();
+    }
+
+    private static final class Segment {
+
+        private synchronized MapSample get(long totalX, long totalZ, long seed) {
+            int start = getBucketStart(totalX, totalZ);
+            for (int entry = start; entry < start + BUCKET_SIZE; entry++) {
+                if (samples[entry] == null || positionsX[entry] != totalX || positionsZ[entry] != totalZ || seeds[entry] != seed) continue;
+                MapSample sample = samples[entry];
+                moveToFront(start, entry, totalX, totalZ, seed, sample);
+                return sample;
+            }
+            return null;
+        }
+
+        private synchronized void put(long totalX, long totalZ, long seed, MapSample sample) {
+            int start = getBucketStart(totalX, totalZ);
+            int entry = start;
+            // Reuses the entry of the same position, otherwise the last and least recently used one
+            while (entry < start + BUCKET_SIZE - 1 && !(positionsX[entry] == totalX && positionsZ[entry] == totalZ && samples[entry] != null)) entry++;
+            moveToFront(start, entry, totalX, totalZ, seed, sample);
+        }
+
+        private synchronized int size(long seed) {
+            int size = 0;
+            for (int entry = 0; entry < samples.length; entry++) if (samples[entry] != null && seeds[entry] == seed) size++;
+            return size;
+        }
+
+        private synchronized void clear() {
+            Arrays.fill(samples, null);
+        }
+
+        private void moveToFront(int start, int entry, long totalX, long totalZ, long seed, MapSample sample) {
+            int length = entry - start;
+            System.arraycopy(positionsX, start, positionsX, start + 1, length);
+            System.arraycopy(positionsZ, start, positionsZ, start + 1, length);
+            System.arraycopy(seeds, start, seeds, start + 1, length);
+            System.arraycopy(samples, start, samples, start + 1, length);
+            positionsX[start] = totalX;
+            positionsZ[start] = totalZ;
+            seeds[start] = seed;
+            samples[start] = sample;
+        }
+
+        private static int getBucketStart(long totalX, long totalZ) {
+            return ((int) hash(totalX, totalZ) & BUCKETS_PER_SEGMENT - 1) * BUCKET_SIZE;
+        }
+
+        private final long[] positionsX = new long[BUCKETS_PER_SEGMENT * BUCKET_SIZE];
+        private final long[] positionsZ = new long[BUCKETS_PER_SEGMENT * BUCKET_SIZE];
+        private final long[] seeds = new long[BUCKETS_PER_SEGMENT * BUCKET_SIZE];
+        private final MapSample[] samples = new MapSample[BUCKETS_PER_SEGMENT * BUCKET_SIZE];
+    }
+}
@@ -0,0 +1,141 @@
+package game.server.generation;
+
+import core.rendering_api.Debug;
+
+import game.player.rendering.MeshCollector;
+import game.server.Chunk;
+import game.server.ChunkID;
+import game.server.World;
+import game.utils.Status;
+import game.utils.Utils;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+
+/**
+ * Tracks which of the six neighbors of a chunk have been generated, so the chunk can be meshed as soon as the last one is.
+ * Not thread safe, all access is guarded by the owning {@link ChunkGenerator}.
+ * <p>
+ * Every chunk waiting to be meshed holds a bit mask of itself and its neighbors. A mask gets initialized from the
+ * world when first needed and updated with every generated chunk afterward. Once all bits are set the chunk is ready.
+ * Ready chunks keep their status until they are out of range, so late generated neighbors never queue them again.
+ * Chunks that failed to mesh get queued again a few times.
+ */
+final class MeshDependencies {
+
+    void chunkGenerated(World world, MeshCollector meshCollector, Chunk chunk, long playerChunkX, long playerChunkY, long playerChunkZ) {
+        long lodPlayerX = playerChunkX >> chunk.LOD;
+        long lodPlayerY = playerChunkY >> chunk.LOD;
+        long lodPlayerZ = playerChunkZ >> chunk.LOD;
+
+        for (int dependency = 0; dependency < DEPENDENCY_COUNT; dependency++) {
+            // The chunk itself is dependency 0 of itself, a neighbor is the opposite dependency of the chunk
+            long chunkX = chunk.X - OFFSETS[dependency][0];
+            long chunkY = chunk.Y - OFFSETS[dependency][1];
+            long chunkZ = chunk.Z - OFFSETS[dependency][2];
+            if (Utils.outsideRenderKeepDistance(lodPlayerX, lodPlayerY, lodPlayerZ, chunkX, chunkY, chunkZ, chunk.LOD)) continue;
+
+            MeshKey key = new MeshKey(new ChunkID(chunkX, chunkY, chunkZ, chunk.LOD), chunk.LOD);
+            if (statuses.containsKey(key) || meshCollector.isMeshed(Utils.getChunkIndex(chunkX, chunkY, chunkZ, chunk.LOD), chunk.LOD)) continue;
+
+            Integer mask = masks.get(key);
+            int newMask = (mask == null ? getGeneratedMask(world, key) : mask) | 1 << dependency;
+            if (newMask != ALL_GENERATED) {
+                masks.put(key, newMask);
+                continue;
+            }
+            masks.remove(key);
+            statuses.put(key, Status.IN_PROGRESS);
+            readyQueue.addLast(key);
+        }
+    }
+
+    MeshKey pollReady() {
+        return readyQueue.pollFirst();
+    }
+
+    /**
+     * Marks a polled chunk as done, or queues it again if it didn't get meshed.
+     */
+    void meshFinished(MeshKey key, boolean meshed) {
+        // Removed as out of range or cleared while meshing
+        if (statuses.get(key) != Status.IN_PROGRESS) return;
+        if (meshed) {
+            statuses.put(key, Status.DONE);
+            failedAttempts.remove(key);
+            return;
+        }
+
+        int attempts = failedAttempts.merge(key, 1, Integer::sum);
+        if (attempts < MAX_MESH_ATTEMPTS) {
+            readyQueue.addLast(key);
+            return;
+        }
+        statuses.remove(key);
+        failedAttempts.remove(key);
+        Debug.err("Gave up meshing %s after %d attempts%n", key.id(), attempts);
+    }
+
+    boolean hasReady() {
+        return !readyQueue.isEmpty();
+    }
+
+    int getReadyCount() {
+        return readyQueue.size();
+    }
+
+    int getWaitingCount() {
+        return masks.size();
+    }
+
+    void removeDistant(long playerChunkX, long playerChunkY, long playerChunkZ) {
+        masks.keySet().removeIf(key -> isDistant(key, playerChunkX, playerChunkY, playerChunkZ));
+        readyQueue.removeIf(key -> isDistant(key, playerChunkX, playerChunkY, playerChunkZ));
+        statuses.keySet().removeIf(key -> isDistant(key, playerChunkX, playerChunkY, playerChunkZ));
+        failedAttempts.keySet().removeIf(key -> isDistant(key, playerChunkX, playerChunkY, playerChunkZ));
+    }
+
+    void clear() {
+        masks.clear();
+        statuses.clear();
+        failedAttempts.clear();
+        readyQueue.clear();
+    }
+
+
+    private static int getGeneratedMask(World world, MeshKey key) {
+        int mask = 0;
+        for (int dependency = 0; dependency < DEPENDENCY_COUNT; dependency++) {
+            long chunkX = key.id().chunkX() + OFFSETS[dependency][0];
+            long chunkY = key.id().chunkY() + OFFSETS[dependency][1];
+            long chunkZ = key.id().chunkZ() + OFFSETS[dependency][2];
+            if (isGenerated(world, chunkX, chunkY, chunkZ, key.lod())) mask |= 1 << dependency;
+        }
+        return mask;
+    }
+
+    private static boolean isGenerated(World world, long chunkX, long chunkY, long chunkZ, int lod) {
+        Chunk chunk = world.getChunk(chunkX, chunkY, chunkZ, lod);
+        return chunk != null && chunk.ID.equals(new ChunkID(chunkX, chunkY, chunkZ, lod)) && chunk.getGenerationStatus() == Status.DONE;
+    }
+
+    private static boolean isDistant(MeshKey key, long playerChunkX, long playerChunkY, long playerChunkZ) {
+        int lod = key.lod();
+        return Utils.outsideRenderKeepDistance(playerChunkX >> lod, playerChunkY >> lod, playerChunkZ >> lod,
+                key.id().chunkX(), key.id().chunkY(), key.id().chunkZ(), lod);
+    }
+
+    private final HashMap<MeshKey, Integer> masks = new HashMap<>();
+    // In progress while queued or meshing, done once meshed
+    private final HashMap<MeshKey, Status> statuses = new HashMap<>();
+    private final HashMap<MeshKey, Integer> failedAttempts = new HashMap<>();
+    private final ArrayDeque<MeshKey> readyQueue = new ArrayDeque<>();
+
+    private static final int DEPENDENCY_COUNT = 7;
+    private static final int ALL_GENERATED = (1 << DEPENDENCY_COUNT) - 1;
+    private static final int MAX_MESH_ATTEMPTS = 3;
+    private static final long[][] OFFSETS = {{0, 0, 0}, {0, 0, 1}, {0, 1, 0}, {1, 0, 0}, {0, 0, -1}, {0, -1, 0}, {-1, 0, 0}};
+
+    record MeshKey(ChunkID id, int lod) {
+    }
+}
@@ -2,6 +2,7 @@ package game.server.generation;
 
 import core.assets.Asset;
 import game.server.materials_data.MaterialsData;
+import game.server.materials_data.SparseBitMap;
 
 import static game.utils.Constants.*;
 
@@ -25,10 +26,19 @@ public record Structure(int sizeX, int sizeY, int sizeZ, MaterialsData materials
                 MaterialsData.getCompressedMaterials(sizeBits, bitMap, material));
     }
 
+    public Structure(int sizeBits, byte material, SparseBitMap bitMap) {
+        this(1 << sizeBits, 1 << sizeBits, 1 << sizeBits,
+                MaterialsData.getCompressedMaterials(sizeBits, bitMap, material));
+    }
+
     public Structure(int sizeX, int sizeY, int sizeZ, int sizeBits, byte material, long[] bitMap) {
         this(sizeX, sizeY, sizeZ, MaterialsData.getCompressedMaterials(sizeBits, bitMap, material));
     }
 
+    public Structure(int sizeX, int sizeY, int sizeZ, int sizeBits, byte material, SparseBitMap bitMap) {
+        this(sizeX, sizeY, sizeZ, MaterialsData.getCompressedMaterials(sizeBits, bitMap, material));
+    }
+
     public byte getMaterial(int structureX, int structureY, int structureZ) {
         if (!contains(structureX, structureY, structureZ)) return AIR;
         return materials.getMaterial(structureX, structureY, structureZ);
@@ -5,18 +5,72 @@ import core.utils.ByteArrayList;
 import static game.utils.Constants.*;
 import static game.server.materials_data.MaterialsData.*;
 
+/**
+ * Compresses a Z-ordered bit map of a single material into the octree format of {@link MaterialsData}.
+ * <p>
+ * Like the {@link ByteArrayCompressor} the homogeneity of every node is computed bottom up first, so every bit of
+ * the bit map is only looked at once. Empty and full pages of the {@link SparseBitMap} are homogenous nodes already,
+ * so only the nodes inside mixed pages are computed from the bits.
+ */
 final class BitMapCompressor {
 
     private BitMapCompressor() {
 
     }
 
-    static int compressMaterials(ByteArrayList data, long[] bitMap, byte material, int sizeBits, int startIndex, int inChunkX, int inChunkY, int inChunkZ) {
-        if (isHomogenous(MaterialsData.getUncompressedIndex(inChunkX, inChunkY, inChunkZ), 1 << sizeBits * 3, bitMap))
-            return addHomogenous(data, bitMap, material, inChunkX, inChunkY, inChunkZ);
+    static void compressMaterials(ByteArrayList data, SparseBitMap bitMap, byte material, int sizeBits) {
+        byte[][] levels = sizeBits <= CHUNK_SIZE_BITS ? CACHED_LEVELS.get() : createLevels(sizeBits);
+        computeLevels(levels, bitMap, sizeBits);
+        compressMaterials(data, bitMap, levels, material, sizeBits, 0, 0);
+    }
+
+
+    private static void computeLevels(byte[][] levels, SparseBitMap bitMap, int sizeBits) {
+        // Nodes below the page level of a homogenous page are never looked at, so they are left as they are
+        int pageSizeBits = Math.min(sizeBits, SparseBitMap.PAGE_SIZE_BITS), pageCount = 1 << (sizeBits - pageSizeBits) * 3;
+        for (int page = 0; page < pageCount; page++) {
+            int startIndex = page << pageSizeBits * 3, count = 1 << pageSizeBits * 3;
+            if (bitMap.isEmpty(startIndex, count)) levels[pageSizeBits][page] = EMPTY;
+            else if (bitMap.isFull(startIndex, count)) levels[pageSizeBits][page] = FULL;
+            else computePageLevels(levels, bitMap, pageSizeBits, page);
+        }
+
+        for (int level = pageSizeBits + 1; level <= sizeBits; level++) computeLevel(levels, level, 0, 1 << (sizeBits - level) * 3);
+    }
+
+    private static void computePageLevels(byte[][] levels, SparseBitMap bitMap, int pageSizeBits, int page) {
+        byte[] lowestLevel = levels[1];
+        for (int node = page << (pageSizeBits - 1) * 3, end = page + 1 << (pageSizeBits - 1) * 3; node < end; node++) {
+            byte bitMapByte = getBitMapByte(bitMap, node);
+            lowestLevel[node] = bitMapByte == 0 ? EMPTY : bitMapByte == -1 ? FULL : MIXED;
+        }
+
+        for (int level = 2; level <= pageSizeBits; level++)
+            computeLevel(levels, level, page << (pageSizeBits - level) * 3, page + 1 << (pageSizeBits - level) * 3);
+    }
+
+    private static void computeLevel(byte[][] levels, int level, int firstNode, int endNode) {
+        byte[] children = levels[level - 1], nodes = levels[level];
+        for (int node = firstNode; node < endNode; node++) {
+            int child = node << 3;
+            byte value = children[child];
+            boolean homogenous = value != MIXED
+                    && children[child + 1] == value
+                    && children[child + 2] == value
+                    && children[child + 3] == value
+                    && children[child + 4] == value
+                    && children[child + 5] == value
+                    && children[child + 6] == value
+                    && children[child + 7] == value;
+            nodes[node] = homogenous ? value : MIXED;
+        }
+    }
+
+    private static int compressMaterials(ByteArrayList data, SparseBitMap bitMap, byte[][] levels, byte material, int sizeBits, int node, int startIndex) {
+        byte value = levels[sizeBits][node];
+        if (value != MIXED) return addHomogenous(data, value == FULL ? material : AIR);
         if (sizeBits <= 1) {
-            int uncompressedIndex = getUncompressedIndex(inChunkX, inChunkY, inChunkZ);
-            byte target = getBitMapByte(bitMap, uncompressedIndex >> 3);
+            byte target = getBitMapByte(bitMap, node);
             data.add((byte) (getType(material) | CONTAINS_TRANSPARENT | DETAIL));
             data.add((target & 1 << 0) == 0 ? AIR : material);
             data.add((target & 1 << 2) == 0 ? AIR : material);
@@ -29,55 +83,40 @@ final class BitMapCompressor {
             return DETAIL_BYTE_SIZE;
         }
 
-        int nextSize = 1 << --sizeBits;
         int offset = SPLITTER_BYTE_SIZE, index = data.size();
         data.add(SPLITTER);
         data.pad(SPLITTER_BYTE_SIZE - 1);
 
-        offset += compressMaterials(data, bitMap, material, sizeBits, startIndex + offset, inChunkX, inChunkY, inChunkZ);
-        setOffset(data, offset, startIndex + 1);
-        offset += compressMaterials(data, bitMap, material, sizeBits, startIndex + offset, inChunkX, inChunkY, inChunkZ + nextSize);
-        setOffset(data, offset, startIndex + 4);
-        offset += compressMaterials(data, bitMap, material, sizeBits, startIndex + offset, inChunkX, inChunkY + nextSize, inChunkZ);
-        setOffset(data, offset, startIndex + 7);
-        offset += compressMaterials(data, bitMap, material, sizeBits, startIndex + offset, inChunkX, inChunkY + nextSize, inChunkZ + nextSize);
-        setOffset(data, offset, startIndex + 10);
-        offset += compressMaterials(data, bitMap, material, sizeBits, startIndex + offset, inChunkX + nextSize, inChunkY, inChunkZ);
-        setOffset(data, offset, startIndex + 13);
-        offset += compressMaterials(data, bitMap, material, sizeBits, startIndex + offset, inChunkX + nextSize, inChunkY, inChunkZ + nextSize);
-        setOffset(data, offset, startIndex + 16);
-        offset += compressMaterials(data, bitMap, material, sizeBits, startIndex + offset, inChunkX + nextSize, inChunkY + nextSize, inChunkZ);
-        setOffset(data, offset, startIndex + 19);
-        offset += compressMaterials(data, bitMap, material, sizeBits, startIndex + offset, inChunkX + nextSize, inChunkY + nextSize, inChunkZ + nextSize);
+        int firstChild = node << 3;
+        sizeBits--;
+        offset += compressMaterials(data, bitMap, levels, material, sizeBits, firstChild, startIndex + offset);
+        for (int child = 1; child < 8; child++) {
+            setOffset(data, offset, startIndex + child * 3 - 2);
+            offset += compressMaterials(data, bitMap, levels, material, sizeBits, firstChild + child, startIndex + offset);
+        }
 
         data.set((byte) (getSplitterTypes(data, index) | SPLITTER), index);
         return offset;
     }
 
-
-    private static int addHomogenous(ByteArrayList data, long[] bitMap, byte material, int inChunkX, int inChunkY, int inChunkZ) {
-        material = getBitMapByte(bitMap, getUncompressedIndex(inChunkX, inChunkY, inChunkZ) >> 3) == -1 ? material : AIR;
+    private static int addHomogenous(ByteArrayList data, byte material) {
         data.add((byte) (getType(material) | HOMOGENOUS));
         data.add(material);
         return HOMOGENOUS_BYTE_SIZE;
     }
 
-    private static boolean isHomogenous(int startIndex, int length, long[] bitMap) {
-        if (length <= 8) {
-            byte bitMapByte = getBitMapByte(bitMap, startIndex >> 3);
-            return bitMapByte == 0 || bitMapByte == -1;
-        }
-
-        long target = bitMap[startIndex >> 6];
-        if (target != 0 && target != -1) return false;
-        int endIndex = startIndex + length >> 6;
-
-        for (int index = startIndex + 64 >> 6; index < endIndex; index++)
-            if (bitMap[index] != target) return false;
-        return true;
+    private static byte getBitMapByte(SparseBitMap bitMap, int byteIndex) {
+        return (byte) (bitMap.getLong(byteIndex >> 3) >> (byteIndex & 7) * 8 & 0xFF);
     }
 
-    private static byte getBitMapByte(long[] bitMap, int byteIndex) {
-        return (byte) (bitMap[byteIndex >> 3] >> (byteIndex & 7) * 8 & 0xFF);
+    private static byte[][] createLevels(int sizeBits) {
+        byte[][] levels = new byte[sizeBits + 1][];
+        for (int level = 1; level <= sizeBits; level++) levels[level] = new byte[1 << (sizeBits - level) * 3];
+        return levels;
     }
+
+    private static final byte MIXED = -1, EMPTY = 0, FULL = 1;
+
+    // Large enough for every size up to CHUNK_SIZE_BITS, only bigger structures allocate their own levels
+    private static final ThreadLocal<byte[][]> CACHED_LEVELS = ThreadLocal.withInitial(() -> createLevels(CHUNK_SIZE_BITS));
 }
@@ -2,10 +2,20 @@ package game.server.materials_data;
 
 import core.utils.ByteArrayList;
 
-import java.nio.ByteBuffer;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
 
 import static game.server.materials_data.MaterialsData.*;
+import static game.utils.Constants.CHUNK_SIZE_BITS;
 
+/**
+ * Compresses a Z-ordered byte array into the octree format of {@link MaterialsData}.
+ * <p>
+ * The homogeneity of every node is computed bottom up in one pass over the materials, where a node is homogenous
+ * if its eight children are homogenous and of the same material. The tree is then written top down without looking
+ * at the materials again, except for the details.
+ */
 final class ByteArrayCompressor {
 
     private ByteArrayCompressor() {
@@ -13,88 +23,91 @@ final class ByteArrayCompressor {
     }
 
     static void compressMaterials(ByteArrayList data, byte[] uncompressedMaterials, int sizeBits) {
-        ByteBuffer byteBuffer = ByteBuffer.wrap(uncompressedMaterials);
-        compressMaterials(data, byteBuffer, sizeBits, 0, 0, 0, 0);
+        short[][] levels = sizeBits <= CHUNK_SIZE_BITS ? CACHED_LEVELS.get() : createLevels(sizeBits);
+        computeLevels(levels, uncompressedMaterials, sizeBits);
+        compressMaterials(data, uncompressedMaterials, levels, sizeBits, 0, 0);
     }
 
-    private static int compressMaterials(ByteArrayList data, ByteBuffer uncompressedMaterials, int sizeBits, int startIndex, int inChunkX, int inChunkY, int inChunkZ) {
-        if (isHomogenous(MaterialsData.getUncompressedIndex(inChunkX, inChunkY, inChunkZ), 1 << sizeBits * 3, uncompressedMaterials))
-            return addHomogenous(data, uncompressedMaterials, inChunkX, inChunkY, inChunkZ);
-        if (sizeBits <= 1) {
-            long materials = uncompressedMaterials.getLong(getUncompressedIndex(inChunkX, inChunkY, inChunkZ));
-            data.add((byte) (getTypes(materials) | DETAIL));
-            data.add((byte) (materials >> 56));
-            data.add((byte) (materials >> 40));
-            data.add((byte) (materials >> 48));
-            data.add((byte) (materials >> 32));
-            data.add((byte) (materials >> 24));
-            data.add((byte) (materials >> 8));
-            data.add((byte) (materials >> 16));
-            data.add((byte) materials);
-            return DETAIL_BYTE_SIZE;
+
+    private static void computeLevels(short[][] levels, byte[] uncompressedMaterials, int sizeBits) {
+        short[] lowestLevel = levels[1];
+        for (int node = 0, nodeCount = 1 << (sizeBits - 1) * 3; node < nodeCount; node++) {
+            long materials = (long) LONG_VIEW.get(uncompressedMaterials, node << 3);
+            long material = materials & 0xFF;
+            lowestLevel[node] = materials == material * BROADCAST ? (short) material : MIXED;
+        }
+
+        for (int level = 2; level <= sizeBits; level++) {
+            short[] children = levels[level - 1], nodes = levels[level];
+            for (int node = 0, nodeCount = 1 << (sizeBits - level) * 3; node < nodeCount; node++) {
+                int child = node << 3;
+                short value = children[child];
+                boolean homogenous = value != MIXED
+                        && children[child + 1] == value
+                        && children[child + 2] == value
+                        && children[child + 3] == value
+                        && children[child + 4] == value
+                        && children[child + 5] == value
+                        && children[child + 6] == value
+                        && children[child + 7] == value;
+                nodes[node] = homogenous ? value : MIXED;
+            }
         }
+    }
+
+    private static int compressMaterials(ByteArrayList data, byte[] uncompressedMaterials, short[][] levels, int sizeBits, int node, int startIndex) {
+        short value = levels[sizeBits][node];
+        if (value != MIXED) return addHomogenous(data, (byte) value);
+        if (sizeBits <= 1) return addDetail(data, uncompressedMaterials, node << 3);
 
-        int nextSize = 1 << --sizeBits;
         int offset = SPLITTER_BYTE_SIZE, index = data.size();
         data.add(SPLITTER);
         data.pad(SPLITTER_BYTE_SIZE - 1);
 
-        offset += compressMaterials(data, uncompressedMaterials, sizeBits, startIndex + offset, inChunkX, inChunkY, inChunkZ);
-        setOffset(data, offset, startIndex + 1);
-        offset += compressMaterials(data, uncompressedMaterials, sizeBits, startIndex + offset, inChunkX, inChunkY, inChunkZ + nextSize);
-        setOffset(data, offset, startIndex + 4);
-        offset += compressMaterials(data, uncompressedMaterials, sizeBits, startIndex + offset, inChunkX, inChunkY + nextSize, inChunkZ);
-        setOffset(data, offset, startIndex + 7);
-        offset += compressMaterials(data, uncompressedMaterials, sizeBits, startIndex + offset, inChunkX, inChunkY + nextSize, inChunkZ + nextSize);
-        setOffset(data, offset, startIndex + 10);
-        offset += compressMaterials(data, uncompressedMaterials, sizeBits, startIndex + offset, inChunkX + nextSize, inChunkY, inChunkZ);
-        setOffset(data, offset, startIndex + 13);
-        offset += compressMaterials(data, uncompressedMaterials, sizeBits, startIndex + offset, inChunkX + nextSize, inChunkY, inChunkZ + nextSize);
-        setOffset(data, offset, startIndex + 16);
-        offset += compressMaterials(data, uncompressedMaterials, sizeBits, startIndex + offset, inChunkX + nextSize, inChunkY + nextSize, inChunkZ);
-        setOffset(data, offset, startIndex + 19);
-        offset += compressMaterials(data, uncompressedMaterials, sizeBits, startIndex + offset, inChunkX + nextSize, inChunkY + nextSize, inChunkZ + nextSize);
+        int firstChild = node << 3;
+        sizeBits--;
+        offset += compressMaterials(data, uncompressedMaterials, levels, sizeBits, firstChild, startIndex + offset);
+        for (int child = 1; child < 8; child++) {
+            setOffset(data, offset, startIndex + child * 3 - 2);
+            offset += compressMaterials(data, uncompressedMaterials, levels, sizeBits, firstChild + child, startIndex + offset);
+        }
 
         data.set((byte) (getSplitterTypes(data, index) | SPLITTER), index);
         return offset;
     }
 
-    private static boolean isHomogenous(int startIndex, int length, ByteBuffer uncompressedMaterials) {
-        long target = uncompressedMaterials.getLong(startIndex);
-        if (!isHomogenous(target)) return false;
-        int endIndex = startIndex + length;
-        for (int index = startIndex + 8; index < endIndex; index += 8)
-            if (uncompressedMaterials.getLong(index) != target) return false;
-        return true;
-    }
-
-    private static int addHomogenous(ByteArrayList data, ByteBuffer uncompressedMaterials, int inChunkX, int inChunkY, int inChunkZ) {
-        int index = getUncompressedIndex(inChunkX, inChunkY, inChunkZ);
-        byte material = (byte) (uncompressedMaterials.getLong(index) >> (index & 7) * 8);
+    private static int addHomogenous(ByteArrayList data, byte material) {
         data.add((byte) (getType(material) | HOMOGENOUS));
         data.add(material);
         return HOMOGENOUS_BYTE_SIZE;
     }
 
-    private static boolean isHomogenous(long materials) {
-        byte material = (byte) materials;
-        return (byte) (materials >> 8) == material
-                && (byte) (materials >> 16) == material
-                && (byte) (materials >> 24) == material
-                && (byte) (materials >> 32) == material
-                && (byte) (materials >> 40) == material
-                && (byte) (materials >> 48) == material
-                && (byte) (materials >> 56) == material;
+    private static int addDetail(ByteArrayList data, byte[] uncompressedMaterials, int index) {
+        int types = 0;
+        for (int offset = 0; offset < 8; offset++) types |= getType(uncompressedMaterials[index + offset]);
+
+        data.add((byte) (types | DETAIL));
+        data.add(uncompressedMaterials[index]);
+        data.add(uncompressedMaterials[index + 2]);
+        data.add(uncompressedMaterials[index + 1]);
+        data.add(uncompressedMaterials[index + 3]);
+        data.add(uncompressedMaterials[index + 4]);
+        data.add(uncompressedMaterials[index + 6]);
+        data.add(uncompressedMaterials[index + 5]);
+        data.add(uncompressedMaterials[index + 7]);
+        return DETAIL_BYTE_SIZE;
     }
 
-    private static int getTypes(long materials) {
-        return getType((byte) materials)
-                | getType((byte) (materials >> 8))
-                | getType((byte) (materials >> 16))
-                | getType((byte) (materials >> 24))
-                | getType((byte) (materials >> 32))
-                | getType((byte) (materials >> 40))
-                | getType((byte) (materials >> 48))
-                | getType((byte) (materials >> 56));
+    private static short[][] createLevels(int sizeBits) {
+        short[][] levels = new short[sizeBits + 1][];
+        for (int level = 1; level <= sizeBits; level++) levels[level] = new short[1 << (sizeBits - level) * 3];
+        return levels;
     }
+
+    private static final short MIXED = -1;
+    private static final long BROADCAST = 0x0101010101010101L;
+    private static final VarHandle LONG_VIEW = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    // Large enough for every size up to CHUNK_SIZE_BITS, only bigger structures allocate their own levels
+    private static final ThreadLocal<short[][]> CACHED_LEVELS = ThreadLocal.withInitial(() -> createLevels(CHUNK_SIZE_BITS));
 }
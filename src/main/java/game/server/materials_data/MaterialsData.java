@@ -4,6 +4,7 @@ import core.utils.ByteArrayList;
 import core.utils.IntArrayList;
 import core.utils.MathUtils;
 
+import game.assets.StructureCache;
 import game.player.interaction.PlaceMode;
 import game.player.interaction.ShapePlaceable;
 import game.player.particles.ParticleCollector;
@@ -16,6 +17,7 @@ import game.server.material.Material;
 import game.server.material.Properties;
 import game.settings.IntSettings;
 import game.settings.OptionSettings;
+import game.settings.ToggleSettings;
 import game.utils.Utils;
 
 import org.joml.Vector3i;
@@ -43,61 +45,72 @@ public final class MaterialsData {
 
     public static MaterialsData getCompressedMaterials(int sizeBits, byte[] uncompressedMaterials) {
         if (sizeBits == 0) return new MaterialsData(0, uncompressedMaterials[0]);
-        ByteArrayList dataList = new ByteArrayList(1000);
+        ByteArrayList dataList = getCompressionBuffer();
         ByteArrayCompressor.compressMaterials(dataList, uncompressedMaterials, sizeBits);
         return new MaterialsData(sizeBits, dataList.toArray());
     }
 
     public static MaterialsData getCompressedMaterials(int sizeBits, long[] bitMap, byte material) {
+        return getCompressedMaterials(sizeBits, SparseBitMap.of(bitMap, sizeBits), material);
+    }
+
+    public static MaterialsData getCompressedMaterials(int sizeBits, SparseBitMap bitMap, byte material) {
         if (sizeBits == 0) return new MaterialsData(0, material);
-        ByteArrayList dataList = new ByteArrayList(1000);
-        BitMapCompressor.compressMaterials(dataList, bitMap, material, sizeBits, 0, 0, 0, 0);
+        ByteArrayList dataList = getCompressionBuffer();
+        BitMapCompressor.compressMaterials(dataList, bitMap, material, sizeBits);
         return new MaterialsData(sizeBits, dataList.toArray());
     }
 
     public static void fillStructureMaterialsInto(byte[] uncompressedMaterials, Structure structure, byte transform, int lod,
                                                   Vector3i targetStart, Vector3i sourceStart, Vector3i size, boolean forceOverride) {
-        MaterialsData source = structure.materials();
-        if ((transform & Structure.MIRROR_X) != 0) sourceStart.x = sourceStart.x + (1 << source.totalSizeBits) - structure.sizeX(transform);
-        if (((transform & Structure.MIRROR_Z) == 0) == ((transform & Structure.ROTATE_90) != 0))
-            sourceStart.z = sourceStart.z + (1 << source.totalSizeBits) - structure.sizeZ(transform);
-
-        synchronized (source) {
-            source.fillStructureMaterialsInto(uncompressedMaterials, transform, lod, targetStart, sourceStart, size, forceOverride, source.totalSizeBits, 0, 0, 0, 0);
-        }
+        MaterialsData source = getStructureSource(structure, transform);
+        copyStructureMaterialsInto(uncompressedMaterials, source, structure, transform, lod, targetStart, sourceStart, size, forceOverride);
     }
 
     // Object API
     public byte getMaterial(int inChunkX, int inChunkY, int inChunkZ) {
+        byte[] data = this.data;
         int index = 0, sizeBits = totalSizeBits;
-        synchronized (this) {
-            while (true) { // Scary but should be fine
-                byte identifier = getIdentifier(index);
+        while (true) { // Scary but should be fine
+            byte identifier = getIdentifier(data, index);
 
-                if (identifier == HOMOGENOUS) return data[index + 1];
-                if (identifier == DETAIL) return data[index + getInDetailIndex(inChunkX, inChunkY, inChunkZ)];
+            if (identifier == HOMOGENOUS) return data[index + 1];
+            if (identifier == DETAIL) return data[index + getInDetailIndex(inChunkX, inChunkY, inChunkZ)];
 //            if (identifier == SPLITTER)
-                index += getOffset(index, inChunkX, inChunkY, inChunkZ, --sizeBits);
-            }
+            index += getOffset(data, index, inChunkX, inChunkY, inChunkZ, --sizeBits);
         }
     }
 
-    public void fillUncompressedMaterialsInto(byte[] array) {
-        synchronized (this) {
-            fillUncompressedMaterialsInto(array, totalSizeBits, 0, 0, 0, 0);
+    /**
+     * @return The material at the given position in the lowest byte and the size bits of the homogenous node containing it above,
+     * the size bits are 0 if the position lies in a detail.
+     */
+    public int getMaterialAndNodeSizeBits(int inChunkX, int inChunkY, int inChunkZ) {
+        byte[] data = this.data;
+        int index = 0, sizeBits = totalSizeBits;
+        while (true) {
+            byte identifier = getIdentifier(data, index);
+
+            if (identifier == HOMOGENOUS) return sizeBits << 8 | data[index + 1] & 0xFF;
+            if (identifier == DETAIL) return data[index + getInDetailIndex(inChunkX, inChunkY, inChunkZ)] & 0xFF;
+//            if (identifier == SPLITTER)
+            index += getOffset(data, index, inChunkX, inChunkY, inChunkZ, --sizeBits);
         }
     }
 
+    public void fillUncompressedMaterialsInto(byte[] array) {
+        snapshot().fillUncompressedMaterialsInto(array, totalSizeBits, 0, 0, 0, 0);
+    }
+
     public void fillSideLayerInto(ByteArrayList materials, int side, int startIndex) {
-        synchronized (this) {
-            switch (side) {
-                case NORTH -> fillNorthLayerInto(materials, startIndex);
-                case TOP -> fillTopLayerInto(materials, startIndex);
-                case WEST -> fillWestLayerInto(materials, startIndex);
-                case SOUTH -> fillSouthLayerInto(materials, startIndex);
-                case BOTTOM -> fillBottomLayerInto(materials, startIndex);
-                case EAST -> fillEastLayerInto(materials, startIndex);
-            }
+        MaterialsData snapshot = snapshot();
+        switch (side) {
+            case NORTH -> snapshot.fillNorthLayerInto(materials, startIndex);
+            case TOP -> snapshot.fillTopLayerInto(materials, startIndex);
+            case WEST -> snapshot.fillWestLayerInto(materials, startIndex);
+            case SOUTH -> snapshot.fillSouthLayerInto(materials, startIndex);
+            case BOTTOM -> snapshot.fillBottomLayerInto(materials, startIndex);
+            case EAST -> snapshot.fillEastLayerInto(materials, startIndex);
         }
     }
 
@@ -110,17 +123,13 @@ public final class MaterialsData {
         Vector3i sourceStart = new Vector3i(startX, startY, startZ);
         Vector3i size = new Vector3i(lengthX, lengthY, lengthZ);
 
-        synchronized (this) {
-            fillUncompressedMaterialsInto(array, 0, targetStart, sourceStart, size, totalSizeBits, 0, 0, 0, 0);
-        }
+        snapshot().fillUncompressedMaterialsInto(array, 0, targetStart, sourceStart, size, totalSizeBits, 0, 0, 0, 0);
     }
 
     public void storeMaterial(int inChunkX, int inChunkY, int inChunkZ,
                               int countX, int countY, int countZ,
                               int lod, ShapePlaceable placeable) {
         if (countX <= 0 || countY <= 0 || countZ <= 0) return;
-        byte[] uncompressedMaterials = new byte[1 << totalSizeBits * 3];
-        fillUncompressedMaterialsInto(uncompressedMaterials);
 
         int lengthX = placeable.getLengthX();
         int lengthY = placeable.getLengthY();
@@ -130,49 +139,80 @@ public final class MaterialsData {
         int startY = Math.max(0, -inChunkY / Math.max(1, lengthY >> lod));
         int startZ = Math.max(0, -inChunkZ / Math.max(1, lengthZ >> lod));
 
-        for (int x = startX; x < countX && inChunkX + (x * lengthX >> lod) < 1 << totalSizeBits; x++)
-            for (int y = startY; y < countY && inChunkY + (y * lengthY >> lod) < 1 << totalSizeBits; y++)
-                for (int z = startZ; z < countZ && inChunkZ + (z * lengthZ >> lod) < 1 << totalSizeBits; z++) {
-                    int shapeInChunkX = inChunkX + (x * lengthX >> lod);
-                    int shapeInChunkY = inChunkY + (y * lengthY >> lod);
-                    int shapeInChunkZ = inChunkZ + (z * lengthZ >> lod);
-                    storeMaterial(shapeInChunkX, shapeInChunkY, shapeInChunkZ, uncompressedMaterials, lod, placeable);
-                }
+        int endX = getShapesEnd(inChunkX, startX, countX, lengthX, lod);
+        int endY = getShapesEnd(inChunkY, startY, countY, lengthY, lod);
+        int endZ = getShapesEnd(inChunkZ, startZ, countZ, lengthZ, lod);
+        if (startX >= endX || startY >= endY || startZ >= endZ) return;
+
+        // A shape only writes into its preferred size, which is a power of two not smaller than any of its lengths
+        int extent = Math.max(1, placeable.getPreferredSizePowOf2() >> lod), size = 1 << totalSizeBits;
+        int minX = Math.max(0, inChunkX + (startX * lengthX >> lod)), maxX = Math.min(size, inChunkX + ((endX - 1) * lengthX >> lod) + extent) - 1;
+        int minY = Math.max(0, inChunkY + (startY * lengthY >> lod)), maxY = Math.min(size, inChunkY + ((endY - 1) * lengthY >> lod) + extent) - 1;
+        int minZ = Math.max(0, inChunkZ + (startZ * lengthZ >> lod)), maxZ = Math.min(size, inChunkZ + ((endZ - 1) * lengthZ >> lod) + extent) - 1;
+
+        int nodeSizeBits = getEditedNodeSizeBits(minX ^ maxX | minY ^ maxY | minZ ^ maxZ);
+        int nodeX = minX >> nodeSizeBits << nodeSizeBits;
+        int nodeY = minY >> nodeSizeBits << nodeSizeBits;
+        int nodeZ = minZ >> nodeSizeBits << nodeSizeBits;
 
-        compressIntoData(uncompressedMaterials);
+        synchronized (this) {
+            byte[] uncompressedMaterials = getEditBuffer(nodeSizeBits);
+            fillNodeInto(uncompressedMaterials, nodeSizeBits, nodeX, nodeY, nodeZ);
+
+            for (int x = startX; x < endX; x++)
+                for (int y = startY; y < endY; y++)
+                    for (int z = startZ; z < endZ; z++) {
+                        int shapeInChunkX = inChunkX + (x * lengthX >> lod);
+                        int shapeInChunkY = inChunkY + (y * lengthY >> lod);
+                        int shapeInChunkZ = inChunkZ + (z * lengthZ >> lod);
+                        storeMaterial(shapeInChunkX, shapeInChunkY, shapeInChunkZ, nodeX, nodeY, nodeZ, uncompressedMaterials, lod, placeable);
+                    }
+
+            storeNode(uncompressedMaterials, nodeSizeBits, nodeX, nodeY, nodeZ);
+        }
     }
 
     public void storeStructureMaterials(int inChunkX, int inChunkY, int inChunkZ,
                                         int startX, int startY, int startZ,
                                         int lengthX, int lengthY, int lengthZ,
                                         int lod, Structure structure, byte transform, boolean forceOverride) {
+        if (lengthX <= 0 || lengthY <= 0 || lengthZ <= 0) return;
 
-        byte[] uncompressedMaterials = new byte[1 << totalSizeBits * 3];
-        Vector3i targetStart = new Vector3i(inChunkX, inChunkY, inChunkZ);
+        int size = 1 << totalSizeBits;
+        int minX = Math.max(0, inChunkX), maxX = Math.min(size, inChunkX + (lengthX - 1 >> lod) + 1) - 1;
+        int minY = Math.max(0, inChunkY), maxY = Math.min(size, inChunkY + (lengthY - 1 >> lod) + 1) - 1;
+        int minZ = Math.max(0, inChunkZ), maxZ = Math.min(size, inChunkZ + (lengthZ - 1 >> lod) + 1) - 1;
+
+        int nodeSizeBits = getEditedNodeSizeBits(minX ^ maxX | minY ^ maxY | minZ ^ maxZ);
+        int nodeX = minX >> nodeSizeBits << nodeSizeBits;
+        int nodeY = minY >> nodeSizeBits << nodeSizeBits;
+        int nodeZ = minZ >> nodeSizeBits << nodeSizeBits;
+
+        Vector3i targetStart = new Vector3i(inChunkX - nodeX, inChunkY - nodeY, inChunkZ - nodeZ);
         Vector3i sourceStart = new Vector3i(startX, startY, startZ);
-        Vector3i size = new Vector3i(lengthX, lengthY, lengthZ);
+        Vector3i lengths = new Vector3i(lengthX, lengthY, lengthZ);
 
-        fillUncompressedMaterialsInto(uncompressedMaterials);
-        fillStructureMaterialsInto(uncompressedMaterials, structure, transform, lod, targetStart, sourceStart, size, forceOverride);
-        compressIntoData(uncompressedMaterials);
+        // Transforming the structure may take a while, so it happens before locking
+        MaterialsData source = getStructureSource(structure, transform);
+        synchronized (this) {
+            byte[] uncompressedMaterials = getEditBuffer(nodeSizeBits);
+            fillNodeInto(uncompressedMaterials, nodeSizeBits, nodeX, nodeY, nodeZ);
+            copyStructureMaterialsInto(uncompressedMaterials, source, structure, transform, lod, targetStart, sourceStart, lengths, forceOverride);
+            storeNode(uncompressedMaterials, nodeSizeBits, nodeX, nodeY, nodeZ);
+        }
     }
 
     public void storeLowerLODChunks(Chunk chunk0, Chunk chunk1, Chunk chunk2, Chunk chunk3,
                                     Chunk chunk4, Chunk chunk5, Chunk chunk6, Chunk chunk7) {
 
-        byte[] uncompressedMaterials = new byte[CHUNK_SIZE * CHUNK_SIZE * CHUNK_SIZE];
-        fillUncompressedMaterialsInto(uncompressedMaterials);
-
-        storeLowerLODChunk(chunk0, uncompressedMaterials, 0, 0, 0);
-        storeLowerLODChunk(chunk1, uncompressedMaterials, 0, 0, CHUNK_SIZE / 2);
-        storeLowerLODChunk(chunk2, uncompressedMaterials, 0, CHUNK_SIZE / 2, 0);
-        storeLowerLODChunk(chunk3, uncompressedMaterials, 0, CHUNK_SIZE / 2, CHUNK_SIZE / 2);
-        storeLowerLODChunk(chunk4, uncompressedMaterials, CHUNK_SIZE / 2, 0, 0);
-        storeLowerLODChunk(chunk5, uncompressedMaterials, CHUNK_SIZE / 2, 0, CHUNK_SIZE / 2);
-        storeLowerLODChunk(chunk6, uncompressedMaterials, CHUNK_SIZE / 2, CHUNK_SIZE / 2, 0);
-        storeLowerLODChunk(chunk7, uncompressedMaterials, CHUNK_SIZE / 2, CHUNK_SIZE / 2, CHUNK_SIZE / 2);
-
-        compressIntoData(uncompressedMaterials);
+        storeLowerLODChunk(chunk0, 0, 0, 0);
+        storeLowerLODChunk(chunk1, 0, 0, CHUNK_SIZE / 2);
+        storeLowerLODChunk(chunk2, 0, CHUNK_SIZE / 2, 0);
+        storeLowerLODChunk(chunk3, 0, CHUNK_SIZE / 2, CHUNK_SIZE / 2);
+        storeLowerLODChunk(chunk4, CHUNK_SIZE / 2, 0, 0);
+        storeLowerLODChunk(chunk5, CHUNK_SIZE / 2, 0, CHUNK_SIZE / 2);
+        storeLowerLODChunk(chunk6, CHUNK_SIZE / 2, CHUNK_SIZE / 2, 0);
+        storeLowerLODChunk(chunk7, CHUNK_SIZE / 2, CHUNK_SIZE / 2, CHUNK_SIZE / 2);
     }
 
     public void generateToMeshFacesMaps(long[][][] toMeshFacesMaps, byte[] uncompressedMaterials, byte[][] adjacentChunkLayers) {
@@ -181,17 +221,20 @@ public final class MaterialsData {
     }
 
     public void generateToMeshFacesMaps(long[][][] toMeshFacesMaps, byte[] uncompressedMaterials, byte[][] adjacentChunkLayers, int startX, int startY, int startZ) {
-        int startIndex = startIndexOf(startX, startY, startZ, CHUNK_SIZE_BITS);
-        generateToMeshFacesMaps(toMeshFacesMaps, uncompressedMaterials, adjacentChunkLayers, Math.min(CHUNK_SIZE_BITS, totalSizeBits), startIndex, startX, startY, startZ);
+        MaterialsData snapshot = snapshot();
+        int startIndex = snapshot.startIndexOf(startX, startY, startZ, CHUNK_SIZE_BITS);
+        snapshot.generateToMeshFacesMaps(toMeshFacesMaps, uncompressedMaterials, adjacentChunkLayers, Math.min(CHUNK_SIZE_BITS, totalSizeBits), startIndex, startX, startY, startZ);
     }
 
     public void addPlaceParticles(ParticleCollector collector, IntArrayList opaque, IntArrayList transparent, Vector3i lengths, byte transform) {
-        addPlaceParticles(collector, getBitMap(), transform, lengths, opaque, transparent, totalSizeBits, 0, 0, 0, 0);
+        MaterialsData snapshot = snapshot();
+        snapshot.addPlaceParticles(collector, snapshot.getBitMap(), transform, lengths, opaque, transparent, totalSizeBits, 0, 0, 0, 0);
     }
 
-    public long[] getBitMap() {
-        long[] bitMap = new long[(1 << totalSizeBits * 3) / Long.SIZE];
-        fillBitMap(bitMap, totalSizeBits, 0, 0, 0, 0);
+    public SparseBitMap getBitMap() {
+        SparseBitMap bitMap = new SparseBitMap(totalSizeBits);
+        snapshot().fillBitMap(bitMap, totalSizeBits, 0, 0, 0, 0);
+        bitMap.normalize();
         return bitMap;
     }
 
@@ -199,48 +242,58 @@ public final class MaterialsData {
         return data;
     }
 
+    /**
+     * Rearranges the octree without decompressing it, so the copy holds every voxel at the position that
+     * {@code fillStructureMaterialsInto} with the transform would copy it to, inside the whole cube.
+     */
+    public MaterialsData getTransformed(byte transform) {
+        MaterialsData snapshot = snapshot();
+        ByteArrayList transformed = new ByteArrayList(snapshot.data.length);
+        snapshot.transformInto(transformed, transform, 0);
+        return new MaterialsData(totalSizeBits, transformed.toArray());
+    }
+
     public int getTotalSizeBits() {
         return totalSizeBits;
     }
 
     public boolean isHomogenous(byte material) {
-        return getIdentifier(0) == HOMOGENOUS && data[1] == material;
+        byte[] data = this.data;
+        return getIdentifier(data, 0) == HOMOGENOUS && data[1] == material;
     }
 
     public AABB getOccluder() {
         AABB method1 = AABB.newMaxChunkAABB();
         AABB method2 = new AABB(0, 0, 0, -1, -1, -1);
-        synchronized (this) {
-            getOccluder(method1, totalSizeBits, 0, 0, 0, 0);
-            getLargestOpaqueAABB(method2, totalSizeBits, 0, 0, 0, 0);
-            expand(method2);
-        }
+        MaterialsData snapshot = snapshot();
+        snapshot.getOccluder(method1, totalSizeBits, 0, 0, 0, 0);
+        snapshot.getLargestOpaqueAABB(method2, totalSizeBits, 0, 0, 0, 0);
+        snapshot.expand(method2);
         if (method1.isEmpty()) method1.setEmpty();
         return method1.getHalfSurfaceArea() > method2.getHalfSurfaceArea() ? method1 : method2;
     }
 
     public MaterialsData getSurfaceEquivalent() {
         ByteArrayList dataList = new ByteArrayList(1000);
-        synchronized (this) {
-            getSurfaceEquivalent(dataList, totalSizeBits, 0);
-        }
+        snapshot().getSurfaceEquivalent(dataList, totalSizeBits, 0);
         return new MaterialsData(totalSizeBits, dataList.toArray());
     }
 
     public int startIndexOf(int inChunkX, int inChunkY, int inChunkZ, int targetSizeBits) {
+        byte[] data = this.data;
         int index = 0, sizeBits = totalSizeBits;
         while (true) { // Scary but should be fine
-            byte identifier = getIdentifier(index);
+            byte identifier = getIdentifier(data, index);
             if (sizeBits <= targetSizeBits || identifier == HOMOGENOUS || identifier == DETAIL) return index;
 //            if (identifier == SPLITTER)
-            index += getOffset(index, inChunkX, inChunkY, inChunkZ, --sizeBits);
+            index += getOffset(data, index, inChunkX, inChunkY, inChunkZ, --sizeBits);
         }
     }
 
     public void compressIntoData(byte[] uncompressedMaterials) {
         if (uncompressedMaterials.length != 1 << totalSizeBits * 3)
             throw new IllegalArgumentException("uncompressedMaterials bust be %d long, but was %d long".formatted(1 << totalSizeBits * 3, uncompressedMaterials.length));
-        ByteArrayList dataList = new ByteArrayList(1000);
+        ByteArrayList dataList = getCompressionBuffer();
         ByteArrayCompressor.compressMaterials(dataList, uncompressedMaterials, totalSizeBits);
 
         byte[] data = dataList.toArray();
@@ -251,34 +304,43 @@ public final class MaterialsData {
 
     public void recomputeTypes() {
         synchronized (this) {
-            recomputeTypes(0);
+            byte[] data = this.data.clone();
+            recomputeTypes(data, 0);
+            this.data = data;
         }
     }
 
     public boolean[] getPresentMaterials() {
         boolean[] presentMaterials = new boolean[AMOUNT_OF_MATERIALS];
-        synchronized (this) {
-            putPresentMaterials(presentMaterials, 0);
-        }
+        snapshot().putPresentMaterials(presentMaterials, 0);
         return presentMaterials;
     }
 
     // Miscellaneous functions
-    private static void storeLowerLODChunk(Chunk chunk, byte[] uncompressedMaterials, int startX, int startY, int startZ) {
+    private void storeLowerLODChunk(Chunk chunk, int startX, int startY, int startZ) {
         if (chunk == null) return;
 
-        Vector3i targetStart = new Vector3i(startX, startY, startZ);
+        byte[] uncompressedMaterials = getEditBuffer(CHUNK_SIZE_BITS - 1);
+        Vector3i targetStart = new Vector3i(0, 0, 0);
         Vector3i sourceStart = new Vector3i(0, 0, 0);
         Vector3i size = new Vector3i(CHUNK_SIZE, CHUNK_SIZE, CHUNK_SIZE);
 
-        synchronized (chunk.getMaterials()) {
-            chunk.getMaterials().fillUncompressedMaterialsInto(uncompressedMaterials, 1, targetStart, sourceStart, size, CHUNK_SIZE_BITS, 0, 0, 0, 0);
+        chunk.getMaterials().snapshot().fillUncompressedMaterialsInto(uncompressedMaterials, 1, targetStart, sourceStart, size, CHUNK_SIZE_BITS, 0, 0, 0, 0);
+        synchronized (this) {
+            storeNode(uncompressedMaterials, CHUNK_SIZE_BITS - 1, startX, startY, startZ);
         }
     }
 
-    private void storeMaterial(int inChunkX, int inChunkY, int inChunkZ, byte[] uncompressedMaterials, int lod, ShapePlaceable placeable) {
+    private int getShapesEnd(int inChunk, int start, int count, int length, int lod) {
+        int end = start;
+        while (end < count && inChunk + (end * length >> lod) < 1 << totalSizeBits) end++;
+        return end;
+    }
+
+    private void storeMaterial(int inChunkX, int inChunkY, int inChunkZ, int nodeX, int nodeY, int nodeZ,
+                               byte[] uncompressedMaterials, int lod, ShapePlaceable placeable) {
         byte material = placeable.getMaterial();
-        long[] bitMap = placeable.getBitMap();
+        SparseBitMap bitMap = placeable.getBitMap();
 
         int inChunkAlign = Integer.numberOfTrailingZeros(inChunkX | inChunkY | inChunkZ);
         int align = MathUtils.min(totalSizeBits, inChunkAlign, Integer.numberOfTrailingZeros(placeable.getPreferredSizePowOf2()));
@@ -297,8 +359,9 @@ public final class MaterialsData {
         for (int x = startX; x < endX; x += alignLength)
             for (int y = startY; y < endY; y += alignLength)
                 for (int z = startZ; z < endZ; z += alignLength) {
-                    int materialStartIndex = getUncompressedIndex(inChunkX + x, inChunkY + y, inChunkZ + z);
+                    int materialStartIndex = getUncompressedIndex(inChunkX + x - nodeX, inChunkY + y - nodeY, inChunkZ + z - nodeZ);
                     int bitMapStartIndex = getUncompressedIndex(x << lod, y << lod, z << lod);
+                    if (bitMap.isEmpty(bitMapStartIndex, count)) continue;
                     int endIndex = bitMapStartIndex + count, bitMapEndIndex = Math.max(bitMapStartIndex + count >> 6, (bitMapStartIndex >> 6) + 1);
 
                     storeMaterial(bitMap, uncompressedMaterials,
@@ -308,24 +371,26 @@ public final class MaterialsData {
                 }
     }
 
-    private static void storeMaterial(long[] bitMap, byte[] uncompressedMaterials,
+    private static void storeMaterial(SparseBitMap bitMap, byte[] uncompressedMaterials,
                                       int bitMapStartIndex, int bitMapEndIndex, int mask, int endIndex, int stride, int materialStartIndex, int shiftCount,
                                       boolean paint, boolean replaceAir, boolean breakHeldOnly,
                                       byte heldMaterial, byte material) {
-        for (int bitsIndex = bitMapStartIndex >> 6; bitsIndex < bitMapEndIndex; bitsIndex++)
-            for (int index = Math.max((bitsIndex << 6) + Long.numberOfTrailingZeros(bitMap[bitsIndex]) & mask, bitMapStartIndex),
+        for (int bitsIndex = bitMapStartIndex >> 6; bitsIndex < bitMapEndIndex; bitsIndex++) {
+            long bits = bitMap.getLong(bitsIndex);
+            for (int index = Math.max((bitsIndex << 6) + Long.numberOfTrailingZeros(bits) & mask, bitMapStartIndex),
                  end = Math.min(bitsIndex + 1 << 6, endIndex); index < end; index += stride) {
                 int materialIndex = materialStartIndex + (index - bitMapStartIndex >> shiftCount);
-                if ((bitMap[bitsIndex] & 1L << index) == 0
+                if ((bits & 1L << index) == 0
                         || paint && uncompressedMaterials[materialIndex] == AIR
                         || replaceAir && uncompressedMaterials[materialIndex] != AIR
                         || breakHeldOnly && uncompressedMaterials[materialIndex] != heldMaterial) continue;
                 uncompressedMaterials[materialIndex] = material;
             }
+        }
     }
 
-    private byte recomputeTypes(int startIndex) {
-        byte identifier = getIdentifier(startIndex);
+    private static byte recomputeTypes(byte[] data, int startIndex) {
+        byte identifier = getIdentifier(data, startIndex);
 
         if (identifier == HOMOGENOUS) {
             byte type = getType(data[startIndex + 1]);
@@ -346,14 +411,14 @@ public final class MaterialsData {
         }
 //        if (identifier == SPLITTER)
         byte types = 0;
-        types |= recomputeTypes(startIndex + SPLITTER_BYTE_SIZE);
-        types |= recomputeTypes(startIndex + getOffset(startIndex + 1));
-        types |= recomputeTypes(startIndex + getOffset(startIndex + 4));
-        types |= recomputeTypes(startIndex + getOffset(startIndex + 7));
-        types |= recomputeTypes(startIndex + getOffset(startIndex + 10));
-        types |= recomputeTypes(startIndex + getOffset(startIndex + 13));
-        types |= recomputeTypes(startIndex + getOffset(startIndex + 16));
-        types |= recomputeTypes(startIndex + getOffset(startIndex + 19));
+        types |= recomputeTypes(data, startIndex + SPLITTER_BYTE_SIZE);
+        types |= recomputeTypes(data, startIndex + getOffset(data, startIndex + 1));
+        types |= recomputeTypes(data, startIndex + getOffset(data, startIndex + 4));
+        types |= recomputeTypes(data, startIndex + getOffset(data, startIndex + 7));
+        types |= recomputeTypes(data, startIndex + getOffset(data, startIndex + 10));
+        types |= recomputeTypes(data, startIndex + getOffset(data, startIndex + 13));
+        types |= recomputeTypes(data, startIndex + getOffset(data, startIndex + 16));
+        types |= recomputeTypes(data, startIndex + getOffset(data, startIndex + 19));
         data[startIndex] = (byte) (types | SPLITTER);
         return types;
     }
@@ -387,6 +452,92 @@ public final class MaterialsData {
         putPresentMaterials(presentMaterials, startIndex + getOffset(startIndex + 19));
     }
 
+    // Incremental editing
+    // An edit only decompresses the smallest octree node containing every voxel it may change, recompresses that node
+    // and splices it back into the data, collapsing or expanding the nodes on the path to it as needed.
+    private int getEditedNodeSizeBits(int differingBits) {
+        return Math.clamp(Integer.SIZE - Integer.numberOfLeadingZeros(differingBits), 1, totalSizeBits);
+    }
+
+    private void fillNodeInto(byte[] uncompressedMaterials, int nodeSizeBits, int nodeX, int nodeY, int nodeZ) {
+        int index = 0, sizeBits = totalSizeBits;
+        while (sizeBits > nodeSizeBits && getIdentifier(index) == SPLITTER) index += getOffset(index, nodeX, nodeY, nodeZ, --sizeBits);
+
+        if (getIdentifier(index) == HOMOGENOUS) Arrays.fill(uncompressedMaterials, 0, 1 << nodeSizeBits * 3, data[index + 1]);
+        else fillUncompressedMaterialsInto(uncompressedMaterials, nodeSizeBits, index, 0, 0, 0);
+    }
+
+    private void storeNode(byte[] uncompressedMaterials, int nodeSizeBits, int nodeX, int nodeY, int nodeZ) {
+        ByteArrayList node = getCompressionBuffer();
+        ByteArrayCompressor.compressMaterials(node, uncompressedMaterials, nodeSizeBits);
+
+        int index = 0, endIndex = data.length, sizeBits = totalSizeBits;
+        while (sizeBits > nodeSizeBits && getIdentifier(index) == SPLITTER) {
+            int inSplitterIndex = getInSplitterIndex(nodeX, nodeY, nodeZ, --sizeBits);
+            if (inSplitterIndex != 3 * 7) endIndex = index + getOffset(index + inSplitterIndex + 1);
+            index += inSplitterIndex == 0 ? SPLITTER_BYTE_SIZE : getOffset(index + inSplitterIndex - 2);
+        }
+
+        // Nothing changed, most commonly a break in air or a placement into the same material
+        if (getIdentifier(index) == HOMOGENOUS) {
+            if (node.size() == HOMOGENOUS_BYTE_SIZE && node.get(1) == data[index + 1]) return;
+        } else if (Arrays.equals(data, index, endIndex, node.getData(), 0, node.size())) return;
+
+        if (nodeSizeBits == totalSizeBits) {
+            data = node.toArray();
+            return;
+        }
+        ByteArrayList spliced = getSpliceBuffer();
+        spliceNode(spliced, node, nodeSizeBits, nodeX, nodeY, nodeZ, totalSizeBits, 0, data.length);
+        data = spliced.toArray();
+    }
+
+    private void spliceNode(ByteArrayList target, ByteArrayList node, int nodeSizeBits, int nodeX, int nodeY, int nodeZ,
+                            int sizeBits, int startIndex, int endIndex) {
+        if (sizeBits == nodeSizeBits) {
+            target.add(node.getData(), 0, node.size());
+            return;
+        }
+
+        int splitterIndex = target.size(), nodeChild = getInSplitterIndex(nodeX, nodeY, nodeZ, --sizeBits) / 3;
+        boolean homogenous = getIdentifier(startIndex) == HOMOGENOUS;
+        target.add(SPLITTER);
+        target.pad(SPLITTER_BYTE_SIZE - 1);
+
+        for (int child = 0; child < 8; child++) {
+            if (child != 0) setOffset(target, target.size() - splitterIndex, splitterIndex + child * 3 - 2);
+
+            // A homogenous node gets split into homogenous children
+            int childStartIndex = homogenous ? startIndex : child == 0 ? startIndex + SPLITTER_BYTE_SIZE : startIndex + getOffset(startIndex + child * 3 - 2);
+            int childEndIndex = homogenous ? endIndex : child == 7 ? endIndex : startIndex + getOffset(startIndex + child * 3 + 1);
+
+            if (child == nodeChild) spliceNode(target, node, nodeSizeBits, nodeX, nodeY, nodeZ, sizeBits, childStartIndex, childEndIndex);
+            else target.add(data, childStartIndex, homogenous ? HOMOGENOUS_BYTE_SIZE : childEndIndex - childStartIndex);
+        }
+
+        collapseOrFinishSplitter(target, splitterIndex);
+    }
+
+    private static void collapseOrFinishSplitter(ByteArrayList target, int splitterIndex) {
+        byte[] array = target.getData();
+        int firstChildIndex = splitterIndex + SPLITTER_BYTE_SIZE;
+        byte material = array[firstChildIndex + 1];
+        boolean homogenous = (array[firstChildIndex] & IDENTIFIER_MASK) == HOMOGENOUS;
+
+        for (int child = 1; child < 8 && homogenous; child++) {
+            int childIndex = splitterIndex + getOffset(array, splitterIndex + child * 3 - 2);
+            homogenous = (array[childIndex] & IDENTIFIER_MASK) == HOMOGENOUS && array[childIndex + 1] == material;
+        }
+
+        if (!homogenous) {
+            target.set((byte) (getSplitterTypes(target, splitterIndex) | SPLITTER), splitterIndex);
+            return;
+        }
+        target.truncate(splitterIndex);
+        target.add((byte) (getType(material) | HOMOGENOUS));
+        target.add(material);
+    }
+
     // Functions to store data into something
     private void fillUncompressedMaterialsInto(byte[] uncompressedMaterials, int sizeBits, int startIndex, int inChunkX, int inChunkY, int inChunkZ) {
         byte identifier = getIdentifier(startIndex);
@@ -467,11 +618,28 @@ public final class MaterialsData {
             for (int z = 0; z < lengthZ; z++)
                 for (int y = 0; y < lengthY; y++) {
                     int targetIndex = getUncompressedIndex(targetStartX + x, targetStartY + y, targetStartZ + z);
-                    byte material = data[startIndex + getInDetailIndex(x, y, z)];
+                    byte material = data[startIndex + getInDetailIndex(sourceStartX + (x << lod), sourceStartY + (y << lod), sourceStartZ + (z << lod))];
                     uncompressedMaterials[targetIndex] = material;
                 }
     }
 
+    // The transformed copy has the same layout the transform walks the original in, so it can be copied untransformed
+    private static MaterialsData getStructureSource(Structure structure, byte transform) {
+        if (transform == 0 || !ToggleSettings.PRE_TRANSFORMED_STRUCTURES.value()) return structure.materials();
+        return StructureCache.getTransformedMaterials(structure, transform);
+    }
+
+    private static void copyStructureMaterialsInto(byte[] uncompressedMaterials, MaterialsData source, Structure structure, byte transform, int lod,
+                                                   Vector3i targetStart, Vector3i sourceStart, Vector3i size, boolean forceOverride) {
+        if ((transform & Structure.MIRROR_X) != 0) sourceStart.x = sourceStart.x + (1 << source.totalSizeBits) - structure.sizeX(transform);
+        if (((transform & Structure.MIRROR_Z) == 0) == ((transform & Structure.ROTATE_90) != 0))
+            sourceStart.z = sourceStart.z + (1 << source.totalSizeBits) - structure.sizeZ(transform);
+
+        // Pre-transformed copies already are in the layout the transform would walk
+        if (source != structure.materials()) transform = 0;
+        source.snapshot().fillStructureMaterialsInto(uncompressedMaterials, transform, lod, targetStart, sourceStart, size, forceOverride, source.totalSizeBits, 0, 0, 0, 0);
+    }
+
     private void fillStructureMaterialsInto(byte[] uncompressedMaterials, byte transform, int lod, Vector3i targetStart, Vector3i sourceStart, Vector3i size,
                                             boolean forceOverride, int sizeBits, int startIndex, int currentX, int currentY, int currentZ) {
         int length = 1 << sizeBits;
@@ -529,6 +697,28 @@ public final class MaterialsData {
                 }
     }
 
+    private void transformInto(ByteArrayList target, byte transform, int startIndex) {
+        byte identifier = getIdentifier(startIndex);
+
+        if (identifier == HOMOGENOUS) {
+            target.add(data, startIndex, HOMOGENOUS_BYTE_SIZE);
+            return;
+        }
+        target.add(data[startIndex]);
+        if (identifier == DETAIL) {
+            for (int inDetailIndex = 0; inDetailIndex < 8; inDetailIndex++)
+                target.add(data[startIndex + getInDetailIndex(transform, inDetailIndex >> 2, inDetailIndex & 1, inDetailIndex >> 1 & 1)]);
+            return;
+        }
+//        if (identifier == SPLITTER)
+        int splitterIndex = target.size() - 1;
+        target.pad(SPLITTER_BYTE_SIZE - 1);
+        for (int intend = 0; intend < 8; intend++) {
+            if (intend != 0) setOffset(target, target.size() - splitterIndex, splitterIndex + intend * 3 - 2);
+            transformInto(target, transform, startIndex + getOffset(startIndex, transform, intend));
+        }
+    }
+
     private int fillSouthLayerInto(ByteArrayList materials, int startIndex) {
         byte types = getTypes(startIndex);
 
@@ -697,7 +887,7 @@ public final class MaterialsData {
         return offset;
     }
 
-    private void addPlaceParticles(ParticleCollector collector, long[] bitMap, byte transform, Vector3i lengths, IntArrayList opaque, IntArrayList transparent,
+    private void addPlaceParticles(ParticleCollector collector, SparseBitMap bitMap, byte transform, Vector3i lengths, IntArrayList opaque, IntArrayList transparent,
                                    int sizeBits, int startIndex, int inChunkX, int inChunkY, int inChunkZ) {
         int identifier = getIdentifier(startIndex);
 
@@ -744,19 +934,12 @@ public final class MaterialsData {
         addPlaceParticles(collector, bitMap, transform, lengths, opaque, transparent, sizeBits, startIndex + getOffset(startIndex + 19), inChunkX + nextSize, inChunkY + nextSize, inChunkZ + nextSize);
     }
 
-    private void fillBitMap(long[] bitMap, int sizeBits, int startIndex, int inChunkX, int inChunkY, int inChunkZ) {
+    private void fillBitMap(SparseBitMap bitMap, int sizeBits, int startIndex, int inChunkX, int inChunkY, int inChunkZ) {
         byte types = getTypes(startIndex);
         if (types == CONTAINS_TRANSPARENT) return;
 
         if ((types & CONTAINS_TRANSPARENT) == 0) {
-            int bitMapStartIndex = getUncompressedIndex(inChunkX, inChunkY, inChunkZ);
-            if (sizeBits > 2) {
-                int count = 1 << (sizeBits - 2) * 3;
-                Arrays.fill(bitMap, bitMapStartIndex >> 6, (bitMapStartIndex >> 6) + count, -1L);
-            } else {
-                long mask = getMask(1 << sizeBits * 3, bitMapStartIndex);
-                bitMap[bitMapStartIndex >> 6] |= mask;
-            }
+            bitMap.fill(getUncompressedIndex(inChunkX, inChunkY, inChunkZ), 1 << sizeBits * 3);
             return;
         }
 
@@ -764,14 +947,14 @@ public final class MaterialsData {
         if (identifier == HOMOGENOUS) return;
 
         if (identifier == DETAIL) {
-            if (data[startIndex + 1] != AIR) setBit(bitMap, getUncompressedIndex(inChunkX + 0, inChunkY + 0, inChunkZ + 0));
-            if (data[startIndex + 2] != AIR) setBit(bitMap, getUncompressedIndex(inChunkX + 0, inChunkY + 0, inChunkZ + 1));
-            if (data[startIndex + 3] != AIR) setBit(bitMap, getUncompressedIndex(inChunkX + 0, inChunkY + 1, inChunkZ + 0));
-            if (data[startIndex + 4] != AIR) setBit(bitMap, getUncompressedIndex(inChunkX + 0, inChunkY + 1, inChunkZ + 1));
-            if (data[startIndex + 5] != AIR) setBit(bitMap, getUncompressedIndex(inChunkX + 1, inChunkY + 0, inChunkZ + 0));
-            if (data[startIndex + 6] != AIR) setBit(bitMap, getUncompressedIndex(inChunkX + 1, inChunkY + 0, inChunkZ + 1));
-            if (data[startIndex + 7] != AIR) setBit(bitMap, getUncompressedIndex(inChunkX + 1, inChunkY + 1, inChunkZ + 0));
-            if (data[startIndex + 8] != AIR) setBit(bitMap, getUncompressedIndex(inChunkX + 1, inChunkY + 1, inChunkZ + 1));
+            if (data[startIndex + 1] != AIR) bitMap.set(getUncompressedIndex(inChunkX + 0, inChunkY + 0, inChunkZ + 0));
+            if (data[startIndex + 2] != AIR) bitMap.set(getUncompressedIndex(inChunkX + 0, inChunkY + 0, inChunkZ + 1));
+            if (data[startIndex + 3] != AIR) bitMap.set(getUncompressedIndex(inChunkX + 0, inChunkY + 1, inChunkZ + 0));
+            if (data[startIndex + 4] != AIR) bitMap.set(getUncompressedIndex(inChunkX + 0, inChunkY + 1, inChunkZ + 1));
+            if (data[startIndex + 5] != AIR) bitMap.set(getUncompressedIndex(inChunkX + 1, inChunkY + 0, inChunkZ + 0));
+            if (data[startIndex + 6] != AIR) bitMap.set(getUncompressedIndex(inChunkX + 1, inChunkY + 0, inChunkZ + 1));
+            if (data[startIndex + 7] != AIR) bitMap.set(getUncompressedIndex(inChunkX + 1, inChunkY + 1, inChunkZ + 0));
+            if (data[startIndex + 8] != AIR) bitMap.set(getUncompressedIndex(inChunkX + 1, inChunkY + 1, inChunkZ + 1));
             return;
         }
 
@@ -810,6 +993,16 @@ public final class MaterialsData {
         return (byte) (data[startIndex] & IDENTIFIER_MASK);
     }
 
+    private static byte getIdentifier(byte[] data, int startIndex) {
+        return (byte) (data[startIndex] & IDENTIFIER_MASK);
+    }
+
+    private static int getOffset(byte[] data, int splitterIndex, int inChunkX, int inChunkY, int inChunkZ, int sizeBits) {
+        int inSplitterIndex = getInSplitterIndex(inChunkX, inChunkY, inChunkZ, sizeBits);
+        if (inSplitterIndex == 0) return SPLITTER_BYTE_SIZE;
+        return getOffset(data, splitterIndex + inSplitterIndex - 2);
+    }
+
     private byte getTypes(int startIndex) {
         return (byte) (data[startIndex] & TYPE_MASK);
     }
@@ -1293,6 +1486,33 @@ public final class MaterialsData {
         data.set((byte) (offset & 0xFF), index + 2);
     }
 
+    private MaterialsData snapshot() {
+        return new MaterialsData(totalSizeBits, data);
+    }
+
+    private static ByteArrayList getCompressionBuffer() {
+        return getClearedBuffer(COMPRESSION_BUFFER);
+    }
+
+    private static ByteArrayList getSpliceBuffer() {
+        return getClearedBuffer(SPLICE_BUFFER);
+    }
+
+    private static ByteArrayList getClearedBuffer(ThreadLocal<ByteArrayList> cachedBuffer) {
+        ByteArrayList buffer = cachedBuffer.get();
+        if (buffer.getData().length > MAX_CACHED_COMPRESSION_BUFFER_SIZE) {
+            // Don't hold on to the buffer of a single huge structure forever
+            buffer = new ByteArrayList(INITIAL_COMPRESSION_BUFFER_SIZE);
+            cachedBuffer.set(buffer);
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    private static byte[] getEditBuffer(int sizeBits) {
+        return sizeBits <= CHUNK_SIZE_BITS ? EDIT_BUFFER.get() : new byte[1 << sizeBits * 3];
+    }
+
     static byte getType(byte material) {
         if (material == AIR) return CONTAINS_TRANSPARENT;
         int properties = Material.getProperties(material);
@@ -1387,10 +1607,6 @@ public final class MaterialsData {
         return length == CHUNK_SIZE ? -1L : (1L << length) - 1 << offset;
     }
 
-    private static void setBit(long[] bitMap, int bitIndex) {
-        bitMap[bitIndex >> 6] |= 1L << bitIndex;
-    }
-
 
     public static final int[] Z_ORDER_3D_TABLE_X = Utils.zOrderCurveLookupTable(MAX_STRUCTURE_SIZE, 3, 2);
     public static final int[] Z_ORDER_3D_TABLE_Y = Utils.zOrderCurveLookupTable(MAX_STRUCTURE_SIZE, 3, 1);
@@ -1415,6 +1631,13 @@ public final class MaterialsData {
     private static final byte IDENTIFIER_MASK = 0x03;
     private static final byte TYPE_MASK = (byte) 0xE0;
 
-    private byte[] data;
+    private static final int INITIAL_COMPRESSION_BUFFER_SIZE = 1000;
+    private static final int MAX_CACHED_COMPRESSION_BUFFER_SIZE = 1 << 20;
+    private static final ThreadLocal<ByteArrayList> COMPRESSION_BUFFER = ThreadLocal.withInitial(() -> new ByteArrayList(INITIAL_COMPRESSION_BUFFER_SIZE));
+    private static final ThreadLocal<ByteArrayList> SPLICE_BUFFER = ThreadLocal.withInitial(() -> new ByteArrayList(INITIAL_COMPRESSION_BUFFER_SIZE));
+    private static final ThreadLocal<byte[]> EDIT_BUFFER = ThreadLocal.withInitial(() -> new byte[CHUNK_SIZE * CHUNK_SIZE * CHUNK_SIZE]);
+
+    // Never modified after being published, readers work on a snapshot of it without locking
+    private volatile byte[] data;
     private final int totalSizeBits;
 }
@@ -0,0 +1,299 @@
+package game.server.materials_data;
+
+import java.util.Arrays;
+
+/**
+ * A Z-ordered bit map in the same layout as the dense {@code long[]} bit maps, where every 16x16x16 page only gets
+ * allocated if it is neither empty nor full.
+ * <p>
+ * Every page has an empty and a full bit, so every long of those summaries covers a 64x64x64 region.
+ * Queries over aligned ranges look at the summaries first and only descend into pages and longs for mixed ranges,
+ * so empty and full regions are skipped in bulk and hollow or thin shapes only pay for their surface.
+ * <p>
+ * Not thread safe, except that pages of different 64x64x64 regions may be set from different threads.
+ */
+public final class SparseBitMap {
+
+    public interface VoxelConsumer {
+        void accept(int x, int y, int z);
+    }
+
+    public SparseBitMap(int sizeBits) {
+        int longCount = Math.max(1, 1 << sizeBits * 3 >> 6);
+        this.sizeBits = sizeBits;
+        this.pageLongs = Math.min(PAGE_LONGS, longCount);
+        this.pageBits = Integer.numberOfTrailingZeros(pageLongs) + 6;
+
+        int pageCount = longCount / pageLongs;
+        pages = new long[pageCount][];
+        nonEmptyPages = new long[pageCount + 63 >> 6];
+        fullPages = new long[pageCount + 63 >> 6];
+    }
+
+    public static SparseBitMap of(long[] bitMap, int sizeBits) {
+        SparseBitMap sparseBitMap = new SparseBitMap(sizeBits);
+        for (int page = 0; page < sparseBitMap.pages.length; page++) {
+            int start = page * sparseBitMap.pageLongs, end = start + sparseBitMap.pageLongs;
+            sparseBitMap.setPage(page, bitMap, start, end);
+        }
+        return sparseBitMap;
+    }
+
+    public static SparseBitMap full(int sizeBits) {
+        SparseBitMap bitMap = new SparseBitMap(sizeBits);
+        bitMap.fill(0, bitMap.pages.length << bitMap.pageBits);
+        return bitMap;
+    }
+
+    public int getSizeBits() {
+        return sizeBits;
+    }
+
+    public int getPageCount() {
+        return pages.length;
+    }
+
+    /**
+     * @return The long of the dense bit map at the given index
+     */
+    public long getLong(int longIndex) {
+        int page = longIndex >> pageBits - 6;
+        long[] longs = pages[page];
+        if (longs != null) return longs[longIndex & pageLongs - 1];
+        return (fullPages[page >> 6] & 1L << page) != 0 ? -1L : 0L;
+    }
+
+    public boolean get(int bitIndex) {
+        return (getLong(bitIndex >> 6) & 1L << bitIndex) != 0;
+    }
+
+    public boolean get(int x, int y, int z) {
+        return get(MaterialsData.getUncompressedIndex(x, y, z));
+    }
+
+    /**
+     * @param startIndex Must be a multiple of {@code count}
+     * @param count      Must be a power of 8, like the size of every node
+     */
+    public boolean isEmpty(int startIndex, int count) {
+        return getState(startIndex, count) == EMPTY;
+    }
+
+    /**
+     * @param startIndex Must be a multiple of {@code count}
+     * @param count      Must be a power of 8, like the size of every node
+     */
+    public boolean isFull(int startIndex, int count) {
+        return getState(startIndex, count) == FULL;
+    }
+
+    /**
+     * @return Whether any bit inside {@code [min, max)} is set
+     */
+    public boolean intersects(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        if (minX >= maxX || minY >= maxY || minZ >= maxZ) return false;
+        return intersects(sizeBits, 0, 0, 0, 0, minX, minY, minZ, maxX, maxY, maxZ);
+    }
+
+    /**
+     * Calls the consumer for every set bit inside {@code [0, length)}, whose coordinates are all multiples of {@code step}.
+     * Bits are visited in Z-order, not in the order of nested x, y, z loops.
+     */
+    public void forEach(int lengthX, int lengthY, int lengthZ, int step, VoxelConsumer consumer) {
+        forEach(sizeBits, 0, 0, 0, 0, lengthX, lengthY, lengthZ, Math.max(1, step), consumer);
+    }
+
+    public void set(int bitIndex) {
+        long[] longs = getOrCreatePage(bitIndex >> pageBits);
+        if (longs != null) longs[bitIndex >> 6 & pageLongs - 1] |= 1L << bitIndex;
+    }
+
+    /**
+     * @param startIndex Must be a multiple of {@code count}
+     * @param count      Must be a power of 8, like the size of every node
+     */
+    public void fill(int startIndex, int count) {
+        if (count >= 1 << pageBits) {
+            for (int page = startIndex >> pageBits, end = page + (count >> pageBits); page < end; page++) setPageState(page, FULL);
+            return;
+        }
+
+        long[] longs = getOrCreatePage(startIndex >> pageBits);
+        if (longs == null) return;
+        if (count >= 64) {
+            int start = startIndex >> 6 & pageLongs - 1;
+            Arrays.fill(longs, start, start + (count >> 6), -1L);
+        } else longs[startIndex >> 6 & pageLongs - 1] |= getMask(startIndex, count);
+    }
+
+    /**
+     * Frees the longs of every page that {@link #set(int)} or {@link #fill(int, int)} filled completely.
+     * Call it once all bits are set, the summaries treat these pages as mixed until then.
+     */
+    public void normalize() {
+        for (int page = 0; page < pages.length; page++) {
+            long[] longs = pages[page];
+            if (longs == null) continue;
+            boolean full = true;
+            for (int index = 0; index < longs.length && full; index++) full = longs[index] == -1L;
+            // Setting bits never empties a page
+            if (full) setPageState(page, FULL);
+        }
+    }
+
+    /**
+     * Replaces the page with the given longs, which are copied if they are neither all empty nor all full.
+     */
+    public void setPage(int page, long[] longs) {
+        setPage(page, longs, 0, pageLongs);
+    }
+
+    public long[] toLongArray() {
+        long[] bitMap = new long[pages.length * pageLongs];
+        for (int page = 0; page < pages.length; page++) {
+            int start = page * pageLongs;
+            if (pages[page] != null) System.arraycopy(pages[page], 0, bitMap, start, pageLongs);
+            else if ((fullPages[page >> 6] & 1L << page) != 0) Arrays.fill(bitMap, start, start + pageLongs, -1L);
+        }
+        return bitMap;
+    }
+
+    /**
+     * @return An estimate of the heap size of this bit map in bytes
+     */
+    public long getByteSize() {
+        long byteSize = OBJECT_HEADER_BYTES * 4L + (long) pages.length * Integer.BYTES + (nonEmptyPages.length + fullPages.length) * (long) Long.BYTES;
+        for (long[] longs : pages) if (longs != null) byteSize += OBJECT_HEADER_BYTES + (long) longs.length * Long.BYTES;
+        return byteSize;
+    }
+
+
+    private boolean intersects(int nodeSizeBits, int startIndex, int nodeX, int nodeY, int nodeZ,
+                               int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        int nodeSize = 1 << nodeSizeBits;
+        if (nodeX >= maxX || nodeY >= maxY || nodeZ >= maxZ || nodeX + nodeSize <= minX || nodeY + nodeSize <= minY || nodeZ + nodeSize <= minZ) return false;
+
+        byte state = getState(startIndex, 1 << nodeSizeBits * 3);
+        if (state != MIXED) return state == FULL;
+        // A mixed node has at least one set bit, so it doesn't need to be looked at if it is completely inside
+        if (nodeX >= minX && nodeY >= minY && nodeZ >= minZ && nodeX + nodeSize <= maxX && nodeY + nodeSize <= maxY && nodeZ + nodeSize <= maxZ) return true;
+
+        int childSizeBits = nodeSizeBits - 1, childSize = 1 << childSizeBits, childCount = 1 << childSizeBits * 3;
+        for (int child = 0; child < 8; child++)
+            if (intersects(childSizeBits, startIndex + child * childCount,
+                    nodeX + (child >> 2 & 1) * childSize, nodeY + (child >> 1 & 1) * childSize, nodeZ + (child & 1) * childSize,
+                    minX, minY, minZ, maxX, maxY, maxZ)) return true;
+        return false;
+    }
+
+    private void forEach(int nodeSizeBits, int startIndex, int nodeX, int nodeY, int nodeZ,
+                         int lengthX, int lengthY, int lengthZ, int step, VoxelConsumer consumer) {
+        int nodeSize = 1 << nodeSizeBits;
+        int firstX = nextMultiple(nodeX, step), endX = Math.min(nodeX + nodeSize, lengthX);
+        int firstY = nextMultiple(nodeY, step), endY = Math.min(nodeY + nodeSize, lengthY);
+        int firstZ = nextMultiple(nodeZ, step), endZ = Math.min(nodeZ + nodeSize, lengthZ);
+        if (firstX >= endX || firstY >= endY || firstZ >= endZ) return;
+
+        byte state = getState(startIndex, 1 << nodeSizeBits * 3);
+        if (state == EMPTY) return;
+        if (state == FULL) {
+            for (int x = firstX; x < endX; x += step)
+                for (int y = firstY; y < endY; y += step)
+                    for (int z = firstZ; z < endZ; z += step) consumer.accept(x, y, z);
+            return;
+        }
+
+        int childSizeBits = nodeSizeBits - 1, childSize = 1 << childSizeBits, childCount = 1 << childSizeBits * 3;
+        for (int child = 0; child < 8; child++)
+            forEach(childSizeBits, startIndex + child * childCount,
+                    nodeX + (child >> 2 & 1) * childSize, nodeY + (child >> 1 & 1) * childSize, nodeZ + (child & 1) * childSize,
+                    lengthX, lengthY, lengthZ, step, consumer);
+    }
+
+    private byte getState(int startIndex, int count) {
+        if (count >= 1 << pageBits) return getPagesState(startIndex >> pageBits, count >> pageBits);
+
+        int page = startIndex >> pageBits;
+        long[] longs = pages[page];
+        if (longs == null) return (fullPages[page >> 6] & 1L << page) != 0 ? FULL : EMPTY;
+
+        if (count < 64) {
+            long mask = getMask(startIndex, count), bits = longs[startIndex >> 6 & pageLongs - 1] & mask;
+            return bits == 0 ? EMPTY : bits == mask ? FULL : MIXED;
+        }
+
+        int start = startIndex >> 6 & pageLongs - 1;
+        long first = longs[start];
+        if (first != 0L && first != -1L) return MIXED;
+        for (int index = start + 1, end = start + (count >> 6); index < end; index++) if (longs[index] != first) return MIXED;
+        return first == 0L ? EMPTY : FULL;
+    }
+
+    private byte getPagesState(int firstPage, int pageCount) {
+        if (pageCount < 64) {
+            long mask = getMask(firstPage, pageCount);
+            long nonEmpty = nonEmptyPages[firstPage >> 6] & mask;
+            if (nonEmpty == 0) return EMPTY;
+            return nonEmpty == mask && (fullPages[firstPage >> 6] & mask) == mask ? FULL : MIXED;
+        }
+
+        boolean empty = true, full = true;
+        for (int index = firstPage >> 6, end = index + (pageCount >> 6); index < end && (empty || full); index++) {
+            empty &= nonEmptyPages[index] == 0L;
+            full &= fullPages[index] == -1L;
+        }
+        return empty ? EMPTY : full ? FULL : MIXED;
+    }
+
+    private void setPage(int page, long[] longs, int start, int end) {
+        long first = longs[start];
+        boolean homogenous = first == 0L || first == -1L;
+        for (int index = start + 1; index < end && homogenous; index++) homogenous = longs[index] == first;
+
+        if (homogenous) setPageState(page, first == 0L ? EMPTY : FULL);
+        else {
+            setPageState(page, MIXED);
+            pages[page] = Arrays.copyOfRange(longs, start, end);
+        }
+    }
+
+    private void setPageState(int page, byte state) {
+        pages[page] = null;
+        long bit = 1L << page;
+        if (state == EMPTY) nonEmptyPages[page >> 6] &= ~bit;
+        else nonEmptyPages[page >> 6] |= bit;
+        if (state == FULL) fullPages[page >> 6] |= bit;
+        else fullPages[page >> 6] &= ~bit;
+    }
+
+    // Returns null if the page is full, as setting bits in it doesn't change anything
+    private long[] getOrCreatePage(int page) {
+        long[] longs = pages[page];
+        if (longs != null) return longs;
+        if ((fullPages[page >> 6] & 1L << page) != 0) return null;
+
+        setPageState(page, MIXED);
+        longs = new long[pageLongs];
+        pages[page] = longs;
+        return longs;
+    }
+
+    private static long getMask(int startIndex, int count) {
+        return count >= 64 ? -1L : (1L << count) - 1 << startIndex;
+    }
+
+    private static int nextMultiple(int value, int step) {
+        return (value + step - 1) / step * step;
+    }
+
+    private final int sizeBits, pageLongs, pageBits;
+    private final long[][] pages;
+    // One bit per page, a page is mixed if and only if its longs are allocated, except for full pages before normalize()
+    private final long[] nonEmptyPages, fullPages;
+
+    public static final int PAGE_SIZE_BITS = 4;
+
+    private static final int PAGE_LONGS = 1 << PAGE_SIZE_BITS * 3 - 6;
+    private static final byte MIXED = -1, EMPTY = 0, FULL = 1;
+    private static final int OBJECT_HEADER_BYTES = 16;
+}
@@ -2,41 +2,121 @@ package game.server.saving;
 
 import core.rendering_api.Debug;
 import core.utils.FileManager;
+import core.utils.ParallelUtils;
 import core.utils.Saver;
 import game.server.Chunk;
 import game.server.ChunkID;
 import game.server.Game;
+import game.server.World;
 import game.server.materials_data.MaterialsData;
 import game.server.generation.WorldGeneration;
 import game.utils.Status;
 
 import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static game.utils.Constants.*;
 
 public final class ChunkSaver extends Saver<Chunk> {
 
-    public static String getSaveFileLocation(ChunkID id, int lod) {
-        return "saves/%s/chunks/%s/%s".formatted(Game.getWorld().getName(), lod, id);
+    public static String getSaveFileLocation(long regionX, long regionY, long regionZ, int lod) {
+        return "saves/%s/regions/%s/%s_%s_%s".formatted(Game.getWorld().getName(), lod, Long.toHexString(regionX), Long.toHexString(regionY), Long.toHexString(regionZ));
     }
 
     public static String getSaveFileLocation(int lod) {
-        return "saves/%s/chunks/%s".formatted(Game.getWorld().getName(), lod);
+        return "saves/%s/regions/%s".formatted(Game.getWorld().getName(), lod);
     }
 
     public static String getSaveFileLocation() {
+        return "saves/%s/regions".formatted(Game.getWorld().getName());
+    }
+
+    public static String getLegacySaveFileLocation() {
         return "saves/%s/chunks".formatted(Game.getWorld().getName());
     }
 
     public static void generateHigherLODs() {
         long start = System.nanoTime();
+        ChunkWriter.flush();
         for (int lod = 1, lodCount = Game.getWorld().LOD_COUNT; lod < lodCount; lod++) generateLod(lod);
         Debug.log("Finished generating all LODs. Took %sms%n", (System.nanoTime() - start) / 1_000_000);
     }
 
-    private static void generateLod(int lod) {
+    public static void migrateChunkFiles() {
+        File legacyDirectory = new File(getLegacySaveFileLocation());
+        if (!legacyDirectory.exists()) return;
         long start = System.nanoTime();
         ChunkSaver saver = new ChunkSaver();
+        int migratedCount = 0, failedCount = 0;
+
+        for (File lodDirectory : FileManager.getChildren(legacyDirectory)) {
+            File[] chunkFiles = lodDirectory.listFiles();
+            if (chunkFiles == null) continue;
+            for (File chunkFile : chunkFiles) {
+                Chunk chunk = saver.load(chunkFile.getPath());
+                if (chunk == null) continue;
+                if (saver.saveChunk(chunk)) migratedCount++;
+                else failedCount++;
+            }
+        }
+
+        if (failedCount != 0) {
+            Debug.err("Failed to migrate %s chunk files, keeping %s%n", failedCount, legacyDirectory.getPath());
+            return;
+        }
+        FileManager.delete(legacyDirectory);
+        Debug.log("Migrated %s chunk files into region files. Took %sms%n", migratedCount, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    public static File[] getRegionFiles(int lod) {
+        return FileManager.getChildren(new File(getSaveFileLocation(lod)));
+    }
+
+    public static int[] getOccupiedSlots(File regionFile) {
+        return getRegionFile(regionFile.getPath(), true).getOccupiedSlots();
+    }
+
+    public static byte[] readSlot(File regionFile, int slot) {
+        return readSlot(regionFile.getPath(), slot);
+    }
+
+    public static boolean removeSlot(File regionFile, int slot) {
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            RegionFile region = getRegionFile(regionFile.getPath(), false);
+            if (region == null || region.remove(slot)) return true;
+        }
+        return false;
+    }
+
+    public static void closeRegionFiles(File directory) {
+        Path directoryPath = directory.toPath();
+        synchronized (REGION_FILES) {
+            Iterator<Map.Entry<String, RegionFile>> iterator = REGION_FILES.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, RegionFile> entry = iterator.next();
+                if (!directoryPath.equals(Path.of(entry.getKey()).getParent())) continue;
+                entry.getValue().close();
+                iterator.remove();
+            }
+        }
+    }
+
+    public static void closeRegionFiles() {
+        synchronized (REGION_FILES) {
+            for (RegionFile regionFile : REGION_FILES.values()) regionFile.close();
+            REGION_FILES.clear();
+        }
+    }
+
+    private static void generateLod(int lod) {
+        long start = System.nanoTime();
         int lowerLOD = lod - 1;
 
         File lowerLodFile = new File(getSaveFileLocation(lowerLOD));
@@ -45,52 +125,130 @@ public final class ChunkSaver extends Saver<Chunk> {
         if (!lowerLodFile.exists()) return; // No stored chunks to propagate into higher LODs
         if (thisLodFile.exists()) return;   // LOD is saved from previous play session
 
-        else thisLodFile = FileManager.loadAndCreateDirectory(thisLodFile.getPath());
-        File[] lowerLodChunkFiles = FileManager.getChildren(lowerLodFile);
+        FileManager.loadAndCreateDirectory(thisLodFile.getPath());
+        File[] lowerLodRegionFiles = FileManager.getChildren(lowerLodFile);
 
-        if (lowerLodChunkFiles == null) {
-            Debug.err("Error occurred when listing lod " + lowerLOD + " chunk files.");
+        if (lowerLodRegionFiles == null) {
+            Debug.err("Error occurred when listing lod " + lowerLOD + " region files.");
             return;
         }
 
-        for (File chunkFile : lowerLodChunkFiles) {
-            Chunk chunk = saver.load(chunkFile.getPath());
-            if (chunk == null) continue;
-            long thisLodChunkX = chunk.X >> 1;
-            long thisLodChunkY = chunk.Y >> 1;
-            long thisLodChunkZ = chunk.Z >> 1;
-            ChunkID thisLodChunkId = new ChunkID(thisLodChunkX, thisLodChunkY, thisLodChunkZ, lod);
-            File thisLodChunkFile = new File(thisLodFile.getPath() + "/" + thisLodChunkId);
-            if (thisLodChunkFile.exists()) continue;
+        // All eight children of a chunk lie in the same lower LOD region, so the parents can be grouped per region
+        ArrayList<String> parentRegions = new ArrayList<>();
+        ArrayList<int[]> parentChildSlots = new ArrayList<>();
+        int lowerLodChunkCount = 0;
+        for (File regionFile : lowerLodRegionFiles) {
+            String lowerLodRegion = regionFile.getPath();
+            int[][] childSlots = new int[PARENTS_PER_REGION][];
+
+            for (int slot : getOccupiedSlots(regionFile)) {
+                int parentIndex = getParentIndex(slot);
+                if (childSlots[parentIndex] == null) {
+                    childSlots[parentIndex] = new int[] {-1, -1, -1, -1, -1, -1, -1, -1};
+                    parentRegions.add(lowerLodRegion);
+                    parentChildSlots.add(childSlots[parentIndex]);
+                }
+                childSlots[parentIndex][getChildIndex(slot)] = slot;
+                lowerLodChunkCount++;
+            }
+        }
+
+        LodProgress progress = new LodProgress(lod, parentChildSlots.size(), new AtomicInteger());
+        ArrayList<ParentGenerator> generators = new ArrayList<>(parentChildSlots.size());
+        for (int index = 0; index < parentChildSlots.size(); index++)
+            generators.add(new ParentGenerator(parentRegions.get(index), parentChildSlots.get(index), lod, progress));
+        ParallelUtils.invokeAll(generators);
+        Debug.log("Finished generating lod %s, generated from %s lowerLod chunks. Took %sms%n", lod, lowerLodChunkCount, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private static int getParentIndex(int slot) {
+        int parentX = slot >> RegionFile.REGION_SIZE_BITS * 2 + 1 & PARENT_MASK;
+        int parentY = slot >> RegionFile.REGION_SIZE_BITS + 1 & PARENT_MASK;
+        int parentZ = slot >> 1 & PARENT_MASK;
+        return parentX << (RegionFile.REGION_SIZE_BITS - 1) * 2 | parentY << RegionFile.REGION_SIZE_BITS - 1 | parentZ;
+    }
+
+    private static int getChildIndex(int slot) {
+        return (slot >> RegionFile.REGION_SIZE_BITS * 2 & 1) << 2 | (slot >> RegionFile.REGION_SIZE_BITS & 1) << 1 | slot & 1;
+    }
 
-            Chunk thisLodChunk = new Chunk(thisLodChunkX, thisLodChunkY, thisLodChunkZ, lod);
-            generateChunk(thisLodChunk, saver);
-            saver.save(thisLodChunk, getSaveFileLocation(thisLodChunkId, lod));
+    private static String getRegionPath(long chunkX, long chunkY, long chunkZ, int lod) {
+        return getSaveFileLocation(chunkX >> RegionFile.REGION_SIZE_BITS, chunkY >> RegionFile.REGION_SIZE_BITS, chunkZ >> RegionFile.REGION_SIZE_BITS, lod);
+    }
+
+    // Closed region files got evicted or failed to reopen after compacting, both are replaced by a newly opened one
+    private static RegionFile getRegionFile(String path, boolean create) {
+        synchronized (REGION_FILES) {
+            RegionFile regionFile = REGION_FILES.get(path);
+            if (regionFile != null && !regionFile.isClosed()) return regionFile;
+            if (!create && !new File(path).exists()) return null;
+            regionFile = new RegionFile(new File(path));
+            REGION_FILES.put(path, regionFile);
+            return regionFile;
         }
-       Debug.log("Finished generating lod %s, generated from %s lowerLod chunks. Took %sms%n", lod, lowerLodChunkFiles.length, (System.nanoTime() - start) / 1_000_000);
     }
 
-    private static void generateChunk(Chunk chunk, ChunkSaver saver) {
-        WorldGeneration.generate(chunk);
-        Game.getWorld().storeChunk(chunk);
+    private static byte[] readSlot(String path, int slot) {
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            RegionFile regionFile = getRegionFile(path, false);
+            if (regionFile == null) return null;
+            byte[] bytes = regionFile.read(slot);
+            if (bytes != null || !regionFile.isClosed()) return bytes;
+        }
+        return null;
+    }
+
+    private static boolean writeSlots(String path, int[] slots, byte[][] chunks, int count) {
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            RegionFile regionFile = getRegionFile(path, true);
+            if (regionFile.write(slots, chunks, count)) return true;
+            if (!regionFile.isClosed()) return false;
+        }
+        return false;
+    }
+
 
-        long lowLODStartX = chunk.X << 1;
-        long lowLODStartY = chunk.Y << 1;
-        long lowLODStartZ = chunk.Z << 1;
-        int lowLOD = chunk.LOD - 1;
+    public boolean saveChunk(Chunk chunk) {
+        return writeSlots(getRegionPath(chunk.X, chunk.Y, chunk.Z, chunk.LOD), new int[] {RegionFile.getSlot(chunk.X, chunk.Y, chunk.Z)}, new byte[][] {toBytes(chunk)}, 1);
+    }
 
-        Chunk chunk0 = saver.load(getSaveFileLocation(new ChunkID(lowLODStartX, lowLODStartY, lowLODStartZ, lowLOD), lowLOD));
-        Chunk chunk1 = saver.load(getSaveFileLocation(new ChunkID(lowLODStartX, lowLODStartY, lowLODStartZ + 1, lowLOD), lowLOD));
-        Chunk chunk2 = saver.load(getSaveFileLocation(new ChunkID(lowLODStartX, lowLODStartY + 1, lowLODStartZ, lowLOD), lowLOD));
-        Chunk chunk3 = saver.load(getSaveFileLocation(new ChunkID(lowLODStartX, lowLODStartY + 1, lowLODStartZ + 1, lowLOD), lowLOD));
-        Chunk chunk4 = saver.load(getSaveFileLocation(new ChunkID(lowLODStartX + 1, lowLODStartY, lowLODStartZ, lowLOD), lowLOD));
-        Chunk chunk5 = saver.load(getSaveFileLocation(new ChunkID(lowLODStartX + 1, lowLODStartY, lowLODStartZ + 1, lowLOD), lowLOD));
-        Chunk chunk6 = saver.load(getSaveFileLocation(new ChunkID(lowLODStartX + 1, lowLODStartY + 1, lowLODStartZ, lowLOD), lowLOD));
-        Chunk chunk7 = saver.load(getSaveFileLocation(new ChunkID(lowLODStartX + 1, lowLODStartY + 1, lowLODStartZ + 1, lowLOD), lowLOD));
+    /**
+     * Saves chunks sorted by region with one write, and so one sync, per region.
+     *
+     * @return the number of chunks that failed to save
+     */
+    public int saveChunks(List<Chunk> chunks) {
+        int[] slots = new int[chunks.size()];
+        byte[][] bytes = new byte[chunks.size()][];
+        int failedCount = 0;
+
+        for (int start = 0, end; start < chunks.size(); start = end) {
+            Chunk first = chunks.get(start);
+            String path = getRegionPath(first.X, first.Y, first.Z, first.LOD);
+            int count = 0;
+            for (end = start; end < chunks.size(); end++) {
+                Chunk chunk = chunks.get(end);
+                if (!path.equals(getRegionPath(chunk.X, chunk.Y, chunk.Z, chunk.LOD))) break;
+                slots[count] = RegionFile.getSlot(chunk.X, chunk.Y, chunk.Z);
+                bytes[count++] = toBytes(chunk);
+            }
+            if (!writeSlots(path, slots, bytes, count)) failedCount += count;
+        }
+        return failedCount;
+    }
 
-        chunk.getMaterials().storeLowerLODChunks(chunk0, chunk1, chunk2, chunk3, chunk4, chunk5, chunk6, chunk7);
+    public Chunk loadChunk(ChunkID id, int lod) {
+        Chunk pending = ChunkWriter.getPending(id, lod);
+        if (pending != null) return pending;
+        byte[] bytes = readSlot(getRegionPath(id.chunkX(), id.chunkY(), id.chunkZ(), lod), RegionFile.getSlot(id.chunkX(), id.chunkY(), id.chunkZ()));
+        return bytes == null ? getDefault() : fromBytes(bytes);
     }
 
+    public boolean containsChunk(ChunkID id, int lod) {
+        if (ChunkWriter.getPending(id, lod) != null) return true;
+        RegionFile regionFile = getRegionFile(getRegionPath(id.chunkX(), id.chunkY(), id.chunkZ(), lod), false);
+        return regionFile != null && regionFile.contains(RegionFile.getSlot(id.chunkX(), id.chunkY(), id.chunkZ()));
+    }
 
     public Chunk loadAndGenerate(long chunkX, long chunkY, long chunkZ, int lod) {
         Chunk chunk = load(chunkX, chunkY, chunkZ, lod);
@@ -100,22 +258,24 @@ public final class ChunkSaver extends Saver<Chunk> {
 
     public Chunk load(long chunkX, long chunkY, long chunkZ, int lod) {
         ChunkID expectedID = new ChunkID(chunkX, chunkY, chunkZ, lod);
-        Chunk chunk = Game.getWorld().getChunk(chunkX, chunkY, chunkZ, lod);
+        World world = Game.getWorld();
+        Chunk loadedChunk = null;
 
-        if (chunk == null) return load(chunkX, chunkY, chunkZ, lod, expectedID);
-        if (!chunk.ID.equals(expectedID)) {
-            if (chunk.isModified()) save(chunk, getSaveFileLocation(chunk.ID, chunk.LOD));
-            return load(chunkX, chunkY, chunkZ, lod, expectedID);
+        while (true) {
+            Chunk current = world.getChunk(chunkX, chunkY, chunkZ, lod);
+            if (current != null && current.ID.equals(expectedID)) return current;
+
+            if (loadedChunk == null) loadedChunk = load(chunkX, chunkY, chunkZ, lod, expectedID);
+            // Queue before the swap so the evicted chunk is always reachable, either in the world or in the writer
+            if (current != null && current.isModified()) ChunkWriter.queue(current);
+            if (world.compareAndSetChunk(current, loadedChunk)) return loadedChunk;
         }
-        return chunk;
     }
 
     private Chunk load(long chunkX, long chunkY, long chunkZ, int lod, ChunkID id) {
-        Chunk chunk = load(getSaveFileLocation(id, lod));
+        Chunk chunk = loadChunk(id, lod);
         if (chunk == null) chunk = new Chunk(chunkX, chunkY, chunkZ, lod);
         else chunk.setGenerationStatus(Status.DONE);
-
-        Game.getWorld().storeChunk(chunk);
         return chunk;
     }
 
@@ -168,4 +328,76 @@ public final class ChunkSaver extends Saver<Chunk> {
         }
         return getDefault();
     }
+
+    private static final int MAX_OPEN_REGION_FILES = 256;
+    private static final int MAX_ATTEMPTS = 3;
+    // Access ordered, evicted region files are closed under the lock so no second instance of the same file gets opened meanwhile
+    private static final LinkedHashMap<String, RegionFile> REGION_FILES = new LinkedHashMap<>(MAX_OPEN_REGION_FILES, 0.75F, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, RegionFile> eldest) {
+            if (size() <= MAX_OPEN_REGION_FILES) return false;
+            eldest.getValue().close();
+            return true;
+        }
+    };
+    private static final int PARENT_MASK = RegionFile.REGION_SIZE_MASK >> 1;
+    private static final int PARENTS_PER_REGION = RegionFile.CHUNKS_PER_REGION >> 3;
+
+    private record LodProgress(int lod, int total, AtomicInteger finished) {
+
+        void increment() {
+            int finished = this.finished.incrementAndGet();
+            if (finished * 10 / total != (finished - 1) * 10 / total)
+                Debug.log("Generating lod %s: %s%% (%s/%s)%n", lod, finished * 100 / total, finished, total);
+        }
+    }
+
+    private static final class ParentGenerator extends RecursiveAction {
+
+        ParentGenerator(String lowerLodRegion, int[] childSlots, int lod, LodProgress progress) {
+            this.lowerLodRegion = lowerLodRegion;
+            this.childSlots = childSlots;
+            this.lod = lod;
+            this.progress = progress;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                generate();
+            } catch (Exception exception) {
+                Debug.err("LOD generation:");
+                Debug.err(exception.getClass());
+                exception.printStackTrace();
+            }
+            progress.increment();
+        }
+
+        private void generate() {
+            ChunkSaver saver = new ChunkSaver();
+            Chunk[] children = new Chunk[8];
+            Chunk anyChild = null;
+            boolean allChildrenPresent = true;
+
+            for (int childIndex = 0; childIndex < children.length; childIndex++) {
+                if (childSlots[childIndex] != -1) children[childIndex] = saver.fromBytes(readSlot(lowerLodRegion, childSlots[childIndex]));
+                if (children[childIndex] == null) allChildrenPresent = false;
+                else anyChild = children[childIndex];
+            }
+            if (anyChild == null) return;
+
+            Chunk chunk = new Chunk(anyChild.X >> 1, anyChild.Y >> 1, anyChild.Z >> 1, lod);
+            // Every voxel gets overwritten by the children anyway
+            if (allChildrenPresent) chunk.setGenerationStatus(Status.DONE);
+            else WorldGeneration.generate(chunk);
+
+            chunk.getMaterials().storeLowerLODChunks(children[0], children[1], children[2], children[3], children[4], children[5], children[6], children[7]);
+            saver.saveChunk(chunk);
+        }
+
+        private final String lowerLodRegion;
+        private final int[] childSlots;
+        private final int lod;
+        private final LodProgress progress;
+    }
 }
@@ -0,0 +1,170 @@
+package game.server.saving;
+
+import core.rendering_api.Debug;
+
+import game.server.Chunk;
+import game.server.ChunkID;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Writes modified chunks to their region files on a background thread.
+ * <p>
+ * Repeated saves of the same chunk are coalesced and pending chunks stay readable through {@link #getPending(ChunkID, int)}
+ * until they are on disk, so a chunk that gets reloaded before its write finished never comes back stale.
+ * Pending chunks are kept per LOD, since a {@link ChunkID} alone doesn't tell chunks of different LODs apart.
+ * <p>
+ * Once {@code MAX_PENDING_CHUNKS} chunks are pending, further chunks are written by the queueing thread itself
+ * instead of parking it until the writer catches up.
+ */
+public final class ChunkWriter {
+
+    public static final int MAX_PENDING_CHUNKS = 512;
+
+    private ChunkWriter() {
+
+    }
+
+    public static void queue(Chunk chunk) {
+        synchronized (LOCK) {
+            startWriterIfNecessary();
+            LinkedHashMap<ChunkID, Chunk> lodPending = getPendingChunks(chunk.LOD);
+            // Chunks that are already being written have to wait for that write, see takeBatch()
+            if (pendingCount < MAX_PENDING_CHUNKS || lodPending.containsKey(chunk.ID) || getWritingChunks(chunk.LOD).containsKey(chunk.ID)) {
+                if (lodPending.put(chunk.ID, chunk) == null) pendingCount++;
+                LOCK.notifyAll();
+                return;
+            }
+            getWritingChunks(chunk.LOD).put(chunk.ID, chunk);
+            writingCount++;
+        }
+
+        try {
+            if (!new ChunkSaver().saveChunk(chunk)) Debug.err("Failed to save chunk %s at lod %s%n", chunk.ID, chunk.LOD);
+        } catch (Exception exception) {
+            Debug.err("Saving:");
+            exception.printStackTrace();
+        } finally {
+            synchronized (LOCK) {
+                getWritingChunks(chunk.LOD).remove(chunk.ID);
+                writingCount--;
+                LOCK.notifyAll();
+            }
+        }
+    }
+
+    public static Chunk getPending(ChunkID id, int lod) {
+        synchronized (LOCK) {
+            Chunk chunk = getPendingChunks(lod).get(id);
+            return chunk != null ? chunk : getWritingChunks(lod).get(id);
+        }
+    }
+
+    public static void flush() {
+        synchronized (LOCK) {
+            while (pendingCount != 0 || writingCount != 0) waitOnLock();
+        }
+    }
+
+    public static int getPendingCount() {
+        synchronized (LOCK) {
+            return pendingCount + writingCount;
+        }
+    }
+
+
+    private static LinkedHashMap<ChunkID, Chunk> getPendingChunks(int lod) {
+        while (pending.size() <= lod) pending.add(new LinkedHashMap<>());
+        return pending.get(lod);
+    }
+
+    private static HashMap<ChunkID, Chunk> getWritingChunks(int lod) {
+        while (writing.size() <= lod) writing.add(new HashMap<>());
+        return writing.get(lod);
+    }
+
+    private static void startWriterIfNecessary() {
+        if (writer != null && writer.isAlive()) return;
+        writer = new Thread(ChunkWriter::writeLoop, "Chunk Writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    private static void writeLoop() {
+        ChunkSaver saver = new ChunkSaver();
+        ArrayList<Chunk> batch = new ArrayList<>(BATCH_SIZE);
+
+        while (true) {
+            synchronized (LOCK) {
+                while (batch.isEmpty()) {
+                    while (pendingCount == 0) waitOnLock();
+                    takeBatch(batch);
+                    // Everything pending is still being written inline
+                    if (batch.isEmpty()) waitOnLock();
+                }
+                pendingCount -= batch.size();
+                writingCount += batch.size();
+                LOCK.notifyAll();
+            }
+
+            batch.sort(REGION_ORDER);
+            try {
+                int failedCount = saver.saveChunks(batch);
+                if (failedCount != 0) Debug.err("Failed to save %s of %s chunks%n", failedCount, batch.size());
+            } catch (Exception exception) {
+                Debug.err("Saving:");
+                exception.printStackTrace();
+            }
+
+            synchronized (LOCK) {
+                for (Chunk chunk : batch) getWritingChunks(chunk.LOD).remove(chunk.ID);
+                writingCount -= batch.size();
+                LOCK.notifyAll();
+            }
+            batch.clear();
+        }
+    }
+
+    private static void takeBatch(ArrayList<Chunk> batch) {
+        for (int lod = 0; lod < pending.size() && batch.size() < BATCH_SIZE; lod++) {
+            HashMap<ChunkID, Chunk> lodWriting = getWritingChunks(lod);
+            Iterator<Chunk> iterator = pending.get(lod).values().iterator();
+            while (iterator.hasNext() && batch.size() < BATCH_SIZE) {
+                Chunk chunk = iterator.next();
+                // Only one copy of a chunk may be written at a time, or an older copy could land last
+                if (lodWriting.containsKey(chunk.ID)) continue;
+                lodWriting.put(chunk.ID, chunk);
+                batch.add(chunk);
+                iterator.remove();
+            }
+        }
+    }
+
+    private static void waitOnLock() {
+        try {
+            LOCK.wait();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(exception);
+        }
+    }
+
+    private static final int BATCH_SIZE = 64;
+    private static final Object LOCK = new Object();
+    private static final Comparator<Chunk> REGION_ORDER = Comparator
+            .comparingInt((Chunk chunk) -> chunk.LOD)
+            .thenComparingLong(chunk -> chunk.X >> RegionFile.REGION_SIZE_BITS)
+            .thenComparingLong(chunk -> chunk.Y >> RegionFile.REGION_SIZE_BITS)
+            .thenComparingLong(chunk -> chunk.Z >> RegionFile.REGION_SIZE_BITS)
+            .thenComparingInt(chunk -> RegionFile.getSlot(chunk.X, chunk.Y, chunk.Z));
+
+    // Indexed by LOD
+    private static final ArrayList<LinkedHashMap<ChunkID, Chunk>> pending = new ArrayList<>();
+    private static final ArrayList<HashMap<ChunkID, Chunk>> writing = new ArrayList<>();
+    private static int pendingCount = 0, writingCount = 0;
+    private static Thread writer;
+}
@@ -0,0 +1,227 @@
+package game.server.saving;
+
+import core.rendering_api.Debug;
+
+import game.player.Player;
+import game.player.rendering.MeshCollector;
+import game.server.Chunk;
+import game.server.ChunkID;
+import game.server.EditExecutor;
+import game.server.Game;
+import game.server.Server;
+import game.server.World;
+import game.server.generation.WorldGeneration;
+import game.utils.Status;
+import game.utils.Utils;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.TreeSet;
+
+/**
+ * Keeps the higher LODs consistent with edits by rebuilding the parents of modified chunks from their eight children.
+ * <p>
+ * The direct parents of edited chunks are rebuilt right away by {@link #rebuildParents(Collection)}, so the next LOD
+ * never shows terrain from before the edit. Dirty chunks of the LODs above are rebuilt on a background thread,
+ * lowest LOD first, so a grandparent only gets rebuilt once all of its dirty children are up to date.
+ * Rebuilt chunks replace the loaded chunk through {@link World#compareAndSetChunk(Chunk, Chunk)} while holding the
+ * lock of the {@link EditExecutor}, so no edit can write into the replaced chunk and meshers notice the new stamp.
+ * Rebuilt chunks are saved through the {@link ChunkWriter}.
+ */
+public final class LodPropagator {
+
+    private LodPropagator() {
+
+    }
+
+    public static void markDirty(Chunk chunk) {
+        markDirty(chunk.ID, chunk.LOD);
+    }
+
+    public static void markDirty(ChunkID id, int lod) {
+        World world = Game.getWorld();
+        if (world == null || lod + 1 >= world.LOD_COUNT) return;
+        DirtyChunk parent = new DirtyChunk(new ChunkID(id.chunkX() >> 1, id.chunkY() >> 1, id.chunkZ() >> 1, lod + 1), lod + 1);
+
+        synchronized (LOCK) {
+            startPropagatorIfNecessary();
+            if (dirty.add(parent)) LOCK.notifyAll();
+        }
+    }
+
+    /**
+     * Rebuilds the parents of the modified chunks on the calling thread and marks their parents dirty in turn.
+     */
+    public static void rebuildParents(Collection<Chunk> chunks) {
+        World world = Game.getWorld();
+        if (world == null) return;
+        LinkedHashSet<DirtyChunk> parents = new LinkedHashSet<>();
+        for (Chunk chunk : chunks) {
+            if (chunk == null || !chunk.isModified() || chunk.LOD + 1 >= world.LOD_COUNT) continue;
+            parents.add(new DirtyChunk(new ChunkID(chunk.X >> 1, chunk.Y >> 1, chunk.Z >> 1, chunk.LOD + 1), chunk.LOD + 1));
+        }
+
+        ChunkSaver saver = new ChunkSaver();
+        for (DirtyChunk parent : parents) {
+            synchronized (LOCK) {
+                dirty.remove(parent);
+            }
+            rebuildCatchException(parent, saver);
+        }
+    }
+
+    public static void flush() {
+        synchronized (LOCK) {
+            while (!dirty.isEmpty() || rebuilding) waitOnLock();
+        }
+    }
+
+    public static int getDirtyCount() {
+        synchronized (LOCK) {
+            return dirty.size();
+        }
+    }
+
+    /**
+     * Drops all dirty chunks and stops the background thread, call {@link #flush()} first to keep them.
+     */
+    public static void cleanUp() {
+        synchronized (LOCK) {
+            dirty.clear();
+            propagator = null;
+            LOCK.notifyAll();
+        }
+    }
+
+
+    private static void startPropagatorIfNecessary() {
+        if (propagator != null && propagator.isAlive()) return;
+        propagator = new Thread(LodPropagator::propagateLoop, "LOD Propagator");
+        propagator.setDaemon(true);
+        propagator.start();
+    }
+
+    private static void propagateLoop() {
+        ChunkSaver saver = new ChunkSaver();
+        Thread thread = Thread.currentThread();
+
+        while (true) {
+            DirtyChunk dirtyChunk;
+            synchronized (LOCK) {
+                while (dirty.isEmpty() && propagator == thread) waitOnLock();
+                if (propagator != thread) return;
+                dirtyChunk = dirty.pollFirst();
+                rebuilding = true;
+            }
+
+            rebuildCatchException(dirtyChunk, saver);
+
+            synchronized (LOCK) {
+                rebuilding = false;
+                LOCK.notifyAll();
+            }
+        }
+    }
+
+    private static void rebuildCatchException(DirtyChunk dirtyChunk, ChunkSaver saver) {
+        // Keeps the background thread and rebuildParents() from publishing the same chunk out of order
+        synchronized (REBUILD_LOCK) {
+            try {
+                rebuild(dirtyChunk.id(), dirtyChunk.lod(), saver);
+            } catch (Exception exception) {
+                Debug.err("LOD propagation of %s at lod %d: %s%n", dirtyChunk.id(), dirtyChunk.lod(), exception);
+                exception.printStackTrace();
+            }
+        }
+    }
+
+    private static void rebuild(ChunkID id, int lod, ChunkSaver saver) {
+        World world = Game.getWorld();
+        if (world == null || lod >= world.LOD_COUNT) return;
+
+        long childStartX = id.chunkX() << 1;
+        long childStartY = id.chunkY() << 1;
+        long childStartZ = id.chunkZ() << 1;
+        Chunk[] children = new Chunk[8];
+        boolean allChildrenPresent = true;
+
+        for (int childIndex = 0; childIndex < children.length; childIndex++) {
+            children[childIndex] = getChild(world, saver,
+                    childStartX + (childIndex >> 2 & 1),
+                    childStartY + (childIndex >> 1 & 1),
+                    childStartZ + (childIndex & 1), lod - 1);
+            if (children[childIndex] == null) allChildrenPresent = false;
+        }
+
+        Chunk chunk = new Chunk(id.chunkX(), id.chunkY(), id.chunkZ(), lod);
+        // Every voxel gets overwritten by the children anyway
+        if (allChildrenPresent) chunk.setGenerationStatus(Status.DONE);
+        else WorldGeneration.generate(chunk);
+        chunk.getMaterials().storeLowerLODChunks(children[0], children[1], children[2], children[3], children[4], children[5], children[6], children[7]);
+
+        chunk.setModified();
+        // Queued first, so a reload of the chunk during the swap already gets the rebuilt version
+        ChunkWriter.queue(chunk);
+        if (publish(world, chunk)) scheduleRemesh(chunk);
+
+        markDirty(id, lod);
+    }
+
+    private static boolean publish(World world, Chunk chunk) {
+        Server server = Game.getServer();
+        Object editLock = server != null ? server.getEditExecutor() : REBUILD_LOCK;
+        synchronized (editLock) {
+            while (true) {
+                Chunk loadedChunk = world.getChunk(chunk.INDEX, chunk.LOD);
+                if (loadedChunk == null || !loadedChunk.ID.equals(chunk.ID) || loadedChunk.getGenerationStatus() != Status.DONE) return false;
+                if (world.compareAndSetChunk(loadedChunk, chunk)) return true;
+            }
+        }
+    }
+
+    private static Chunk getChild(World world, ChunkSaver saver, long chunkX, long chunkY, long chunkZ, int lod) {
+        ChunkID id = new ChunkID(chunkX, chunkY, chunkZ, lod);
+        Chunk chunk = world.getChunk(chunkX, chunkY, chunkZ, lod);
+        if (chunk != null && chunk.ID.equals(id) && chunk.getGenerationStatus() == Status.DONE) return chunk;
+        return saver.loadChunk(id, lod);
+    }
+
+    private static void scheduleRemesh(Chunk chunk) {
+        Player player = Game.getPlayer();
+        Server server = Game.getServer();
+        if (player == null || server == null) return;
+
+        MeshCollector meshCollector = player.getMeshCollector();
+        meshCollector.setMeshed(false, chunk.INDEX, chunk.LOD);
+        meshCollector.setMeshed(false, Utils.getChunkIndex(chunk.X - 1, chunk.Y, chunk.Z, chunk.LOD), chunk.LOD);
+        meshCollector.setMeshed(false, Utils.getChunkIndex(chunk.X + 1, chunk.Y, chunk.Z, chunk.LOD), chunk.LOD);
+        meshCollector.setMeshed(false, Utils.getChunkIndex(chunk.X, chunk.Y - 1, chunk.Z, chunk.LOD), chunk.LOD);
+        meshCollector.setMeshed(false, Utils.getChunkIndex(chunk.X, chunk.Y + 1, chunk.Z, chunk.LOD), chunk.LOD);
+        meshCollector.setMeshed(false, Utils.getChunkIndex(chunk.X, chunk.Y, chunk.Z - 1, chunk.LOD), chunk.LOD);
+        meshCollector.setMeshed(false, Utils.getChunkIndex(chunk.X, chunk.Y, chunk.Z + 1, chunk.LOD), chunk.LOD);
+        server.scheduleGeneratorRestart();
+    }
+
+    private static void waitOnLock() {
+        try {
+            LOCK.wait();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(exception);
+        }
+    }
+
+    private static final Object LOCK = new Object();
+    private static final Object REBUILD_LOCK = new Object();
+    private static final TreeSet<DirtyChunk> dirty = new TreeSet<>(Comparator
+            .comparingInt(DirtyChunk::lod)
+            .thenComparingLong(dirtyChunk -> dirtyChunk.id().chunkX())
+            .thenComparingLong(dirtyChunk -> dirtyChunk.id().chunkY())
+            .thenComparingLong(dirtyChunk -> dirtyChunk.id().chunkZ()));
+    private static boolean rebuilding = false;
+    private static Thread propagator;
+
+    private record DirtyChunk(ChunkID id, int lod) {
+    }
+}
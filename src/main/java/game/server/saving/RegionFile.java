@@ -0,0 +1,323 @@
+package game.server.saving;
+
+import core.rendering_api.Debug;
+import core.utils.FileManager;
+import core.utils.IntArrayList;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Packs a {@code REGION_SIZE}³ block of chunks of one LOD into a single file.
+ * <p>
+ * The file starts with a table holding the first sector and the length of every slot, followed by the chunk data.
+ * A chunk is never overwritten in place. It is appended to the end of the file and forced to disk, and only then its
+ * table entry is pointed at the new copy, so a crash while writing leaves the previous copy intact.
+ * The space this leaves behind is reclaimed by {@link #compact()} once enough of the file is wasted, which writes
+ * a synced copy next to the file and atomically moves it over the file.
+ * <p>
+ * Offsets are counted in sectors, so a region can grow to {@code SECTOR_SIZE << 31} bytes, writes beyond that fail.
+ * A new file only extends over the table instead of writing it, so on file systems with sparse files only the blocks
+ * of the table holding used entries take up space.
+ * <p>
+ * Closed region files refuse every read and write, callers have to look up the region file again.
+ */
+public final class RegionFile {
+
+    public static final int REGION_SIZE_BITS = 4;
+    public static final int REGION_SIZE = 1 << REGION_SIZE_BITS;
+    public static final int REGION_SIZE_MASK = REGION_SIZE - 1;
+    public static final int CHUNKS_PER_REGION = REGION_SIZE * REGION_SIZE * REGION_SIZE;
+
+    public RegionFile(File file) {
+        this.file = file;
+        FileManager.loadAndCreateFile(file.getPath());
+        try {
+            access = new RandomAccessFile(file, "rw");
+            if (access.length() < HEADER_START) writeEmptyHeader();
+            else readHeader();
+        } catch (IOException exception) {
+            throw new RuntimeException(exception);
+        }
+        // Rewrites the table in the current version
+        if (version == LEGACY_VERSION) compact();
+    }
+
+    public static int getSlot(long chunkX, long chunkY, long chunkZ) {
+        return (int) ((chunkX & REGION_SIZE_MASK) << REGION_SIZE_BITS * 2 | (chunkY & REGION_SIZE_MASK) << REGION_SIZE_BITS | chunkZ & REGION_SIZE_MASK);
+    }
+
+    public synchronized boolean contains(int slot) {
+        return lengths[slot] != 0;
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    public synchronized byte[] read(int slot) {
+        if (closed || lengths[slot] == 0) return null;
+        byte[] bytes = new byte[lengths[slot]];
+        try {
+            access.seek(offsets[slot]);
+            access.readFully(bytes);
+        } catch (IOException exception) {
+            exception.printStackTrace();
+            return null;
+        }
+        return bytes;
+    }
+
+    public boolean write(int slot, byte[] bytes) {
+        return write(new int[] {slot}, new byte[][] {bytes}, 1);
+    }
+
+    /**
+     * Appends the first count chunks and forces them to disk once, before pointing any of the slots at them.
+     *
+     * @return false if nothing got written, either because of an error or because the file is closed
+     */
+    public synchronized boolean write(int[] slots, byte[][] chunks, int count) {
+        if (closed) return false;
+        long[] newOffsets = new long[count];
+        long end = fileLength;
+        for (int index = 0; index < count; index++) {
+            newOffsets[index] = end;
+            end += roundToSector(chunks[index].length);
+        }
+        if (end >> SECTOR_SIZE_BITS > Integer.MAX_VALUE) {
+            Debug.err("Region file %s would exceed %s bytes%n", file.getName(), (long) Integer.MAX_VALUE << SECTOR_SIZE_BITS);
+            return false;
+        }
+
+        try {
+            for (int index = 0; index < count; index++) {
+                access.seek(newOffsets[index]);
+                access.write(chunks[index]);
+            }
+            access.setLength(end);
+            access.getChannel().force(false);
+            fileLength = end;
+
+            // Only now the previous copies stop being referenced
+            for (int index = 0; index < count; index++) {
+                int slot = slots[index], length = chunks[index].length;
+                liveBytes += roundToSector(length) - roundToSector(lengths[slot]);
+                setEntry(slot, newOffsets[index], length);
+            }
+        } catch (IOException exception) {
+            exception.printStackTrace();
+            return false;
+        }
+        if (shouldCompact()) compact();
+        return !closed;
+    }
+
+    /**
+     * @return false if the file is closed
+     */
+    public synchronized boolean remove(int slot) {
+        if (closed) return false;
+        if (lengths[slot] == 0) return true;
+        liveBytes -= roundToSector(lengths[slot]);
+        try {
+            setEntry(slot, 0, 0);
+        } catch (IOException exception) {
+            exception.printStackTrace();
+        }
+        return true;
+    }
+
+    public synchronized int[] getOccupiedSlots() {
+        IntArrayList slots = new IntArrayList(64);
+        for (int slot = 0; slot < CHUNKS_PER_REGION; slot++) if (lengths[slot] != 0) slots.add(slot);
+        return slots.toArray();
+    }
+
+    public synchronized long getWastedBytes() {
+        return fileLength - DATA_START - liveBytes;
+    }
+
+    /**
+     * Closes the file if the compacted copy can't be opened afterward.
+     */
+    public synchronized void compact() {
+        if (closed) return;
+        long start = System.nanoTime();
+        long wastedBytes = getWastedBytes();
+        File compactedFile = new File(file.getPath() + ".tmp");
+
+        try (RandomAccessFile compacted = new RandomAccessFile(compactedFile, "rw")) {
+            compacted.setLength(0);
+            long[] compactedOffsets = new long[CHUNKS_PER_REGION];
+            long offset = DATA_START;
+
+            for (int slot = 0; slot < CHUNKS_PER_REGION; slot++) {
+                if (lengths[slot] == 0) continue;
+                byte[] bytes = new byte[lengths[slot]];
+                access.seek(offsets[slot]);
+                access.readFully(bytes);
+
+                compacted.seek(offset);
+                compacted.write(bytes);
+                compactedOffsets[slot] = offset;
+                offset += roundToSector(bytes.length);
+            }
+            compacted.setLength(offset);
+            compacted.seek(0);
+            compacted.write(encodeHeader(compactedOffsets, lengths));
+            // The move must never be on disk before the data it moves
+            compacted.getFD().sync();
+        } catch (IOException exception) {
+            exception.printStackTrace();
+            return;
+        }
+
+        try {
+            access.close();
+            Files.move(compactedFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException exception) {
+            // The previous file is still in place
+            exception.printStackTrace();
+        }
+
+        try {
+            access = new RandomAccessFile(file, "rw");
+            readHeader();
+        } catch (IOException exception) {
+            exception.printStackTrace();
+            closed = true;
+            return;
+        }
+        Debug.log("Compacted region %s, reclaimed %s bytes. Took %sms%n", file.getName(), wastedBytes, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    public synchronized void close() {
+        if (closed) return;
+        if (shouldCompact()) compact();
+        if (closed) return;
+        closed = true;
+        try {
+            access.close();
+        } catch (IOException exception) {
+            exception.printStackTrace();
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+
+    private boolean shouldCompact() {
+        long wastedBytes = getWastedBytes();
+        return wastedBytes > MIN_COMPACTION_WASTE && wastedBytes > liveBytes >> 1;
+    }
+
+    private void setEntry(int slot, long offset, int length) throws IOException {
+        offsets[slot] = offset;
+        lengths[slot] = length;
+
+        access.seek(HEADER_START + (long) slot * ENTRY_SIZE);
+        access.writeInt((int) (offset >> SECTOR_SIZE_BITS));
+        access.writeInt(length);
+    }
+
+    private void writeEmptyHeader() throws IOException {
+        // Extended instead of written, see the class comment
+        access.setLength(0);
+        access.setLength(DATA_START);
+        access.seek(0);
+        access.writeInt(VERSION);
+        version = VERSION;
+        fileLength = DATA_START;
+        liveBytes = 0;
+    }
+
+    private void readHeader() throws IOException {
+        access.seek(0);
+        version = access.readInt();
+        if (version == LEGACY_VERSION) {
+            readLegacyHeader();
+            return;
+        }
+        if (version != VERSION) Debug.err("Region file %s has unknown version %s%n", file.getName(), version);
+
+        byte[] header = new byte[HEADER_SIZE];
+        access.seek(0);
+        access.readFully(header);
+        liveBytes = 0;
+        for (int slot = 0; slot < CHUNKS_PER_REGION; slot++) {
+            int index = HEADER_START + slot * ENTRY_SIZE;
+            offsets[slot] = (readInt(header, index) & 0xFFFFFFFFL) << SECTOR_SIZE_BITS;
+            lengths[slot] = readInt(header, index + 4);
+            liveBytes += roundToSector(lengths[slot]);
+        }
+        fileLength = Math.max(DATA_START, access.length());
+    }
+
+    // Version 1 stored byte offsets, lengths and capacities, the constructor compacts these files into the current version
+    private void readLegacyHeader() throws IOException {
+        byte[] header = new byte[HEADER_START + CHUNKS_PER_REGION * LEGACY_ENTRY_SIZE];
+        access.seek(0);
+        access.readFully(header);
+        liveBytes = 0;
+        for (int slot = 0; slot < CHUNKS_PER_REGION; slot++) {
+            int index = HEADER_START + slot * LEGACY_ENTRY_SIZE;
+            offsets[slot] = readInt(header, index) & 0xFFFFFFFFL;
+            lengths[slot] = readInt(header, index + 4);
+            liveBytes += roundToSector(lengths[slot]);
+        }
+        fileLength = access.length();
+    }
+
+    private static byte[] encodeHeader(long[] offsets, int[] lengths) {
+        byte[] header = new byte[HEADER_SIZE];
+        writeInt(header, 0, VERSION);
+        for (int slot = 0; slot < CHUNKS_PER_REGION; slot++) {
+            int index = HEADER_START + slot * ENTRY_SIZE;
+            writeInt(header, index, (int) (offsets[slot] >> SECTOR_SIZE_BITS));
+            writeInt(header, index + 4, lengths[slot]);
+        }
+        return header;
+    }
+
+    private static long roundToSector(int length) {
+        return (long) length + SECTOR_SIZE - 1 & -SECTOR_SIZE;
+    }
+
+    private static int readInt(byte[] bytes, int index) {
+        return bytes[index] << 24 | (bytes[index + 1] & 0xFF) << 16 | (bytes[index + 2] & 0xFF) << 8 | bytes[index + 3] & 0xFF;
+    }
+
+    private static void writeInt(byte[] bytes, int index, int value) {
+        bytes[index] = (byte) (value >> 24);
+        bytes[index + 1] = (byte) (value >> 16);
+        bytes[index + 2] = (byte) (value >> 8);
+        bytes[index + 3] = (byte) value;
+    }
+
+    private final File file;
+    private RandomAccessFile access;
+    private boolean closed = false;
+    private int version;
+    private long fileLength, liveBytes;
+
+    private final long[] offsets = new long[CHUNKS_PER_REGION];
+    private final int[] lengths = new int[CHUNKS_PER_REGION];
+
+    private static final int VERSION = 2;
+    private static final int LEGACY_VERSION = 1;
+    // First sector and length, the capacity is the length rounded up to whole sectors
+    private static final int ENTRY_SIZE = 8;
+    private static final int LEGACY_ENTRY_SIZE = 12;
+    private static final int HEADER_START = 4;
+    private static final int HEADER_SIZE = HEADER_START + CHUNKS_PER_REGION * ENTRY_SIZE;
+    private static final int SECTOR_SIZE_BITS = 8;
+    private static final int SECTOR_SIZE = 1 << SECTOR_SIZE_BITS;
+    private static final long DATA_START = roundToSector(HEADER_SIZE);
+    private static final int MIN_COMPACTION_WASTE = 1 << 20;
+}
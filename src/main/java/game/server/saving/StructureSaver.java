@@ -6,6 +6,13 @@ import core.utils.Saver;
 import game.server.materials_data.MaterialsData;
 import game.server.generation.Structure;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
 import static game.utils.Constants.*;
 
 public final class StructureSaver extends Saver<Structure> {
@@ -14,6 +21,44 @@ public final class StructureSaver extends Saver<Structure> {
         return AssetManager.getAssetFilepath("structures/" + structureName);
     }
 
+    /**
+     * Maps the file read only, so the structure can be decoded again and again without reading the file through a stream.
+     *
+     * @return {@code null} if the file doesn't exist or couldn't be mapped
+     */
+    public static MappedByteBuffer map(String filepath) {
+        File file = new File(filepath);
+        if (!file.exists()) return null;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException exception) {
+            exception.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Decodes a structure from a file in the current version. Only uses absolute reads, so the same buffer
+     * can be decoded from multiple threads at once.
+     *
+     * @return {@code null} if the file isn't in the current version, those have to be loaded with {@code load(String filepath)}
+     */
+    public static Structure decode(ByteBuffer file) {
+        if (file.capacity() < HEADER_BYTES || file.getInt(0) != VERSION_NUMBER) return null;
+        int sizeX = file.getInt(4);
+        int sizeY = file.getInt(8);
+        int sizeZ = file.getInt(12);
+        int totalSizeBits = file.getInt(16);
+        int length = file.getInt(20);
+        if (length < 0 || length > file.capacity() - HEADER_BYTES) return null;
+
+        byte[] data = new byte[length];
+        file.get(HEADER_BYTES, data);
+        MaterialsData materialsData = new MaterialsData(totalSizeBits, data);
+        materialsData.recomputeTypes();
+        return new Structure(sizeX, sizeY, sizeZ, materialsData);
+    }
+
     @Override
     protected void save(Structure structure) {
         saveInt(structure.sizeX());
@@ -55,6 +100,10 @@ public final class StructureSaver extends Saver<Structure> {
 
     @Override
     protected int getVersionNumber() {
-        return 1;
+        return VERSION_NUMBER;
     }
+
+    private static final int VERSION_NUMBER = 1;
+    // Version, three sizes, total size bits and the length of the data, which follows right after
+    private static final int HEADER_BYTES = 6 * Integer.BYTES;
 }
@@ -31,7 +31,11 @@ public enum DebugScreenOptions {
     CHUNK_MEMORY(ColorOption.RED),
     TOTAL_MEMORY(ColorOption.RED),
     BUFFER_STORAGE(ColorOption.ORANGE),
+    GENERATION_QUEUES(ColorOption.ORANGE),
+    MESH_UPLOADS(ColorOption.ORANGE),
+    EDITS(ColorOption.ORANGE),
     GENERATION_DATA(ColorOption.WHITE),
+    MAP_SAMPLE_CACHE(ColorOption.WHITE),
     BIOME(ColorOption.GREEN),
     RESULTING_HEIGHT(ColorOption.GREEN),
     CONCURRENTLY_PLAYED_SOUNDS(ColorOption.WHITE);
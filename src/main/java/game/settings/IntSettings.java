@@ -13,6 +13,7 @@ public enum IntSettings implements IntSetting {
     PLACE_PARTICLE_STEP_LENGTH(1, 16, 1),
     RENDER_DISTANCE(2, 16, 6, Game::updateRenderDistance),
     LOD_COUNT(1, 20, 10, Game::updateLodCount),
+    GENERATION_THREADS(1, Runtime.getRuntime().availableProcessors(), Math.max(1, Runtime.getRuntime().availableProcessors() - 2), Game::updateGenerationThreads),
 
     OCCLUDERS_OCCLUDEES_LOD(0, LOD_COUNT.max - 1, 0),
     BREAK_PLACE_SIZE(0, CHUNK_SIZE_BITS + 2, 4),
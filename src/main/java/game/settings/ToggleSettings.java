@@ -21,6 +21,12 @@ public enum ToggleSettings implements ToggleSetting {
 
     NO_CLIP(false),
     CULLING_COMPUTATION(true),
+    BITWISE_MESHING(true),
+    PARALLEL_VISIBILITY(true),
+    PARALLEL_EDITS(true),
+    // Left out of the settings menu until ShapeRasterizerTester has compared it against a gpu recording
+    CPU_SHAPE_RASTERIZATION(false),
+    PRE_TRANSFORMED_STRUCTURES(true),
     OPEN_DEBUG_MENU(false, GLFW_KEY_F3),
     TOGGLE_X_RAY(false),
     RENDER_OCCLUDERS(false),
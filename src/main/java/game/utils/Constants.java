@@ -18,7 +18,6 @@ public final class Constants {
     public static final int MAX_STRUCTURE_SIZE = 512;
 
     // Make into settings later
-    public static final byte NUMBER_OF_GENERATION_THREADS = 3;
     public static final int MAX_STRUCTURE_LOD = 4;
 
     public static final int SHADOW_MAP_SIZE = 2048;